@@ -30,6 +30,11 @@ android {
         targetCompatibility = JavaVersion.VERSION_1_8
     }
     
+    // Local JVM tests exercise the networking classes, which log through android.util.Log
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+    }
+    
     // Allow cleartext traffic for ESP32 communications
     buildFeatures {
         buildConfig = true
@@ -37,6 +42,7 @@ android {
 }
 
 dependencies {
+    implementation(project(":core"))
     implementation("androidx.appcompat:appcompat:1.6.1")
     implementation("com.google.android.material:material:1.11.0")
     implementation("androidx.constraintlayout:constraintlayout:2.1.4")
@@ -48,6 +54,9 @@ dependencies {
     implementation(libs.navigation.fragment)
 
     testImplementation("junit:junit:4.13.2")
+    testImplementation(testFixtures(project(":core")))
+    // android.jar only has stubs of org.json; tests of the feed reader need the real parser
+    testImplementation("org.json:json:20231013")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.example.myapplication;
+
+import java.util.Locale;
+
+/**
+ * Connect and read timeouts for one endpoint, derived from its observed connects and
+ * round trips.
+ *
+ * The connect timeout is a multiple of the 99th percentile time to open a connection,
+ * the read timeout a multiple of the 99th percentile round trip, each kept between a
+ * floor and a ceiling. Time spent queueing for a connection counts towards neither. An
+ * attempt that times out is recorded at the time it gave up, so a link that slows down
+ * raises its own timeouts instead of failing over and over.
+ */
+public class AdaptiveTimeout {
+    private static final double QUANTILE = 0.99;
+    private static final long DECAY_THRESHOLD = 1000;
+
+    private final String name;
+    private final LatencyHistogram roundTrips = new LatencyHistogram(DECAY_THRESHOLD);
+    private final LatencyHistogram connects = new LatencyHistogram(DECAY_THRESHOLD);
+    private final int minConnectMillis;
+    private final int maxConnectMillis;
+    private final int minReadMillis;
+    private final int maxReadMillis;
+    private final double connectFactor;
+    private final double readFactor;
+    private final long minSamples;
+
+    /**
+     * @param name             Endpoint name shown in diagnostics
+     * @param minConnectMillis Floor of the connect timeout
+     * @param maxConnectMillis Ceiling of the connect timeout, used until enough samples exist
+     * @param minReadMillis    Floor of the read timeout
+     * @param maxReadMillis    Ceiling of the read timeout, used until enough samples exist
+     * @param connectFactor    Connect timeout as a multiple of the p99 connect time
+     * @param readFactor       Read timeout as a multiple of the p99 round trip
+     * @param minSamples       Samples needed before a timeout drops below its ceiling
+     */
+    public AdaptiveTimeout(String name, int minConnectMillis, int maxConnectMillis, int minReadMillis,
+                           int maxReadMillis, double connectFactor, double readFactor, long minSamples) {
+        this.name = name;
+        this.minConnectMillis = minConnectMillis;
+        this.maxConnectMillis = maxConnectMillis;
+        this.minReadMillis = minReadMillis;
+        this.maxReadMillis = maxReadMillis;
+        this.connectFactor = connectFactor;
+        this.readFactor = readFactor;
+        this.minSamples = minSamples;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return timeout(connects, connectFactor, minConnectMillis, maxConnectMillis);
+    }
+
+    public int getReadTimeoutMillis() {
+        return timeout(roundTrips, readFactor, minReadMillis, maxReadMillis);
+    }
+
+    // A connection was opened after this long
+    public void recordConnect(long millis) {
+        connects.record(millis);
+    }
+
+    // Opening a connection gave up after this long
+    public void recordConnectTimeout(long millis) {
+        connects.record(millis);
+    }
+
+    // A request got a response this long after it was sent
+    public void recordRoundTrip(long millis) {
+        roundTrips.record(millis);
+    }
+
+    // A request gave up waiting for its response after this long
+    public void recordTimeout(long millis) {
+        roundTrips.record(millis);
+    }
+
+    // Round trips, from sending a request to the end of its response
+    public LatencyHistogram getHistogram() {
+        return roundTrips;
+    }
+
+    // Time taken to open new connections
+    public LatencyHistogram getConnectHistogram() {
+        return connects;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: connect=%dms read=%dms %s connects %s",
+                name, getConnectTimeoutMillis(), getReadTimeoutMillis(), roundTrips, connects);
+    }
+
+    private int timeout(LatencyHistogram samples, double factor, int floor, int ceiling) {
+        if (samples.getCount() < minSamples) {
+            return ceiling;
+        }
+        long learned = (long) (samples.getPercentile(QUANTILE) * factor);
+        return (int) Math.max(floor, Math.min(ceiling, learned));
+    }
+}
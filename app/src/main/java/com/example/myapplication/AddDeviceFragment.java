@@ -62,6 +62,9 @@ public class AddDeviceFragment extends Fragment implements DeviceAdapter.OnDevic
     private WifiManager wifiManager;
     private boolean isScanning = false;
     private Button btnScan;
+    // Hubs found on the current network, listed above the Wi-Fi networks
+    private final List<Device> hubDevices = new ArrayList<>();
+    private NexadomusApiClient apiClient;
     
     // Permission request launcher
     private ActivityResultLauncher<String[]> requestPermissionLauncher;
@@ -116,6 +119,11 @@ public class AddDeviceFragment extends Fragment implements DeviceAdapter.OnDevic
         // Set button text based on permission status
         updateButtonText();
 
+        // Hubs on the network we are already on need no Wi-Fi scan; known ones show up at once
+        apiClient = NexadomusApiClient.getInstance();
+        apiClient.setAppContext(requireContext());
+        discoverHubs(false);
+
         btnScan.setOnClickListener(v -> {
             if (!isScanning) {
                 checkPermissionsAndScan();
@@ -147,6 +155,32 @@ public class AddDeviceFragment extends Fragment implements DeviceAdapter.OnDevic
         }
     }
     
+    private void discoverHubs(boolean forceRefresh) {
+        apiClient.discoverHubs(forceRefresh, new HubDiscovery.Listener() {
+            @Override
+            public void onHubsFound(List<Hub> hubs, boolean fromCache) {
+                if (!isAdded() || devices == null) {
+                    return;
+                }
+                devices.removeAll(hubDevices);
+                hubDevices.clear();
+                for (Hub hub : hubs) {
+                    hubDevices.add(new Device(hub));
+                }
+                devices.addAll(0, hubDevices);
+                deviceAdapter.notifyDataSetChanged();
+                if (!isScanning && !hubs.isEmpty()) {
+                    scanStatus.setText(hubs.size() + (hubs.size() == 1 ? " hub" : " hubs") + " found on this network");
+                }
+            }
+
+            @Override
+            public void onDiscoveryFailed(String error) {
+                // Wi-Fi scanning still works without discovery
+            }
+        });
+    }
+
     private void updateButtonText() {
         if (hasRequiredPermissions()) {
             btnScan.setText("Scan for WiFi Networks");
@@ -268,7 +302,9 @@ public class AddDeviceFragment extends Fragment implements DeviceAdapter.OnDevic
     private void startWifiScan() {
         // Clear previous results
         devices.clear();
+        devices.addAll(hubDevices);
         deviceAdapter.notifyDataSetChanged();
+        discoverHubs(true);
         
         // Check if WiFi is enabled
         if (!wifiManager.isWifiEnabled()) {
@@ -312,33 +348,10 @@ public class AddDeviceFragment extends Fragment implements DeviceAdapter.OnDevic
             return;
         }
         
-        List<ScanResult> scanResults = wifiManager.getScanResults();
-        devices.clear();
-        
-        boolean foundNexadomus = false;
-        
-        // Process scan results
-        for (ScanResult result : scanResults) {
-            if (result.SSID == null || result.SSID.isEmpty()) {
-                continue; // Skip empty SSIDs
-            }
-            
-            // Create device from scan result
-            boolean isSecured = !result.capabilities.contains("Open");
-            Device wifiDevice = new Device(result.SSID, result.level, isSecured);
-            
-            // Check if this is our Nexadomus device
-            if (result.SSID.equals("Nexadomus Prototype")) {
-                foundNexadomus = true;
-                // Add Nexadomus device first in the list
-                devices.add(0, wifiDevice);
-            } else {
-                devices.add(wifiDevice);
-            }
-        }
+        WifiScan scan = showScanResults(wifiManager.getScanResults());
+        boolean foundNexadomus = scan.isHubFound();
         
         // Update UI
-        deviceAdapter.notifyDataSetChanged();
         isScanning = false;
         btnScan.setText("Scan Again");
         btnScan.setEnabled(true);
@@ -350,6 +363,22 @@ public class AddDeviceFragment extends Fragment implements DeviceAdapter.OnDevic
         } else {
             scanStatus.setText(devices.size() + " WiFi networks found");
         }
+        // Discovered hubs stay on top of the networks
+        devices.addAll(0, hubDevices);
+        deviceAdapter.notifyDataSetChanged();
+    }
+
+    // Replace the listed networks with those of a scan; hubs are added back by the caller
+    private WifiScan showScanResults(List<ScanResult> results) {
+        WifiScan scan = new WifiScan();
+        for (ScanResult result : results) {
+            scan.add(result.SSID, result.level, result.capabilities);
+        }
+        devices.clear();
+        for (WifiScan.Network network : scan.getNetworks()) {
+            devices.add(new Device(network.getSsid(), network.getLevel(), network.isSecured()));
+        }
+        return scan;
     }
 
     private void scanFailure() {
@@ -373,15 +402,10 @@ public class AddDeviceFragment extends Fragment implements DeviceAdapter.OnDevic
             
             List<ScanResult> lastResults = wifiManager.getScanResults();
             if (lastResults != null && !lastResults.isEmpty()) {
-                devices.clear();
-                for (ScanResult result : lastResults) {
-                    if (result.SSID != null && !result.SSID.isEmpty()) {
-                        boolean isSecured = !result.capabilities.contains("Open");
-                        devices.add(new Device(result.SSID, result.level, isSecured));
-                    }
-                }
-                deviceAdapter.notifyDataSetChanged();
+                showScanResults(lastResults);
                 scanStatus.setText("Using cached results: " + devices.size() + " networks");
+                devices.addAll(0, hubDevices);
+                deviceAdapter.notifyDataSetChanged();
             } else {
                 // Only show the "Scan failed" message if there are no cached results either
                 scanStatus.setText("Scan failed. Please try again.");
@@ -394,7 +418,12 @@ public class AddDeviceFragment extends Fragment implements DeviceAdapter.OnDevic
     
     @Override
     public void onDeviceConnect(Device device) {
-        if (device.isNexadomusDevice()) {
+        if (device.getHub() != null) {
+            apiClient.addHub(device.getHub());
+            Toast.makeText(getContext(),
+                    device.getName() + " added",
+                    Toast.LENGTH_SHORT).show();
+        } else if (device.isNexadomusDevice()) {
             connectToWifi(device.getName());
         } else {
             Toast.makeText(getContext(), 
@@ -0,0 +1,228 @@
+package com.example.myapplication;
+
+import android.net.Network;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends CommandFrames to one hub over UDP and waits for their acknowledgements.
+ *
+ * A command is retransmitted with a doubling timeout until the hub acknowledges it.
+ * When the hub never answers, or the port is closed, the channel reports itself
+ * unavailable for a while so callers go straight to HTTP instead of paying the
+ * retransmit delay on every command.
+ */
+public class BinaryCommandChannel {
+    private static final String TAG = "BinaryCommandChannel";
+    private static final int MAX_ATTEMPTS = 4;
+    // An idle ESP32 acknowledges within a few milliseconds
+    private static final long INITIAL_RETRANSMIT_MS = 40;
+    private static final long MAX_RETRANSMIT_MS = 300;
+    private static final long UNAVAILABLE_BACKOFF_MS = 60 * 1000;
+    private static final long DECAY_THRESHOLD = 1000;
+    private static final int RECEIVE_BUFFER_SIZE = 64;
+
+    // Wakes a waiting sender when the hub's port turned out to be closed
+    private static final CommandFrame UNREACHABLE = new CommandFrame((byte) 0, (byte) 0, 0, 0);
+
+    private volatile String host;
+    private volatile int port;
+    private volatile Network network;
+    private final Object lock = new Object();
+    private DatagramSocket socket;
+    private final Map<Integer, BlockingQueue<CommandFrame>> pending = new ConcurrentHashMap<>();
+    // Random start, so a new session is never mistaken for retransmits of an old one
+    private final AtomicInteger sequence = new AtomicInteger(ThreadLocalRandom.current().nextInt());
+    private volatile long unavailableUntil;
+
+    private final LatencyHistogram roundTrips = new LatencyHistogram(DECAY_THRESHOLD);
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong retransmits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public BinaryCommandChannel(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    // Send to another address; the socket is reopened on the next command
+    public void setEndpoint(String host, int port) {
+        this.host = host;
+        this.port = port;
+        unavailableUntil = 0;
+        closeSocket();
+    }
+
+    // Send through this network, e.g. the hub's Wi-Fi; null for the default route
+    public void setNetwork(Network network) {
+        this.network = network;
+        unavailableUntil = 0;
+        closeSocket();
+    }
+
+    // False for a while after the hub failed to acknowledge a command
+    public boolean isAvailable() {
+        return System.currentTimeMillis() >= unavailableUntil;
+    }
+
+    /**
+     * Send a command and wait for the hub to acknowledge it.
+     *
+     * @param handle Stops retransmitting when cancelled, or null
+     * @return Status from the acknowledgement, CommandFrame.STATUS_OK on success
+     * @throws IOException If the hub did not acknowledge the command
+     */
+    public int send(CommandFrame command, RequestHandle handle) throws IOException {
+        int seq = sequence.incrementAndGet();
+        byte[] data = command.withSequence(seq).encode();
+        BlockingQueue<CommandFrame> ack = new ArrayBlockingQueue<>(1);
+        pending.put(seq, ack);
+        long startedAt = System.currentTimeMillis();
+        try {
+            DatagramSocket s = openSocket();
+            DatagramPacket packet = new DatagramPacket(data, data.length);
+            long retransmitAfter = INITIAL_RETRANSMIT_MS;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                if (handle != null && handle.isCancelled()) {
+                    throw new IOException("Request cancelled");
+                }
+                if (attempt > 0) {
+                    retransmits.incrementAndGet();
+                }
+                s.send(packet);
+                sent.incrementAndGet();
+                CommandFrame reply = ack.poll(retransmitAfter, TimeUnit.MILLISECONDS);
+                if (reply == UNREACHABLE) {
+                    throw markUnavailable(new PortUnreachableException("Hub does not accept binary commands"));
+                }
+                if (reply != null) {
+                    roundTrips.record(System.currentTimeMillis() - startedAt);
+                    acknowledged.incrementAndGet();
+                    return reply.getValue();
+                }
+                retransmitAfter = Math.min(retransmitAfter * 2, MAX_RETRANSMIT_MS);
+            }
+            throw markUnavailable(new SocketTimeoutException(
+                    "No acknowledgement after " + MAX_ATTEMPTS + " attempts"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for acknowledgement");
+        } finally {
+            pending.remove(seq);
+        }
+    }
+
+    public void close() {
+        closeSocket();
+    }
+
+    // Command round trips including retransmits
+    public LatencyHistogram getRoundTrips() {
+        return roundTrips;
+    }
+
+    // Datagrams sent, retransmits included
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getAcknowledgedCount() {
+        return acknowledged.get();
+    }
+
+    public long getRetransmitCount() {
+        return retransmits.get();
+    }
+
+    // Commands that had to fall back to HTTP
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    private IOException markUnavailable(IOException e) {
+        failures.incrementAndGet();
+        unavailableUntil = System.currentTimeMillis() + UNAVAILABLE_BACKOFF_MS;
+        Log.w(TAG, host + ":" + port + " " + e.getMessage() + "; using HTTP for commands");
+        return e;
+    }
+
+    private DatagramSocket openSocket() throws IOException {
+        synchronized (lock) {
+            if (socket != null) {
+                return socket;
+            }
+            DatagramSocket s = new DatagramSocket();
+            try {
+                Network bound = network;
+                if (bound != null) {
+                    bound.bindSocket(s);
+                }
+                // Connected, so a closed port comes back as PortUnreachableException
+                s.connect(new InetSocketAddress(host, port));
+            } catch (IOException e) {
+                s.close();
+                throw e;
+            }
+            socket = s;
+            Thread receiver = new Thread(() -> receive(s), TAG);
+            receiver.setDaemon(true);
+            receiver.start();
+            return s;
+        }
+    }
+
+    // Hands acknowledgements to their senders until the socket is closed
+    private void receive(DatagramSocket s) {
+        // Larger than a frame, so an oversized datagram shows its real length instead of being cut to fit
+        byte[] buffer = new byte[RECEIVE_BUFFER_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!s.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                s.receive(packet);
+                if (packet.getLength() != CommandFrame.SIZE) {
+                    Log.w(TAG, "Ignoring " + packet.getLength() + " byte datagram from hub");
+                    continue;
+                }
+                CommandFrame frame = CommandFrame.decode(packet.getData(), packet.getLength());
+                if (frame != null && frame.getType() == CommandFrame.TYPE_ACK) {
+                    // Late acks of retransmitted commands find no waiter and are dropped
+                    BlockingQueue<CommandFrame> waiter = pending.get(frame.getSequence());
+                    if (waiter != null) {
+                        waiter.offer(frame);
+                    }
+                }
+            } catch (PortUnreachableException e) {
+                for (BlockingQueue<CommandFrame> waiter : pending.values()) {
+                    waiter.offer(UNREACHABLE);
+                }
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void closeSocket() {
+        synchronized (lock) {
+            if (socket != null) {
+                socket.close();
+                socket = null;
+            }
+        }
+    }
+}
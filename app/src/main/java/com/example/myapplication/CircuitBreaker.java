@@ -0,0 +1,225 @@
+package com.example.myapplication;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker for one endpoint, e.g. the hub.
+ *
+ * After a run of consecutive failures the breaker opens and calls fail instantly
+ * instead of piling more attempts onto an endpoint that is struggling or rebooting.
+ * Once the open period ends a single probe is let through (half-open): success closes
+ * the breaker, failure opens it again for twice as long. Open periods are jittered so
+ * several clients do not come back at the same moment.
+ */
+public class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    // Told about every state change
+    public interface Listener {
+        void onStateChanged(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long baseOpenMillis;
+    private final long maxOpenMillis;
+    private final LongSupplier clock;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private int reopenCount;
+    private long openUntil;
+    private boolean probeInFlight;
+    private long lastTransitionAt;
+
+    private long rejected;
+    private long opened;
+    private long transitions;
+
+    /**
+     * @param name             Endpoint name shown in diagnostics
+     * @param failureThreshold Consecutive failures that open the breaker
+     * @param baseOpenMillis   First open period, doubled each time a probe fails
+     * @param maxOpenMillis    Longest open period
+     */
+    public CircuitBreaker(String name, int failureThreshold, long baseOpenMillis, long maxOpenMillis) {
+        this(name, failureThreshold, baseOpenMillis, maxOpenMillis, System::currentTimeMillis);
+    }
+
+    // Reads the time from the given clock, in milliseconds
+    CircuitBreaker(String name, int failureThreshold, long baseOpenMillis, long maxOpenMillis, LongSupplier clock) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.baseOpenMillis = baseOpenMillis;
+        this.maxOpenMillis = maxOpenMillis;
+        this.clock = clock;
+        this.lastTransitionAt = clock.getAsLong();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Ask to make a call. Every allowed call must be followed by exactly one of
+     * recordSuccess(), recordFailure() or release().
+     *
+     * @return False if the call must fail right away
+     */
+    public boolean allowRequest() {
+        State from;
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN && clock.getAsLong() >= openUntil) {
+                from = state;
+                moveTo(State.HALF_OPEN);
+                probeInFlight = true;
+            } else if (state == State.HALF_OPEN && !probeInFlight) {
+                // The previous probe was released without an answer
+                probeInFlight = true;
+                return true;
+            } else {
+                rejected++;
+                return false;
+            }
+        }
+        notifyListeners(from, State.HALF_OPEN);
+        return true;
+    }
+
+    // The endpoint answered
+    public void recordSuccess() {
+        State from;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            if (state == State.CLOSED) {
+                return;
+            }
+            from = state;
+            reopenCount = 0;
+            probeInFlight = false;
+            moveTo(State.CLOSED);
+        }
+        notifyListeners(from, State.CLOSED);
+    }
+
+    // The endpoint could not be reached or did not answer in time
+    public void recordFailure() {
+        State from;
+        synchronized (this) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN) {
+                reopenCount++;
+            } else if (state != State.CLOSED || consecutiveFailures < failureThreshold) {
+                return;
+            }
+            from = state;
+            probeInFlight = false;
+            openUntil = clock.getAsLong() + openMillis();
+            opened++;
+            moveTo(State.OPEN);
+        }
+        notifyListeners(from, State.OPEN);
+    }
+
+    // An allowed call ended without telling us anything, e.g. it was cancelled
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    // Forget past failures, e.g. after joining the hub network again
+    public void reset() {
+        State from;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            reopenCount = 0;
+            probeInFlight = false;
+            if (state == State.CLOSED) {
+                return;
+            }
+            from = state;
+            moveTo(State.CLOSED);
+        }
+        notifyListeners(from, State.CLOSED);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // Milliseconds until an open breaker lets a probe through, 0 otherwise
+    public synchronized long millisUntilRetry() {
+        return state == State.OPEN ? Math.max(0, openUntil - clock.getAsLong()) : 0;
+    }
+
+    // Calls failed without being attempted
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    public synchronized long getOpenedCount() {
+        return opened;
+    }
+
+    public synchronized long getTransitionCount() {
+        return transitions;
+    }
+
+    public synchronized long getLastTransitionAt() {
+        return lastTransitionAt;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%s: %s failures=%d opened=%d rejected=%d retryIn=%dms",
+                name, state, consecutiveFailures, opened, rejected, millisUntilRetry());
+    }
+
+    // Must hold the lock
+    private void moveTo(State next) {
+        state = next;
+        transitions++;
+        lastTransitionAt = clock.getAsLong();
+    }
+
+    // Must hold the lock. Exponential in the number of failed probes, with equal jitter:
+    // at least half the period, so a rebooting hub always gets some quiet time.
+    private long openMillis() {
+        long period = baseOpenMillis << Math.min(reopenCount, 20);
+        period = Math.min(period, maxOpenMillis);
+        long half = period / 2;
+        return half + ThreadLocalRandom.current().nextLong(period - half + 1);
+    }
+
+    private void notifyListeners(State from, State to) {
+        Log.i(TAG, name + ": " + from + " -> " + to);
+        for (Listener listener : listeners) {
+            listener.onStateChanged(this, from, to);
+        }
+    }
+}
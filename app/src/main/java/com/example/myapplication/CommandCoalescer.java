@@ -0,0 +1,226 @@
+package com.example.myapplication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest-wins command pipeline for local hub commands.
+ *
+ * Each device has at most one command in flight and one waiting. A newer command for
+ * the same device replaces the waiting one, sends are spaced by a minimum interval,
+ * and the waiting command is always sent once the in-flight one completes, so the
+ * final value the user picked is the one the hub ends up with.
+ */
+public class CommandCoalescer {
+
+    // Sends one command (a hub path such as "/lights?brightness=128") and reports the result
+    public interface Sender {
+        void send(String command, NexadomusApiClient.ApiCallback callback);
+    }
+
+    private static class Slot {
+        boolean inFlight;
+        boolean scheduled;
+        long lastSentAt;
+        String pendingCommand;
+        List<NexadomusApiClient.ApiCallback> pendingCallbacks = new ArrayList<>();
+    }
+
+    private final Sender sender;
+    private final long minIntervalMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, Slot> slots = new HashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * @param sender            Performs the actual request
+     * @param minIntervalMillis Minimum spacing between two sends for the same device
+     */
+    public CommandCoalescer(Sender sender, long minIntervalMillis) {
+        this.sender = sender;
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Queue a command for a device.
+     *
+     * @param deviceKey Commands with the same key replace each other while waiting
+     * @param command   Hub path to send
+     * @param callback  Receives the result of this command, or of the newer command that replaced it
+     */
+    public void submit(String deviceKey, String command, NexadomusApiClient.ApiCallback callback) {
+        submitted.incrementAndGet();
+        Runnable dispatch;
+        synchronized (this) {
+            Slot slot = slots.get(deviceKey);
+            if (slot == null) {
+                slot = new Slot();
+                slots.put(deviceKey, slot);
+            }
+            if (slot.pendingCommand != null) {
+                collapsed.incrementAndGet();
+            }
+            slot.pendingCommand = command;
+            slot.pendingCallbacks.add(callback);
+            dispatch = nextDispatch(deviceKey, slot);
+        }
+        if (dispatch != null) {
+            dispatch.run();
+        }
+    }
+
+    /**
+     * Take back a command submitted with this callback that has not been sent yet.
+     *
+     * @return True if it was withdrawn; false if it is already on its way to the hub
+     */
+    public synchronized boolean withdraw(String deviceKey, NexadomusApiClient.ApiCallback callback) {
+        Slot slot = slots.get(deviceKey);
+        if (slot == null || !slot.pendingCallbacks.remove(callback)) {
+            return false;
+        }
+        if (slot.pendingCallbacks.isEmpty()) {
+            slot.pendingCommand = null;
+        }
+        return true;
+    }
+
+    /**
+     * A newer command for the device is about to be sent another way, e.g. in a batch.
+     * The waiting command is dropped and its callers handed back, to be told the newer
+     * command's result; a command already in flight is left alone.
+     */
+    public synchronized List<NexadomusApiClient.ApiCallback> takeWaiting(String deviceKey) {
+        Slot slot = slots.get(deviceKey);
+        if (slot == null || slot.pendingCommand == null) {
+            return new ArrayList<>();
+        }
+        List<NexadomusApiClient.ApiCallback> callbacks = slot.pendingCallbacks;
+        slot.pendingCommand = null;
+        slot.pendingCallbacks = new ArrayList<>();
+        collapsed.incrementAndGet();
+        return callbacks;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    // Commands that were replaced by a newer value before being sent
+    public long getCollapsedCount() {
+        return collapsed.get();
+    }
+
+    // Commands dropped before sending because every caller waiting on them was cancelled
+    public long getCancelledCount() {
+        return cancelled.get();
+    }
+
+    // Decide what to do with the slot; must hold the lock. Returns a send to run outside the lock.
+    private Runnable nextDispatch(String deviceKey, Slot slot) {
+        if (slot.inFlight || slot.scheduled || slot.pendingCommand == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        long wait = slot.lastSentAt + minIntervalMillis - now;
+        if (wait > 0) {
+            slot.scheduled = true;
+            scheduler.schedule(() -> {
+                Runnable dispatch;
+                synchronized (CommandCoalescer.this) {
+                    slot.scheduled = false;
+                    dispatch = nextDispatch(deviceKey, slot);
+                }
+                if (dispatch != null) {
+                    dispatch.run();
+                }
+            }, wait, TimeUnit.MILLISECONDS);
+            return null;
+        }
+
+        final String command = slot.pendingCommand;
+        final List<NexadomusApiClient.ApiCallback> callbacks = slot.pendingCallbacks;
+        slot.pendingCommand = null;
+        slot.pendingCallbacks = new ArrayList<>();
+
+        // Cancelled once every caller waiting on this send has left
+        final RequestHandle handle = new RequestHandle();
+        handle.joinAll(callbacks);
+        if (handle.isCancelled()) {
+            cancelled.incrementAndGet();
+            return null;
+        }
+
+        slot.inFlight = true;
+        slot.lastSentAt = now;
+        sent.incrementAndGet();
+        return () -> sender.send(command, new Completion(deviceKey, slot, callbacks, handle));
+    }
+
+    // Result of one send, fanned out to every caller it stood for
+    private class Completion implements NexadomusApiClient.ApiCallback, RequestHandle.Carrier, CommandTrace.Carrier {
+        private final String deviceKey;
+        private final Slot slot;
+        private final List<NexadomusApiClient.ApiCallback> callbacks;
+        private final RequestHandle handle;
+
+        Completion(String deviceKey, Slot slot, List<NexadomusApiClient.ApiCallback> callbacks, RequestHandle handle) {
+            this.deviceKey = deviceKey;
+            this.slot = slot;
+            this.callbacks = callbacks;
+            this.handle = handle;
+        }
+
+        @Override
+        public RequestHandle getRequestHandle() {
+            return handle;
+        }
+
+        @Override
+        public List<CommandTrace> getCommandTraces() {
+            return CommandTrace.ofAll(callbacks);
+        }
+
+        @Override
+        public void onSuccess(String response) {
+            complete();
+            for (NexadomusApiClient.ApiCallback callback : callbacks) {
+                callback.onSuccess(response);
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            complete();
+            for (NexadomusApiClient.ApiCallback callback : callbacks) {
+                callback.onError(error);
+            }
+        }
+
+        private void complete() {
+            Runnable dispatch;
+            synchronized (CommandCoalescer.this) {
+                slot.inFlight = false;
+                dispatch = nextDispatch(deviceKey, slot);
+            }
+            if (dispatch != null) {
+                dispatch.run();
+            }
+        }
+    }
+}
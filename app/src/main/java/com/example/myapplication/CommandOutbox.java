@@ -0,0 +1,510 @@
+package com.example.myapplication;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-device log of commands issued while there was no usable path to the hub.
+ *
+ * Each command is written as a "C" record and later cancelled by an "A" (acknowledged)
+ * record once it has been replayed, so the log survives process death. Every record ends
+ * with a CRC32 of its fields, so one torn by a crash is skipped on load. Writes are
+ * group-committed: records are fsynced in batches rather than one fsync per command.
+ * The log is rewritten with only the pending records when it grows past its limit.
+ *
+ * Callers only touch memory. Loading, writing, fsync and compaction all run on the sync
+ * thread, which never holds the lock callers take while it waits on the disk.
+ */
+public class CommandOutbox {
+    private static final String TAG = "CommandOutbox";
+    private static final int FSYNC_BATCH = 16;
+    private static final long FSYNC_DELAY_MS = 200;
+    private static final long COMPACT_THRESHOLD_BYTES = 64 * 1024;
+
+    // Device commands are typed by device, as DeviceAction.getOutboxType() reports them
+    public static final String TYPE_GARAGE = DeviceAction.GARAGE;
+    public static final String TYPE_LIGHTS = DeviceAction.LIGHTS;
+    public static final String TYPE_SPRINKLERS = DeviceAction.SPRINKLERS;
+    public static final String TYPE_CUSTOM = "custom";
+
+    // Told once a command's record has reached the disk, or failed to
+    public interface SaveCallback {
+        void onSaved(boolean durable);
+    }
+
+    public static class Entry {
+        // Commands appended before the log was read are numbered after the ones in it
+        private volatile long sequence;
+        private final long enqueuedAt;
+        private final String type;
+        private final String payload;
+
+        Entry(long sequence, long enqueuedAt, String type, String payload) {
+            this.sequence = sequence;
+            this.enqueuedAt = enqueuedAt;
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getEnqueuedAt() {
+            return enqueuedAt;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        // Entries with the same key drive the same actuator, so only the newest matters
+        String getDeviceKey() {
+            return type.equals(TYPE_CUSTOM) ? ThingSpeakBatcher.deviceKey(payload) : type;
+        }
+    }
+
+    // A record waiting for the sync thread; rendered there, once every sequence is final
+    private static class Write {
+        final Entry entry;
+        final boolean acknowledged;
+
+        Write(Entry entry, boolean acknowledged) {
+            this.entry = entry;
+            this.acknowledged = acknowledged;
+        }
+
+        String render() {
+            return acknowledged ? record("A\t" + entry.sequence) : commandRecord(entry);
+        }
+    }
+
+    private final File file;
+    private final int maxEntries;
+    private final Runnable onLoaded;
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // Pending entries in sequence order
+    private final List<Entry> pending = new ArrayList<>();
+    private long nextSequence = 1;
+    private volatile boolean loaded;
+    // Every entry created before the log was read, including ones already acknowledged
+    private List<Entry> createdBeforeLoad = new ArrayList<>();
+    private final List<Write> unsynced = new ArrayList<>();
+    private boolean syncScheduled;
+    // Callers waiting for the records in unsynced to reach the disk
+    private final List<SaveCallback> awaitingSync = new ArrayList<>();
+
+    // Only used on the sync thread
+    private FileOutputStream out;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong damaged = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private volatile long lastReplayCount;
+    private volatile long lastReplayMillis;
+
+    public CommandOutbox(File file, int maxEntries) {
+        this(file, maxEntries, null);
+    }
+
+    /**
+     * @param file       Log file, created if missing
+     * @param maxEntries Maximum number of pending commands; new devices are refused beyond this
+     * @param onLoaded   Run on the sync thread once the log has been read; may be null
+     */
+    public CommandOutbox(File file, int maxEntries, Runnable onLoaded) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.onLoaded = onLoaded;
+        // First on the sync thread, so no record is written before the log is read
+        syncExecutor.execute(this::load);
+    }
+
+    // False until the log has been read; pending commands from earlier runs are missing until then
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Record a command for later replay
+    public Entry append(String type, String payload) {
+        return append(type, payload, null);
+    }
+
+    /**
+     * Record a command for later replay. It replaces any pending command for the same
+     * device, since only the newest one would be sent. A new device is refused while the
+     * outbox is full; other devices' commands are never dropped to make room.
+     *
+     * @param callback Told on the sync thread once the record is on disk, or with false if
+     *                 the command was refused; null to not wait. A waiting caller gets its
+     *                 fsync right away instead of after FSYNC_DELAY_MS.
+     * @return The new entry, or null if the outbox is full
+     */
+    public synchronized Entry append(String type, String payload, SaveCallback callback) {
+        Entry entry = new Entry(nextSequence, System.currentTimeMillis(), type, payload);
+        if (!supersedeOlder(entry) && pending.size() >= maxEntries) {
+            dropped.incrementAndGet();
+            Log.w(TAG, "Outbox full, dropped " + type + " command " + payload);
+            if (callback != null) {
+                syncExecutor.execute(() -> callback.onSaved(false));
+            }
+            return null;
+        }
+        nextSequence++;
+        pending.add(entry);
+        if (createdBeforeLoad != null) {
+            createdBeforeLoad.add(entry);
+        }
+        write(new Write(entry, false));
+        appended.incrementAndGet();
+
+        if (callback != null) {
+            awaitingSync.add(callback);
+            syncExecutor.execute(this::flush);
+        }
+        return entry;
+    }
+
+    // Acknowledge pending entries for the same device as the given one; true if there were any
+    private boolean supersedeOlder(Entry entry) {
+        boolean found = false;
+        Iterator<Entry> it = pending.iterator();
+        while (it.hasNext()) {
+            Entry candidate = it.next();
+            if (candidate != entry && candidate.getDeviceKey().equals(entry.getDeviceKey())) {
+                it.remove();
+                write(new Write(candidate, true));
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Commands still waiting to be replayed, oldest first.
+     *
+     * @param collapse Keep only the newest command per device
+     */
+    public synchronized List<Entry> getPending(boolean collapse) {
+        if (!collapse) {
+            return new ArrayList<>(pending);
+        }
+        Map<String, Entry> latest = new LinkedHashMap<>();
+        for (Entry entry : pending) {
+            // Re-insert so the device is ordered by its newest command
+            latest.remove(entry.getDeviceKey());
+            latest.put(entry.getDeviceKey(), entry);
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * Mark a command as delivered.
+     *
+     * @param entry     The replayed entry
+     * @param supersede Also drop older entries for the same device, which the replayed one replaced
+     */
+    public synchronized void acknowledge(Entry entry, boolean supersede) {
+        Iterator<Entry> it = pending.iterator();
+        while (it.hasNext()) {
+            Entry candidate = it.next();
+            if (candidate == entry
+                    || (supersede && candidate.sequence < entry.sequence
+                        && candidate.getDeviceKey().equals(entry.getDeviceKey()))) {
+                it.remove();
+                write(new Write(candidate, true));
+            }
+        }
+        replayed.incrementAndGet();
+    }
+
+    // Remove entries older than the given age without replaying them
+    public synchronized int expire(long maxAgeMillis) {
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        int count = 0;
+        Iterator<Entry> it = pending.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.enqueuedAt >= cutoff) {
+                continue;
+            }
+            it.remove();
+            write(new Write(entry, true));
+            count++;
+            dropped.incrementAndGet();
+            expiredCount.incrementAndGet();
+            Log.w(TAG, "Dropped " + entry.type + " command " + entry.payload + " saved "
+                    + (System.currentTimeMillis() - entry.enqueuedAt) / 1000 + " s ago without sending it");
+        }
+        return count;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    // Record how long a replay pass took, for throughput reporting
+    public void recordReplay(long count, long elapsedMillis) {
+        lastReplayCount = count;
+        lastReplayMillis = elapsedMillis;
+    }
+
+    public long getAppendedCount() {
+        return appended.get();
+    }
+
+    public long getReplayedCount() {
+        return replayed.get();
+    }
+
+    // Commands dropped unsent, because the outbox was full or they expired
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // Commands dropped unsent because they were too old to replay
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    // Records skipped on load because their checksum did not match, e.g. torn by a crash
+    public long getDamagedCount() {
+        return damaged.get();
+    }
+
+    public long getFsyncCount() {
+        return fsyncs.get();
+    }
+
+    // Commands per second achieved by the last replay pass
+    public double getLastReplayThroughput() {
+        long millis = lastReplayMillis;
+        return millis <= 0 ? lastReplayCount : lastReplayCount * 1000.0 / millis;
+    }
+
+    // Write buffered records to disk now, on the sync thread
+    public void sync() {
+        syncExecutor.execute(this::flush);
+    }
+
+    // Wait until the sync thread has run everything queued so far, including the load; for tests
+    void awaitIdle() throws InterruptedException {
+        try {
+            syncExecutor.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Must hold the lock
+    private void write(Write record) {
+        unsynced.add(record);
+        if (unsynced.size() >= FSYNC_BATCH) {
+            syncExecutor.execute(this::flush);
+        } else if (!syncScheduled) {
+            syncScheduled = true;
+            syncExecutor.schedule(this::flush, FSYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Sync thread only: the lock is held just long enough to take the buffered records
+    private void flush() {
+        StringBuilder records = new StringBuilder();
+        List<SaveCallback> callbacks;
+        synchronized (this) {
+            syncScheduled = false;
+            if (unsynced.isEmpty()) {
+                return;
+            }
+            for (Write record : unsynced) {
+                records.append(record.render());
+            }
+            unsynced.clear();
+            callbacks = new ArrayList<>(awaitingSync);
+            awaitingSync.clear();
+        }
+
+        boolean durable = false;
+        try {
+            if (out == null) {
+                out = new FileOutputStream(file, true);
+            }
+            out.write(records.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+            fsyncs.incrementAndGet();
+            durable = true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist outbox: " + e.getMessage());
+        }
+        for (SaveCallback callback : callbacks) {
+            callback.onSaved(durable);
+        }
+
+        if (file.length() > COMPACT_THRESHOLD_BYTES) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the log with only pending entries; sync thread only. Records still buffered
+     * are written after it, which at worst repeats a command or acknowledges one twice.
+     */
+    private void compact() {
+        StringBuilder records = new StringBuilder();
+        synchronized (this) {
+            for (Entry entry : pending) {
+                records.append(commandRecord(entry));
+            }
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            FileOutputStream tempOut = new FileOutputStream(temp, false);
+            tempOut.write(records.toString().getBytes(StandardCharsets.UTF_8));
+            tempOut.getFD().sync();
+            tempOut.close();
+
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file.getName());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact outbox: " + e.getMessage());
+            temp.delete();
+        }
+    }
+
+    // Sync thread only, before anything is written
+    private void load() {
+        Map<Long, Entry> entries = new LinkedHashMap<>();
+        long maxSequence = 0;
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String fields = verify(line);
+                    if (fields == null) {
+                        // Torn by process death or otherwise damaged; the records around it are intact
+                        damaged.incrementAndGet();
+                        Log.w(TAG, "Skipping damaged outbox record");
+                        continue;
+                    }
+                    String[] parts = fields.split("\t", 5);
+                    try {
+                        if (parts[0].equals("C") && parts.length == 5) {
+                            long sequence = Long.parseLong(parts[1]);
+                            if (!entries.containsKey(sequence)) {
+                                entries.put(sequence, new Entry(sequence, Long.parseLong(parts[2]), parts[3],
+                                        unescape(parts[4])));
+                            }
+                            maxSequence = Math.max(maxSequence, sequence);
+                        } else if (parts[0].equals("A") && parts.length == 2) {
+                            entries.remove(Long.parseLong(parts[1]));
+                        }
+                    } catch (NumberFormatException e) {
+                        damaged.incrementAndGet();
+                        Log.w(TAG, "Skipping malformed outbox record");
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read outbox: " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            // Commands appended meanwhile are newer than anything in the log. Their records are
+            // rendered on this thread later, so renumbering here keeps them from colliding.
+            nextSequence = maxSequence + 1;
+            for (Entry entry : createdBeforeLoad) {
+                entry.sequence = nextSequence++;
+            }
+            createdBeforeLoad = null;
+            List<Entry> appendedEarly = new ArrayList<>(pending);
+            pending.addAll(0, entries.values());
+            for (Entry entry : appendedEarly) {
+                supersedeOlder(entry);
+            }
+            loaded = true;
+        }
+        if (onLoaded != null) {
+            onLoaded.run();
+        }
+    }
+
+    private static String commandRecord(Entry entry) {
+        return record("C\t" + entry.sequence + "\t" + entry.enqueuedAt + "\t" + entry.type
+                + "\t" + escape(entry.payload));
+    }
+
+    // One line of the log: the fields, a tab and the CRC32 of the fields in hex
+    static String record(String fields) {
+        return fields + "\t" + Long.toHexString(checksum(fields)) + "\n";
+    }
+
+    // The fields of a log line, or null if its checksum does not match
+    static String verify(String line) {
+        int tab = line.lastIndexOf('\t');
+        if (tab < 0) {
+            return null;
+        }
+        String fields = line.substring(0, tab);
+        try {
+            return Long.parseLong(line.substring(tab + 1), 16) == checksum(fields) ? fields : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long checksum(String fields) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = fields.getBytes(StandardCharsets.UTF_8);
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private static String escape(String payload) {
+        return payload.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String payload) {
+        StringBuilder sb = new StringBuilder(payload.length());
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c == '\\' && i + 1 < payload.length()) {
+                char next = payload.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.myapplication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Timeline of one device command, from the moment a screen issued it to the moment the
+ * device was seen in the commanded state.
+ *
+ * Times are wall-clock milliseconds, 0 until the step has happened. The transport ack is
+ * the hub answering the request, or ThingSpeak accepting the write for remote commands;
+ * the device reports back only through a later hub status.
+ */
+public class CommandTrace {
+    public static final String ROUTE_HUB = "hub";
+    public static final String ROUTE_THINGSPEAK = "thingspeak";
+
+    // Implemented by callbacks that stand for traced commands, so the transport can mark them sent
+    public interface Carrier {
+        List<CommandTrace> getCommandTraces();
+    }
+
+    private final long id;
+    private final String device;
+    private final String value;
+    private final long enqueuedAt;
+    private volatile String route;
+    private volatile long dispatchedAt;
+    private volatile long ackedAt;
+    private volatile String error;
+    private volatile long appliedAt;
+    private volatile boolean expired;
+
+    CommandTrace(long id, String device, String value, long enqueuedAt) {
+        this.id = id;
+        this.device = device;
+        this.value = value;
+        this.enqueuedAt = enqueuedAt;
+    }
+
+    // The traces a callback stands for; empty if it carries none
+    public static List<CommandTrace> of(Object callback) {
+        return callback instanceof Carrier
+                ? ((Carrier) callback).getCommandTraces()
+                : Collections.<CommandTrace>emptyList();
+    }
+
+    // The traces of every callback, e.g. all the callers one coalesced send stands for
+    public static List<CommandTrace> ofAll(List<?> callbacks) {
+        List<CommandTrace> traces = new ArrayList<>();
+        for (Object callback : callbacks) {
+            traces.addAll(of(callback));
+        }
+        return traces;
+    }
+
+    // Correlation id, unique for the life of the process
+    public long getId() {
+        return id;
+    }
+
+    // "garage", "lights" or "sprinklers"
+    public String getDevice() {
+        return device;
+    }
+
+    // Value given to the control method, e.g. "open" or "170"
+    public String getValue() {
+        return value;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    public long getDispatchedAt() {
+        return dispatchedAt;
+    }
+
+    public long getAckedAt() {
+        return ackedAt;
+    }
+
+    // Why the transport refused the command, or null
+    public String getError() {
+        return error;
+    }
+
+    public long getAppliedAt() {
+        return appliedAt;
+    }
+
+    // First route wins: with hedging the command may go out both ways
+    synchronized void markDispatched(String route, long now) {
+        if (dispatchedAt == 0) {
+            this.route = route;
+            dispatchedAt = now;
+        }
+    }
+
+    synchronized void markAcked(String error, long now) {
+        if (ackedAt == 0) {
+            this.error = error;
+            ackedAt = now;
+        }
+    }
+
+    // Still waiting for the device, i.e. sent, not refused and not given up on
+    boolean isAwaitingDevice() {
+        return dispatchedAt != 0 && appliedAt == 0 && error == null && !expired;
+    }
+
+    // The device never showed the commanded state, e.g. a newer command overruled it
+    void markExpired() {
+        expired = true;
+    }
+
+    synchronized boolean markAppliedIf(DeviceStatus status, long now) {
+        if (appliedAt != 0 || !isAppliedIn(status)) {
+            return false;
+        }
+        appliedAt = now;
+        return true;
+    }
+
+    // Whether the status shows the state this command asked for
+    boolean isAppliedIn(DeviceStatus status) {
+        switch (device) {
+            case DeviceAction.GARAGE:
+                if (!status.hasGarage()) {
+                    return false;
+                }
+                return value.equals("open") ? status.isGarageOpen()
+                        : value.equals("close") && !status.isGarageOpen();
+            case DeviceAction.LIGHTS:
+                if (!status.hasLights()) {
+                    return false;
+                }
+                int brightness = Integer.parseInt(value);
+                // ThingSpeak only carries the preset levels
+                return ROUTE_THINGSPEAK.equals(route)
+                        ? DeviceAction.remoteBrightnessLevel(status.getLights())
+                                .equals(DeviceAction.remoteBrightnessLevel(brightness))
+                        : status.getLights() == brightness;
+            case DeviceAction.SPRINKLERS:
+                // A toggle's target depends on a state the trace never saw
+                return status.hasSprinkler() && !value.equals("toggle")
+                        && status.isSprinklerOn() == value.startsWith("on");
+            default:
+                return false;
+        }
+    }
+
+    // One CSV row matching CommandTracer.CSV_HEADER
+    String toCsv() {
+        return String.format(Locale.US, "%d,%s,%s,%s,%d,%d,%d,%d,%d,%d,%d,%s",
+                id, device, value, route != null ? route : "", enqueuedAt, dispatchedAt, ackedAt, appliedAt,
+                since(enqueuedAt, dispatchedAt), since(enqueuedAt, ackedAt), since(enqueuedAt, appliedAt),
+                error != null ? "\"" + error.replace("\"", "'") + "\"" : expired ? "not applied" : "");
+    }
+
+    // Milliseconds between two steps, or -1 if the later one has not happened
+    private static long since(long start, long end) {
+        return end == 0 ? -1 : end - start;
+    }
+}
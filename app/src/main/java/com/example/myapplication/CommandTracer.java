@@ -0,0 +1,130 @@
+package com.example.myapplication;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records a {@link CommandTrace} for every device command in a fixed-size ring, the
+ * oldest trace making room for the newest.
+ *
+ * The steps are reported by whoever sees them: the API client at enqueue and ack, the
+ * hub and ThingSpeak transports at dispatch, and every published hub status for the
+ * device-applied step. A transport finds the traces of a send on the callback it was
+ * handed (see {@link CommandTrace.Carrier}), which also carries the commands collapsed
+ * into that send. The ring can be exported as CSV for offline latency analysis.
+ */
+public class CommandTracer {
+    public static final String CSV_HEADER = "id,device,value,route,enqueued_at,dispatched_at,acked_at,applied_at,"
+            + "dispatch_ms,ack_ms,applied_ms,error";
+    private static final int CAPACITY = 256;
+    // A device that has not reached the commanded state by then was overruled or never got it
+    private static final long APPLY_WINDOW_MS = 10 * 60 * 1000;
+
+    private static CommandTracer instance;
+
+    private final CommandTrace[] ring;
+    private long nextId = 1;
+    // Traces sent and not yet applied; lets statuses skip the scan when nothing is pending
+    private int awaiting;
+
+    // Separate tracers for tests; the app shares getInstance()
+    CommandTracer(int capacity) {
+        ring = new CommandTrace[capacity];
+    }
+
+    public static synchronized CommandTracer getInstance() {
+        if (instance == null) {
+            instance = new CommandTracer(CAPACITY);
+        }
+        return instance;
+    }
+
+    // A screen issued a command; the trace then travels with the command's callback
+    public synchronized CommandTrace begin(String device, String value) {
+        long id = nextId++;
+        CommandTrace trace = new CommandTrace(id, device, value, System.currentTimeMillis());
+        int slot = (int) (id % ring.length);
+        CommandTrace evicted = ring[slot];
+        if (evicted != null && evicted.isAwaitingDevice()) {
+            awaiting--;
+        }
+        ring[slot] = trace;
+        return trace;
+    }
+
+    // These commands are leaving through this route, e.g. the traces of CommandTrace.of(callback)
+    public synchronized void dispatched(List<CommandTrace> traces, String route) {
+        long now = System.currentTimeMillis();
+        for (CommandTrace trace : traces) {
+            // Already out another way, refused before it left, or pushed out of the ring
+            if (trace.getDispatchedAt() == 0 && trace.getAckedAt() == 0
+                    && ring[(int) (trace.getId() % ring.length)] == trace) {
+                trace.markDispatched(route, now);
+                awaiting++;
+            }
+        }
+    }
+
+    /**
+     * The transport answered.
+     *
+     * @param error Why the command was refused, or null when it was accepted
+     */
+    public synchronized void acknowledged(CommandTrace trace, String error) {
+        boolean wasAwaiting = trace.isAwaitingDevice();
+        trace.markAcked(error, System.currentTimeMillis());
+        if (wasAwaiting && !trace.isAwaitingDevice()) {
+            awaiting--;
+        }
+    }
+
+    // A status from the hub itself; commands whose state it shows count as applied
+    public synchronized void onStatus(DeviceStatus status) {
+        if (awaiting == 0 || status.isRemote()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (CommandTrace trace : ring) {
+            if (trace == null || !trace.isAwaitingDevice()) {
+                continue;
+            }
+            if (now - trace.getDispatchedAt() > APPLY_WINDOW_MS) {
+                trace.markExpired();
+                awaiting--;
+            } else if (trace.markAppliedIf(status, now)) {
+                awaiting--;
+            }
+        }
+    }
+
+    // Traces oldest first
+    public synchronized List<CommandTrace> getTraces() {
+        List<CommandTrace> traces = new ArrayList<>(ring.length);
+        for (long id = Math.max(1, nextId - ring.length); id < nextId; id++) {
+            CommandTrace trace = ring[(int) (id % ring.length)];
+            if (trace != null && trace.getId() == id) {
+                traces.add(trace);
+            }
+        }
+        return traces;
+    }
+
+    // Write every trace in the ring as CSV, replacing the file
+    public void export(File file) throws IOException {
+        List<CommandTrace> traces = getTraces();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(CSV_HEADER);
+            out.write('\n');
+            for (CommandTrace trace : traces) {
+                out.write(trace.toCsv());
+                out.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.net.TransportInfo;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the current path to the hub up to date from network callbacks, so routing a
+ * command is a memory read instead of a round of WifiManager/ConnectivityManager queries.
+ */
+public class ConnectivityMonitor {
+    private static final String TAG = "ConnectivityMonitor";
+
+    public enum Path {
+        LOCAL_HUB,  // Joined to the hub's access point
+        INTERNET,   // Validated internet, hub reachable through ThingSpeak only
+        NONE
+    }
+
+    public interface Listener {
+        /**
+         * Called when the path changes, and with LOCAL_HUB as both values when the hub's
+         * Network object is replaced.
+         *
+         * @param previous               Path before the change
+         * @param current                Path after the change
+         * @param previousDurationMillis How long the previous path was in effect
+         */
+        void onPathChanged(Path previous, Path current, long previousDurationMillis);
+    }
+
+    private volatile String hubSsid;
+    private final Executor listenerExecutor;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private ConnectivityManager connectivityManager;
+    private WifiManager wifiManager;
+    private volatile Network hubNetwork;
+    private volatile boolean internetAvailable;
+    private volatile Path path = Path.NONE;
+    private Network notifiedHubNetwork;
+    private volatile long pathSince = System.currentTimeMillis();
+    private volatile int transitionCount;
+    private boolean started;
+
+    // Without the location flag, Android 12+ redacts the SSID in the network's WifiInfo
+    private final ConnectivityManager.NetworkCallback wifiCallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+            ? new WifiCallback(ConnectivityManager.NetworkCallback.FLAG_INCLUDE_LOCATION_INFO)
+            : new WifiCallback();
+
+    // Any Wi-Fi network; decides from each network's own capabilities whether it is the hub
+    private class WifiCallback extends ConnectivityManager.NetworkCallback {
+        WifiCallback() {
+        }
+
+        @RequiresApi(Build.VERSION_CODES.S)
+        WifiCallback(int flags) {
+            super(flags);
+        }
+
+        @Override
+        public void onAvailable(Network network) {
+            // From Android 8 onCapabilitiesChanged always follows; before that it may not
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O && isHubSsid(hubSsid, currentSsid())) {
+                hubNetwork = network;
+                updatePath();
+            }
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            if (isHubSsid(hubSsid, ssidOf(capabilities))) {
+                hubNetwork = network;
+                updatePath();
+            } else if (network.equals(hubNetwork)) {
+                // Same network object, different access point
+                hubNetwork = null;
+                updatePath();
+            }
+        }
+
+        @Override
+        public void onLost(Network network) {
+            if (network.equals(hubNetwork)) {
+                hubNetwork = null;
+                updatePath();
+            }
+        }
+    }
+
+    private final ConnectivityManager.NetworkCallback defaultCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            internetAvailable = hasValidatedInternet(capabilities);
+            updatePath();
+        }
+
+        @Override
+        public void onLost(Network network) {
+            internetAvailable = false;
+            updatePath();
+        }
+    };
+
+    public ConnectivityMonitor(String hubSsid, Executor listenerExecutor) {
+        this.hubSsid = hubSsid;
+        this.listenerExecutor = listenerExecutor;
+    }
+
+    // Take the initial state and register for network callbacks; later calls do nothing
+    public synchronized void start(Context context) {
+        if (started) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        connectivityManager = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        wifiManager = (WifiManager) appContext.getSystemService(Context.WIFI_SERVICE);
+        if (connectivityManager == null) {
+            return;
+        }
+        started = true;
+
+        // Seed the state synchronously so the first command after start is routed correctly;
+        // the callbacks registered below replay every current network right after
+        Network active = connectivityManager.getActiveNetwork();
+        internetAvailable = active != null
+                && hasValidatedInternet(connectivityManager.getNetworkCapabilities(active));
+        if (isHubSsid(hubSsid, currentSsid())) {
+            for (Network network : connectivityManager.getAllNetworks()) {
+                NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+                if (capabilities != null && capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+                    hubNetwork = network;
+                    break;
+                }
+            }
+        }
+        updatePath();
+
+        // Every Wi-Fi network, the hub AP included: removing INTERNET only drops the default
+        // requirement for it, so networks with internet match too. The SSID check picks the hub.
+        NetworkRequest wifiRequest = new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
+                .removeCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        try {
+            connectivityManager.registerNetworkCallback(wifiRequest, wifiCallback);
+            connectivityManager.registerDefaultNetworkCallback(defaultCallback);
+        } catch (RuntimeException e) {
+            // Registration can fail if the app holds too many callbacks; fall back to the seeded state
+            Log.e(TAG, "Failed to register network callbacks: " + e.getMessage());
+        }
+    }
+
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        try {
+            connectivityManager.unregisterNetworkCallback(wifiCallback);
+            connectivityManager.unregisterNetworkCallback(defaultCallback);
+        } catch (IllegalArgumentException e) {
+            // Not registered
+        }
+    }
+
+    // Wi-Fi name the hubs broadcast; checked again at the next network change
+    public void setHubSsid(String hubSsid) {
+        this.hubSsid = hubSsid;
+    }
+
+    public String getHubSsid() {
+        return hubSsid;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean isOnHubNetwork() {
+        return hubNetwork != null;
+    }
+
+    public boolean hasInternet() {
+        return internetAvailable;
+    }
+
+    // The hub's Wi-Fi network, or null when not joined to it
+    public Network getHubNetwork() {
+        return hubNetwork;
+    }
+
+    public int getTransitionCount() {
+        return transitionCount;
+    }
+
+    // How long the current path has been in effect
+    public long getMillisInCurrentPath() {
+        return System.currentTimeMillis() - pathSince;
+    }
+
+    private void updatePath() {
+        final Path next;
+        final Path previous;
+        final long previousDuration;
+        synchronized (this) {
+            Network currentHub = hubNetwork;
+            next = choosePath(currentHub != null, internetAvailable);
+            // Rejoining the AP can hand us a new Network object without leaving LOCAL_HUB
+            boolean hubChanged = next == Path.LOCAL_HUB && !currentHub.equals(notifiedHubNetwork);
+            notifiedHubNetwork = currentHub;
+            if (next == path && !hubChanged) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            previous = path;
+            previousDuration = now - pathSince;
+            path = next;
+            pathSince = now;
+            transitionCount++;
+        }
+        Log.d(TAG, "Path " + previous + " -> " + next + " after " + previousDuration + " ms");
+        for (Listener listener : listeners) {
+            listenerExecutor.execute(() -> listener.onPathChanged(previous, next, previousDuration));
+        }
+    }
+
+    // The hub's own network wins: commands to it need no internet
+    static Path choosePath(boolean onHubNetwork, boolean internetAvailable) {
+        if (onHubNetwork) {
+            return Path.LOCAL_HUB;
+        }
+        return internetAvailable ? Path.INTERNET : Path.NONE;
+    }
+
+    // SSID as WifiInfo reports it: quoted, or "<unknown ssid>" when it is redacted
+    static boolean isHubSsid(String hubSsid, String ssid) {
+        // Remove quotes if present
+        return ssid != null && hubSsid != null && hubSsid.equals(ssid.replace("\"", ""));
+    }
+
+    // SSID of the network these capabilities belong to
+    private String ssidOf(NetworkCapabilities capabilities) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            TransportInfo info = capabilities.getTransportInfo();
+            return info instanceof WifiInfo ? ((WifiInfo) info).getSSID() : null;
+        }
+        // Before Android 12 WifiInfo is not in the capabilities; the current connection is all there is
+        return currentSsid();
+    }
+
+    @SuppressWarnings("deprecation")
+    private String currentSsid() {
+        if (wifiManager == null) {
+            return null;
+        }
+        WifiInfo wifiInfo = wifiManager.getConnectionInfo();
+        return wifiInfo != null ? wifiInfo.getSSID() : null;
+    }
+
+    private static boolean hasValidatedInternet(NetworkCapabilities capabilities) {
+        return capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+}
@@ -7,6 +7,7 @@ public class Device {
     private int signalStrength; // For WiFi signal strength (in dBm)
     private boolean isSecured; // Whether the network is password protected
     private boolean isNexadomusDevice; // Flag for our Nexadomus WiFi network
+    private Hub hub; // Set for hubs found on the current network
 
     // Constructor for WiFi networks
     public Device(String ssid, int signalStrength, boolean isSecured) {
@@ -18,6 +19,17 @@ public class Device {
         this.iconResId = isNexadomusDevice ? R.drawable.ic_wifi_nexadomus : R.drawable.ic_wifi;
     }
 
+    // Constructor for a hub that answered discovery
+    public Device(Hub hub) {
+        this.name = hub.getName();
+        this.type = "Nexadomus hub • " + hub.getHost();
+        this.iconResId = R.drawable.ic_wifi_nexadomus;
+        this.signalStrength = 0;
+        this.isSecured = false;
+        this.isNexadomusDevice = true;
+        this.hub = hub;
+    }
+
     // Original constructor (kept for backward compatibility)
     public Device(String name, String type, int iconResId) {
         this.name = name;
@@ -51,6 +63,11 @@ public class Device {
     public boolean isNexadomusDevice() {
         return isNexadomusDevice;
     }
+
+    // The discovered hub, or null for Wi-Fi networks
+    public Hub getHub() {
+        return hub;
+    }
     
     // Convert signal strength (dBm) to a user-friendly display string
     public String getSignalStrengthLabel() {
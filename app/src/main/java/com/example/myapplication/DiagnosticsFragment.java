@@ -0,0 +1,134 @@
+package com.example.myapplication;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Live view of the request metrics plus the transport counters behind them. Not in the
+ * bottom bar; reached by long-pressing the Add Device tab. Command traces can be exported
+ * as CSV to the app's files directory.
+ */
+public class DiagnosticsFragment extends Fragment {
+    private static final long REFRESH_INTERVAL_MS = 1000;
+    private static final String TRACE_FILE = "command_traces.csv";
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private NexadomusApiClient apiClient;
+    private TextView metricsText;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            render();
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_diagnostics, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        apiClient = NexadomusApiClient.getInstance();
+        metricsText = view.findViewById(R.id.metricsText);
+
+        Button btnReset = view.findViewById(R.id.btnReset);
+        btnReset.setOnClickListener(v -> {
+            apiClient.getRequestMetrics().reset();
+            render();
+        });
+
+        Button btnExport = view.findViewById(R.id.btnExport);
+        btnExport.setOnClickListener(v -> exportTraces());
+    }
+
+    private void exportTraces() {
+        File file = new File(requireContext().getFilesDir(), TRACE_FILE);
+        CommandTracer tracer = apiClient.getCommandTracer();
+        new Thread(() -> {
+            String message;
+            try {
+                tracer.export(file);
+                message = "Traces written to " + file.getAbsolutePath();
+            } catch (IOException e) {
+                message = "Export failed: " + e.getMessage();
+            }
+            String result = message;
+            handler.post(() -> {
+                if (isAdded()) {
+                    Toast.makeText(getContext(), result, Toast.LENGTH_LONG).show();
+                }
+            });
+        }).start();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+
+    private void render() {
+        if (metricsText == null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(apiClient.getRequestMetrics().toString());
+
+        HubConnectionPool pool = apiClient.getLocalConnectionPool();
+        sb.append("\n\nHub connections\n  reused ").append(pool.getHitCount())
+                .append(", opened ").append(pool.getMissCount())
+                .append(", stale retries ").append(pool.getStaleRetryCount())
+                .append(", idle ").append(pool.getIdleCount());
+
+        StatusCache cache = apiClient.getStatusCache();
+        sb.append("\n\nStatus cache\n  hits ").append(cache.getHitCount())
+                .append(", misses ").append(cache.getMissCount())
+                .append(", coalesced ").append(cache.getCoalescedCount());
+
+        StatusDeltaSync sync = apiClient.getStatusSync();
+        StatusValidator validator = apiClient.getStatusValidator();
+        sb.append("\n\nStatus reads\n  deltas ").append(sync.getDeltaCount())
+                .append(", full ").append(sync.getFullSyncCount())
+                .append(", gaps ").append(sync.getGapCount())
+                .append("\n  not modified ").append(validator.getNotModifiedCount())
+                .append(", ").append(RequestMetrics.formatBytes(validator.getBytesSaved())).append(" saved");
+
+        sb.append("\n\nCommand traces\n  ").append(apiClient.getCommandTracer().getTraces().size())
+                .append(" recorded");
+
+        RequestScheduler scheduler = RequestScheduler.getInstance();
+        sb.append("\n\nScheduler");
+        for (RequestScheduler.Lane lane : RequestScheduler.Lane.values()) {
+            sb.append("\n  ").append(lane.name().toLowerCase(Locale.US))
+                    .append(": submitted ").append(scheduler.getSubmittedCount(lane))
+                    .append(", rejected ").append(scheduler.getRejectedCount(lane))
+                    .append(", wait ").append(scheduler.getQueueWait(lane));
+        }
+        metricsText.setText(sb.toString());
+    }
+}
@@ -14,8 +14,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import org.json.JSONObject;
-
 public class GarageFragment extends Fragment {
     private static final String PREFS_NAME = "NexadomusGarage";
     private static final String PREF_GARAGE_STATE = "garageState";
@@ -26,7 +24,18 @@ public class GarageFragment extends Fragment {
     private Button btnOpenGarage;
     private Button btnCloseGarage;
     private NexadomusApiClient apiClient;
+    // Requests made for the current view, cancelled when the view is destroyed
+    private RequestScope requests;
     private SharedPreferences sharedPreferences;
+    // Version of the snapshot the views show, 0 once they may differ from it. A 304 hands
+    // back the same snapshot, which needs no rebind.
+    private long shownVersion;
+    
+    // Pushed changes from the hub while this screen is visible
+    private final NexadomusApiClient.StatusListener statusListener = status -> {
+        applyStatus(status);
+        updateUIState();
+    };
 
     @Nullable
     @Override
@@ -41,10 +50,13 @@ public class GarageFragment extends Fragment {
         // Initialize the API client
         apiClient = NexadomusApiClient.getInstance();
         apiClient.setAppContext(requireContext());
+        requests = RequestScope.of(getViewLifecycleOwner());
         
         // Initialize shared preferences
         sharedPreferences = requireContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         isGarageOpen = sharedPreferences.getBoolean(PREF_GARAGE_STATE, false);
+        // Fresh views show the saved state, not a snapshot
+        shownVersion = 0;
 
         // Initialize UI components
         statusText = view.findViewById(R.id.statusText);
@@ -80,7 +92,7 @@ public class GarageFragment extends Fragment {
         // Show loading state
         setButtonsEnabled(false);
         
-        apiClient.controlGarage(action, new NexadomusApiClient.ApiCallback() {
+        apiClient.controlGarage(action, requests.bind(new NexadomusApiClient.ApiCallback() {
             @Override
             public void onSuccess(String response) {
                 if (response.contains("Remote command sent")) {
@@ -97,6 +109,7 @@ public class GarageFragment extends Fragment {
                     showRemoteMode(false);
                     Toast.makeText(getContext(), "Garage " + action + " command sent", Toast.LENGTH_SHORT).show();
                 }
+                shownVersion = 0;
                 updateUIState();
                 setButtonsEnabled(true);
             }
@@ -106,7 +119,7 @@ public class GarageFragment extends Fragment {
                 showError("Failed to control garage: " + error);
                 setButtonsEnabled(true);
             }
-        });
+        }));
     }
 
     @Override
@@ -114,6 +127,26 @@ public class GarageFragment extends Fragment {
         super.onResume();
         // Refresh status when fragment becomes visible
         fetchCurrentStatus();
+        apiClient.addStatusListener(statusListener);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        apiClient.removeStatusListener(statusListener);
+    }
+
+    private void applyStatus(DeviceStatus status) {
+        shownVersion = status.getVersion();
+        if (status.hasGarage()) {
+            isGarageOpen = status.isGarageOpen();
+            saveGarageState();
+        }
+    }
+    
+    // True if the views already show this snapshot; remote snapshots are never versioned
+    private boolean isShown(DeviceStatus status) {
+        return status.getVersion() != 0 && status.getVersion() == shownVersion;
     }
     
     private void fetchCurrentStatus() {
@@ -121,22 +154,16 @@ public class GarageFragment extends Fragment {
         setButtonsEnabled(false);
         
         // Get current status from ESP32
-        apiClient.getStatus(new NexadomusApiClient.ApiCallback() {
+        apiClient.getStatus(requests.bind(new NexadomusApiClient.StatusCallback() {
             @Override
-            public void onSuccess(String response) {
-                try {
-                    JSONObject json = new JSONObject(response);
-                    // Check garage status (0=closed, 90=open)
-                    if (json.has("garage")) {
-                        isGarageOpen = json.getInt("garage") == 90;
-                        saveGarageState();
-                    }
-                    showRemoteMode(false); // We're in local mode if we can get status
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    // If parsing fails, show the saved state
-                    isGarageOpen = sharedPreferences.getBoolean(PREF_GARAGE_STATE, false);
+            public void onSuccess(DeviceStatus status) {
+                if (isShown(status)) {
+                    setButtonsEnabled(true);
+                    return;
                 }
+                applyStatus(status);
+                // A remote snapshot is the last commanded state from ThingSpeak, not the hub's own
+                showRemoteMode(status.isRemote());
                 
                 updateUIState();
                 setButtonsEnabled(true);
@@ -153,10 +180,11 @@ public class GarageFragment extends Fragment {
                 
                 // Use the saved state
                 isGarageOpen = sharedPreferences.getBoolean(PREF_GARAGE_STATE, false);
+                shownVersion = 0;
                 updateUIState();
                 setButtonsEnabled(true);
             }
-        });
+        }));
     }
     
     private void saveGarageState() {
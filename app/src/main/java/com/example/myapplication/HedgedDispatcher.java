@@ -0,0 +1,320 @@
+package com.example.myapplication;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a command over a primary path and, if that has not answered within a learned
+ * delay, over a second path as well. The first acknowledgement wins.
+ *
+ * Only use this for commands that set an absolute state (e.g. "garage open"), so the
+ * device ending up with both copies is harmless. On top of that, a hedge that is still
+ * waiting to be sent when the primary answers is withdrawn, so in the common case the
+ * device only acts once.
+ *
+ * The hedge path can be much slower than the primary, so a hedge may arrive after a
+ * newer command for the same device. Callers report newer commands through
+ * supersede(), which withdraws the older hedge or tells them it may still land.
+ */
+public class HedgedDispatcher {
+    private static final String TAG = "HedgedDispatcher";
+
+    // One way of delivering a command
+    public interface Attempt {
+        void start(NexadomusApiClient.ApiCallback callback);
+
+        // The other path won; withdraw the request if it has not gone out yet
+        boolean cancel();
+    }
+
+    private final LatencyHistogram primaryLatency;
+    private final double quantile;
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final long defaultDelayMillis;
+    private final long minSamples;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgesWithdrawn = new AtomicLong();
+    private final AtomicLong primariesWithdrawn = new AtomicLong();
+    private final AtomicLong hedgesSuperseded = new AtomicLong();
+
+    // Latest race per device whose hedge may still be sent or land
+    private final Map<String, Race> races = new HashMap<>();
+
+    /**
+     * @param primaryLatency     Round trips of the primary path, used to learn the hedge delay
+     * @param quantile           Percentile of the primary latency to wait for, e.g. 0.95
+     * @param minDelayMillis     Never hedge sooner than this
+     * @param maxDelayMillis     Never wait longer than this before hedging
+     * @param defaultDelayMillis Delay used until the histogram holds enough samples
+     * @param minSamples         Samples needed before the learned delay is trusted
+     */
+    public HedgedDispatcher(LatencyHistogram primaryLatency, double quantile, long minDelayMillis,
+                            long maxDelayMillis, long defaultDelayMillis, long minSamples) {
+        this.primaryLatency = primaryLatency;
+        this.quantile = quantile;
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.defaultDelayMillis = defaultDelayMillis;
+        this.minSamples = minSamples;
+    }
+
+    // How long the primary gets before the hedge is sent
+    public long getHedgeDelayMillis() {
+        if (primaryLatency.getCount() < minSamples) {
+            return defaultDelayMillis;
+        }
+        long learned = primaryLatency.getPercentile(quantile);
+        return Math.max(minDelayMillis, Math.min(maxDelayMillis, learned));
+    }
+
+    /**
+     * Race the two attempts; the callback receives exactly one result.
+     *
+     * @param deviceKey Device the command drives; a later supersede() with the same key
+     *                  stops this command's hedge
+     * @param primary   Preferred path, started immediately
+     * @param hedge     Fallback path, started after the hedge delay or as soon as the primary fails
+     * @param callback  Receives the first success, or an error once both paths have failed
+     */
+    public void dispatch(String deviceKey, Attempt primary, Attempt hedge, NexadomusApiClient.ApiCallback callback) {
+        dispatched.incrementAndGet();
+        Race race = new Race(deviceKey, primary, hedge, callback);
+        synchronized (race) {
+            race.timer = scheduler.schedule(race::startHedge, getHedgeDelayMillis(), TimeUnit.MILLISECONDS);
+        }
+        synchronized (races) {
+            races.put(deviceKey, race);
+        }
+        primary.start(race.primaryCallback);
+    }
+
+    /**
+     * A newer command for the device is about to be sent. The hedge of the previous
+     * hedged command is no longer started, and withdrawn if it is still waiting to go out.
+     *
+     * @return True if that hedge has already gone out and may reach the device after the
+     *         newer command; the caller should then send the newer command on the hedge path too
+     */
+    public boolean supersede(String deviceKey) {
+        Race race;
+        synchronized (races) {
+            race = races.remove(deviceKey);
+        }
+        return race != null && race.supersede();
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    // Commands for which the second path was used
+    public long getHedgesFired() {
+        return hedgesFired.get();
+    }
+
+    // Commands acknowledged by the second path first
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    // Hedges taken back before they were sent because the primary answered or a newer command came
+    public long getHedgesWithdrawn() {
+        return hedgesWithdrawn.get();
+    }
+
+    // Primaries taken back before they were sent because the hedge answered first
+    public long getPrimariesWithdrawn() {
+        return primariesWithdrawn.get();
+    }
+
+    // Hedges that had already gone out when a newer command for the device was sent
+    public long getHedgesSuperseded() {
+        return hedgesSuperseded.get();
+    }
+
+    private void forget(Race race) {
+        synchronized (races) {
+            if (races.get(race.deviceKey) == race) {
+                races.remove(race.deviceKey);
+            }
+        }
+    }
+
+    private class Race {
+        final String deviceKey;
+        final Attempt primary;
+        final Attempt hedge;
+        final NexadomusApiClient.ApiCallback callback;
+        ScheduledFuture<?> timer;
+        boolean finished;
+        boolean hedgeStarted;
+        boolean primaryFailed;
+        boolean hedgeFailed;
+        boolean superseded;
+        String primaryError;
+
+        // Either attempt stands for the caller's command
+        private abstract class AttemptCallback implements NexadomusApiClient.ApiCallback, CommandTrace.Carrier {
+            @Override
+            public List<CommandTrace> getCommandTraces() {
+                return CommandTrace.of(callback);
+            }
+        }
+
+        final NexadomusApiClient.ApiCallback primaryCallback = new AttemptCallback() {
+            @Override
+            public void onSuccess(String response) {
+                boolean withdraw;
+                synchronized (Race.this) {
+                    if (finished) {
+                        return;
+                    }
+                    finished = true;
+                    withdraw = hedgeStarted;
+                    timer.cancel(false);
+                }
+                if (!withdraw) {
+                    forget(Race.this);
+                } else if (hedge.cancel()) {
+                    hedgesWithdrawn.incrementAndGet();
+                    forget(Race.this);
+                }
+                callback.onSuccess(response);
+            }
+
+            @Override
+            public void onError(String error) {
+                boolean startNow = false;
+                boolean giveUp = false;
+                synchronized (Race.this) {
+                    if (finished) {
+                        return;
+                    }
+                    primaryFailed = true;
+                    primaryError = error;
+                    if (!hedgeStarted) {
+                        timer.cancel(false);
+                        startNow = true;
+                    } else if (hedgeFailed) {
+                        finished = true;
+                        giveUp = true;
+                    }
+                }
+                if (startNow) {
+                    // No point waiting out the delay once the primary has given up
+                    startHedge();
+                } else if (giveUp) {
+                    callback.onError(error);
+                }
+            }
+        };
+
+        final NexadomusApiClient.ApiCallback hedgeCallback = new AttemptCallback() {
+            @Override
+            public void onSuccess(String response) {
+                synchronized (Race.this) {
+                    if (finished) {
+                        return;
+                    }
+                    finished = true;
+                }
+                hedgeWins.incrementAndGet();
+                if (primary.cancel()) {
+                    primariesWithdrawn.incrementAndGet();
+                }
+                callback.onSuccess(response);
+            }
+
+            @Override
+            public void onError(String error) {
+                synchronized (Race.this) {
+                    if (finished) {
+                        return;
+                    }
+                    hedgeFailed = true;
+                    if (!primaryFailed) {
+                        // Keep waiting for the primary
+                        return;
+                    }
+                    finished = true;
+                }
+                callback.onError(primaryError + "; " + error);
+            }
+        };
+
+        Race(String deviceKey, Attempt primary, Attempt hedge, NexadomusApiClient.ApiCallback callback) {
+            this.deviceKey = deviceKey;
+            this.primary = primary;
+            this.hedge = hedge;
+            this.callback = callback;
+        }
+
+        void startHedge() {
+            boolean giveUp = false;
+            synchronized (this) {
+                if (finished || hedgeStarted) {
+                    return;
+                }
+                if (superseded) {
+                    // A newer command owns the device; the hedge is not sent, a primary failure is final
+                    if (!primaryFailed) {
+                        return;
+                    }
+                    finished = true;
+                    giveUp = true;
+                } else {
+                    hedgeStarted = true;
+                }
+            }
+            if (giveUp) {
+                callback.onError(primaryError);
+                return;
+            }
+            hedgesFired.incrementAndGet();
+            Log.d(TAG, "Primary slow or failed, hedging");
+            hedge.start(hedgeCallback);
+        }
+
+        // See HedgedDispatcher.supersede
+        boolean supersede() {
+            synchronized (this) {
+                superseded = true;
+                if (!hedgeStarted) {
+                    timer.cancel(false);
+                    return false;
+                }
+            }
+            if (!hedge.cancel()) {
+                hedgesSuperseded.incrementAndGet();
+                return true;
+            }
+            hedgesWithdrawn.incrementAndGet();
+            // The withdrawn hedge never answers; finish if the primary has already failed
+            boolean giveUp = false;
+            synchronized (this) {
+                hedgeFailed = true;
+                if (primaryFailed && !finished) {
+                    finished = true;
+                    giveUp = true;
+                }
+            }
+            if (giveUp) {
+                callback.onError(primaryError);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.myapplication;
+
+/**
+ * One controller of the installation, e.g. the house, garage or garden hub.
+ * Hubs are identified by id; name and address may change.
+ */
+public final class Hub {
+    private final String id;
+    private final String name;
+    private final String host;
+    private final int port;
+
+    public Hub(String id, String name, String host, int port) {
+        if (id == null || id.isEmpty() || id.contains("|") || id.contains("\n")) {
+            throw new IllegalArgumentException("Invalid hub id: " + id);
+        }
+        this.id = id;
+        this.name = name != null ? name.replace("\n", " ") : id;
+        this.host = host;
+        this.port = port;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    // Single-line form for preferences: id|host|port|name (the name may contain separators)
+    String encode() {
+        return id + "|" + host + "|" + port + "|" + name;
+    }
+
+    static Hub decode(String encoded) {
+        String[] parts = encoded.split("\\|", 4);
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new Hub(parts[0], parts[3], parts[1], Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Hub && id.equals(((Hub) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + name + ") " + host + ":" + port;
+    }
+}
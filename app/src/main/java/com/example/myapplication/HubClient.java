@@ -0,0 +1,304 @@
+package com.example.myapplication;
+
+import android.net.Network;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Transport to one hub: its own keep-alive pool, adaptive timeouts and circuit breaker,
+ * so a slow or rebooting controller never affects requests to the others.
+ *
+ * Callers ask allowRequest() before queueing work. Every allowed call must then either
+ * go through get(), which records the outcome, or be handed back with release().
+ */
+public class HubClient {
+    private static final String TAG = "HubClient";
+    private static final int MAX_CONNECTIONS = 2; // ESP32 WebServer only serves a couple of clients at once
+    private static final long KEEP_ALIVE_MS = 10000;
+    // A healthy hub answers in tens of milliseconds, so a dead one is detected well before 5 s
+    private static final int MIN_CONNECT_TIMEOUT_MS = 300;
+    private static final int MAX_CONNECT_TIMEOUT_MS = 3000;
+    private static final int MIN_READ_TIMEOUT_MS = 500;
+    private static final int MAX_READ_TIMEOUT_MS = 5000;
+    // The hub reboots now and then; after a few failures in a row give it room to come back
+    private static final int BREAKER_FAILURES = 3;
+    private static final long BREAKER_BASE_OPEN_MS = 1000;
+    private static final long BREAKER_MAX_OPEN_MS = 30000;
+    // UDP port of the binary command protocol; discovery probes use 4210
+    public static final int COMMAND_PORT = 4211;
+
+    private volatile Hub hub;
+    private final HubConnectionPool pool;
+    private final AdaptiveTimeout timeout;
+    private final CircuitBreaker breaker;
+    private final BinaryCommandChannel binary;
+    private final StatusValidator statusValidator = new StatusValidator();
+    private final StatusDeltaSync statusSync = new StatusDeltaSync();
+    private final int commandPort;
+    private final RequestMetrics metrics;
+    private volatile boolean binaryCommands;
+
+    public HubClient(Hub hub) {
+        this(hub, COMMAND_PORT);
+    }
+
+    HubClient(Hub hub, int commandPort) {
+        this(hub, commandPort, RequestMetrics.getInstance());
+    }
+
+    HubClient(Hub hub, int commandPort, RequestMetrics metrics) {
+        this.hub = hub;
+        this.commandPort = commandPort;
+        this.metrics = metrics;
+        binary = new BinaryCommandChannel(hub.getHost(), commandPort);
+        String name = "hub:" + hub.getId();
+        pool = new HubConnectionPool(hub.getHost(), hub.getPort(), MAX_CONNECTIONS, KEEP_ALIVE_MS);
+        timeout = new AdaptiveTimeout(name, MIN_CONNECT_TIMEOUT_MS, MAX_CONNECT_TIMEOUT_MS,
+                MIN_READ_TIMEOUT_MS, MAX_READ_TIMEOUT_MS, 4, 6, 10);
+        pool.setTransferObserver(this::onExchange);
+        pool.setConnectObserver(this::onConnect);
+        breaker = new CircuitBreaker(name, BREAKER_FAILURES, BREAKER_BASE_OPEN_MS, BREAKER_MAX_OPEN_MS);
+    }
+
+    public Hub getHub() {
+        return hub;
+    }
+
+    public String getId() {
+        return hub.getId();
+    }
+
+    // Rename or move the hub; a new address drops sockets to the old one and its failure history
+    void setHub(Hub updated) {
+        Hub previous = hub;
+        hub = updated;
+        if (!previous.getHost().equals(updated.getHost()) || previous.getPort() != updated.getPort()) {
+            pool.setEndpoint(updated.getHost(), updated.getPort());
+            binary.setEndpoint(updated.getHost(), commandPort);
+            breaker.reset();
+            statusValidator.reset();
+            statusSync.reset();
+        }
+    }
+
+    // Send future requests through this network, e.g. the hubs' Wi-Fi; null for the default route
+    public void setNetwork(Network network, String label) {
+        pool.setSocketFactory(network != null ? network.getSocketFactory() : null, label);
+        binary.setNetwork(network);
+    }
+
+    // Close pooled sockets and the datagram channel once the hub is forgotten
+    public void close() {
+        pool.close();
+        binary.close();
+    }
+
+    // Send device commands as binary datagrams when the hub accepts them, HTTP otherwise
+    public void setBinaryCommands(boolean enabled) {
+        binaryCommands = enabled;
+    }
+
+    public boolean isBinaryCommands() {
+        return binaryCommands;
+    }
+
+    // False while the breaker is open; the call must then fail without being queued
+    public boolean allowRequest() {
+        return breaker.allowRequest();
+    }
+
+    // An allowed call that never reached get(), e.g. it was cancelled or refused by the scheduler
+    public void release() {
+        breaker.release();
+    }
+
+    /**
+     * GET a path and decode the response while it streams in.
+     *
+     * @param handle Cancels the request when the caller goes away, or null
+     */
+    public <T> T get(String path, HubConnectionPool.BodyReader<T> reader, RequestHandle handle) throws IOException {
+        return record(path, (connectTimeout, readTimeout) ->
+                pool.get(path, connectTimeout, readTimeout, reader, handle), handle);
+    }
+
+    // GET a path with extra request headers, decoding the response with its headers
+    public <T> T get(String path, Map<String, String> headers, HubConnectionPool.ResponseReader<T> reader,
+                     RequestHandle handle) throws IOException {
+        return record(path, (connectTimeout, readTimeout) ->
+                pool.get(path, connectTimeout, readTimeout, headers, reader, handle), handle);
+    }
+
+    /**
+     * Read the hub's status. Versioned firmware is asked only for what changed since the
+     * last read, with a full read when the delta does not line up; other firmware gets
+     * ETag-conditional reads of the whole document.
+     *
+     * @throws IOException Also when the hub answers with an HTTP error
+     */
+    public DeviceStatus getStatus(RequestHandle handle) throws IOException {
+        if (!statusSync.isSupported()) {
+            return readStatus("/status", statusValidator.getRequestHeaders(), statusValidator::read, handle);
+        }
+        DeviceStatus status = readStatus(statusSync.getPath(), null, statusSync::read, handle);
+        if (status == null) {
+            // The delta would skip changes; start over from the whole document
+            status = readStatus("/status", null, statusSync::read, handle);
+            if (status == null) {
+                throw new IOException("Hub sent a delta for a full status read");
+            }
+        }
+        return status;
+    }
+
+    // GET a path and buffer the whole response
+    public HubConnectionPool.Response get(String path, RequestHandle handle) throws IOException {
+        return record(path, (connectTimeout, readTimeout) ->
+                pool.get(path, connectTimeout, readTimeout, handle), handle);
+    }
+
+    /**
+     * Send a device command such as "/lights?brightness=128". With binary commands on,
+     * commands that have a binary form go out as a datagram; if the hub does not
+     * acknowledge it, the command is sent again over HTTP.
+     */
+    public HubConnectionPool.Response command(String path, RequestHandle handle) throws IOException {
+        CommandFrame frame = binaryCommands && binary.isAvailable() ? CommandFrame.fromPath(path) : null;
+        if (frame != null) {
+            try {
+                long startedAt = System.currentTimeMillis();
+                int status = binary.send(frame, handle);
+                breaker.recordSuccess();
+                RequestMetrics.Endpoint endpoint = RequestMetrics.Endpoint.ofHubPath(path);
+                metrics.recordResponse(endpoint, status == CommandFrame.STATUS_OK
+                        ? HttpURLConnection.HTTP_OK : HttpURLConnection.HTTP_BAD_REQUEST,
+                        System.currentTimeMillis() - startedAt);
+                metrics.recordBytes(endpoint, CommandFrame.SIZE, CommandFrame.SIZE);
+                return status == CommandFrame.STATUS_OK
+                        ? new HubConnectionPool.Response(HttpURLConnection.HTTP_OK, bytes("OK"))
+                        : new HubConnectionPool.Response(HttpURLConnection.HTTP_BAD_REQUEST, bytes("Error " + status));
+            } catch (IOException e) {
+                if (handle != null && handle.isCancelled()) {
+                    breaker.release();
+                    throw e;
+                }
+                // Unanswered datagrams say little about the hub's HTTP server; let that decide
+            }
+        }
+        return get(path, handle);
+    }
+
+    public String unavailableMessage() {
+        long seconds = (breaker.millisUntilRetry() + 999) / 1000;
+        return hub.getName() + " not responding. Retrying in " + Math.max(1, seconds) + " s.";
+    }
+
+    // Connection reuse statistics
+    public HubConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    // Round trips and the timeouts they produce
+    public AdaptiveTimeout getTimeout() {
+        return timeout;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    // ETag of the last /status payload, and the reads and bytes it saved
+    public StatusValidator getStatusValidator() {
+        return statusValidator;
+    }
+
+    // Deltas, full resyncs and version gaps of status reads
+    public StatusDeltaSync getStatusSync() {
+        return statusSync;
+    }
+
+    // Datagram counts and round trips of binary commands
+    public BinaryCommandChannel getBinaryChannel() {
+        return binary;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // A status read that returns null for a gap, or throws for an HTTP error
+    private DeviceStatus readStatus(String path, Map<String, String> headers,
+                                    HubConnectionPool.ResponseReader<DeviceStatus> reader,
+                                    RequestHandle handle) throws IOException {
+        final int[] code = new int[1];
+        DeviceStatus status = get(path, headers, (responseCode, responseHeaders, body) -> {
+            code[0] = responseCode;
+            return reader.read(responseCode, responseHeaders, body);
+        }, handle);
+        if (status == null && code[0] != HttpURLConnection.HTTP_OK) {
+            throw new IOException("HTTP Error: " + code[0]);
+        }
+        return status;
+    }
+
+    // Answered requests; failures are counted in record()
+    private void onExchange(String path, int code, long latencyMillis, long bytesSent, long bytesReceived) {
+        // Measured by the pool from sending the request, so waiting for a free connection is left out
+        timeout.recordRoundTrip(latencyMillis);
+        RequestMetrics.Endpoint endpoint = RequestMetrics.Endpoint.ofHubPath(path);
+        metrics.recordResponse(endpoint, code, latencyMillis);
+        metrics.recordBytes(endpoint, bytesSent, bytesReceived);
+    }
+
+    private void onConnect(long connectMillis, boolean connected) {
+        if (connected) {
+            timeout.recordConnect(connectMillis);
+        } else {
+            timeout.recordConnectTimeout(connectMillis);
+        }
+    }
+
+    private interface Exchange<T> {
+        T run(int connectTimeout, int readTimeout) throws IOException;
+    }
+
+    // Run one request with the current timeouts and feed its outcome to the timeouts, breaker and metrics
+    private <T> T record(String path, Exchange<T> exchange, RequestHandle handle) throws IOException {
+        try {
+            T result = exchange.run(timeout.getConnectTimeoutMillis(), timeout.getReadTimeoutMillis());
+            breaker.recordSuccess();
+            return result;
+        } catch (SocketTimeoutException e) {
+            // A connect timeout has already reached the connect samples through onConnect. A read
+            // timeout is measured by the pool from sending the request, as onExchange's round trips are.
+            if (e instanceof HubConnectionPool.ReadTimeoutException) {
+                timeout.recordTimeout(((HubConnectionPool.ReadTimeoutException) e).getElapsedMillis());
+            }
+            breaker.recordFailure();
+            metrics.recordError(RequestMetrics.Endpoint.ofHubPath(path), RequestMetrics.Cause.TIMEOUT);
+            Log.e(TAG, hub.getId() + " timed out: " + e.getMessage());
+            throw e;
+        } catch (StatusDecoder.MalformedStatusException e) {
+            // The hub answered; a body we cannot read says nothing about whether it is up
+            breaker.recordSuccess();
+            metrics.recordError(RequestMetrics.Endpoint.ofHubPath(path), RequestMetrics.Cause.MALFORMED);
+            Log.e(TAG, hub.getId() + " sent a malformed status: " + e.getMessage());
+            throw e;
+        } catch (IOException e) {
+            // A socket closed by cancelling says nothing about the hub
+            if (handle != null && handle.isCancelled()) {
+                breaker.release();
+                metrics.recordError(RequestMetrics.Endpoint.ofHubPath(path), RequestMetrics.Cause.CANCELLED);
+            } else {
+                breaker.recordFailure();
+                metrics.recordError(RequestMetrics.Endpoint.ofHubPath(path), RequestMetrics.Cause.NETWORK);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.myapplication;
+
+import android.content.SharedPreferences;
+import android.net.Network;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Finds hubs on the current network with a UDP broadcast probe.
+ *
+ * Every hub listens on DISCOVERY_PORT and answers the probe with
+ * "NEXADOMUS|id|httpPort|name" from its own address. Answers are cached with a TTL
+ * and persisted, so a screen gets the known hubs at once and the network is only
+ * probed again once the cache is due for a refresh.
+ */
+public class HubDiscovery {
+    private static final String TAG = "HubDiscovery";
+    public static final String PREFS_NAME = "NexadomusDiscovery";
+    private static final String PREF_HUBS = "hubs";
+    public static final int DISCOVERY_PORT = 4210;
+    static final String PROBE = "NEXADOMUS?";
+    static final String REPLY_PREFIX = "NEXADOMUS|";
+    private static final int MAX_REPLY_BYTES = 512;
+
+    public interface Listener {
+        /**
+         * @param hubs      Hubs seen within the TTL, in the order they first answered
+         * @param fromCache True for the immediate answer, false once a probe has finished
+         */
+        void onHubsFound(List<Hub> hubs, boolean fromCache);
+
+        // The probe could not be sent, e.g. there is no network; the cached answer still stands
+        void onDiscoveryFailed(String error);
+    }
+
+    // A hub and when it last answered
+    private static class Sighting {
+        final Hub hub;
+        final long seenAt;
+
+        Sighting(Hub hub, long seenAt) {
+            this.hub = hub;
+            this.seenAt = seenAt;
+        }
+    }
+
+    private final InetAddress broadcastAddress;
+    private final int port;
+    private final int listenMillis;
+    private final long refreshAfterMillis;
+    private final long ttlMillis;
+    private final Executor delivery;
+
+    private final Map<String, Sighting> cache = new LinkedHashMap<>();
+    private final List<Listener> waiting = new ArrayList<>();
+    private SharedPreferences preferences;
+    private volatile Network network;
+    private boolean probing;
+    private long lastProbeAt;
+
+    private long probes;
+    private long cacheAnswers;
+    private long repliesReceived;
+
+    /**
+     * @param broadcastAddress   Where probes are sent, normally 255.255.255.255
+     * @param port               Port the hubs listen on
+     * @param listenMillis       How long a probe collects answers
+     * @param refreshAfterMillis Cache age after which a discovery probes again
+     * @param ttlMillis          Hubs that have not answered for this long are forgotten
+     * @param delivery           Runs listener callbacks, e.g. a post to the main thread
+     */
+    public HubDiscovery(InetAddress broadcastAddress, int port, int listenMillis, long refreshAfterMillis,
+                        long ttlMillis, Executor delivery) {
+        this.broadcastAddress = broadcastAddress;
+        this.port = port;
+        this.listenMillis = listenMillis;
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.ttlMillis = ttlMillis;
+        this.delivery = delivery;
+    }
+
+    // Load hubs seen in earlier sessions; later sightings are saved here
+    public synchronized void setPreferences(SharedPreferences preferences) {
+        if (this.preferences != null) {
+            return;
+        }
+        this.preferences = preferences;
+        String saved = preferences.getString(PREF_HUBS, null);
+        if (saved == null) {
+            return;
+        }
+        for (String line : saved.split("\n")) {
+            int separator = line.indexOf('|');
+            if (separator < 0) {
+                continue;
+            }
+            Hub hub = Hub.decode(line.substring(separator + 1));
+            try {
+                if (hub != null) {
+                    cache.put(hub.getId(), new Sighting(hub, Long.parseLong(line.substring(0, separator))));
+                }
+            } catch (NumberFormatException ignored) {
+                // Skip the damaged line
+            }
+        }
+    }
+
+    // Send probes through this network, e.g. the hubs' Wi-Fi when mobile data is the default route
+    public void setNetwork(Network network) {
+        this.network = network;
+    }
+
+    /**
+     * Report the cached hubs right away and, if the cache is due for a refresh, probe the
+     * network in the background and report again. Concurrent calls share one probe.
+     *
+     * @param forceRefresh Probe even if the cache is recent
+     */
+    public void discover(boolean forceRefresh, Listener listener) {
+        List<Hub> cached;
+        boolean answer;
+        synchronized (this) {
+            cached = liveHubs(System.currentTimeMillis());
+            boolean probe = forceRefresh || lastProbeAt == 0
+                    || System.currentTimeMillis() - lastProbeAt >= refreshAfterMillis;
+            if (probe) {
+                waiting.add(listener);
+                if (!probing) {
+                    probing = true;
+                    Thread thread = new Thread(this::probe, TAG);
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            }
+            // With nothing cached, the first answer is the probe's
+            answer = !cached.isEmpty() || !probe;
+            if (answer) {
+                cacheAnswers++;
+            }
+        }
+        if (answer) {
+            delivery.execute(() -> listener.onHubsFound(cached, true));
+        }
+    }
+
+    // Hubs seen within the TTL, without probing
+    public synchronized List<Hub> getCachedHubs() {
+        return liveHubs(System.currentTimeMillis());
+    }
+
+    public synchronized long getProbeCount() {
+        return probes;
+    }
+
+    // Discoveries answered from the cache, before or instead of a probe
+    public synchronized long getCacheAnswerCount() {
+        return cacheAnswers;
+    }
+
+    public synchronized long getReplyCount() {
+        return repliesReceived;
+    }
+
+    private void probe() {
+        List<Sighting> found = new ArrayList<>();
+        String error = null;
+        try {
+            found = sendProbe();
+        } catch (IOException e) {
+            Log.w(TAG, "Discovery probe failed: " + e.getMessage());
+            error = e.getMessage() != null ? e.getMessage() : "Discovery failed";
+        }
+
+        List<Listener> listeners;
+        List<Hub> hubs;
+        synchronized (this) {
+            probes++;
+            repliesReceived += found.size();
+            long now = System.currentTimeMillis();
+            if (error == null) {
+                lastProbeAt = now;
+                for (Sighting sighting : found) {
+                    // Re-inserting keeps the first-seen order stable
+                    cache.put(sighting.hub.getId(), sighting);
+                }
+                save();
+            }
+            hubs = liveHubs(now);
+            listeners = new ArrayList<>(waiting);
+            waiting.clear();
+            probing = false;
+        }
+
+        final String failure = error;
+        for (Listener listener : listeners) {
+            if (failure != null) {
+                delivery.execute(() -> listener.onDiscoveryFailed(failure));
+            } else {
+                delivery.execute(() -> listener.onHubsFound(hubs, false));
+            }
+        }
+    }
+
+    // Broadcast the probe and collect answers for the listen window. The probe is sent
+    // twice because a single broadcast datagram is easily lost on a busy network.
+    private List<Sighting> sendProbe() throws IOException {
+        Map<String, Sighting> found = new LinkedHashMap<>();
+        byte[] probe = PROBE.getBytes(StandardCharsets.US_ASCII);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            Network bound = network;
+            if (bound != null) {
+                bound.bindSocket(socket);
+            }
+            socket.setBroadcast(true);
+            DatagramPacket request = new DatagramPacket(probe, probe.length, broadcastAddress, port);
+            long startedAt = System.currentTimeMillis();
+            long deadline = startedAt + listenMillis;
+            long resendAt = startedAt + listenMillis / 2;
+            socket.send(request);
+
+            byte[] buffer = new byte[MAX_REPLY_BYTES];
+            long now;
+            while ((now = System.currentTimeMillis()) < deadline) {
+                if (resendAt > 0 && now >= resendAt) {
+                    socket.send(request);
+                    resendAt = 0;
+                }
+                long wakeAt = resendAt > 0 ? resendAt : deadline;
+                socket.setSoTimeout((int) Math.max(1, wakeAt - now));
+                DatagramPacket reply = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(reply);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                Hub hub = parseReply(new String(reply.getData(), 0, reply.getLength(), StandardCharsets.UTF_8),
+                        reply.getAddress().getHostAddress());
+                if (hub != null) {
+                    found.put(hub.getId(), new Sighting(hub, System.currentTimeMillis()));
+                }
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    // NEXADOMUS|id|httpPort|name, sent from the hub's own address
+    static Hub parseReply(String reply, String host) {
+        if (!reply.startsWith(REPLY_PREFIX)) {
+            return null;
+        }
+        String[] parts = reply.substring(REPLY_PREFIX.length()).trim().split("\\|", 3);
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return new Hub(parts[0], parts[2], host, Integer.parseInt(parts[1]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Must hold the lock. Drops expired hubs and returns the rest.
+    private List<Hub> liveHubs(long now) {
+        List<Hub> hubs = new ArrayList<>();
+        for (Iterator<Sighting> it = cache.values().iterator(); it.hasNext(); ) {
+            Sighting sighting = it.next();
+            if (now - sighting.seenAt >= ttlMillis) {
+                it.remove();
+            } else {
+                hubs.add(sighting.hub);
+            }
+        }
+        return hubs;
+    }
+
+    // Must hold the lock
+    private void save() {
+        if (preferences == null) {
+            return;
+        }
+        StringBuilder hubs = new StringBuilder();
+        for (Sighting sighting : cache.values()) {
+            if (hubs.length() > 0) {
+                hubs.append('\n');
+            }
+            hubs.append(sighting.seenAt).append('|').append(sighting.hub.encode());
+        }
+        preferences.edit().putString(PREF_HUBS, hubs.toString()).apply();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.myapplication;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the same request against several hubs at once and reports all outcomes together.
+ *
+ * Every hub gets its own task on the scheduler, so the whole call takes about as long
+ * as the slowest hub instead of the sum of all of them. A hub whose breaker is open
+ * fails immediately without holding up the others.
+ */
+public class HubFanOut {
+    private static final String CANCELLED_MESSAGE = "Request cancelled";
+    private static final long DECAY_THRESHOLD = 1000;
+
+    // The request made against one hub; the handle must be passed on to the hub client
+    public interface Call<T> {
+        T call(HubClient hub, RequestHandle handle) throws IOException;
+    }
+
+    /**
+     * Told once every hub has answered or failed. Both maps are keyed by hub id
+     * in registry order; each hub appears in exactly one of them.
+     */
+    public interface Callback<T> {
+        void onComplete(Map<String, T> results, Map<String, String> errors);
+    }
+
+    private final RequestScheduler scheduler;
+    private final Executor delivery;
+    private final LatencyHistogram wallTimes = new LatencyHistogram(DECAY_THRESHOLD);
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong hubCalls = new AtomicLong();
+
+    /**
+     * @param scheduler Runs the per-hub tasks
+     * @param delivery  Runs the callback, e.g. a post to the main thread
+     */
+    public HubFanOut(RequestScheduler scheduler, Executor delivery) {
+        this.scheduler = scheduler;
+        this.delivery = delivery;
+    }
+
+    /**
+     * Start the call on every hub.
+     *
+     * @param callback Receives the results; if it carries a RequestHandle, cancelling
+     *                 the handle aborts the requests still in flight
+     */
+    public <T> void run(List<HubClient> hubs, RequestScheduler.Lane lane, Call<T> call, Callback<T> callback) {
+        Run<T> run = new Run<>(hubs, callback, RequestHandle.of(callback));
+        runs.incrementAndGet();
+        if (hubs.isEmpty()) {
+            run.deliver();
+            return;
+        }
+        for (int i = 0; i < hubs.size(); i++) {
+            HubClient hub = hubs.get(i);
+            if (!hub.allowRequest()) {
+                run.fail(i, hub.unavailableMessage());
+                continue;
+            }
+            final int index = i;
+            boolean queued = scheduler.submit(lane, () -> run.call(index, hub, call));
+            if (!queued) {
+                hub.release();
+                run.fail(i, "Too many pending requests");
+            }
+        }
+    }
+
+    // Wall time of whole fan-outs, from the first submit to the last answer
+    public LatencyHistogram getWallTimes() {
+        return wallTimes;
+    }
+
+    public long getRunCount() {
+        return runs.get();
+    }
+
+    // Individual hub requests attempted across all runs
+    public long getHubCallCount() {
+        return hubCalls.get();
+    }
+
+    private class Run<T> {
+        private final List<HubClient> hubs;
+        private final Callback<T> callback;
+        private final RequestHandle handle;
+        private final Object[] results;
+        private final String[] errors;
+        private final AtomicInteger remaining;
+        private final long startedAt = System.currentTimeMillis();
+
+        Run(List<HubClient> hubs, Callback<T> callback, RequestHandle handle) {
+            this.hubs = hubs;
+            this.callback = callback;
+            this.handle = handle;
+            results = new Object[hubs.size()];
+            errors = new String[hubs.size()];
+            remaining = new AtomicInteger(hubs.size());
+        }
+
+        void call(int index, HubClient hub, Call<T> call) {
+            if (handle != null && handle.isCancelled()) {
+                hub.release();
+                fail(index, CANCELLED_MESSAGE);
+                return;
+            }
+            hubCalls.incrementAndGet();
+            try {
+                T result = call.call(hub, handle);
+                results[index] = result;
+                finish();
+            } catch (IOException e) {
+                fail(index, handle != null && handle.isCancelled() ? CANCELLED_MESSAGE : e.getMessage());
+            } catch (RuntimeException e) {
+                // Every hub must report, or the callback never runs; the breaker may not have heard either
+                hub.release();
+                fail(index, "Request failed: " + e);
+            }
+        }
+
+        void fail(int index, String error) {
+            errors[index] = error;
+            finish();
+        }
+
+        // The slot writes above happen-before the final decrement, which the last finisher observes
+        private void finish() {
+            if (remaining.decrementAndGet() == 0) {
+                wallTimes.record(System.currentTimeMillis() - startedAt);
+                deliver();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void deliver() {
+            Map<String, T> byHub = new LinkedHashMap<>();
+            Map<String, String> failures = new LinkedHashMap<>();
+            for (int i = 0; i < hubs.size(); i++) {
+                String id = hubs.get(i).getId();
+                if (errors[i] != null) {
+                    failures.put(id, errors[i]);
+                } else {
+                    byHub.put(id, (T) results[i]);
+                }
+            }
+            delivery.execute(() -> callback.onComplete(byHub, failures));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.myapplication;
+
+import android.content.SharedPreferences;
+import android.net.Network;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The controllers of the installation and one client per controller.
+ *
+ * The first hub is the primary: it carries the event stream, the shared status cache
+ * and per-device commands, and can be moved but not removed. Every hub is reached
+ * over the same Wi-Fi network, whose name is kept here as well.
+ */
+public class HubRegistry {
+    public static final String PREFS_NAME = "NexadomusHubs";
+    private static final String PREF_HUBS = "hubs";
+    private static final String PREF_SSID = "ssid";
+
+    public static final Hub DEFAULT_HUB = new Hub("main", "Main hub", "192.168.4.1", 80); // Default AP IP
+    public static final String DEFAULT_SSID = "Nexadomus Prototype";
+
+    private final Map<String, HubClient> clients = new LinkedHashMap<>();
+    private final HubClient primary;
+    private SharedPreferences preferences;
+    private Network network;
+    private String interfaceLabel = HubConnectionPool.DEFAULT_INTERFACE;
+    private boolean binaryCommands;
+    private volatile String networkSsid = DEFAULT_SSID;
+
+    public HubRegistry() {
+        primary = new HubClient(DEFAULT_HUB);
+        clients.put(primary.getId(), primary);
+    }
+
+    // Load the saved hubs and network name; later changes are saved here
+    public synchronized void setPreferences(SharedPreferences preferences) {
+        if (this.preferences != null) {
+            return;
+        }
+        this.preferences = preferences;
+        networkSsid = preferences.getString(PREF_SSID, DEFAULT_SSID);
+        String saved = preferences.getString(PREF_HUBS, null);
+        if (saved == null) {
+            return;
+        }
+        for (String line : saved.split("\n")) {
+            Hub hub = Hub.decode(line);
+            if (hub != null) {
+                put(hub);
+            }
+        }
+    }
+
+    /**
+     * Add a hub, or update the name and address of the hub with the same id.
+     *
+     * @return The hub's client
+     */
+    public synchronized HubClient addHub(Hub hub) {
+        HubClient client = put(hub);
+        save();
+        return client;
+    }
+
+    /**
+     * Forget a hub. The primary hub cannot be removed.
+     *
+     * @return False if no such hub exists or it is the primary
+     */
+    public synchronized boolean removeHub(String id) {
+        HubClient removed = primary.getId().equals(id) ? null : clients.remove(id);
+        if (removed == null) {
+            return false;
+        }
+        removed.close();
+        save();
+        return true;
+    }
+
+    public HubClient getPrimary() {
+        return primary;
+    }
+
+    public synchronized HubClient getClient(String id) {
+        return clients.get(id);
+    }
+
+    // Snapshot in registry order, primary first
+    public synchronized List<HubClient> getClients() {
+        return new ArrayList<>(clients.values());
+    }
+
+    public synchronized List<Hub> getHubs() {
+        List<Hub> hubs = new ArrayList<>(clients.size());
+        for (HubClient client : clients.values()) {
+            hubs.add(client.getHub());
+        }
+        return hubs;
+    }
+
+    // Reach the hubs through this network, including hubs added later; null for the default route
+    public synchronized void setNetwork(Network network, String label) {
+        this.network = network;
+        interfaceLabel = label;
+        for (HubClient client : clients.values()) {
+            client.setNetwork(network, label);
+        }
+    }
+
+    // Turn binary datagram commands on or off for every hub, including hubs added later
+    public synchronized void setBinaryCommands(boolean enabled) {
+        binaryCommands = enabled;
+        for (HubClient client : clients.values()) {
+            client.setBinaryCommands(enabled);
+        }
+    }
+
+    public String getNetworkSsid() {
+        return networkSsid;
+    }
+
+    public synchronized void setNetworkSsid(String ssid) {
+        networkSsid = ssid;
+        save();
+    }
+
+    // Must hold the lock
+    private HubClient put(Hub hub) {
+        HubClient client = clients.get(hub.getId());
+        if (client != null) {
+            client.setHub(hub);
+            return client;
+        }
+        client = new HubClient(hub);
+        if (network != null) {
+            client.setNetwork(network, interfaceLabel);
+        }
+        client.setBinaryCommands(binaryCommands);
+        clients.put(hub.getId(), client);
+        return client;
+    }
+
+    // Must hold the lock
+    private void save() {
+        if (preferences == null) {
+            return;
+        }
+        StringBuilder hubs = new StringBuilder();
+        for (HubClient client : clients.values()) {
+            if (hubs.length() > 0) {
+                hubs.append('\n');
+            }
+            hubs.append(client.getHub().encode());
+        }
+        preferences.edit()
+                .putString(PREF_HUBS, hubs.toString())
+                .putString(PREF_SSID, networkSsid)
+                .apply();
+    }
+}
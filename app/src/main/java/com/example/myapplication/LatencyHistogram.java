@@ -0,0 +1,132 @@
+package com.example.myapplication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Round-trip times bucketed on a geometric scale, cheap enough to record on every request.
+ *
+ * Percentiles are answered with the upper bound of the bucket they fall in, so they are
+ * accurate to the bucket growth factor (about 20%). Once the histogram holds more than
+ * its decay threshold every count is halved, so it follows the link as conditions change
+ * instead of averaging over the whole session.
+ */
+public class LatencyHistogram {
+    private static final double GROWTH = 1.2;
+    private static final long MAX_TRACKED_MS = 120000;
+    private static final long[] BOUNDS = buildBounds();
+
+    private final long decayThreshold;
+    private final long[] counts = new long[BOUNDS.length];
+    private long total;
+    private long sumMillis;
+    private long maxMillis;
+
+    /**
+     * @param decayThreshold Number of samples after which older samples are down-weighted
+     */
+    public LatencyHistogram(long decayThreshold) {
+        this.decayThreshold = decayThreshold;
+    }
+
+    public synchronized void record(long millis) {
+        long value = Math.max(0, millis);
+        counts[bucketOf(value)]++;
+        total++;
+        sumMillis += value;
+        maxMillis = Math.max(maxMillis, value);
+        if (total > decayThreshold) {
+            decay();
+        }
+    }
+
+    // Samples currently weighted in the histogram
+    public synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * @param quantile Between 0 and 1, e.g. 0.95
+     * @return Upper bound of the bucket holding the quantile, or -1 with no samples
+     */
+    public synchronized long getPercentile(double quantile) {
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS[i], maxMillis);
+            }
+        }
+        return maxMillis;
+    }
+
+    public synchronized long getMeanMillis() {
+        return total == 0 ? 0 : sumMillis / total;
+    }
+
+    public synchronized long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        sumMillis = 0;
+        maxMillis = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "n=%d mean=%dms p50=%dms p95=%dms p99=%dms max=%dms",
+                total, getMeanMillis(), getPercentile(0.5), getPercentile(0.95), getPercentile(0.99), maxMillis);
+    }
+
+    // Must hold the lock
+    private void decay() {
+        total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] /= 2;
+            total += counts[i];
+        }
+        sumMillis /= 2;
+    }
+
+    private static int bucketOf(long millis) {
+        // Binary search for the first bound at or above the value
+        int low = 0;
+        int high = BOUNDS.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (BOUNDS[mid] >= millis) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static long[] buildBounds() {
+        List<Long> bounds = new ArrayList<>();
+        double bound = 1;
+        long last = 0;
+        while (last < MAX_TRACKED_MS) {
+            long rounded = Math.max(last + 1, Math.round(bound));
+            bounds.add(rounded);
+            last = rounded;
+            bound *= GROWTH;
+        }
+        bounds.add(Long.MAX_VALUE);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+}
@@ -15,8 +15,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import org.json.JSONObject;
-
 public class LightsFragment extends Fragment {
     private static final String PREFS_NAME = "NexadomusLights";
     private static final String PREF_BRIGHTNESS = "brightness";
@@ -27,8 +25,39 @@ public class LightsFragment extends Fragment {
     private SeekBar brightnessSlider;
     private Button btnOff, btnLow, btnMedium, btnHigh;
     private NexadomusApiClient apiClient;
+    // Requests made for the current view, cancelled when the view is destroyed
+    private RequestScope requests;
     private boolean remoteMode = false;
+    // True while the user's finger is on the slider
+    private boolean trackingTouch = false;
     private SharedPreferences sharedPreferences;
+    // Version of the snapshot the views show, 0 once they may differ from it. A 304 hands
+    // back the same snapshot, which needs no rebind.
+    private long shownVersion;
+    
+    // Intermediate slider values; errors are reported by the final command on release
+    private final NexadomusApiClient.ApiCallback liveCallback = new NexadomusApiClient.ApiCallback() {
+        @Override
+        public void onSuccess(String response) {
+            // Nothing to update, the UI already shows the dragged value
+        }
+
+        @Override
+        public void onError(String error) {
+            // Ignored while dragging
+        }
+    };
+    
+    // Pushed changes from the hub while this screen is visible
+    private final NexadomusApiClient.StatusListener statusListener = status -> {
+        // Don't move the slider under the user's finger; the release sends the final value
+        if (trackingTouch) {
+            return;
+        }
+        applyStatus(status);
+        updateStatusText();
+        updateBrightnessSlider();
+    };
 
     @Nullable
     @Override
@@ -43,10 +72,13 @@ public class LightsFragment extends Fragment {
         // Initialize the API client
         apiClient = NexadomusApiClient.getInstance();
         apiClient.setAppContext(requireContext());
+        requests = RequestScope.of(getViewLifecycleOwner());
         
         // Initialize shared preferences
         sharedPreferences = requireContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         brightness = sharedPreferences.getInt(PREF_BRIGHTNESS, 0);
+        // Fresh views show the saved state, not a snapshot
+        shownVersion = 0;
 
         // Initialize UI components
         statusText = view.findViewById(R.id.statusText);
@@ -68,21 +100,24 @@ public class LightsFragment extends Fragment {
         brightnessSlider.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                // Just update UI, don't send command yet
                 if (fromUser) {
                     brightness = progress;
+                    shownVersion = 0;
                     updateStatusText();
+                    // Let the lights follow the finger on the local hub; the client collapses stale values
+                    apiClient.controlLightsLive(progress, requests.bind(liveCallback));
                 }
             }
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
-                // Not needed
+                trackingTouch = true;
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                // Send the command when user releases the slider
+                trackingTouch = false;
+                // Send the final value when user releases the slider
                 setBrightness(seekBar.getProgress());
             }
         });
@@ -99,6 +134,13 @@ public class LightsFragment extends Fragment {
         super.onResume();
         // Refresh status when fragment becomes visible
         fetchCurrentStatus();
+        apiClient.addStatusListener(statusListener);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        apiClient.removeStatusListener(statusListener);
     }
 
     private void setBrightness(int level) {
@@ -107,10 +149,11 @@ public class LightsFragment extends Fragment {
         
         // Update our local state
         brightness = level;
+        shownVersion = 0;
         saveBrightnessState();
         
         // Set the brightness
-        apiClient.controlLights(level, new NexadomusApiClient.ApiCallback() {
+        apiClient.controlLights(level, requests.bind(new NexadomusApiClient.ApiCallback() {
             @Override
             public void onSuccess(String response) {
                 if (response.contains("Remote command sent")) {
@@ -131,7 +174,20 @@ public class LightsFragment extends Fragment {
                 showError("Failed to control lights: " + error);
                 setControlsEnabled(true);
             }
-        });
+        }));
+    }
+    
+    private void applyStatus(DeviceStatus status) {
+        shownVersion = status.getVersion();
+        if (status.hasLights()) {
+            brightness = status.getLights();
+            saveBrightnessState();
+        }
+    }
+    
+    // True if the views already show this snapshot; remote snapshots are never versioned
+    private boolean isShown(DeviceStatus status) {
+        return status.getVersion() != 0 && status.getVersion() == shownVersion;
     }
     
     private void saveBrightnessState() {
@@ -143,24 +199,16 @@ public class LightsFragment extends Fragment {
         setControlsEnabled(false);
         
         // Get current status from ESP32
-        apiClient.getStatus(new NexadomusApiClient.ApiCallback() {
+        apiClient.getStatus(requests.bind(new NexadomusApiClient.StatusCallback() {
             @Override
-            public void onSuccess(String response) {
-                try {
-                    // Parse the JSON response
-                    JSONObject json = new JSONObject(response);
-                    
-                    if (json.has("lights")) {
-                        brightness = json.getInt("lights");
-                        saveBrightnessState();
-                    }
-                    
-                    showRemoteMode(false); // We're in local mode if we got status
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    // If parsing fails, use the saved brightness
-                    brightness = sharedPreferences.getInt(PREF_BRIGHTNESS, 0);
+            public void onSuccess(DeviceStatus status) {
+                if (isShown(status)) {
+                    setControlsEnabled(true);
+                    return;
                 }
+                applyStatus(status);
+                // A remote snapshot is the last commanded state from ThingSpeak, not the hub's own
+                showRemoteMode(status.isRemote());
                 
                 updateStatusText();
                 updateBrightnessSlider();
@@ -178,11 +226,12 @@ public class LightsFragment extends Fragment {
                 
                 // Use the saved brightness
                 brightness = sharedPreferences.getInt(PREF_BRIGHTNESS, 0);
+                shownVersion = 0;
                 updateStatusText();
                 updateBrightnessSlider();
                 setControlsEnabled(true);
             }
-        });
+        }));
     }
     
     private void showRemoteMode(boolean isRemote) {
@@ -225,7 +274,7 @@ public class LightsFragment extends Fragment {
     }
     
     private void updateBrightnessSlider() {
-        if (brightnessSlider != null) {
+        if (brightnessSlider != null && !trackingTouch) {
             brightnessSlider.setProgress(brightness);
         }
     }
@@ -26,5 +26,26 @@ public class MainActivity extends AppCompatActivity {
 
         BottomNavigationView bottomNav = findViewById(R.id.bottom_navigation);
         NavigationUI.setupWithNavController(bottomNav, navController);
+
+        // Hidden way into the diagnostics screen
+        bottomNav.findViewById(R.id.addDeviceFragment).setOnLongClickListener(v -> {
+            navController.navigate(R.id.diagnosticsFragment);
+            return true;
+        });
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Keep one push connection to the hub open while the app is visible
+        NexadomusApiClient.getInstance().startStatusStream();
+        // Deliver commands that were saved while offline
+        NexadomusApiClient.getInstance().replayOutbox();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        NexadomusApiClient.getInstance().stopStatusStream();
     }
 }
\ No newline at end of file
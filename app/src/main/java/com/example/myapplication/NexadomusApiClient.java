@@ -1,44 +1,109 @@
 package com.example.myapplication;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
 import android.net.Network;
-import android.net.NetworkCapabilities;
-import android.net.NetworkInfo;
-import android.net.wifi.WifiInfo;
-import android.net.wifi.WifiManager;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import java.io.BufferedReader;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.net.SocketFactory;
 
 public class NexadomusApiClient {
     private static final String TAG = "NexadomusApiClient";
-    private static final String ESP_IP_ADDRESS = "192.168.4.1"; // Default AP IP
-    private static final String BASE_URL = "http://" + ESP_IP_ADDRESS;
-    private static final String NEXADOMUS_SSID = "Nexadomus Prototype";
+    // Label for hub traffic bound to the Nexadomus Wi-Fi network in the timing statistics
+    private static final String HUB_INTERFACE = "hub-wifi";
+    private static final long STATUS_FRESHNESS_MS = 2000;
+    private static final long COMMAND_MIN_INTERVAL_MS = 50; // At most 20 commands per second per device
+    private static final String OUTBOX_FILE = "command_outbox.log";
+    private static final int OUTBOX_MAX_ENTRIES = 200;
+    private static final long OUTBOX_MAX_AGE_MS = 60 * 60 * 1000; // Stale intents (e.g. "open garage") are not replayed
+    // Hedged dispatch waits for the 95th percentile hub round trip, within these bounds
+    private static final double HEDGE_QUANTILE = 0.95;
+    private static final long HEDGE_MIN_DELAY_MS = 150;
+    private static final long HEDGE_MAX_DELAY_MS = 2000;
+    private static final long HEDGE_DEFAULT_DELAY_MS = 500;
+    private static final long HEDGE_MIN_SAMPLES = 10;
+    // Hubs answer a discovery probe within a few hundred milliseconds; rediscover at most every 30 s
+    private static final int DISCOVERY_LISTEN_MS = 1000;
+    private static final long DISCOVERY_REFRESH_MS = 30 * 1000;
+    private static final long DISCOVERY_TTL_MS = 10 * 60 * 1000;
+    private static final String CANCELLED_MESSAGE = "Request cancelled";
+    private static final String QUEUED_OFFLINE_MESSAGE =
+            "No connectivity. Command saved and will be sent when a connection is available.";
     
     private static NexadomusApiClient instance;
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final RequestScheduler scheduler = RequestScheduler.getInstance();
+    private final RequestMetrics metrics = RequestMetrics.getInstance();
+    private final CommandTracer commandTracer = CommandTracer.getInstance();
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private Context appContext;
     private ThingSpeakClient thingSpeakClient;
+    private CommandOutbox outbox;
+    private boolean replayingOutbox = false;
+    private boolean statusStreamWanted = false;
+    private volatile boolean hedgedDispatch = false;
+    // Set once the primary hub answered /batch with 404; its actions are then sent one by one
+    private volatile boolean localBatchUnsupported = false;
+    private final StatusPublisher statusPublisher = new StatusPublisher(commandTracer::onStatus);
+    private final HubRegistry hubRegistry = new HubRegistry();
+    // Per-device commands, the status cache and the event stream go to the primary hub
+    private final HubClient primaryHub = hubRegistry.getPrimary();
+    private final HubFanOut hubFanOut = new HubFanOut(scheduler, mainHandler::post);
+    private final HubDiscovery hubDiscovery = new HubDiscovery(broadcastAddress(), HubDiscovery.DISCOVERY_PORT,
+            DISCOVERY_LISTEN_MS, DISCOVERY_REFRESH_MS, DISCOVERY_TTL_MS, mainHandler::post);
+    private final StatusCache statusCache =
+            new StatusCache(this::fetchLocalStatus, mainHandler::post, STATUS_FRESHNESS_MS);
+    private final CommandCoalescer commandCoalescer =
+            new CommandCoalescer(this::executeLocalRequest, COMMAND_MIN_INTERVAL_MS);
+    private final ConnectivityMonitor connectivityMonitor =
+            new ConnectivityMonitor(hubRegistry.getNetworkSsid(), mainHandler::post);
+    private final StatusStream statusStream = new StatusStream(primaryHub.getHub().getHost(),
+            primaryHub.getHub().getPort(), mainHandler::post);
+    private final HedgedDispatcher hedgedDispatcher = new HedgedDispatcher(primaryHub.getTimeout().getHistogram(), HEDGE_QUANTILE,
+            HEDGE_MIN_DELAY_MS, HEDGE_MAX_DELAY_MS, HEDGE_DEFAULT_DELAY_MS, HEDGE_MIN_SAMPLES);
 
     public interface ApiCallback {
         void onSuccess(String response);
         void onError(String error);
     }
 
+    public interface StatusCallback {
+        void onSuccess(DeviceStatus status);
+        void onError(String error);
+    }
+
+    // Told about every new device state, whether fetched or pushed by the hub
+    public interface StatusListener {
+        void onStatusChanged(DeviceStatus status);
+    }
+
+    // Told once about every action of a batch; both maps follow the order of the actions
+    public interface BatchCallback {
+        void onComplete(Map<DeviceAction, String> results, Map<DeviceAction, String> errors);
+    }
+
     private NexadomusApiClient() {
         // Private constructor for singleton
         thingSpeakClient = ThingSpeakClient.getInstance();
+        statusStream.addListener(this::onStatusEvent);
+        connectivityMonitor.addListener(this::onPathChanged);
     }
 
     public static synchronized NexadomusApiClient getInstance() {
@@ -51,92 +116,246 @@ public class NexadomusApiClient {
     public void setAppContext(Context context) {
         this.appContext = context.getApplicationContext();
         thingSpeakClient.setAppContext(context);
+        hubRegistry.setPreferences(appContext.getSharedPreferences(HubRegistry.PREFS_NAME, Context.MODE_PRIVATE));
+        hubDiscovery.setPreferences(appContext.getSharedPreferences(HubDiscovery.PREFS_NAME, Context.MODE_PRIVATE));
+        onHubsChanged();
+        connectivityMonitor.start(appContext);
+        synchronized (this) {
+            if (outbox == null) {
+                // Read on the outbox's own thread; commands saved by an earlier run are replayed once it has
+                outbox = new CommandOutbox(new File(appContext.getFilesDir(), OUTBOX_FILE), OUTBOX_MAX_ENTRIES,
+                        () -> mainHandler.post(this::replayOutbox));
+            }
+        }
     }
 
     // Check if we have internet connectivity (not just Nexadomus AP)
     private boolean hasInternetAccess() {
-        if (appContext == null) {
-            return false;
-        }
-        
-        ConnectivityManager cm = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (cm == null) {
-            return false;
-        }
-        
-        Network activeNetwork = cm.getActiveNetwork();
-        if (activeNetwork == null) {
-            return false;
-        }
-        
-        NetworkCapabilities capabilities = cm.getNetworkCapabilities(activeNetwork);
-        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        return connectivityMonitor.hasInternet();
     }
 
     // Control the garage door - will use ThingSpeak if no local connection available
     public void controlGarage(String action, ApiCallback callback) {
+        controlGarage(action, traced(DeviceAction.GARAGE, action, callback), true);
+    }
+
+    private void controlGarage(String action, ApiCallback callback, boolean queueIfOffline) {
         // Check if we're connected to Nexadomus network
         if (isConnectedToNexadomus()) {
             // Use direct control via local network
-            String endpoint = BASE_URL + "/garage?state=" + action;
-            executeRequest(endpoint, callback);
+            statusCache.invalidate();
+            supersedeHedge("garage", action.equals("toggle") ? null : "garage_" + action);
+            if (shouldHedge() && (action.equals("open") || action.equals("close"))) {
+                hedgedDispatcher.dispatch("garage", localAttempt("garage", "/garage?state=" + action),
+                        remoteAttempt("garage_" + action, action), callback);
+            } else {
+                commandCoalescer.submit("garage", "/garage?state=" + action, callback);
+            }
         } else if (hasInternetAccess()) {
             // Use ThingSpeak for remote control
             boolean open = action.equals("open") || action.equals("toggle");
-            thingSpeakClient.controlGarageRemote(open, new ThingSpeakClient.ThingSpeakCallback() {
-                @Override
-                public void onSuccess(String response) {
-                    callback.onSuccess("Remote command sent: " + action);
-                }
-
-                @Override
-                public void onError(String error) {
-                    callback.onError("Remote command failed: " + error);
-                }
-            });
-        } else {
+            thingSpeakClient.controlGarageRemote(open, createThingSpeakCallback(callback, action));
+        } else if (!queueIfOffline || !queueOffline(CommandOutbox.TYPE_GARAGE, action, callback::onError)) {
             // No connectivity at all
             mainHandler.post(() -> callback.onError("No connectivity. Connect to Nexadomus AP or ensure internet access."));
         }
     }
 
-    // Control the lights - will use ThingSpeak if no local connection available
+    // Control the lights - will use ThingSpeak if no local connection available.
+    // Locally, rapid calls (e.g. from a slider) collapse to the newest brightness and are rate limited.
     public void controlLights(int brightness, ApiCallback callback) {
+        controlLights(brightness, traced(DeviceAction.LIGHTS, String.valueOf(brightness), callback), true);
+    }
+
+    /**
+     * Send an intermediate brightness while a slider is dragged. Only sent on the local hub path,
+     * where rapid values collapse in the coalescer; elsewhere the value is dropped and the callback
+     * gets an error, leaving the final value to controlLights.
+     */
+    public void controlLightsLive(int brightness, ApiCallback callback) {
+        if (!isConnectedToNexadomus()) {
+            mainHandler.post(() -> callback.onError("Live brightness is only sent to a local hub."));
+            return;
+        }
+        statusCache.invalidate();
+        supersedeHedge("lights", "lights_" + remoteBrightnessLevel(brightness));
+        commandCoalescer.submit("lights", "/lights?brightness=" + brightness,
+                traced(DeviceAction.LIGHTS, String.valueOf(brightness), callback));
+    }
+
+    private void controlLights(int brightness, ApiCallback callback, boolean queueIfOffline) {
         if (isConnectedToNexadomus()) {
             // Use direct control via local network
-            String endpoint = BASE_URL + "/lights?brightness=" + brightness;
-            executeRequest(endpoint, callback);
-        } else if (hasInternetAccess()) {
-            // Map brightness to command
-            String brightnessLevel;
-            if (brightness == 0) {
-                brightnessLevel = "off";
-            } else if (brightness <= 85) {
-                brightnessLevel = "low";
-            } else if (brightness <= 170) {
-                brightnessLevel = "medium";
+            statusCache.invalidate();
+            supersedeHedge("lights", "lights_" + remoteBrightnessLevel(brightness));
+            // Only the preset levels mean the same thing on both paths; in-between values are not hedged
+            if (shouldHedge() && isPresetBrightness(brightness)) {
+                hedgedDispatcher.dispatch("lights", localAttempt("lights", "/lights?brightness=" + brightness),
+                        remoteAttempt("lights_" + remoteBrightnessLevel(brightness), "lights_" + remoteBrightnessLevel(brightness)),
+                        callback);
             } else {
-                brightnessLevel = "high";
+                commandCoalescer.submit("lights", "/lights?brightness=" + brightness, callback);
             }
+        } else if (hasInternetAccess()) {
+            String brightnessLevel = remoteBrightnessLevel(brightness);
             
             // Use ThingSpeak for remote control
-            thingSpeakClient.controlLightsRemote(brightnessLevel, new ThingSpeakClient.ThingSpeakCallback() {
-                @Override
-                public void onSuccess(String response) {
-                    callback.onSuccess("Remote command sent: lights_" + brightnessLevel);
-                }
-
-                @Override
-                public void onError(String error) {
-                    callback.onError("Remote command failed: " + error);
-                }
-            });
-        } else {
+            thingSpeakClient.controlLightsRemote(brightnessLevel,
+                    createThingSpeakCallback(callback, "lights_" + brightnessLevel));
+        } else if (!queueIfOffline || !queueOffline(CommandOutbox.TYPE_LIGHTS, String.valueOf(brightness), callback::onError)) {
             // No connectivity at all
             mainHandler.post(() -> callback.onError("No connectivity. Connect to Nexadomus AP or ensure internet access."));
         }
     }
 
+    // Map brightness to the remote command's level
+    private static String remoteBrightnessLevel(int brightness) {
+        return DeviceAction.remoteBrightnessLevel(brightness);
+    }
+
+    // Brightness values the remote levels set exactly
+    private static boolean isPresetBrightness(int brightness) {
+        return brightness == 0 || brightness == 85 || brightness == 170 || brightness == 255;
+    }
+
+    /**
+     * Opt in to hedged dispatch of garage and preset light commands: when on the hub network
+     * with internet available, a local command that has not answered within the usual hub
+     * round trip is also sent through ThingSpeak, and the first acknowledgement wins.
+     */
+    public void setHedgedDispatch(boolean enabled) {
+        hedgedDispatch = enabled;
+    }
+
+    public boolean isHedgedDispatch() {
+        return hedgedDispatch;
+    }
+
+    /**
+     * Opt in to the binary datagram protocol for local garage, lights and sprinkler
+     * commands. A hub that does not acknowledge the datagrams gets the command over
+     * HTTP, and keeps getting HTTP for a while.
+     */
+    public void setBinaryCommands(boolean enabled) {
+        hubRegistry.setBinaryCommands(enabled);
+    }
+
+    public boolean isBinaryCommands() {
+        return primaryHub.isBinaryCommands();
+    }
+
+    public HedgedDispatcher getHedgedDispatcher() {
+        return hedgedDispatcher;
+    }
+
+    // Round trips of requests to the primary hub
+    public LatencyHistogram getLocalLatency() {
+        return primaryHub.getTimeout().getHistogram();
+    }
+
+    // Lane depths, concurrency and queue waits of the shared request scheduler
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Circuit breakers guarding each endpoint, keyed by endpoint ("hub:<id>" for each hub,
+     * "thingspeak" for the remote channel). Add a CircuitBreaker.Listener to follow transitions.
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        Map<String, CircuitBreaker> breakers = new LinkedHashMap<>();
+        for (HubClient hub : hubRegistry.getClients()) {
+            breakers.put(hub.getCircuitBreaker().getName(), hub.getCircuitBreaker());
+        }
+        CircuitBreaker remote = thingSpeakClient.getCircuitBreaker();
+        breakers.put(remote.getName(), remote);
+        return breakers;
+    }
+
+    /**
+     * Round-trip histograms and the timeouts they currently produce, keyed by endpoint
+     * ("hub:<id>" for each hub, "thingspeak" for the remote channel).
+     */
+    public Map<String, AdaptiveTimeout> getAdaptiveTimeouts() {
+        Map<String, AdaptiveTimeout> timeouts = new LinkedHashMap<>();
+        for (HubClient hub : hubRegistry.getClients()) {
+            timeouts.put(hub.getTimeout().getName(), hub.getTimeout());
+        }
+        AdaptiveTimeout remote = thingSpeakClient.getTimeout();
+        timeouts.put(remote.getName(), remote);
+        return timeouts;
+    }
+
+    private boolean shouldHedge() {
+        return hedgedDispatch && hasInternetAccess();
+    }
+
+    /**
+     * An earlier hedged command for the device may still reach the hub through ThingSpeak
+     * after the local command about to be sent. If its hedge is already out, write this
+     * command to the channel as well, so the channel's newest entry is the user's latest choice.
+     *
+     * @param remoteCommand The command on the remote path, or null for a toggle, which has none
+     */
+    private void supersedeHedge(String deviceKey, String remoteCommand) {
+        if (!hedgedDispatcher.supersede(deviceKey)) {
+            return;
+        }
+        if (remoteCommand == null) {
+            // No remote command means the same as a toggle; guessing one could leave the device the wrong way
+            Log.w(TAG, "Earlier " + deviceKey + " hedge already sent; not following a toggle with it");
+            return;
+        }
+        Log.i(TAG, "Earlier " + deviceKey + " hedge already sent, following it with " + remoteCommand);
+        thingSpeakClient.sendCustomCommand(remoteCommand, new ThingSpeakClient.ThingSpeakCallback() {
+            @Override
+            public void onSuccess(String response) {
+                // The local command reports to the caller
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.w(TAG, "Could not supersede " + deviceKey + " hedge: " + error);
+            }
+        });
+    }
+
+    private HedgedDispatcher.Attempt localAttempt(String deviceKey, String path) {
+        return new HedgedDispatcher.Attempt() {
+            private volatile ApiCallback pending;
+
+            @Override
+            public void start(ApiCallback callback) {
+                pending = callback;
+                commandCoalescer.submit(deviceKey, path, callback);
+            }
+
+            @Override
+            public boolean cancel() {
+                // Only while it waits behind another command to the same device
+                return pending != null && commandCoalescer.withdraw(deviceKey, pending);
+            }
+        };
+    }
+
+    private HedgedDispatcher.Attempt remoteAttempt(String command, String label) {
+        return new HedgedDispatcher.Attempt() {
+            private volatile ThingSpeakClient.ThingSpeakCallback pending;
+
+            @Override
+            public void start(ApiCallback callback) {
+                pending = createThingSpeakCallback(callback, label);
+                thingSpeakClient.sendCustomCommand(command, pending);
+            }
+
+            @Override
+            public boolean cancel() {
+                // Still waiting in the batch window, so ThingSpeak never sees it
+                return pending != null && thingSpeakClient.withdrawCommand(pending);
+            }
+        };
+    }
+
     /**
      * Control the sprinklers (on/off with duration)
      *
@@ -144,10 +363,14 @@ public class NexadomusApiClient {
      * @param callback  Callback for success/error
      */
     public void controlSprinklers(String action, ApiCallback callback) {
+        controlSprinklers(action, traced(DeviceAction.SPRINKLERS, action, callback), true);
+    }
+
+    private void controlSprinklers(String action, ApiCallback callback, boolean queueIfOffline) {
         if (isConnectedToNexadomus()) {
             // Use direct control via local network
-            String endpoint = BASE_URL + "/sprinklers?state=" + action;
-            executeRequest(endpoint, callback);
+            statusCache.invalidate();
+            commandCoalescer.submit("sprinklers", "/sprinklers?state=" + action, callback);
         } else if (hasInternetAccess()) {
             // Use ThingSpeak for remote control
             if (action.equals("off")) {
@@ -180,7 +403,7 @@ public class NexadomusApiClient {
                 boolean on = action.equals("on") || action.equals("toggle");
                 thingSpeakClient.controlSprinklersRemote(on, createThingSpeakCallback(callback, on ? "sprinkler_on" : "sprinkler_off"));
             }
-        } else {
+        } else if (!queueIfOffline || !queueOffline(CommandOutbox.TYPE_SPRINKLERS, action, callback::onError)) {
             // No connectivity at all
             mainHandler.post(() -> callback.onError("No connectivity. Connect to Nexadomus AP or ensure internet access."));
         }
@@ -190,115 +413,811 @@ public class NexadomusApiClient {
      * Helper method to create a ThingSpeak callback
      */
     private ThingSpeakClient.ThingSpeakCallback createThingSpeakCallback(ApiCallback callback, String commandName) {
-        return new ThingSpeakClient.ThingSpeakCallback() {
-            @Override
-            public void onSuccess(String response) {
-                callback.onSuccess("Remote command sent: " + commandName);
-            }
+        return withdrawOnCancel(callback, new RemoteCallback(callback, commandName));
+    }
 
-            @Override
-            public void onError(String error) {
-                callback.onError("Remote command failed: " + error);
-            }
-        };
+    // Reports a remote write to the caller, carrying the caller's trace to the ThingSpeak transport
+    private static class RemoteCallback implements ThingSpeakClient.ThingSpeakCallback, CommandTrace.Carrier {
+        private final ApiCallback delegate;
+        private final String commandName;
+
+        RemoteCallback(ApiCallback delegate, String commandName) {
+            this.delegate = delegate;
+            this.commandName = commandName;
+        }
+
+        @Override
+        public void onSuccess(String response) {
+            delegate.onSuccess("Remote command sent: " + commandName);
+        }
+
+        @Override
+        public void onError(String error) {
+            delegate.onError("Remote command failed: " + error);
+        }
+
+        @Override
+        public List<CommandTrace> getCommandTraces() {
+            return CommandTrace.of(delegate);
+        }
+    }
+
+    // Cancelling the caller's request takes the command back out of the batch window if it has not gone out yet
+    private ThingSpeakClient.ThingSpeakCallback withdrawOnCancel(ApiCallback callback,
+                                                                  ThingSpeakClient.ThingSpeakCallback remote) {
+        RequestHandle handle = RequestHandle.of(callback);
+        if (handle != null) {
+            handle.onCancel(() -> thingSpeakClient.withdrawCommand(remote));
+        }
+        return remote;
     }
 
     // Send a custom command to ThingSpeak
     public void sendCustomCommand(String command, ApiCallback callback) {
+        sendCustomCommand(command, callback, true);
+    }
+
+    private void sendCustomCommand(String command, ApiCallback callback, boolean queueIfOffline) {
         if (hasInternetAccess()) {
             // Use ThingSpeak for remote control
-            thingSpeakClient.sendCustomCommand(command, new ThingSpeakClient.ThingSpeakCallback() {
+            thingSpeakClient.sendCustomCommand(command, createThingSpeakCallback(callback, command));
+        } else if (!queueIfOffline || isConnectedToNexadomus()
+                || !queueOffline(CommandOutbox.TYPE_CUSTOM, command, callback::onError)) {
+            // No connectivity
+            mainHandler.post(() -> callback.onError("No internet connectivity. Unable to send custom command."));
+        }
+    }
+
+    /**
+     * Run several device actions together, e.g. a "leaving home" scene. On the hub network
+     * they go out as one /batch request (a hub without it gets them one by one); remotely
+     * they are written in one ThingSpeak update. Results come back per action on the main thread.
+     *
+     * @param actions At most one action per device
+     */
+    public void sendBatch(List<DeviceAction> actions, BatchCallback callback) {
+        BatchResults batch = new BatchResults(actions, callback);
+        if (actions.isEmpty()) {
+            mainHandler.post(batch::deliver);
+        } else if (isConnectedToNexadomus()) {
+            statusCache.invalidate();
+            if (localBatchUnsupported) {
+                sendIndividually(batch);
+            } else {
+                executeLocalBatch(batch);
+            }
+        } else if (hasInternetAccess()) {
+            List<String> commands = new ArrayList<>();
+            for (DeviceAction action : actions) {
+                commands.add(action.getRemoteCommand());
+            }
+            thingSpeakClient.sendCommands(commands, new ThingSpeakClient.ThingSpeakCallback() {
                 @Override
                 public void onSuccess(String response) {
-                    callback.onSuccess("Remote command sent: " + command);
+                    for (DeviceAction action : actions) {
+                        batch.succeed(action, "Remote command sent: " + action.getRemoteCommand());
+                    }
                 }
 
                 @Override
                 public void onError(String error) {
-                    callback.onError("Remote command failed: " + error);
+                    batch.failAll("Remote command failed: " + error);
                 }
             });
         } else {
-            // No connectivity
-            mainHandler.post(() -> callback.onError("No internet connectivity. Unable to send custom command."));
+            for (DeviceAction action : actions) {
+                if (!queueOffline(action.getOutboxType(), action.getValue(), error -> batch.fail(action, error))) {
+                    mainHandler.post(() -> batch.fail(action,
+                            "No connectivity. Connect to Nexadomus AP or ensure internet access."));
+                }
+            }
+        }
+    }
+
+    // One GET /batch?garage=close&lights=0&sprinklers=off; the hub answers {"garage":"ok","lights":"<error>",...}
+    private void executeLocalBatch(BatchResults batch) {
+        if (!primaryHub.allowRequest()) {
+            metrics.recordError(RequestMetrics.Endpoint.BATCH, RequestMetrics.Cause.CIRCUIT_OPEN);
+            mainHandler.post(() -> batch.failAll(hubUnavailableMessage()));
+            return;
+        }
+        // The batch replaces whatever is still waiting to go out for its devices, and is traced per action
+        final List<ApiCallback> followers = new ArrayList<>();
+        for (DeviceAction action : batch.actions) {
+            supersedeHedge(action.getDevice(), action.isToggle() ? null : action.getRemoteCommand());
+            List<ApiCallback> replaced = commandCoalescer.takeWaiting(action.getDevice());
+            ApiCallback follower = traced(action.getDevice(), action.getValue(), new FanOutCallback(replaced));
+            batch.follow(action, follower);
+            followers.add(follower);
+            followers.addAll(replaced);
+        }
+        StringBuilder path = new StringBuilder("/batch?");
+        for (DeviceAction action : batch.actions) {
+            if (path.length() > "/batch?".length()) {
+                path.append('&');
+            }
+            path.append(action.getBatchParams());
+        }
+        final long queuedAt = System.currentTimeMillis();
+        boolean queued = scheduler.submit(RequestScheduler.Lane.INTERACTIVE, () -> {
+            metrics.recordQueueWait(RequestMetrics.Endpoint.BATCH, System.currentTimeMillis() - queuedAt);
+            commandTracer.dispatched(CommandTrace.ofAll(followers), CommandTrace.ROUTE_HUB);
+            try {
+                HubConnectionPool.Response response = primaryHub.get(path.toString(), null);
+                if (response.getCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                    Log.i(TAG, "Hub has no /batch endpoint, sending actions one by one");
+                    localBatchUnsupported = true;
+                    mainHandler.post(() -> sendIndividually(batch));
+                } else if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                    final String error = "HTTP Error: " + response.getCode();
+                    mainHandler.post(() -> batch.failAll(error));
+                } else {
+                    JSONObject results = new JSONObject(response.getBodyAsString());
+                    mainHandler.post(() -> {
+                        for (DeviceAction action : batch.actions) {
+                            String result = results.optString(action.getDevice(), null);
+                            if ("ok".equals(result)) {
+                                batch.succeed(action, result);
+                            } else {
+                                batch.fail(action, result != null ? result : "No result from hub");
+                            }
+                        }
+                    });
+                }
+            } catch (JSONException e) {
+                mainHandler.post(() -> batch.failAll("Malformed batch response"));
+            } catch (IOException e) {
+                final String errorMsg = localFailure(e, null);
+                mainHandler.post(() -> batch.failAll(errorMsg));
+            }
+        });
+        if (!queued) {
+            primaryHub.release();
+            metrics.recordError(RequestMetrics.Endpoint.BATCH, RequestMetrics.Cause.QUEUE_FULL);
+            mainHandler.post(() -> batch.failAll("Too many pending requests"));
+        }
+    }
+
+    // Fallback for hubs without /batch: every action through its own control method
+    private void sendIndividually(BatchResults batch) {
+        for (DeviceAction action : batch.actions) {
+            ApiCallback result = new ApiCallback() {
+                @Override
+                public void onSuccess(String response) {
+                    batch.succeed(action, response);
+                }
+
+                @Override
+                public void onError(String error) {
+                    batch.fail(action, error);
+                }
+            };
+            switch (action.getDevice()) {
+                case DeviceAction.GARAGE:
+                    controlGarage(action.getValue(), result);
+                    break;
+                case DeviceAction.LIGHTS:
+                    controlLights(Integer.parseInt(action.getValue()), result);
+                    break;
+                default:
+                    controlSprinklers(action.getValue(), result);
+                    break;
+            }
+        }
+    }
+
+    // Collects per-action outcomes and reports them once every action has one
+    private static class BatchResults {
+        final List<DeviceAction> actions;
+        private final BatchCallback callback;
+        private final Map<DeviceAction, String> results = new HashMap<>();
+        private final Map<DeviceAction, String> errors = new HashMap<>();
+        // Told each action's outcome as well, e.g. the callers of commands the batch replaced
+        private final Map<DeviceAction, ApiCallback> followers = new HashMap<>();
+
+        BatchResults(List<DeviceAction> actions, BatchCallback callback) {
+            Set<String> devices = new HashSet<>();
+            for (DeviceAction action : actions) {
+                if (!devices.add(action.getDevice())) {
+                    throw new IllegalArgumentException("More than one action for " + action.getDevice());
+                }
+            }
+            this.actions = new ArrayList<>(actions);
+            this.callback = callback;
+        }
+
+        synchronized void follow(DeviceAction action, ApiCallback follower) {
+            followers.put(action, follower);
+        }
+
+        synchronized void succeed(DeviceAction action, String result) {
+            results.put(action, result);
+            ApiCallback follower = followers.remove(action);
+            if (follower != null) {
+                follower.onSuccess(result);
+            }
+            deliverIfDone();
+        }
+
+        synchronized void fail(DeviceAction action, String error) {
+            errors.put(action, error);
+            ApiCallback follower = followers.remove(action);
+            if (follower != null) {
+                follower.onError(error);
+            }
+            deliverIfDone();
+        }
+
+        synchronized void failAll(String error) {
+            for (DeviceAction action : actions) {
+                fail(action, error);
+            }
+        }
+
+        private void deliverIfDone() {
+            if (results.size() + errors.size() == actions.size()) {
+                deliver();
+            }
+        }
+
+        void deliver() {
+            Map<DeviceAction, String> ordered = new LinkedHashMap<>();
+            Map<DeviceAction, String> failed = new LinkedHashMap<>();
+            for (DeviceAction action : actions) {
+                if (errors.containsKey(action)) {
+                    failed.put(action, errors.get(action));
+                } else {
+                    ordered.put(action, results.get(action));
+                }
+            }
+            callback.onComplete(ordered, failed);
+        }
+    }
+
+    /**
+     * Persist a command that could not be sent; false if the outbox is not available yet.
+     * The caller is told only once the record is on disk, so "saved" is never reported
+     * for a command a crash could still lose.
+     *
+     * @param saved Told on the main thread with the message for the caller
+     */
+    private boolean queueOffline(String type, String payload, OfflineCallback saved) {
+        if (outbox == null) {
+            return false;
+        }
+        outbox.append(type, payload, durable -> mainHandler.post(() -> saved.onResult(durable
+                ? QUEUED_OFFLINE_MESSAGE
+                : "No connectivity and the command could not be saved.")));
+        return true;
+    }
+
+    // Message for the caller of a command that went to the outbox
+    private interface OfflineCallback {
+        void onResult(String message);
+    }
+
+    /**
+     * Send commands saved while offline, oldest device first, keeping only the newest
+     * command per device. Stops at the first failure and is retried on the next call.
+     * Must be called on the main thread.
+     */
+    public void replayOutbox() {
+        if (outbox == null || !outbox.isLoaded() || replayingOutbox) {
+            return;
+        }
+        outbox.expire(OUTBOX_MAX_AGE_MS);
+        if (outbox.size() == 0 || !(isConnectedToNexadomus() || hasInternetAccess())) {
+            return;
+        }
+        replayingOutbox = true;
+        replayNext(outbox.getPending(true), 0, System.currentTimeMillis());
+    }
+
+    private void replayNext(List<CommandOutbox.Entry> entries, int index, long startedAt) {
+        if (index >= entries.size()) {
+            outbox.recordReplay(entries.size(), System.currentTimeMillis() - startedAt);
+            outbox.sync();
+            replayingOutbox = false;
+            return;
+        }
+
+        CommandOutbox.Entry entry = entries.get(index);
+        if (entry.getType().equals(CommandOutbox.TYPE_CUSTOM) && !hasInternetAccess()) {
+            // Custom commands only travel through ThingSpeak; keep them for a later pass
+            replayNext(entries, index + 1, startedAt);
+            return;
+        }
+        ApiCallback next = new ApiCallback() {
+            @Override
+            public void onSuccess(String response) {
+                outbox.acknowledge(entry, true);
+                replayNext(entries, index + 1, startedAt);
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.w(TAG, "Outbox replay stopped: " + error);
+                outbox.recordReplay(index, System.currentTimeMillis() - startedAt);
+                replayingOutbox = false;
+            }
+        };
+
+        String payload = entry.getPayload();
+        switch (entry.getType()) {
+            case CommandOutbox.TYPE_GARAGE:
+                controlGarage(payload, next, false);
+                break;
+            case CommandOutbox.TYPE_LIGHTS:
+                controlLights(Integer.parseInt(payload), next, false);
+                break;
+            case CommandOutbox.TYPE_SPRINKLERS:
+                controlSprinklers(payload, next, false);
+                break;
+            default:
+                sendCustomCommand(payload, next, false);
+                break;
         }
     }
 
-    // Get device status - only works on local network
-    public void getStatus(ApiCallback callback) {
+    // Pending count, fsyncs and replay throughput of the offline command log
+    public CommandOutbox getOutbox() {
+        return outbox;
+    }
+
+    // Get device status from the hub, or the last commanded state when away from it
+    public void getStatus(StatusCallback callback) {
+        getStatus(false, callback);
+    }
+
+    /**
+     * Get device status, sharing one in-flight request and a short-lived cached
+     * snapshot between all screens. Away from the hub the status is rebuilt from the
+     * commands on the ThingSpeak channel (see DeviceStatus.isRemote()); such snapshots
+     * are not published to status listeners.
+     *
+     * @param forceRefresh Bypass the cached snapshot and go to the hub
+     * @param callback     Receives the published snapshot or an error
+     */
+    public void getStatus(boolean forceRefresh, StatusCallback callback) {
         // This only works when connected to the local network
         if (isConnectedToNexadomus()) {
-            String endpoint = BASE_URL + "/status";
-            executeRequest(endpoint, callback);
+            statusCache.get(forceRefresh, callback);
+        } else if (hasInternetAccess()) {
+            // The hub is out of reach; report what the devices were last told through ThingSpeak
+            thingSpeakClient.getRemoteStatus(forceRefresh, callback);
         } else {
             mainHandler.post(() -> callback.onError("Not connected to Nexadomus network. Status check requires local connection."));
         }
     }
     
-    // Check if connected to Nexadomus hotspot
-    private boolean isConnectedToNexadomus() {
-        if (appContext == null) {
-            return false;
+    /**
+     * Read the status of every hub. All hubs are asked at once, so the answer arrives
+     * about as soon as the slowest one has replied. The primary hub's snapshot is also
+     * published to status listeners.
+     */
+    public void getAllStatus(final HubFanOut.Callback<DeviceStatus> callback) {
+        if (!isConnectedToNexadomus()) {
+            failAllHubs(callback, "Not connected to Nexadomus network. Status check requires local connection.");
+            return;
         }
-        
-        WifiManager wifiManager = (WifiManager) appContext.getSystemService(Context.WIFI_SERVICE);
-        if (wifiManager == null) {
-            return false;
+        hubFanOut.run(hubRegistry.getClients(), RequestScheduler.Lane.BACKGROUND, (hub, handle) -> {
+            return hub.getStatus(handle);
+        }, new PublishingCallback(callback));
+    }
+
+    /**
+     * Send the same command to every hub at once, e.g. "/lights?brightness=0" to switch
+     * off the lights everywhere. Results hold each hub's response body.
+     */
+    public void sendGroupCommand(String path, HubFanOut.Callback<String> callback) {
+        if (!isConnectedToNexadomus()) {
+            failAllHubs(callback, "Not connected to Nexadomus network. Group commands require local connection.");
+            return;
         }
-        
-        WifiInfo wifiInfo = wifiManager.getConnectionInfo();
-        if (wifiInfo == null) {
-            return false;
+        statusCache.invalidate();
+        hubFanOut.run(hubRegistry.getClients(), RequestScheduler.Lane.INTERACTIVE, (hub, handle) -> {
+            HubConnectionPool.Response response = hub.command(path, handle);
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP Error: " + response.getCode());
+            }
+            return response.getBodyAsString();
+        }, callback);
+    }
+
+    // Start a trace for a command and report the transport's answer to it
+    private ApiCallback traced(String device, String value, ApiCallback callback) {
+        return new TracedCallback(callback, commandTracer.begin(device, value));
+    }
+
+    private class TracedCallback implements ApiCallback, RequestHandle.Carrier, CommandTrace.Carrier {
+        private final ApiCallback delegate;
+        private final CommandTrace trace;
+
+        TracedCallback(ApiCallback delegate, CommandTrace trace) {
+            this.delegate = delegate;
+            this.trace = trace;
+        }
+
+        @Override
+        public void onSuccess(String response) {
+            commandTracer.acknowledged(trace, null);
+            delegate.onSuccess(response);
+        }
+
+        @Override
+        public void onError(String error) {
+            commandTracer.acknowledged(trace, error);
+            delegate.onError(error);
+        }
+
+        @Override
+        public RequestHandle getRequestHandle() {
+            return RequestHandle.of(delegate);
+        }
+
+        @Override
+        public List<CommandTrace> getCommandTraces() {
+            return Collections.singletonList(trace);
+        }
+    }
+
+    // Hands one result to several callers
+    private static class FanOutCallback implements ApiCallback {
+        private final List<ApiCallback> callbacks;
+
+        FanOutCallback(List<ApiCallback> callbacks) {
+            this.callbacks = callbacks;
+        }
+
+        @Override
+        public void onSuccess(String response) {
+            for (ApiCallback callback : callbacks) {
+                callback.onSuccess(response);
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            for (ApiCallback callback : callbacks) {
+                callback.onError(error);
+            }
+        }
+    }
+
+    // Publishes the primary hub's snapshot before handing the results on
+    private class PublishingCallback implements HubFanOut.Callback<DeviceStatus>, RequestHandle.Carrier {
+        private final HubFanOut.Callback<DeviceStatus> delegate;
+
+        PublishingCallback(HubFanOut.Callback<DeviceStatus> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onComplete(Map<String, DeviceStatus> results, Map<String, String> errors) {
+            DeviceStatus primary = results.get(primaryHub.getId());
+            if (primary != null) {
+                results.put(primaryHub.getId(), statusPublisher.publish(primary, false));
+            }
+            delegate.onComplete(results, errors);
+        }
+
+        @Override
+        public RequestHandle getRequestHandle() {
+            return RequestHandle.of(delegate);
+        }
+    }
+
+    private <T> void failAllHubs(HubFanOut.Callback<T> callback, String error) {
+        Map<String, String> errors = new LinkedHashMap<>();
+        for (Hub hub : hubRegistry.getHubs()) {
+            errors.put(hub.getId(), error);
+        }
+        mainHandler.post(() -> callback.onComplete(new LinkedHashMap<>(), errors));
+    }
+
+    // The controllers of the installation, primary first
+    public List<Hub> getHubs() {
+        return hubRegistry.getHubs();
+    }
+
+    /**
+     * Add a hub, or rename or move the hub with the same id. Moving the primary hub
+     * also moves the event stream.
+     */
+    public void addHub(Hub hub) {
+        hubRegistry.addHub(hub);
+        if (hub.getId().equals(primaryHub.getId())) {
+            statusCache.invalidate();
+            localBatchUnsupported = false;
         }
-        
-        String ssid = wifiInfo.getSSID();
-        if (ssid != null) {
-            // Remove quotes if present
-            ssid = ssid.replace("\"", "");
-            return NEXADOMUS_SSID.equals(ssid);
+        onHubsChanged();
+    }
+
+    // Forget a hub; the primary hub cannot be removed
+    public boolean removeHub(String id) {
+        return hubRegistry.removeHub(id);
+    }
+
+    // Wi-Fi network the hubs are reached on
+    public void setHubNetworkSsid(String ssid) {
+        hubRegistry.setNetworkSsid(ssid);
+        onHubsChanged();
+    }
+
+    /**
+     * Find hubs on the current network. Known hubs are reported from the cache at once;
+     * a background probe follows when the cache is due for a refresh. Registered hubs
+     * that answer from a new address are moved there.
+     */
+    public void discoverHubs(boolean forceRefresh, HubDiscovery.Listener listener) {
+        hubDiscovery.discover(forceRefresh, new HubDiscovery.Listener() {
+            @Override
+            public void onHubsFound(List<Hub> hubs, boolean fromCache) {
+                if (!fromCache) {
+                    followMovedHubs(hubs);
+                }
+                listener.onHubsFound(hubs, fromCache);
+            }
+
+            @Override
+            public void onDiscoveryFailed(String error) {
+                listener.onDiscoveryFailed(error);
+            }
+        });
+    }
+
+    // DHCP may hand a hub a new address; keep the registered name and take the new address
+    private void followMovedHubs(List<Hub> discovered) {
+        for (Hub found : discovered) {
+            for (Hub known : hubRegistry.getHubs()) {
+                if (known.equals(found) && (!known.getHost().equals(found.getHost())
+                        || known.getPort() != found.getPort())) {
+                    Log.i(TAG, "Hub " + known.getId() + " moved to " + found.getHost() + ":" + found.getPort());
+                    addHub(new Hub(known.getId(), known.getName(), found.getHost(), found.getPort()));
+                }
+            }
+        }
+    }
+
+    // Probe, reply and cache counters of hub discovery
+    public HubDiscovery getHubDiscovery() {
+        return hubDiscovery;
+    }
+
+    private static InetAddress broadcastAddress() {
+        try {
+            return InetAddress.getByAddress(new byte[]{(byte) 255, (byte) 255, (byte) 255, (byte) 255});
+        } catch (UnknownHostException e) {
+            // Only thrown for addresses of the wrong length
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Run count and wall times of requests sent to every hub at once
+    public HubFanOut getHubFanOut() {
+        return hubFanOut;
+    }
+
+    // Point the event stream and network detection at the current registry
+    private void onHubsChanged() {
+        Hub primary = primaryHub.getHub();
+        statusStream.setEndpoint(primary.getHost(), primary.getPort());
+        connectivityMonitor.setHubSsid(hubRegistry.getNetworkSsid());
+    }
+
+    /**
+     * Open the push channel to the hub while the app is in the foreground.
+     * Does nothing when not on the Nexadomus network or when the hub has no event stream.
+     */
+    public void startStatusStream() {
+        statusStreamWanted = true;
+        if (isConnectedToNexadomus()) {
+            statusStream.start();
         }
-        
-        return false;
     }
 
-    // Execute HTTP request in background thread
-    private void executeRequest(final String urlString, final ApiCallback callback) {
-        executor.execute(() -> {
-            HttpURLConnection connection = null;
+    public void stopStatusStream() {
+        statusStreamWanted = false;
+        statusStream.stop();
+    }
+
+    // React to joining or leaving the hub network without waiting for the next screen change
+    private void onPathChanged(ConnectivityMonitor.Path previous, ConnectivityMonitor.Path current, long previousDurationMillis) {
+        if (previous == ConnectivityMonitor.Path.LOCAL_HUB) {
+            // Sockets to the hub are dead once we leave its network
+            bindLocalTraffic(null);
+            statusStream.stop();
+            statusCache.invalidate();
+        }
+        if (current == ConnectivityMonitor.Path.LOCAL_HUB) {
+            bindLocalTraffic(connectivityMonitor.getHubNetwork());
+            // A rebooted hub restarts its access point, so rejoining means it is back; probe right away
+            for (HubClient hub : hubRegistry.getClients()) {
+                hub.getCircuitBreaker().reset();
+            }
+            if (statusStreamWanted) {
+                statusStream.start();
+            }
+        }
+        if (current != ConnectivityMonitor.Path.NONE) {
+            replayOutbox();
+        }
+    }
+
+    // The hub AP has no internet, so Android may keep the default route on mobile data;
+    // open hub sockets through the Wi-Fi network itself so they never take the wrong interface
+    private void bindLocalTraffic(Network hubNetwork) {
+        SocketFactory factory = hubNetwork != null ? hubNetwork.getSocketFactory() : null;
+        hubRegistry.setNetwork(hubNetwork, HUB_INTERFACE);
+        hubDiscovery.setNetwork(hubNetwork);
+        statusStream.setSocketFactory(factory);
+    }
+
+    // Time to first byte of primary hub responses, keyed by the interface the request went out on
+    public Map<String, HubConnectionPool.FirstByteTiming> getLocalFirstByteTimings() {
+        return primaryHub.getConnectionPool().getFirstByteTimings();
+    }
+
+    /**
+     * Subscribe to device state changes from status reads and from the hub's event stream.
+     * Listeners are called on the main thread with the full merged snapshot.
+     */
+    public void addStatusListener(StatusListener listener) {
+        statusPublisher.addListener(listener);
+    }
+
+    public void removeStatusListener(StatusListener listener) {
+        statusPublisher.removeListener(listener);
+    }
+
+    // The most recently published device state, or null before the first status read
+    public DeviceStatus getCurrentStatus() {
+        return statusPublisher.getCurrent();
+    }
+
+    // Pushed events: "status" replaces the snapshot, "change" carries only the fields that changed
+    private void onStatusEvent(String event, String data) {
+        // The cached snapshot predates this event
+        statusCache.invalidate();
+        try {
+            statusPublisher.publish(StatusDecoder.decode(data), StatusStream.EVENT_CHANGE.equals(event));
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring malformed status event: " + e.getMessage());
+        }
+    }
+
+    public StatusStream getStatusStream() {
+        return statusStream;
+    }
+
+    // Check if connected to Nexadomus hotspot
+    private boolean isConnectedToNexadomus() {
+        return connectivityMonitor.isOnHubNetwork();
+    }
+
+    // Current path to the hub, plus transition count and time in the current path
+    public ConnectivityMonitor getConnectivityMonitor() {
+        return connectivityMonitor;
+    }
+
+    // Submitted, sent and collapsed counts for local device commands
+    public CommandCoalescer getCommandCoalescer() {
+        return commandCoalescer;
+    }
+
+    // Hit, miss and coalesce counters for shared status requests
+    public StatusCache getStatusCache() {
+        return statusCache;
+    }
+
+    // Latency, outcome, queue wait and bytes per endpoint, hub and ThingSpeak alike
+    public RequestMetrics getRequestMetrics() {
+        return metrics;
+    }
+
+    // Enqueue, dispatch, ack and device-applied times of recent commands
+    public CommandTracer getCommandTracer() {
+        return commandTracer;
+    }
+
+    // Conditional /status reads of the primary hub: 304s, parses avoided and bytes saved
+    public StatusValidator getStatusValidator() {
+        return primaryHub.getStatusValidator();
+    }
+
+    // Delta /status reads of the primary hub: deltas merged, full resyncs and version gaps
+    public StatusDeltaSync getStatusSync() {
+        return primaryHub.getStatusSync();
+    }
+
+    // Connection reuse statistics for the primary hub transport
+    public HubConnectionPool getLocalConnectionPool() {
+        return primaryHub.getConnectionPool();
+    }
+
+    // Read the primary hub's status, as a delta or a conditional full read (see HubClient.getStatus);
+    // a background refresh never holds up a command
+    private void fetchLocalStatus(final StatusCallback callback) {
+        final RequestHandle handle = RequestHandle.of(callback);
+        if (!primaryHub.allowRequest()) {
+            metrics.recordError(RequestMetrics.Endpoint.STATUS, RequestMetrics.Cause.CIRCUIT_OPEN);
+            mainHandler.post(() -> callback.onError(hubUnavailableMessage()));
+            return;
+        }
+        final long queuedAt = System.currentTimeMillis();
+        boolean queued = scheduler.submit(RequestScheduler.Lane.BACKGROUND, () -> {
+            metrics.recordQueueWait(RequestMetrics.Endpoint.STATUS, System.currentTimeMillis() - queuedAt);
+            if (handle != null && handle.isCancelled()) {
+                primaryHub.release();
+                // Everyone waiting for this read has left; don't spend the radio on it
+                mainHandler.post(() -> callback.onError(CANCELLED_MESSAGE));
+                return;
+            }
             try {
-                URL url = new URL(urlString);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setConnectTimeout(5000);
-                connection.setReadTimeout(5000);
-
-                int responseCode = connection.getResponseCode();
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    BufferedReader in = new BufferedReader(
-                            new InputStreamReader(connection.getInputStream()));
-                    String inputLine;
-                    StringBuilder response = new StringBuilder();
-
-                    while ((inputLine = in.readLine()) != null) {
-                        response.append(inputLine);
-                    }
-                    in.close();
+                DeviceStatus decoded = primaryHub.getStatus(handle);
+                mainHandler.post(() -> callback.onSuccess(statusPublisher.publish(decoded, false)));
+            } catch (IOException e) {
+                final String errorMsg = localFailure(e, handle);
+                mainHandler.post(() -> callback.onError(errorMsg));
+            }
+        });
+        if (!queued) {
+            primaryHub.release();
+            metrics.recordError(RequestMetrics.Endpoint.STATUS, RequestMetrics.Cause.QUEUE_FULL);
+            mainHandler.post(() -> callback.onError("Too many pending requests"));
+        }
+    }
 
-                    final String result = response.toString();
+    // Execute a command against the local hub on the interactive lane, reusing pooled sockets
+    private void executeLocalRequest(final String path, final ApiCallback callback) {
+        final RequestHandle handle = RequestHandle.of(callback);
+        final RequestMetrics.Endpoint endpoint = RequestMetrics.Endpoint.ofHubPath(path);
+        if (!primaryHub.allowRequest()) {
+            metrics.recordError(endpoint, RequestMetrics.Cause.CIRCUIT_OPEN);
+            mainHandler.post(() -> callback.onError(hubUnavailableMessage()));
+            return;
+        }
+        final long queuedAt = System.currentTimeMillis();
+        boolean queued = scheduler.submit(RequestScheduler.Lane.INTERACTIVE, () -> {
+            metrics.recordQueueWait(endpoint, System.currentTimeMillis() - queuedAt);
+            if (handle != null && handle.isCancelled()) {
+                primaryHub.release();
+                mainHandler.post(() -> callback.onError(CANCELLED_MESSAGE));
+                return;
+            }
+            commandTracer.dispatched(CommandTrace.of(callback), CommandTrace.ROUTE_HUB);
+            try {
+                HubConnectionPool.Response response = primaryHub.command(path, handle);
+                if (response.getCode() == HttpURLConnection.HTTP_OK) {
+                    final String result = response.getBodyAsString();
                     mainHandler.post(() -> callback.onSuccess(result));
                 } else {
-                    final String error = "HTTP Error: " + responseCode;
+                    final String error = "HTTP Error: " + response.getCode();
                     mainHandler.post(() -> callback.onError(error));
                 }
             } catch (IOException e) {
-                Log.e(TAG, "Network error: " + e.getMessage());
-                final String errorMsg = "Network error: " + e.getMessage();
+                final String errorMsg = localFailure(e, handle);
                 mainHandler.post(() -> callback.onError(errorMsg));
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
             }
         });
+        if (!queued) {
+            primaryHub.release();
+            metrics.recordError(endpoint, RequestMetrics.Cause.QUEUE_FULL);
+            mainHandler.post(() -> callback.onError("Too many pending requests"));
+        }
+    }
+
+    // Error message for a failed hub request; the hub client has already recorded the outcome
+    private String localFailure(IOException e, RequestHandle handle) {
+        if (handle != null && handle.isCancelled()) {
+            return CANCELLED_MESSAGE;
+        }
+        Log.e(TAG, "Network error: " + e.getMessage());
+        return "Network error: " + e.getMessage();
+    }
+
+    private String hubUnavailableMessage() {
+        long seconds = (primaryHub.getCircuitBreaker().millisUntilRetry() + 999) / 1000;
+        return "Hub not responding. Retrying in " + Math.max(1, seconds) + " s.";
     }
-} 
\ No newline at end of file
+}
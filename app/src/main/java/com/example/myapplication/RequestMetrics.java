@@ -0,0 +1,246 @@
+package com.example.myapplication;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency, outcome, queue wait and byte counts for every request the app makes, kept
+ * per endpoint.
+ *
+ * Recording is cheap enough for every request: the endpoint is picked by prefix
+ * matching and every sample lands in a preallocated histogram or counter, so nothing is
+ * allocated on the request path. Reading builds strings and is meant for the
+ * diagnostics screen.
+ */
+public class RequestMetrics {
+    // Latency histograms follow recent traffic rather than the whole session
+    private static final long DECAY_THRESHOLD = 2000;
+
+    public enum Endpoint {
+        LIGHTS("/lights"),
+        GARAGE("/garage"),
+        SPRINKLERS("/sprinklers"),
+        STATUS("/status"),
+        BATCH("/batch"),
+        EVENTS("/events"),
+        THINGSPEAK_UPDATE("ThingSpeak /update"),
+        THINGSPEAK_FEED("ThingSpeak feed"),
+        OTHER("other");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        // Endpoint of a hub path such as "/lights?brightness=128"
+        public static Endpoint ofHubPath(String path) {
+            if (path.startsWith("/status")) {
+                return STATUS;
+            } else if (path.startsWith("/lights")) {
+                return LIGHTS;
+            } else if (path.startsWith("/garage")) {
+                return GARAGE;
+            } else if (path.startsWith("/sprinklers")) {
+                return SPRINKLERS;
+            } else if (path.startsWith("/batch")) {
+                return BATCH;
+            } else if (path.startsWith("/events")) {
+                return EVENTS;
+            }
+            return OTHER;
+        }
+
+        // Endpoint of a ThingSpeak URL; single and bulk writes both count as /update
+        public static Endpoint ofThingSpeakUrl(String url) {
+            return url.contains("update") ? THINGSPEAK_UPDATE : THINGSPEAK_FEED;
+        }
+    }
+
+    public enum Cause {
+        HTTP_ERROR("http"),
+        TIMEOUT("timeout"),
+        NETWORK("network"),
+        MALFORMED("malformed"),
+        CANCELLED("cancelled"),
+        QUEUE_FULL("queue full"),
+        CIRCUIT_OPEN("circuit open");
+
+        private final String label;
+
+        Cause(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Cause[] CAUSES = Cause.values();
+
+    public static class EndpointStats {
+        private final Endpoint endpoint;
+        private final LatencyHistogram latency = new LatencyHistogram(DECAY_THRESHOLD);
+        private final LatencyHistogram queueWait = new LatencyHistogram(DECAY_THRESHOLD);
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLongArray errors = new AtomicLongArray(CAUSES.length);
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+
+        EndpointStats(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public Endpoint getEndpoint() {
+            return endpoint;
+        }
+
+        // Round trips of requests the other side answered
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        // Time between queueing a request and a worker picking it up
+        public LatencyHistogram getQueueWait() {
+            return queueWait;
+        }
+
+        public long getSuccessCount() {
+            return successes.get();
+        }
+
+        public long getErrorCount(Cause cause) {
+            return errors.get(cause.ordinal());
+        }
+
+        public long getErrorCount() {
+            long total = 0;
+            for (int i = 0; i < CAUSES.length; i++) {
+                total += errors.get(i);
+            }
+            return total;
+        }
+
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        public boolean isEmpty() {
+            return successes.get() == 0 && getErrorCount() == 0 && queueWait.getCount() == 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(endpoint.getLabel())
+                    .append("\n  ok ").append(successes.get()).append(", errors ").append(getErrorCount());
+            for (Cause cause : CAUSES) {
+                long count = errors.get(cause.ordinal());
+                if (count > 0) {
+                    sb.append(", ").append(cause.getLabel()).append(' ').append(count);
+                }
+            }
+            sb.append("\n  latency ").append(latency)
+                    .append("\n  queue wait p50=").append(queueWait.getPercentile(0.5))
+                    .append("ms p95=").append(queueWait.getPercentile(0.95))
+                    .append("ms\n  ").append(formatBytes(bytesSent.get())).append(" sent, ")
+                    .append(formatBytes(bytesReceived.get())).append(" received");
+            return sb.toString();
+        }
+    }
+
+    private static RequestMetrics instance;
+    private final EndpointStats[] stats;
+
+    // Separate registries for tests; the app shares getInstance()
+    RequestMetrics() {
+        Endpoint[] endpoints = Endpoint.values();
+        stats = new EndpointStats[endpoints.length];
+        for (Endpoint endpoint : endpoints) {
+            stats[endpoint.ordinal()] = new EndpointStats(endpoint);
+        }
+    }
+
+    public static synchronized RequestMetrics getInstance() {
+        if (instance == null) {
+            instance = new RequestMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Record an answered request. Codes of 400 and up count as HTTP errors; they still
+     * tell how long the round trip took.
+     */
+    public void recordResponse(Endpoint endpoint, int code, long latencyMillis) {
+        EndpointStats s = stats[endpoint.ordinal()];
+        if (code >= 400) {
+            s.errors.incrementAndGet(Cause.HTTP_ERROR.ordinal());
+        } else {
+            s.successes.incrementAndGet();
+        }
+        s.latency.record(latencyMillis);
+    }
+
+    // A request that got no answer, or never went out
+    public void recordError(Endpoint endpoint, Cause cause) {
+        stats[endpoint.ordinal()].errors.incrementAndGet(cause.ordinal());
+    }
+
+    public void recordQueueWait(Endpoint endpoint, long millis) {
+        stats[endpoint.ordinal()].queueWait.record(millis);
+    }
+
+    public void recordBytes(Endpoint endpoint, long sent, long received) {
+        EndpointStats s = stats[endpoint.ordinal()];
+        s.bytesSent.addAndGet(sent);
+        s.bytesReceived.addAndGet(received);
+    }
+
+    public EndpointStats get(Endpoint endpoint) {
+        return stats[endpoint.ordinal()];
+    }
+
+    public void reset() {
+        for (EndpointStats s : stats) {
+            s.latency.reset();
+            s.queueWait.reset();
+            s.successes.set(0);
+            for (int i = 0; i < CAUSES.length; i++) {
+                s.errors.set(i, 0);
+            }
+            s.bytesSent.set(0);
+            s.bytesReceived.set(0);
+        }
+    }
+
+    // Every endpoint that has seen traffic, one block each
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (EndpointStats s : stats) {
+            if (!s.isEmpty()) {
+                sb.append(sb.length() > 0 ? "\n\n" : "").append(s);
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : "No requests yet";
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format(Locale.US, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.US, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.myapplication;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared worker pool for hub and ThingSpeak requests, split into priority lanes.
+ *
+ * A free worker always takes the oldest task of the highest-priority lane that is
+ * below its concurrency limit, so a user's command never waits behind a slow status
+ * poll or a schedule sync. Each lane has a bounded queue; work beyond it is refused
+ * rather than piling up behind a hub that stopped answering.
+ */
+public class RequestScheduler {
+    private static final String TAG = "RequestScheduler";
+    private static final int MAX_WORKERS = 8;
+
+    // In priority order
+    public enum Lane {
+        // Limits leave room to reach every hub at once; each hub's connection pool
+        // still caps what a single controller sees
+        INTERACTIVE(4, 32), // Commands the user is waiting on
+        // ThingSpeak writes and feed reads take seconds; their own slots keep them
+        // from holding up local commands
+        THINGSPEAK(2, 32),
+        BACKGROUND(3, 16),  // Status refreshes
+        SYNC(1, 32);        // Schedule syncs and other writes nobody is watching
+
+        final int maxConcurrent;
+        final int capacity;
+
+        Lane(int maxConcurrent, int capacity) {
+            this.maxConcurrent = maxConcurrent;
+            this.capacity = capacity;
+        }
+    }
+
+    private static class Task {
+        final Runnable runnable;
+        final long enqueuedAt;
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+            this.enqueuedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static class LaneState {
+        final ArrayDeque<Task> queue = new ArrayDeque<>();
+        final LatencyHistogram queueWait = new LatencyHistogram(1000);
+        int running;
+        int maxDepth;
+        long submitted;
+        long rejected;
+        long completed;
+    }
+
+    private static RequestScheduler instance;
+
+    private final Executor workers;
+    private final int maxWorkers;
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private int runningTotal;
+
+    private RequestScheduler() {
+        this(Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), MAX_WORKERS);
+    }
+
+    /**
+     * @param workers    Runs each started task; must not run it on the caller's stack
+     * @param maxWorkers Tasks that may run at once across all lanes
+     */
+    RequestScheduler(Executor workers, int maxWorkers) {
+        this.workers = workers;
+        this.maxWorkers = maxWorkers;
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new LaneState());
+        }
+    }
+
+    public static synchronized RequestScheduler getInstance() {
+        if (instance == null) {
+            instance = new RequestScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a request on a lane.
+     *
+     * @return False if the lane's queue is full; the task will not run
+     */
+    public boolean submit(Lane lane, Runnable task) {
+        synchronized (this) {
+            LaneState state = lanes.get(lane);
+            if (state.queue.size() >= lane.capacity) {
+                state.rejected++;
+                Log.w(TAG, lane + " queue full, refusing request");
+                return false;
+            }
+            state.queue.addLast(new Task(task));
+            state.submitted++;
+            state.maxDepth = Math.max(state.maxDepth, state.queue.size());
+        }
+        dispatch();
+        return true;
+    }
+
+    // Start as many queued tasks as the worker and lane limits allow
+    private void dispatch() {
+        while (true) {
+            final Lane lane;
+            final Task task;
+            synchronized (this) {
+                if (runningTotal >= maxWorkers) {
+                    return;
+                }
+                Lane picked = null;
+                for (Lane candidate : Lane.values()) {
+                    LaneState state = lanes.get(candidate);
+                    if (!state.queue.isEmpty() && state.running < candidate.maxConcurrent) {
+                        picked = candidate;
+                        break;
+                    }
+                }
+                if (picked == null) {
+                    return;
+                }
+                lane = picked;
+                LaneState state = lanes.get(lane);
+                task = state.queue.pollFirst();
+                state.running++;
+                runningTotal++;
+                state.queueWait.record(System.currentTimeMillis() - task.enqueuedAt);
+            }
+            workers.execute(() -> run(lane, task));
+        }
+    }
+
+    private void run(Lane lane, Task task) {
+        try {
+            task.runnable.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Request on " + lane + " failed: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                LaneState state = lanes.get(lane);
+                state.running--;
+                state.completed++;
+                runningTotal--;
+            }
+            dispatch();
+        }
+    }
+
+    public synchronized int getQueueDepth(Lane lane) {
+        return lanes.get(lane).queue.size();
+    }
+
+    public synchronized int getMaxQueueDepth(Lane lane) {
+        return lanes.get(lane).maxDepth;
+    }
+
+    public synchronized int getRunning(Lane lane) {
+        return lanes.get(lane).running;
+    }
+
+    public synchronized long getSubmittedCount(Lane lane) {
+        return lanes.get(lane).submitted;
+    }
+
+    public synchronized long getRejectedCount(Lane lane) {
+        return lanes.get(lane).rejected;
+    }
+
+    public synchronized long getCompletedCount(Lane lane) {
+        return lanes.get(lane).completed;
+    }
+
+    // Time tasks on this lane spent queued before a worker picked them up
+    public LatencyHistogram getQueueWait(Lane lane) {
+        synchronized (this) {
+            return lanes.get(lane).queueWait;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.myapplication;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Requests made on behalf of one screen, cancelled together when the screen goes away.
+ *
+ * Wrap each callback with bind() before handing it to NexadomusApiClient. When the scope
+ * closes, queued requests are dropped, in-flight hub sockets are closed, and the wrapped
+ * callbacks let go of the screen and are never called.
+ */
+public class RequestScope implements LifecycleEventObserver {
+    private final Set<RequestHandle> active = new HashSet<>();
+    private boolean closed;
+
+    /**
+     * A scope that closes when the owner is destroyed. Fragments should pass
+     * getViewLifecycleOwner(), since their callbacks touch views.
+     */
+    public static RequestScope of(LifecycleOwner owner) {
+        RequestScope scope = new RequestScope();
+        owner.getLifecycle().addObserver(scope);
+        return scope;
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            source.getLifecycle().removeObserver(this);
+            cancelAll();
+        }
+    }
+
+    public NexadomusApiClient.ApiCallback bind(NexadomusApiClient.ApiCallback callback) {
+        return new ScopedApiCallback(register(), callback);
+    }
+
+    public NexadomusApiClient.StatusCallback bind(NexadomusApiClient.StatusCallback callback) {
+        return new ScopedStatusCallback(register(), callback);
+    }
+
+    // Cancel every outstanding request; requests bound afterwards are cancelled immediately
+    public void cancelAll() {
+        RequestHandle[] handles;
+        synchronized (this) {
+            closed = true;
+            handles = active.toArray(new RequestHandle[0]);
+            active.clear();
+        }
+        for (RequestHandle handle : handles) {
+            handle.cancel();
+        }
+    }
+
+    public synchronized int getActiveCount() {
+        return active.size();
+    }
+
+    private RequestHandle register() {
+        RequestHandle handle = new RequestHandle();
+        boolean alreadyClosed;
+        synchronized (this) {
+            alreadyClosed = closed;
+            if (!alreadyClosed) {
+                active.add(handle);
+            }
+        }
+        if (alreadyClosed) {
+            handle.cancel();
+        }
+        return handle;
+    }
+
+    private synchronized void finished(RequestHandle handle) {
+        active.remove(handle);
+    }
+
+    private class ScopedApiCallback implements NexadomusApiClient.ApiCallback, RequestHandle.Carrier {
+        private final RequestHandle handle;
+        private volatile NexadomusApiClient.ApiCallback delegate;
+
+        ScopedApiCallback(RequestHandle handle, NexadomusApiClient.ApiCallback delegate) {
+            this.handle = handle;
+            this.delegate = delegate;
+            handle.onCancel(() -> this.delegate = null);
+        }
+
+        @Override
+        public RequestHandle getRequestHandle() {
+            return handle;
+        }
+
+        @Override
+        public void onSuccess(String response) {
+            NexadomusApiClient.ApiCallback callback = take();
+            if (callback != null) {
+                callback.onSuccess(response);
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            NexadomusApiClient.ApiCallback callback = take();
+            if (callback != null) {
+                callback.onError(error);
+            }
+        }
+
+        private NexadomusApiClient.ApiCallback take() {
+            NexadomusApiClient.ApiCallback callback = delegate;
+            delegate = null;
+            finished(handle);
+            return handle.isCancelled() ? null : callback;
+        }
+    }
+
+    private class ScopedStatusCallback implements NexadomusApiClient.StatusCallback, RequestHandle.Carrier {
+        private final RequestHandle handle;
+        private volatile NexadomusApiClient.StatusCallback delegate;
+
+        ScopedStatusCallback(RequestHandle handle, NexadomusApiClient.StatusCallback delegate) {
+            this.handle = handle;
+            this.delegate = delegate;
+            handle.onCancel(() -> this.delegate = null);
+        }
+
+        @Override
+        public RequestHandle getRequestHandle() {
+            return handle;
+        }
+
+        @Override
+        public void onSuccess(DeviceStatus status) {
+            NexadomusApiClient.StatusCallback callback = take();
+            if (callback != null) {
+                callback.onSuccess(status);
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            NexadomusApiClient.StatusCallback callback = take();
+            if (callback != null) {
+                callback.onError(error);
+            }
+        }
+
+        private NexadomusApiClient.StatusCallback take() {
+            NexadomusApiClient.StatusCallback callback = delegate;
+            delegate = null;
+            finished(handle);
+            return handle.isCancelled() ? null : callback;
+        }
+    }
+}
@@ -21,10 +21,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -60,10 +57,18 @@ public class SprinklersFragment extends Fragment {
     private int scheduleDurationSeconds = 0; // Default scheduled duration seconds
     private int remainingTimerSeconds = 0;
     private NexadomusApiClient apiClient;
+    // Requests made for the current view, cancelled when the view is destroyed
+    private RequestScope requests;
     private SharedPreferences sharedPreferences;
     private int startTimeHour = 6;    // Default start time: 6:00 AM
     private int startTimeMinute = 0;  // Default start time minutes
     private int startTimeSecond = 0;  // Default start time seconds
+    // Version of the snapshot the views show, 0 once they may differ from it. A 304 hands back
+    // the same snapshot, and applying it again would restart the countdown from a stale value.
+    private long shownVersion;
+    
+    // Pushed changes arrive merged into the full snapshot, so timer and schedule stay consistent
+    private final NexadomusApiClient.StatusListener statusListener = this::applyStatus;
     
     // Number pickers for the manual duration selection
     private NumberPicker minutesPicker;
@@ -82,10 +87,13 @@ public class SprinklersFragment extends Fragment {
         // Initialize the API client
         apiClient = NexadomusApiClient.getInstance();
         apiClient.setAppContext(requireContext());
+        requests = RequestScope.of(getViewLifecycleOwner());
         
         // Initialize shared preferences for offline schedule storage
         sharedPreferences = requireContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         loadScheduleFromPreferences();
+        // Fresh views show the saved state, not a snapshot
+        shownVersion = 0;
 
         btnOn = view.findViewById(R.id.btnOn);
         btnOff = view.findViewById(R.id.btnOff);
@@ -163,6 +171,7 @@ public class SprinklersFragment extends Fragment {
         }
 
         btnOn.setOnClickListener(v -> {
+            shownVersion = 0;
             // Disable buttons during API call
             setButtonsEnabled(false);
             
@@ -179,7 +188,7 @@ public class SprinklersFragment extends Fragment {
             int totalSeconds = (selectedDurationMinutes * 60) + selectedDurationSeconds;
             
             // Turn on sprinklers with duration via API (convert to minutes and seconds)
-            apiClient.controlSprinklers("on&duration_seconds=" + totalSeconds, new NexadomusApiClient.ApiCallback() {
+            apiClient.controlSprinklers("on&duration_seconds=" + totalSeconds, requests.bind(new NexadomusApiClient.ApiCallback() {
                 @Override
                 public void onSuccess(String response) {
                     if (response.contains("Remote command sent")) {
@@ -202,11 +211,10 @@ public class SprinklersFragment extends Fragment {
                         // Start a timer display if we get remaining seconds
                         if (response.contains("remaining_seconds")) {
                             try {
-                                JSONObject json = new JSONObject(response);
-                                if (json.has("sprinkler_schedule")) {
-                                    JSONObject schedule = json.getJSONObject("sprinkler_schedule");
-                                    if (schedule.getBoolean("timer_active")) {
-                                        remainingTimerSeconds = schedule.getInt("remaining_seconds");
+                                DeviceStatus status = StatusDecoder.decode(response);
+                                if (status.hasSchedule()) {
+                                    if (status.isTimerActive()) {
+                                        remainingTimerSeconds = status.getRemainingSeconds();
                                         
                                         // Check if this is likely an override of an existing timer
                                         if (countDownTimer != null) {
@@ -217,7 +225,7 @@ public class SprinklersFragment extends Fragment {
                                         startTimerDisplay(remainingTimerSeconds);
                                     }
                                 }
-                            } catch (JSONException e) {
+                            } catch (IOException e) {
                                 e.printStackTrace();
                             }
                         } else {
@@ -234,15 +242,16 @@ public class SprinklersFragment extends Fragment {
                     showError("Failed to turn on sprinklers: " + error);
                     setButtonsEnabled(true);
                 }
-            });
+            }));
         });
 
         btnOff.setOnClickListener(v -> {
+            shownVersion = 0;
             // Disable buttons during API call
             setButtonsEnabled(false);
             
             // Turn off sprinklers via API
-            apiClient.controlSprinklers("off", new NexadomusApiClient.ApiCallback() {
+            apiClient.controlSprinklers("off", requests.bind(new NexadomusApiClient.ApiCallback() {
                 @Override
                 public void onSuccess(String response) {
                     if (response.contains("Remote command sent")) {
@@ -267,10 +276,11 @@ public class SprinklersFragment extends Fragment {
                     showError("Failed to turn off sprinklers: " + error);
                     setButtonsEnabled(true);
                 }
-            });
+            }));
         });
 
         btnConfirmDuration.setOnClickListener(v -> {
+            shownVersion = 0;
             if (countDownTimer != null) {
                 countDownTimer.cancel();
             }
@@ -288,7 +298,7 @@ public class SprinklersFragment extends Fragment {
             int totalSeconds = (selectedDurationMinutes * 60) + selectedDurationSeconds;
             
             // Send updated duration to ESP32
-            apiClient.controlSprinklers("on&duration_seconds=" + totalSeconds, new NexadomusApiClient.ApiCallback() {
+            apiClient.controlSprinklers("on&duration_seconds=" + totalSeconds, requests.bind(new NexadomusApiClient.ApiCallback() {
                 @Override
                 public void onSuccess(String response) {
                     Toast.makeText(getContext(), "Override complete, timer starts", Toast.LENGTH_SHORT).show();
@@ -300,7 +310,7 @@ public class SprinklersFragment extends Fragment {
                 public void onError(String error) {
                     showError("Failed to update timer duration: " + error);
                 }
-            });
+            }));
         });
 
         btnSchedule.setOnClickListener(v -> showScheduleDialog());
@@ -350,6 +360,116 @@ public class SprinklersFragment extends Fragment {
         
         // Refresh status when fragment becomes visible
         fetchCurrentStatus();
+        apiClient.addStatusListener(statusListener);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        apiClient.removeStatusListener(statusListener);
+    }
+    
+    // Apply the shared snapshot; timer and schedule state are updated together
+    private void applyStatus(DeviceStatus status) {
+        shownVersion = status.getVersion();
+        // Update sprinkler state
+        if (status.hasSprinkler()) {
+            isSprinklerOn = status.isSprinklerOn();
+        }
+        
+        // Update schedule if available
+        if (status.hasSchedule()) {
+            if (status.hasDays()) {
+                for (int i = 0; i < DeviceStatus.DAYS_PER_WEEK; i++) {
+                    scheduledDays[i] = status.isScheduledOn(i);
+                }
+            }
+            
+            if (status.getStartHour() != DeviceStatus.UNKNOWN) {
+                startTimeHour = status.getStartHour();
+            }
+            
+            if (status.getStartMinute() != DeviceStatus.UNKNOWN) {
+                startTimeMinute = status.getStartMinute();
+            }
+            
+            if (status.getStartSecond() != DeviceStatus.UNKNOWN) {
+                startTimeSecond = status.getStartSecond();
+            }
+            
+            if (status.getDurationMinutes() != DeviceStatus.UNKNOWN) {
+                scheduleDuration = status.getDurationMinutes();
+            }
+            
+            if (status.getDurationSeconds() != DeviceStatus.UNKNOWN) {
+                scheduleDurationSeconds = status.getDurationSeconds();
+            }
+            
+            // Handle timer status - could be manual timer or scheduled timer
+            boolean timerActive = false;
+            int remainingSecs = 0;
+            
+            if (status.isTimerActive()) {
+                timerActive = true;
+                
+                if (status.getRemainingSeconds() != DeviceStatus.UNKNOWN) {
+                    remainingSecs = status.getRemainingSeconds();
+                }
+            }
+            
+            // If there's an active timer and the sprinklers are on, show or update the timer display
+            if (timerActive && isSprinklerOn && remainingSecs > 0) {
+                // Cancel any existing timer to prevent duplicates
+                if (countDownTimer != null) {
+                    countDownTimer.cancel();
+                }
+                
+                // Start a new timer with the remaining seconds
+                startTimerDisplay(remainingSecs);
+                
+                // Show the duration layout only if we're in local mode
+                durationLayout.setVisibility(View.GONE);
+                
+            } else if (isSprinklerOn) {
+                // Sprinklers are on but no timer - show duration controls
+                durationLayout.setVisibility(View.VISIBLE);
+                
+                // Hide any existing timer display
+                if (countDownTimer != null) {
+                    countDownTimer.cancel();
+                }
+                timerText.setVisibility(View.GONE);
+                
+                // Clear timer preferences
+                sharedPreferences.edit()
+                    .putBoolean(PREF_TIMER_ACTIVE, false)
+                    .apply();
+            } else {
+                // Sprinklers are off - hide all timer UI
+                durationLayout.setVisibility(View.GONE);
+                
+                if (countDownTimer != null) {
+                    countDownTimer.cancel();
+                }
+                timerText.setVisibility(View.GONE);
+                
+                // Clear timer preferences
+                sharedPreferences.edit()
+                    .putBoolean(PREF_TIMER_ACTIVE, false)
+                    .apply();
+            }
+            
+            // Save schedule to preferences
+            saveScheduleToPreferences();
+            
+            // Update schedule text
+            updateScheduleText();
+        }
+    }
+    
+    // True if the views already show this snapshot; remote snapshots are never versioned
+    private boolean isShown(DeviceStatus status) {
+        return status.getVersion() != 0 && status.getVersion() == shownVersion;
     }
     
     private void fetchCurrentStatus() {
@@ -357,115 +477,16 @@ public class SprinklersFragment extends Fragment {
         setButtonsEnabled(false);
         
         // Get current status from ESP32
-        apiClient.getStatus(new NexadomusApiClient.ApiCallback() {
+        apiClient.getStatus(requests.bind(new NexadomusApiClient.StatusCallback() {
             @Override
-            public void onSuccess(String response) {
-                try {
-                    JSONObject json = new JSONObject(response);
-                    
-                    // Update sprinkler state
-                    if (json.has("sprinkler")) {
-                        isSprinklerOn = json.getInt("sprinkler") == 180;
-                    }
-                    
-                    // Update schedule from JSON if available
-                    if (json.has("sprinkler_schedule")) {
-                        JSONObject schedule = json.getJSONObject("sprinkler_schedule");
-                        
-                        if (schedule.has("days")) {
-                            JSONArray days = schedule.getJSONArray("days");
-                            for (int i = 0; i < Math.min(days.length(), 7); i++) {
-                                scheduledDays[i] = days.getBoolean(i);
-                            }
-                        }
-                        
-                        if (schedule.has("startHour")) {
-                            startTimeHour = schedule.getInt("startHour");
-                        }
-                        
-                        if (schedule.has("startMinute")) {
-                            startTimeMinute = schedule.getInt("startMinute");
-                        }
-                        
-                        if (schedule.has("startSecond")) {
-                            startTimeSecond = schedule.getInt("startSecond");
-                        }
-                        
-                        if (schedule.has("duration")) {
-                            scheduleDuration = schedule.getInt("duration");
-                        }
-                        
-                        if (schedule.has("durationSeconds")) {
-                            scheduleDurationSeconds = schedule.getInt("durationSeconds");
-                        }
-                        
-                        // Handle timer status - could be manual timer or scheduled timer
-                        boolean timerActive = false;
-                        int remainingSecs = 0;
-                        
-                        if (schedule.has("timer_active") && schedule.getBoolean("timer_active")) {
-                            timerActive = true;
-                            
-                            if (schedule.has("remaining_seconds")) {
-                                remainingSecs = schedule.getInt("remaining_seconds");
-                            }
-                        }
-                        
-                        // If there's an active timer and the sprinklers are on, show or update the timer display
-                        if (timerActive && isSprinklerOn && remainingSecs > 0) {
-                            // Cancel any existing timer to prevent duplicates
-                            if (countDownTimer != null) {
-                                countDownTimer.cancel();
-                            }
-                            
-                            // Start a new timer with the remaining seconds
-                            startTimerDisplay(remainingSecs);
-                            
-                            // Show the duration layout only if we're in local mode
-                            durationLayout.setVisibility(View.GONE);
-                            
-                        } else if (isSprinklerOn) {
-                            // Sprinklers are on but no timer - show duration controls
-                            durationLayout.setVisibility(View.VISIBLE);
-                            
-                            // Hide any existing timer display
-                            if (countDownTimer != null) {
-                                countDownTimer.cancel();
-                            }
-                            timerText.setVisibility(View.GONE);
-                            
-                            // Clear timer preferences
-                            sharedPreferences.edit()
-                                .putBoolean(PREF_TIMER_ACTIVE, false)
-                                .apply();
-                        } else {
-                            // Sprinklers are off - hide all timer UI
-                            durationLayout.setVisibility(View.GONE);
-                            
-                            if (countDownTimer != null) {
-                                countDownTimer.cancel();
-                            }
-                            timerText.setVisibility(View.GONE);
-                            
-                            // Clear timer preferences
-                            sharedPreferences.edit()
-                                .putBoolean(PREF_TIMER_ACTIVE, false)
-                                .apply();
-                        }
-                        
-                        // Save schedule to preferences
-                        saveScheduleToPreferences();
-                        
-                        // Update schedule text
-                        updateScheduleText();
-                    }
-                    
-                    showRemoteMode(false); // We're in local mode if we can get status
-                    
-                } catch (JSONException e) {
-                    e.printStackTrace();
+            public void onSuccess(DeviceStatus status) {
+                if (isShown(status)) {
+                    setButtonsEnabled(true);
+                    return;
                 }
-                
+                applyStatus(status);
+                // A remote snapshot is the last commanded state from ThingSpeak, not the hub's own
+                showRemoteMode(status.isRemote());
                 setButtonsEnabled(true);
             }
             
@@ -480,7 +501,7 @@ public class SprinklersFragment extends Fragment {
                 
                 setButtonsEnabled(true);
             }
-        });
+        }));
     }
 
     private void startTimerDisplay(int seconds) {
@@ -516,54 +537,43 @@ public class SprinklersFragment extends Fragment {
 
             @Override
             public void onFinish() {
+                shownVersion = 0;
                 timerText.setText("Timer: Complete");
                 
                 // Check if the sprinklers are still on via the ESP32 before sending an off command
-                apiClient.getStatus(new NexadomusApiClient.ApiCallback() {
+                apiClient.getStatus(true, requests.bind(new NexadomusApiClient.StatusCallback() {
                     @Override
-                    public void onSuccess(String response) {
-                        try {
-                            JSONObject json = new JSONObject(response);
-                            
-                            // Check if sprinklers are actually on
-                            boolean sprinklersOn = false;
-                            if (json.has("sprinkler")) {
-                                sprinklersOn = json.getInt("sprinkler") == 180;
-                            }
-                            
-                            // Only send the off command if sprinklers are actually on
-                            if (sprinklersOn) {
-                                // Send command to turn off the sprinklers
-                                apiClient.controlSprinklers("off", new NexadomusApiClient.ApiCallback() {
-                                    @Override
-                                    public void onSuccess(String response) {
-                                        // Update UI after successful command
-                                        isSprinklerOn = false;
-                                        durationLayout.setVisibility(View.GONE);
-                                        timerText.setVisibility(View.GONE);
-                                        Toast.makeText(getContext(), "Timer finished, turning off sprinklers", Toast.LENGTH_SHORT).show();
-                                    }
+                    public void onSuccess(DeviceStatus status) {
+                        // Check if sprinklers are actually on
+                        boolean sprinklersOn = status.isSprinklerOn();
+                        
+                        // Only send the off command if sprinklers are actually on
+                        if (sprinklersOn) {
+                            // Send command to turn off the sprinklers
+                            apiClient.controlSprinklers("off", requests.bind(new NexadomusApiClient.ApiCallback() {
+                                @Override
+                                public void onSuccess(String response) {
+                                    // Update UI after successful command
+                                    isSprinklerOn = false;
+                                    durationLayout.setVisibility(View.GONE);
+                                    timerText.setVisibility(View.GONE);
+                                    Toast.makeText(getContext(), "Timer finished, turning off sprinklers", Toast.LENGTH_SHORT).show();
+                                }
 
-                                    @Override
-                                    public void onError(String error) {
-                                        showError("Failed to turn off sprinklers: " + error);
-                                        // Still update UI even if command fails
-                                        isSprinklerOn = false;
-                                        durationLayout.setVisibility(View.GONE);
-                                        timerText.setVisibility(View.GONE);
-                                    }
-                                });
-                            } else {
-                                // Sprinklers are already off, just update UI
-                                isSprinklerOn = false;
-                                durationLayout.setVisibility(View.GONE);
-                                timerText.setVisibility(View.GONE);
-                            }
-                            
-                        } catch (JSONException e) {
-                            e.printStackTrace();
-                            // In case of error, still turn off as a precaution
-                            sendSprinklersOffCommand();
+                                @Override
+                                public void onError(String error) {
+                                    showError("Failed to turn off sprinklers: " + error);
+                                    // Still update UI even if command fails
+                                    isSprinklerOn = false;
+                                    durationLayout.setVisibility(View.GONE);
+                                    timerText.setVisibility(View.GONE);
+                                }
+                            }));
+                        } else {
+                            // Sprinklers are already off, just update UI
+                            isSprinklerOn = false;
+                            durationLayout.setVisibility(View.GONE);
+                            timerText.setVisibility(View.GONE);
                         }
                     }
 
@@ -572,7 +582,7 @@ public class SprinklersFragment extends Fragment {
                         // In case of error, still turn off as a precaution
                         sendSprinklersOffCommand();
                     }
-                });
+                }));
 
                 // Clear the timer state in preferences
                 sharedPreferences.edit()
@@ -584,7 +594,7 @@ public class SprinklersFragment extends Fragment {
     
     // Helper method to send off command
     private void sendSprinklersOffCommand() {
-        apiClient.controlSprinklers("off", new NexadomusApiClient.ApiCallback() {
+        apiClient.controlSprinklers("off", requests.bind(new NexadomusApiClient.ApiCallback() {
             @Override
             public void onSuccess(String response) {
                 // Update UI after successful command
@@ -602,7 +612,7 @@ public class SprinklersFragment extends Fragment {
                 durationLayout.setVisibility(View.GONE);
                 timerText.setVisibility(View.GONE);
             }
-        });
+        }));
     }
 
     private void showScheduleDialog() {
@@ -887,29 +897,30 @@ public class SprinklersFragment extends Fragment {
         textView.setText(String.format("%s: %d:%02d:%02d %s", prefix, hour12, minute, second, amPm));
     }
     
+    private SprinklerSchedule currentSchedule() {
+        return new SprinklerSchedule(scheduledDays, startTimeHour, startTimeMinute, startTimeSecond,
+                scheduleDuration, scheduleDurationSeconds);
+    }
+    
     private void sendScheduleToESP32() {
-        // Create a string representation of the schedule (7 days as 0/1)
-        StringBuilder daysString = new StringBuilder();
-        for (int i = 0; i < 7; i++) {
-            daysString.append(scheduledDays[i] ? "1" : "0");
-        }
+        shownVersion = 0;
+        String command = currentSchedule().toCommand();
         
-        // Format for sprinkler_schedule command
-        // Updated format with seconds: sprinkler_schedule_<7 day bits>_<startHour>_<startMinute>_<startSecond>_<durationMinutes>_<durationSeconds>
-        String command = "sprinkler_schedule_" + daysString.toString() + "_" 
-                        + startTimeHour + "_" + startTimeMinute + "_" + startTimeSecond + "_" 
-                        + scheduleDuration + "_" + scheduleDurationSeconds;
-        
-        // Send the schedule to ESP32
+        // Send the schedule to ESP32. Not scoped to the view: a saved schedule must still go out
+        // if the user leaves the screen right after saving.
         apiClient.sendCustomCommand(command, new NexadomusApiClient.ApiCallback() {
             @Override
             public void onSuccess(String response) {
-                Toast.makeText(getContext(), "Schedule saved", Toast.LENGTH_SHORT).show();
+                if (isAdded()) {
+                    Toast.makeText(getContext(), "Schedule saved", Toast.LENGTH_SHORT).show();
+                }
             }
 
             @Override
             public void onError(String error) {
-                showError("Failed to save schedule: " + error);
+                if (isAdded()) {
+                    showError("Failed to save schedule: " + error);
+                }
             }
         });
     }
@@ -921,56 +932,11 @@ public class SprinklersFragment extends Fragment {
         scheduleText.setSingleLine(false);
         scheduleText.setMaxLines(3); // Allow up to 3 lines for long schedules
         
-        boolean anyDayScheduled = false;
-        for (boolean day : scheduledDays) {
-            if (day) {
-                anyDayScheduled = true;
-                break;
-            }
-        }
-        
-        if (!anyDayScheduled) {
-            scheduleText.setText("Schedule: Not Set");
-            return;
-        }
-        
-        String[] dayAbbreviations = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
-        StringBuilder scheduleStr = new StringBuilder("Schedule: ");
-        
-        boolean first = true;
-        for (int i = 0; i < scheduledDays.length; i++) {
-            if (scheduledDays[i]) {
-                if (!first) {
-                    scheduleStr.append(", ");
-                }
-                scheduleStr.append(dayAbbreviations[i]);
-                first = false;
-            }
-        }
-        
-        String startAmPm = startTimeHour < 12 ? "AM" : "PM";
-        int startHour12 = startTimeHour % 12;
-        if (startHour12 == 0) startHour12 = 12;
-        
-        scheduleStr.append("\n")
-                   .append(String.format("%d:%02d:%02d %s", startHour12, startTimeMinute, startTimeSecond, startAmPm))
-                   .append(" for ");
-        
-        // Format duration with "1 hour" when it's exactly 60 minutes and 0 seconds
-        if (scheduleDuration == 60 && scheduleDurationSeconds == 0) {
-            scheduleStr.append("1 hour");
-        } else {
-            scheduleStr.append(String.format("%d:%02d", scheduleDuration, scheduleDurationSeconds));
-        }
-        
-        scheduleText.setText(scheduleStr.toString());
+        scheduleText.setText(currentSchedule().describe());
     }
     
     private void loadScheduleFromPreferences() {
-        String savedSchedule = sharedPreferences.getString(PREF_SCHEDULE_DAYS, "0000000");
-        for (int i = 0; i < Math.min(savedSchedule.length(), 7); i++) {
-            scheduledDays[i] = savedSchedule.charAt(i) == '1';
-        }
+        scheduledDays = SprinklerSchedule.parseDays(sharedPreferences.getString(PREF_SCHEDULE_DAYS, "0000000"));
         
         // Load time settings
         startTimeHour = sharedPreferences.getInt(PREF_START_TIME_HOUR, 6);
@@ -1014,13 +980,8 @@ public class SprinklersFragment extends Fragment {
     }
     
     private void saveScheduleToPreferences() {
-        StringBuilder schedule = new StringBuilder();
-        for (boolean day : scheduledDays) {
-            schedule.append(day ? "1" : "0");
-        }
-        
         SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(PREF_SCHEDULE_DAYS, schedule.toString());
+        editor.putString(PREF_SCHEDULE_DAYS, currentSchedule().getDaysString());
         editor.putInt(PREF_SCHEDULE_DURATION, scheduleDuration); // Save scheduled duration minutes
         editor.putInt(PREF_SCHEDULE_DURATION_SECONDS, scheduleDurationSeconds); // Save scheduled duration seconds
         editor.putInt(PREF_START_TIME_HOUR, startTimeHour);
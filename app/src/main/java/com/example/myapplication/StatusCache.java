@@ -0,0 +1,169 @@
+package com.example.myapplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight, TTL-bounded cache for the hub's decoded /status snapshot.
+ *
+ * Callers asking while a fetch is running wait on that fetch instead of issuing
+ * their own, and a successful result is served from memory until it goes stale.
+ */
+public class StatusCache {
+
+    // Performs one /status round trip and reports the outcome through the callback
+    public interface Fetcher {
+        void fetch(NexadomusApiClient.StatusCallback callback);
+    }
+
+    private final Fetcher fetcher;
+    private final Executor deliveryExecutor;
+    private volatile long freshnessMillis;
+
+    private final Object lock = new Object();
+    private DeviceStatus cachedStatus;
+    private long cachedAt;
+    private long generation;
+    private List<NexadomusApiClient.StatusCallback> waiters;
+    private RequestHandle fetchHandle;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param fetcher          Performs the actual request
+     * @param deliveryExecutor Used to deliver cache hits, so callers always get an asynchronous callback
+     * @param freshnessMillis  How long a successful response may be served from memory
+     */
+    public StatusCache(Fetcher fetcher, Executor deliveryExecutor, long freshnessMillis) {
+        this.fetcher = fetcher;
+        this.deliveryExecutor = deliveryExecutor;
+        this.freshnessMillis = freshnessMillis;
+    }
+
+    public void setFreshnessMillis(long freshnessMillis) {
+        this.freshnessMillis = freshnessMillis;
+    }
+
+    public long getFreshnessMillis() {
+        return freshnessMillis;
+    }
+
+    /**
+     * Get the current status.
+     *
+     * @param forceRefresh Skip the cached value; still joins a fetch that is already in flight
+     * @param callback     Receives the status snapshot or an error
+     */
+    public void get(boolean forceRefresh, NexadomusApiClient.StatusCallback callback) {
+        final long fetchGeneration;
+        final List<NexadomusApiClient.StatusCallback> fetchWaiters;
+        final RequestHandle handle;
+        synchronized (lock) {
+            if (!forceRefresh && cachedStatus != null
+                    && System.currentTimeMillis() - cachedAt < freshnessMillis) {
+                hits.incrementAndGet();
+                final DeviceStatus status = cachedStatus;
+                deliveryExecutor.execute(() -> callback.onSuccess(status));
+                return;
+            }
+
+            // A fetch whose waiters all left is being torn down; start a new one instead of joining it
+            if (waiters != null && !fetchHandle.isCancelled()) {
+                coalesced.incrementAndGet();
+                waiters.add(callback);
+                fetchHandle.join(callback);
+                return;
+            }
+
+            misses.incrementAndGet();
+            fetchWaiters = new ArrayList<>();
+            fetchWaiters.add(callback);
+            waiters = fetchWaiters;
+            // Cancelled once every waiter is cancelled, which aborts the fetch
+            handle = new RequestHandle();
+            handle.join(callback);
+            fetchHandle = handle;
+            fetchGeneration = generation;
+        }
+
+        fetcher.fetch(new Fetch(fetchWaiters, fetchGeneration, handle));
+    }
+
+    // Completion of one fetch, delivered to the waiters that joined it
+    private class Fetch implements NexadomusApiClient.StatusCallback, RequestHandle.Carrier {
+        private final List<NexadomusApiClient.StatusCallback> fetchWaiters;
+        private final long fetchGeneration;
+        private final RequestHandle handle;
+
+        Fetch(List<NexadomusApiClient.StatusCallback> fetchWaiters, long fetchGeneration, RequestHandle handle) {
+            this.fetchWaiters = fetchWaiters;
+            this.fetchGeneration = fetchGeneration;
+            this.handle = handle;
+        }
+
+        @Override
+        public RequestHandle getRequestHandle() {
+            return handle;
+        }
+
+        @Override
+        public void onSuccess(DeviceStatus response) {
+            List<NexadomusApiClient.StatusCallback> pending;
+            synchronized (lock) {
+                // A command sent while we were fetching makes this response stale
+                if (fetchGeneration == generation) {
+                    cachedStatus = response;
+                    cachedAt = System.currentTimeMillis();
+                }
+                pending = finish();
+            }
+            for (NexadomusApiClient.StatusCallback waiter : pending) {
+                waiter.onSuccess(response);
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            List<NexadomusApiClient.StatusCallback> pending;
+            synchronized (lock) {
+                pending = finish();
+            }
+            for (NexadomusApiClient.StatusCallback waiter : pending) {
+                waiter.onError(error);
+            }
+        }
+
+        // Must hold the lock; a newer fetch may have taken over the waiter list
+        private List<NexadomusApiClient.StatusCallback> finish() {
+            if (waiters == fetchWaiters) {
+                waiters = null;
+                fetchHandle = null;
+            }
+            return new ArrayList<>(fetchWaiters);
+        }
+    }
+
+    // Drop the cached value, e.g. after a command changed device state
+    public void invalidate() {
+        synchronized (lock) {
+            cachedStatus = null;
+            generation++;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.myapplication;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps a hub's status in step through /status?since=&lt;version&gt;. The hub answers with
+ * the fields that changed after that version, so a schedule edit or a sprinkler toggle
+ * moves a few bytes instead of the whole document.
+ *
+ * The synced state is an immutable (version, status) pair swapped in with
+ * compare-and-set: readers never block and always see a whole pair. A delta that starts
+ * after the version held here, because replies were lost, would skip changes; apply()
+ * refuses it and the caller resyncs with a full read. So does a delta whose version is
+ * below its own since, which means the hub's counter went backwards after a reboot.
+ * Hubs that send no version get supported == false for a while and are better read
+ * through {@link StatusValidator}.
+ */
+public class StatusDeltaSync {
+    // Firmware without versions may be updated to send them; look again now and then
+    private static final long UNSUPPORTED_RETRY_DELAY_MS = 10 * 60 * 1000;
+
+    private static final class State {
+        final long version;
+        final DeviceStatus status;
+
+        State(long version, DeviceStatus status) {
+            this.version = version;
+            this.status = status;
+        }
+    }
+
+    private static final State EMPTY = new State(StatusDelta.NO_VERSION, null);
+
+    private final AtomicReference<State> state = new AtomicReference<>(EMPTY);
+    // Until then reads go through the validator; 0 while the hub sends versions
+    private volatile long unsupportedUntil;
+    private volatile long unsupportedRetryDelayMillis = UNSUPPORTED_RETRY_DELAY_MS;
+
+    private final AtomicLong deltas = new AtomicLong();
+    private final AtomicLong fullSyncs = new AtomicLong();
+    private final AtomicLong gaps = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    // Where the next read should go: a delta once a version is held, the full document before
+    public String getPath() {
+        long version = state.get().version;
+        return version == StatusDelta.NO_VERSION ? "/status" : "/status?since=" + version;
+    }
+
+    // How long to wait before asking a hub without versions again; shortened by tests
+    void setUnsupportedRetryDelayMillis(long millis) {
+        unsupportedRetryDelayMillis = millis;
+    }
+
+    // False for a while after the hub answered without a version
+    public boolean isSupported() {
+        return System.currentTimeMillis() >= unsupportedUntil;
+    }
+
+    public long getVersion() {
+        return state.get().version;
+    }
+
+    // Last synced status, or null before the first full read
+    public DeviceStatus getStatus() {
+        return state.get().status;
+    }
+
+    /**
+     * Decode a /status reply and apply it.
+     *
+     * @return The synced status, or null for other response codes and for a gap
+     */
+    public DeviceStatus read(int code, Map<String, String> headers, InputStream body) throws IOException {
+        if (code != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+        final long[] count = new long[1];
+        StatusDelta reply = StatusDecoder.decodeDelta(new FilterInputStream(body) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    count[0] += n;
+                }
+                return n;
+            }
+        });
+        bytesRead.addAndGet(count[0]);
+        return apply(reply);
+    }
+
+    /**
+     * Merge a reply into the synced state.
+     *
+     * @return The status after the reply, or null when the delta starts after the
+     *         version held here or the hub's version went backwards, and a full read
+     *         is needed
+     */
+    public DeviceStatus apply(StatusDelta reply) {
+        if (reply.isFull()) {
+            unsupportedUntil = reply.getVersion() == StatusDelta.NO_VERSION
+                    ? System.currentTimeMillis() + unsupportedRetryDelayMillis
+                    : 0;
+        }
+        while (true) {
+            State current = state.get();
+            State next;
+            if (reply.isFull()) {
+                // Also taken after a reboot, when the hub counts from zero again
+                next = new State(reply.getVersion(), reply.getStatus());
+            } else if (current.status == null || reply.getSince() > current.version) {
+                gaps.incrementAndGet();
+                return null;
+            } else if (reply.getVersion() < reply.getSince()) {
+                // The hub rebooted and counts from zero again. Forget the version so the
+                // next read is a full one even if the caller's resync fails.
+                State reset = new State(StatusDelta.NO_VERSION, current.status);
+                if (state.compareAndSet(current, reset)) {
+                    gaps.incrementAndGet();
+                    return null;
+                }
+                continue;
+            } else if (reply.getVersion() <= current.version) {
+                // Nothing changed, or a concurrent read already moved past this reply
+                if (reply.getSince() == current.version) {
+                    deltas.incrementAndGet();
+                }
+                return current.status;
+            } else {
+                // A delta from an older version still lists every field changed after ours
+                DeviceStatus merged = new DeviceStatus.Builder(current.status).merge(reply.getStatus()).build();
+                next = new State(reply.getVersion(), merged);
+            }
+            if (state.compareAndSet(current, next)) {
+                if (reply.isFull()) {
+                    fullSyncs.incrementAndGet();
+                } else {
+                    deltas.incrementAndGet();
+                }
+                return next.status;
+            }
+        }
+    }
+
+    // Drop the synced state, e.g. when the hub moved to another address
+    public void reset() {
+        state.set(EMPTY);
+        unsupportedUntil = 0;
+    }
+
+    public long getDeltaCount() {
+        return deltas.get();
+    }
+
+    public long getFullSyncCount() {
+        return fullSyncs.get();
+    }
+
+    // Deltas refused because they started after the synced version or went backwards
+    public long getGapCount() {
+        return gaps.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.myapplication;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the one current DeviceStatus every screen reads and tells listeners when it changes.
+ *
+ * Identical states keep the existing snapshot and version, so listeners only hear about
+ * real changes; each published change gets the next version.
+ */
+public class StatusPublisher {
+    private final NexadomusApiClient.StatusListener everyStatus;
+    private final List<NexadomusApiClient.StatusListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Object lock = new Object();
+    private volatile DeviceStatus current;
+    private long version;
+
+    /**
+     * @param everyStatus Told about every decoded state, changed or not, before listeners are
+     */
+    public StatusPublisher(NexadomusApiClient.StatusListener everyStatus) {
+        this.everyStatus = everyStatus;
+    }
+
+    public void addListener(NexadomusApiClient.StatusListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(NexadomusApiClient.StatusListener listener) {
+        listeners.remove(listener);
+    }
+
+    // The most recently published state, or null before the first publish
+    public DeviceStatus getCurrent() {
+        return current;
+    }
+
+    /**
+     * Make a decoded state the current snapshot.
+     *
+     * @param decoded Snapshot straight from the decoder
+     * @param partial Merge into the current snapshot instead of replacing it
+     * @return The published snapshot
+     */
+    public DeviceStatus publish(DeviceStatus decoded, boolean partial) {
+        DeviceStatus published;
+        synchronized (lock) {
+            DeviceStatus previous = current;
+            DeviceStatus.Builder next = partial && previous != null
+                    ? new DeviceStatus.Builder(previous).merge(decoded)
+                    : new DeviceStatus.Builder(decoded);
+            DeviceStatus candidate = next.build();
+            // Unchanged statuses count too: the device may already have been in the commanded state
+            everyStatus.onStatusChanged(candidate);
+            if (candidate.equals(previous)) {
+                return previous;
+            }
+            published = next.setVersion(++version).setReceivedAt(System.currentTimeMillis()).build();
+            current = published;
+        }
+        for (NexadomusApiClient.StatusListener listener : listeners) {
+            listener.onStatusChanged(published);
+        }
+        return published;
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.myapplication;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.SocketFactory;
+
+/**
+ * Long-lived server-sent events connection to the hub's /events endpoint.
+ *
+ * The hub pushes a "status" event with the full payload when the stream opens and
+ * "change" events carrying only the fields that changed afterwards, so screens learn
+ * about schedule runs or commands from other phones without polling.
+ */
+public class StatusStream {
+    private static final String TAG = "StatusStream";
+    private static final String EVENTS_PATH = "/events";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    // The hub sends a heartbeat comment every 15 s; two missed beats means the stream is dead
+    private static final int READ_TIMEOUT_MS = 35000;
+    private static final long MIN_RECONNECT_DELAY_MS = 1000;
+    private static final long MAX_RECONNECT_DELAY_MS = 30000;
+    // Firmware without /events may be updated to support it; look again now and then
+    private static final long UNSUPPORTED_RETRY_DELAY_MS = 10 * 60 * 1000;
+
+    public static final String EVENT_STATUS = "status";
+    public static final String EVENT_CHANGE = "change";
+
+    public interface Listener {
+        // Called with the event type ("status" or "change") and its JSON data
+        void onStatusEvent(String event, String data);
+    }
+
+    private volatile String host;
+    private volatile int port;
+    private final Executor listenerExecutor;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Object lock = new Object();
+    private Thread readerThread;
+    private Socket socket;
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile boolean unsupported;
+    private volatile SocketFactory socketFactory = SocketFactory.getDefault();
+    private volatile long unsupportedRetryDelayMillis = UNSUPPORTED_RETRY_DELAY_MS;
+
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong connects = new AtomicLong();
+
+    public StatusStream(String host, int port, Executor listenerExecutor) {
+        this.host = host;
+        this.port = port;
+        this.listenerExecutor = listenerExecutor;
+    }
+
+    // Open future connections through this factory, e.g. one bound to the hub's Wi-Fi network
+    public void setSocketFactory(SocketFactory factory) {
+        this.socketFactory = factory != null ? factory : SocketFactory.getDefault();
+    }
+
+    // How long to wait before asking a hub without /events again; shortened by tests
+    void setUnsupportedRetryDelayMillis(long millis) {
+        unsupportedRetryDelayMillis = millis;
+    }
+
+    /**
+     * Follow the hub to a new address. A running stream reconnects there; a hub that
+     * did not support /events is asked again at once.
+     */
+    public void setEndpoint(String host, int port) {
+        boolean restart;
+        synchronized (lock) {
+            if (host.equals(this.host) && port == this.port) {
+                return;
+            }
+            restart = running;
+            stop();
+            this.host = host;
+            this.port = port;
+            unsupported = false;
+        }
+        if (restart) {
+            start();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Open the stream in the background; reconnects with backoff until stop() is called.
+     * A hub without /events is asked again every few minutes in case its firmware was
+     * updated; callers poll in the meantime.
+     */
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            readerThread = new Thread(this::runLoop, TAG);
+            readerThread.setDaemon(true);
+            readerThread.start();
+        }
+    }
+
+    // Close the stream and stop reconnecting
+    public void stop() {
+        synchronized (lock) {
+            running = false;
+            closeSocket();
+            if (readerThread != null) {
+                readerThread.interrupt();
+                readerThread = null;
+            }
+        }
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    // True while the hub answers /events with something other than an event stream
+    public boolean isUnsupported() {
+        return unsupported;
+    }
+
+    public long getEventCount() {
+        return eventsReceived.get();
+    }
+
+    public long getConnectCount() {
+        return connects.get();
+    }
+
+    private void runLoop() {
+        long delay = MIN_RECONNECT_DELAY_MS;
+        while (isCurrentReader()) {
+            try {
+                Socket s = socketFactory.createSocket();
+                synchronized (lock) {
+                    if (!running || readerThread != Thread.currentThread()) {
+                        s.close();
+                        return;
+                    }
+                    socket = s;
+                }
+                s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                s.setSoTimeout(READ_TIMEOUT_MS);
+                if (openStream(s)) {
+                    unsupported = false;
+                    connected = true;
+                    connects.incrementAndGet();
+                    delay = MIN_RECONNECT_DELAY_MS;
+                    readEvents(new BufferedInputStream(s.getInputStream()));
+                } else {
+                    if (!unsupported) {
+                        Log.w(TAG, "Hub does not support " + EVENTS_PATH + ", falling back to polling");
+                    }
+                    unsupported = true;
+                }
+            } catch (IOException e) {
+                if (running) {
+                    Log.w(TAG, "Status stream interrupted: " + e.getMessage());
+                }
+            } finally {
+                synchronized (lock) {
+                    // After a quick stop()/start() a newer reader owns the socket
+                    if (readerThread == Thread.currentThread()) {
+                        connected = false;
+                        closeSocket();
+                    }
+                }
+            }
+
+            if (!isCurrentReader()) {
+                return;
+            }
+            try {
+                Thread.sleep(unsupported ? unsupportedRetryDelayMillis : delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!unsupported) {
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+    }
+
+    private boolean isCurrentReader() {
+        synchronized (lock) {
+            return running && readerThread == Thread.currentThread();
+        }
+    }
+
+    // Send the request and check the response headers; false if the hub has no event stream
+    private boolean openStream(Socket s) throws IOException {
+        String request = "GET " + EVENTS_PATH + " HTTP/1.1\r\n"
+                + "Host: " + host + "\r\n"
+                + "Accept: text/event-stream\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + "\r\n";
+        OutputStream out = s.getOutputStream();
+        out.write(request.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        InputStream in = s.getInputStream();
+        String statusLine = readLine(in);
+        if (statusLine == null) {
+            throw new IOException("Connection closed by hub");
+        }
+        boolean ok = statusLine.contains(" 200");
+        boolean eventStream = false;
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            String lower = line.toLowerCase(Locale.US);
+            if (lower.startsWith("content-type:") && lower.contains("text/event-stream")) {
+                eventStream = true;
+            }
+        }
+        return ok && eventStream;
+    }
+
+    private void readEvents(InputStream in) throws IOException {
+        String event = null;
+        StringBuilder data = new StringBuilder();
+        String line;
+        while (isCurrentReader() && (line = readLine(in)) != null) {
+            if (line.isEmpty()) {
+                // Blank line terminates an event
+                if (data.length() > 0) {
+                    dispatch(event != null ? event : EVENT_CHANGE, data.toString());
+                }
+                event = null;
+                data.setLength(0);
+            } else if (line.startsWith(":")) {
+                // Heartbeat comment, only keeps the read timeout from firing
+            } else if (line.startsWith("event:")) {
+                event = line.substring(6).trim();
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line.substring(5).trim());
+            }
+        }
+    }
+
+    private void dispatch(String event, String data) {
+        eventsReceived.incrementAndGet();
+        for (Listener listener : listeners) {
+            listenerExecutor.execute(() -> listener.onStatusEvent(event, data));
+        }
+    }
+
+    private void closeSocket() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+            socket = null;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length;
+                if (length > 0 && bytes[length - 1] == '\r') {
+                    length--;
+                }
+                return new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString("UTF-8");
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.myapplication;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conditional reads of one hub's /status. The hub tags each payload with an ETag; the
+ * next read sends it back in If-None-Match and, while nothing has changed, the hub
+ * answers 304 Not Modified without a body. The snapshot decoded last time is then
+ * handed out again, so an idle poll costs neither the payload nor a parse.
+ *
+ * Firmware that sends no ETag simply gets a full read every time.
+ */
+public class StatusValidator {
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private final Object lock = new Object();
+    private String etag;
+    private DeviceStatus snapshot;
+    private long snapshotBytes;
+
+    private final AtomicLong fullReads = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    // Headers for the next /status request: If-None-Match once the hub has tagged a payload
+    public Map<String, String> getRequestHeaders() {
+        synchronized (lock) {
+            return etag != null ? Collections.singletonMap("If-None-Match", etag) : null;
+        }
+    }
+
+    /**
+     * Decode a /status response, or reuse the last snapshot when the hub says it has not
+     * changed.
+     *
+     * @return The snapshot, or null for any other response code
+     */
+    public DeviceStatus read(int code, Map<String, String> headers, InputStream body) throws IOException {
+        if (code == HTTP_NOT_MODIFIED) {
+            synchronized (lock) {
+                if (snapshot == null) {
+                    // Nothing to reuse; drop the tag so the next read is a full one
+                    etag = null;
+                    return null;
+                }
+                notModified.incrementAndGet();
+                bytesSaved.addAndGet(snapshotBytes);
+                return snapshot;
+            }
+        }
+        if (code != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+        CountingStream counted = new CountingStream(body);
+        DeviceStatus decoded = StatusDecoder.decode(counted);
+        fullReads.incrementAndGet();
+        bytesRead.addAndGet(counted.count);
+        synchronized (lock) {
+            etag = headers.get("etag");
+            snapshot = etag != null ? decoded : null;
+            snapshotBytes = counted.count;
+        }
+        return decoded;
+    }
+
+    // Forget the tag, e.g. when the hub moved to another address
+    public void reset() {
+        synchronized (lock) {
+            etag = null;
+            snapshot = null;
+            snapshotBytes = 0;
+        }
+    }
+
+    // Reads that downloaded and decoded a payload
+    public long getFullReadCount() {
+        return fullReads.get();
+    }
+
+    // Reads answered with 304, each one a parse avoided
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    // Payload bytes the 304 answers did not have to carry
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    private static class CountingStream extends FilterInputStream {
+        long count;
+
+        CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.myapplication;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds remote commands briefly and writes them to ThingSpeak in as few updates as
+ * the channel's write allowance permits.
+ *
+ * Commands for the same device collapse to the newest one. Whatever is left when the
+ * write window opens goes out as a single /update (one command) or one bulk update
+ * (several commands), so quick successive commands are no longer rejected by the
+ * channel's rate limit.
+ */
+public class ThingSpeakBatcher {
+    private static final String TAG = "ThingSpeakBatcher";
+    // Rate-limited writes go back in the queue this many times before their callers are told
+    static final int MAX_RATE_LIMIT_RETRIES = 3;
+
+    public interface Sender {
+        void sendSingle(String command, WriteCallback callback);
+        void sendBulk(List<String> commands, WriteCallback callback);
+    }
+
+    // Result of one write; the sender reports a write refused for coming too early separately
+    public interface WriteCallback extends ThingSpeakClient.ThingSpeakCallback {
+        void onRateLimited();
+    }
+
+    private static class Pending {
+        final String command;
+        final ThingSpeakClient.ThingSpeakCallback callback;
+        // Commands submitted together report once, through the last of them
+        final boolean notify;
+        final long enqueuedAt;
+        // Times this command was refused by the channel's rate limit
+        int rateLimited;
+
+        Pending(String command, ThingSpeakClient.ThingSpeakCallback callback, boolean notify) {
+            this.command = command;
+            this.callback = callback;
+            this.notify = notify;
+            this.enqueuedAt = System.currentTimeMillis();
+        }
+    }
+
+    private final Sender sender;
+    private final TokenBucket writeBucket;
+    private final long batchWindowMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final List<Pending> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    private boolean inFlight;
+
+    private final AtomicLong commandsSent = new AtomicLong();
+    private final AtomicLong updatesSent = new AtomicLong();
+    private final AtomicLong commandsCollapsed = new AtomicLong();
+    private final AtomicLong rateLimitedUpdates = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private volatile long lastWaitMillis;
+    private volatile long maxWaitMillis;
+
+    /**
+     * @param sender            Performs the actual ThingSpeak writes
+     * @param writeBucket       Write allowance of the channel
+     * @param batchWindowMillis How long to hold the first command for others to join it
+     */
+    public ThingSpeakBatcher(Sender sender, TokenBucket writeBucket, long batchWindowMillis) {
+        this.sender = sender;
+        this.writeBucket = writeBucket;
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    public void submit(String command, ThingSpeakClient.ThingSpeakCallback callback) {
+        synchronized (this) {
+            pending.add(new Pending(command, callback, true));
+            scheduleFlush(Math.max(batchWindowMillis, writeBucket.millisUntilAvailable()));
+        }
+    }
+
+    /**
+     * Submit several commands that must reach the channel in the same update, e.g. a scene.
+     * The callback is told once, with the result of that update.
+     */
+    public void submitAll(List<String> commands, ThingSpeakClient.ThingSpeakCallback callback) {
+        synchronized (this) {
+            for (int i = 0; i < commands.size(); i++) {
+                pending.add(new Pending(commands.get(i), callback, i == commands.size() - 1));
+            }
+            scheduleFlush(Math.max(batchWindowMillis, writeBucket.millisUntilAvailable()));
+        }
+    }
+
+    /**
+     * Take back commands submitted with this callback that have not been written yet.
+     *
+     * @return True if something was withdrawn; false if it is already on its way to ThingSpeak
+     */
+    public synchronized boolean withdraw(ThingSpeakClient.ThingSpeakCallback callback) {
+        boolean removed = false;
+        Iterator<Pending> it = pending.iterator();
+        while (it.hasNext()) {
+            if (it.next().callback == callback) {
+                it.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    public long getCommandsSent() {
+        return commandsSent.get();
+    }
+
+    public long getUpdatesSent() {
+        return updatesSent.get();
+    }
+
+    public long getCommandsCollapsed() {
+        return commandsCollapsed.get();
+    }
+
+    // Updates the channel refused for coming too early; their commands were queued again
+    public long getRateLimitedUpdates() {
+        return rateLimitedUpdates.get();
+    }
+
+    // Time between a command being submitted and being written, for the most recent command
+    public long getLastWaitMillis() {
+        return lastWaitMillis;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public long getAverageWaitMillis() {
+        long sent = commandsSent.get();
+        return sent == 0 ? 0 : totalWaitMillis.get() / sent;
+    }
+
+    // Must hold the lock
+    private void scheduleFlush(long delayMillis) {
+        if (flushScheduled || inFlight) {
+            return;
+        }
+        flushScheduled = true;
+        scheduler.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        final List<Pending> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (inFlight || pending.isEmpty()) {
+                return;
+            }
+            if (!writeBucket.tryAcquire()) {
+                scheduleFlush(writeBucket.millisUntilAvailable());
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            inFlight = true;
+        }
+
+        // Newest command per device wins; replaced commands share its result
+        Map<String, List<Pending>> byDevice = new LinkedHashMap<>();
+        Map<String, String> latest = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            String key = deviceKey(p.command);
+            List<Pending> group = byDevice.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                byDevice.put(key, group);
+            } else {
+                commandsCollapsed.incrementAndGet();
+            }
+            group.add(p);
+            latest.remove(key);
+            latest.put(key, p.command);
+        }
+
+        long now = System.currentTimeMillis();
+        for (Pending p : batch) {
+            long wait = now - p.enqueuedAt;
+            lastWaitMillis = wait;
+            maxWaitMillis = Math.max(maxWaitMillis, wait);
+            totalWaitMillis.addAndGet(wait);
+            commandsSent.incrementAndGet();
+            Log.d(TAG, "Writing " + p.command + " after " + wait + " ms in queue");
+        }
+        updatesSent.incrementAndGet();
+
+        WriteCallback done = new BatchWrite(batch);
+        List<String> commands = new ArrayList<>(latest.values());
+        if (commands.size() == 1) {
+            sender.sendSingle(commands.get(0), done);
+        } else {
+            sender.sendBulk(commands, done);
+        }
+    }
+
+    // Result of one update, fanned out to every command it stood for
+    private class BatchWrite implements WriteCallback, CommandTrace.Carrier {
+        private final List<Pending> batch;
+
+        BatchWrite(List<Pending> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public List<CommandTrace> getCommandTraces() {
+            List<CommandTrace> traces = new ArrayList<>();
+            for (Pending p : batch) {
+                traces.addAll(CommandTrace.of(p.callback));
+            }
+            return traces;
+        }
+
+        @Override
+        public void onRateLimited() {
+            requeue(batch);
+        }
+
+        @Override
+        public void onSuccess(String response) {
+            complete();
+            for (Pending p : batch) {
+                if (p.notify) {
+                    p.callback.onSuccess(response);
+                }
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            complete();
+            for (Pending p : batch) {
+                if (p.notify) {
+                    p.callback.onError(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * The channel refused the update because it came too early. Wait a full window and
+     * put the commands back ahead of anything submitted since, so newer commands for the
+     * same device still win; commands refused too often fail instead.
+     */
+    private void requeue(List<Pending> batch) {
+        rateLimitedUpdates.incrementAndGet();
+        writeBucket.drain();
+        List<Pending> failed = new ArrayList<>();
+        synchronized (this) {
+            inFlight = false;
+            List<Pending> retry = new ArrayList<>(batch.size());
+            for (Pending p : batch) {
+                if (++p.rateLimited > MAX_RATE_LIMIT_RETRIES) {
+                    failed.add(p);
+                } else {
+                    retry.add(p);
+                }
+            }
+            pending.addAll(0, retry);
+            if (!pending.isEmpty()) {
+                scheduleFlush(writeBucket.millisUntilAvailable());
+            }
+        }
+        Log.w(TAG, "Rate limited; " + (batch.size() - failed.size()) + " commands wait for the next window");
+        for (Pending p : failed) {
+            if (p.notify) {
+                p.callback.onError("Rate limited by ThingSpeak");
+            }
+        }
+    }
+
+    private void complete() {
+        synchronized (this) {
+            inFlight = false;
+            if (!pending.isEmpty()) {
+                scheduleFlush(writeBucket.millisUntilAvailable());
+            }
+        }
+    }
+
+    // Commands that drive the same actuator replace each other
+    static String deviceKey(String command) {
+        if (command.startsWith("garage_")) {
+            return "garage";
+        } else if (command.startsWith("lights_")) {
+            return "lights";
+        } else if (command.startsWith("sprinkler_schedule")) {
+            return "sprinkler_schedule";
+        } else if (command.startsWith("sprinkler_")) {
+            return "sprinkler";
+        }
+        return command;
+    }
+}
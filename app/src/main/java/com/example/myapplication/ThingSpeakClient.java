@@ -5,35 +5,127 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import org.json.JSONObject;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 public class ThingSpeakClient {
     private static final String TAG = "ThingSpeakClient";
     
     // ThingSpeak configuration 
     private static final String THINGSPEAK_URL = "https://api.thingspeak.com/update";
+    private static final String THINGSPEAK_BULK_URL_FORMAT = "https://api.thingspeak.com/channels/%s/bulk_update.json";
     private static final String WRITE_API_KEY = "8SN8YGHKGHD9Q29Q"; // Your ThingSpeak Write API key
     private static final String CHANNEL_ID = "2938898"; // Your ThingSpeak Channel ID
+    private static final String READ_API_KEY = null; // Set if the channel is made private
     
     // ThingSpeak field numbers
     private static final int COMMAND_FIELD = 3; // Field for sending commands
     
+    // Channel write allowance (free plan: one update every 15 seconds) and how long commands wait for company
+    private static final long WRITE_INTERVAL_MS = 15000;
+    private static final long BATCH_WINDOW_MS = 500;
+    // Remote screens asking within this window are answered from the local copy of the feed
+    private static final long FEED_FRESHNESS_MS = 5000;
+    // Older pages left for the next sync beyond this, so one status read stays short
+    private static final int MAX_FEED_PAGES = 5;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final String CANCELLED_MESSAGE = "Request cancelled";
+    
+    // ThingSpeak over a cellular link can take seconds; never give up sooner than this
+    private static final int MIN_CONNECT_TIMEOUT_MS = 2000;
+    private static final int MAX_CONNECT_TIMEOUT_MS = 15000;
+    private static final int MIN_READ_TIMEOUT_MS = 3000;
+    private static final int MAX_READ_TIMEOUT_MS = 20000;
+    
+    // Stop sending to a channel that keeps failing, backing off from 5 s up to a minute
+    private static final int BREAKER_FAILURES = 3;
+    private static final long BREAKER_BASE_OPEN_MS = 5000;
+    private static final long BREAKER_MAX_OPEN_MS = 60000;
+    
     private static ThingSpeakClient instance;
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final RequestScheduler scheduler = RequestScheduler.getInstance();
+    private final RequestMetrics metrics = RequestMetrics.getInstance();
+    private final CommandTracer tracer = CommandTracer.getInstance();
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private Context appContext;
+    private final AdaptiveTimeout timeout = new AdaptiveTimeout("thingspeak",
+            MIN_CONNECT_TIMEOUT_MS, MAX_CONNECT_TIMEOUT_MS, MIN_READ_TIMEOUT_MS, MAX_READ_TIMEOUT_MS, 2, 3, 10);
+    private final ThingSpeakFeedReader feedReader = new ThingSpeakFeedReader(CHANNEL_ID, COMMAND_FIELD, READ_API_KEY);
+    private final CircuitBreaker breaker =
+            new CircuitBreaker("thingspeak", BREAKER_FAILURES, BREAKER_BASE_OPEN_MS, BREAKER_MAX_OPEN_MS);
+    private final ThingSpeakBatcher batcher = new ThingSpeakBatcher(new ThingSpeakBatcher.Sender() {
+        @Override
+        public void sendSingle(String command, ThingSpeakBatcher.WriteCallback callback) {
+            writeSingle(command, callback);
+        }
+
+        @Override
+        public void sendBulk(List<String> commands, ThingSpeakBatcher.WriteCallback callback) {
+            writeBulk(commands, callback);
+        }
+    }, new TokenBucket(1, WRITE_INTERVAL_MS), BATCH_WINDOW_MS);
 
     public interface ThingSpeakCallback {
         void onSuccess(String response);
         void onError(String error);
     }
 
+    // Works on the response on the request's worker thread, so parsing stays off the main thread
+    private interface ParsingCallback extends ThingSpeakCallback {
+        // Returns what to run on the main thread; must not throw
+        Runnable parse(String response);
+
+        @Override
+        default void onSuccess(String response) {
+            parse(response).run();
+        }
+    }
+
+    // Applies pages of the channel feed and reports the rebuilt status; cancelled with the caller
+    private class FeedSync implements ParsingCallback, RequestHandle.Carrier {
+        private final NexadomusApiClient.StatusCallback callback;
+        private int pages;
+
+        FeedSync(NexadomusApiClient.StatusCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public Runnable parse(String response) {
+            try {
+                feedReader.apply(response);
+                if (feedReader.hasMore() && ++pages < MAX_FEED_PAGES) {
+                    // Older entries the full page left out
+                    return () -> executeRequest(feedReader.getSyncUrl(), null, this);
+                }
+                DeviceStatus status = feedReader.getStatus();
+                return () -> callback.onSuccess(status);
+            } catch (IOException e) {
+                Log.e(TAG, "Channel feed: " + e.getMessage());
+                return () -> callback.onError("Failed to read remote status: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            callback.onError(error.equals(CANCELLED_MESSAGE) ? error : "Failed to read remote status: " + error);
+        }
+
+        @Override
+        public RequestHandle getRequestHandle() {
+            return RequestHandle.of(callback);
+        }
+    }
+
     private ThingSpeakClient() {
         // Private constructor for singleton
     }
@@ -47,6 +139,27 @@ public class ThingSpeakClient {
     
     public void setAppContext(Context context) {
         this.appContext = context.getApplicationContext();
+        feedReader.setPreferences(appContext.getSharedPreferences(ThingSpeakFeedReader.PREFS_NAME, Context.MODE_PRIVATE));
+    }
+
+    /**
+     * Device state as last commanded through the channel, for screens that cannot reach the hub.
+     * Only channel entries newer than the last sync are downloaded.
+     *
+     * @param forceRefresh Sync even if the local copy was refreshed moments ago
+     */
+    public void getRemoteStatus(boolean forceRefresh, NexadomusApiClient.StatusCallback callback) {
+        if (!forceRefresh && feedReader.isFresh(FEED_FRESHNESS_MS)) {
+            DeviceStatus status = feedReader.getStatus();
+            mainHandler.post(() -> callback.onSuccess(status));
+            return;
+        }
+        executeRequest(feedReader.getSyncUrl(), null, new FeedSync(callback));
+    }
+
+    // Sync cursor and entry counts of the remote status reader
+    public ThingSpeakFeedReader getFeedReader() {
+        return feedReader;
     }
 
     // Send command to control the garage remotely
@@ -67,29 +180,142 @@ public class ThingSpeakClient {
         sendCommand(command, callback);
     }
 
+    // Write several commands in one channel update; the callback is told once
+    public void sendCommands(List<String> commands, ThingSpeakCallback callback) {
+        batcher.submitAll(commands, callback);
+    }
+
+    // Drop a command that is still waiting in the batcher; false once it has been written
+    public boolean withdrawCommand(ThingSpeakCallback callback) {
+        return batcher.withdraw(callback);
+    }
+
     // Send a custom command to ThingSpeak
     public void sendCustomCommand(String command, ThingSpeakCallback callback) {
         sendCommand(command, callback);
     }
 
-    // Send command to ThingSpeak
+    // Send command to ThingSpeak; commands are batched to respect the channel's write rate
     private void sendCommand(String command, ThingSpeakCallback callback) {
+        batcher.submit(command, callback);
+    }
+
+    // Queue depth, wait times and collapsed commands of the remote write batcher
+    public ThingSpeakBatcher getBatcher() {
+        return batcher;
+    }
+
+    // Round trips and current timeouts of ThingSpeak requests
+    public AdaptiveTimeout getTimeout() {
+        return timeout;
+    }
+
+    // Open while ThingSpeak keeps failing; calls then fail without a request
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    // Write one command with a plain channel update
+    private void writeSingle(String command, ThingSpeakBatcher.WriteCallback callback) {
         String endpoint = THINGSPEAK_URL + "?api_key=" + WRITE_API_KEY + "&field" + COMMAND_FIELD + "=" + command;
-        executeRequest(endpoint, callback);
+        tracer.dispatched(CommandTrace.of(callback), CommandTrace.ROUTE_THINGSPEAK);
+        executeRequest(endpoint, null, new ThingSpeakCallback() {
+            @Override
+            public void onSuccess(String response) {
+                // ThingSpeak answers "0" instead of an entry id when the write came too early
+                if (response.trim().equals("0")) {
+                    callback.onRateLimited();
+                } else {
+                    callback.onSuccess(response);
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    // Write several commands as consecutive feed entries in one bulk update
+    private void writeBulk(List<String> commands, ThingSpeakBatcher.WriteCallback callback) {
+        tracer.dispatched(CommandTrace.of(callback), CommandTrace.ROUTE_THINGSPEAK);
+        StringBuilder body = new StringBuilder();
+        body.append("{\"write_api_key\":\"").append(WRITE_API_KEY).append("\",\"updates\":[");
+        for (int i = 0; i < commands.size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            // One second apart so every command keeps its own entry in the feed
+            body.append("{\"delta_t\":1,\"field").append(COMMAND_FIELD).append("\":")
+                    .append(JSONObject.quote(commands.get(i))).append('}');
+        }
+        body.append("]}");
+
+        String endpoint = String.format(THINGSPEAK_BULK_URL_FORMAT, CHANNEL_ID);
+        executeRequest(endpoint, body.toString(), callback);
     }
 
-    // Execute HTTP request in background thread
-    private void executeRequest(final String urlString, final ThingSpeakCallback callback) {
-        executor.execute(() -> {
+    // Execute HTTP request on the scheduler's ThingSpeak lane; a non-null body is sent as a JSON POST
+    private void executeRequest(final String urlString, final String jsonBody, final ThingSpeakCallback callback) {
+        final RequestMetrics.Endpoint endpoint = RequestMetrics.Endpoint.ofThingSpeakUrl(urlString);
+        final RequestHandle handle = RequestHandle.of(callback);
+        if (!breaker.allowRequest()) {
+            metrics.recordError(endpoint, RequestMetrics.Cause.CIRCUIT_OPEN);
+            long seconds = Math.max(1, (breaker.millisUntilRetry() + 999) / 1000);
+            mainHandler.post(() -> callback.onError("ThingSpeak not responding. Retrying in " + seconds + " s."));
+            return;
+        }
+        final long queuedAt = System.currentTimeMillis();
+        boolean queued = scheduler.submit(RequestScheduler.Lane.THINGSPEAK, () -> {
             HttpURLConnection connection = null;
+            long startedAt = System.currentTimeMillis();
+            metrics.recordQueueWait(endpoint, startedAt - queuedAt);
+            if (handle != null && handle.isCancelled()) {
+                breaker.release();
+                metrics.recordError(endpoint, RequestMetrics.Cause.CANCELLED);
+                mainHandler.post(() -> callback.onError(CANCELLED_MESSAGE));
+                return;
+            }
+            long bytesSent = 0;
+            // Zero until connected; the connect and read timeouts each learn from their own phase
+            long connectedAt = 0;
             try {
                 URL url = new URL(urlString);
                 connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setConnectTimeout(5000);
-                connection.setReadTimeout(5000);
+                if (handle != null && !handle.attach(connection::disconnect)) {
+                    throw new IOException(CANCELLED_MESSAGE);
+                }
+                connection.setConnectTimeout(timeout.getConnectTimeoutMillis());
+                connection.setReadTimeout(timeout.getReadTimeoutMillis());
+                if (jsonBody != null) {
+                    connection.setRequestMethod("POST");
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", "application/json");
+                } else {
+                    connection.setRequestMethod("GET");
+                }
+                connection.connect();
+                connectedAt = System.currentTimeMillis();
+                timeout.recordConnect(connectedAt - startedAt);
+                if (jsonBody != null) {
+                    byte[] payload = jsonBody.getBytes(StandardCharsets.UTF_8);
+                    OutputStream out = connection.getOutputStream();
+                    out.write(payload);
+                    out.close();
+                    bytesSent = payload.length;
+                }
 
                 int responseCode = connection.getResponseCode();
+                long roundTrip = System.currentTimeMillis() - startedAt;
+                timeout.recordRoundTrip(System.currentTimeMillis() - connectedAt);
+                metrics.recordResponse(endpoint, responseCode, roundTrip);
+                // A 429 or 4xx is ThingSpeak answering; only server errors count against it
+                if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                    breaker.recordFailure();
+                } else {
+                    breaker.recordSuccess();
+                }
                 if (responseCode == HttpURLConnection.HTTP_OK) {
                     BufferedReader in = new BufferedReader(
                             new InputStreamReader(connection.getInputStream()));
@@ -100,22 +326,63 @@ public class ThingSpeakClient {
                         response.append(inputLine);
                     }
                     in.close();
+                    metrics.recordBytes(endpoint, bytesSent, response.length());
 
                     final String result = response.toString();
-                    mainHandler.post(() -> callback.onSuccess(result));
+                    if (callback instanceof ParsingCallback) {
+                        mainHandler.post(((ParsingCallback) callback).parse(result));
+                    } else {
+                        mainHandler.post(() -> callback.onSuccess(result));
+                    }
                 } else {
+                    metrics.recordBytes(endpoint, bytesSent, 0);
+                    if (responseCode == HTTP_TOO_MANY_REQUESTS
+                            && callback instanceof ThingSpeakBatcher.WriteCallback) {
+                        // The batcher holds the write for the next window instead of failing it
+                        mainHandler.post(((ThingSpeakBatcher.WriteCallback) callback)::onRateLimited);
+                        return;
+                    }
                     final String error = "HTTP Error: " + responseCode;
                     mainHandler.post(() -> callback.onError(error));
                 }
+            } catch (SocketTimeoutException e) {
+                long now = System.currentTimeMillis();
+                if (connectedAt == 0) {
+                    timeout.recordConnectTimeout(now - startedAt);
+                } else {
+                    timeout.recordTimeout(now - connectedAt);
+                }
+                breaker.recordFailure();
+                metrics.recordError(endpoint, RequestMetrics.Cause.TIMEOUT);
+                Log.e(TAG, "Timed out: " + e.getMessage());
+                final String errorMsg = "Network error: " + e.getMessage();
+                mainHandler.post(() -> callback.onError(errorMsg));
             } catch (IOException e) {
+                // A connection closed by cancelling says nothing about ThingSpeak
+                if (handle != null && handle.isCancelled()) {
+                    breaker.release();
+                    metrics.recordError(endpoint, RequestMetrics.Cause.CANCELLED);
+                    mainHandler.post(() -> callback.onError(CANCELLED_MESSAGE));
+                    return;
+                }
+                breaker.recordFailure();
+                metrics.recordError(endpoint, RequestMetrics.Cause.NETWORK);
                 Log.e(TAG, "Network error: " + e.getMessage());
                 final String errorMsg = "Network error: " + e.getMessage();
                 mainHandler.post(() -> callback.onError(errorMsg));
             } finally {
+                if (handle != null) {
+                    handle.detach();
+                }
                 if (connection != null) {
                     connection.disconnect();
                 }
             }
         });
+        if (!queued) {
+            breaker.release();
+            metrics.recordError(endpoint, RequestMetrics.Cause.QUEUE_FULL);
+            mainHandler.post(() -> callback.onError("Too many pending requests"));
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,404 @@
+package com.example.myapplication;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Remote view of the devices, rebuilt from the command field of the ThingSpeak channel.
+ *
+ * The hub acts on the commands written to the channel, so the newest command per device
+ * is the best remote guess at its state. Each sync asks only for entries after a persisted
+ * cursor and folds them into a compact copy holding one command per device; history that
+ * was read once is never downloaded again, even across app restarts.
+ *
+ * The feed returns the newest entries of a range, so a full page may leave older ones
+ * between the cursor and the page unread. Those are then read page by page, newest first,
+ * until the gap is closed or every device's newest command is known.
+ */
+public class ThingSpeakFeedReader {
+    public static final String PREFS_NAME = "NexadomusRemoteFeed";
+    private static final String PREF_LAST_ENTRY_ID = "lastEntryId";
+    private static final String PREF_LAST_CREATED_AT = "lastCreatedAt";
+    private static final String PREF_COMMAND_PREFIX = "command_";
+    private static final String PREF_GAP = "gap";
+    // Enough for every device to appear on the first sync; later syncs rarely see more than a few
+    private static final int MAX_RESULTS = 100;
+    private static final String[] DEVICE_KEYS = {"garage", "lights", "sprinkler", "sprinkler_schedule"};
+    private static final int GARAGE_CLOSED_ANGLE = 0;
+    private static final int SPRINKLER_OFF_ANGLE = 0;
+
+    // Newest command seen for one device
+    private static class Entry {
+        final long id;
+        final long createdAt;
+        final String command;
+
+        Entry(long id, long createdAt, String command) {
+            this.id = id;
+            this.createdAt = createdAt;
+            this.command = command;
+        }
+
+        String encode() {
+            return id + "|" + createdAt + "|" + command;
+        }
+
+        static Entry decode(String encoded) {
+            String[] parts = encoded.split("\\|", 3);
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final String feedUrl;
+    private final String fieldName;
+    private final String readApiKey;
+    // ThingSpeak reports times as 2024-05-01T10:00:00Z and takes them back as 2024-05-01 10:00:00, both UTC
+    private final SimpleDateFormat responseTime = utcFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    private final SimpleDateFormat queryTime = utcFormat("yyyy-MM-dd HH:mm:ss");
+
+    private SharedPreferences preferences;
+    private long lastEntryId;
+    private long lastCreatedAt;
+    // Entries after gapAfter and before gapBefore are still unread; gapBeforeId is 0 without a gap
+    private long gapAfterId;
+    private long gapAfterCreatedAt;
+    private long gapBeforeId;
+    private long gapBeforeCreatedAt;
+    private final Map<String, Entry> latest = new HashMap<>();
+    private long lastSyncAt;
+
+    private long syncs;
+    private long entriesRead;
+    private long entriesApplied;
+
+    /**
+     * @param channelId    Channel to read
+     * @param commandField Field number the commands are written to
+     * @param readApiKey   Read key for a private channel, or null for a public one
+     */
+    public ThingSpeakFeedReader(String channelId, int commandField, String readApiKey) {
+        this.fieldName = "field" + commandField;
+        this.feedUrl = "https://api.thingspeak.com/channels/" + channelId + "/fields/" + commandField + ".json";
+        this.readApiKey = readApiKey;
+    }
+
+    // Load the persisted cursor and commands; later syncs are saved here
+    public synchronized void setPreferences(SharedPreferences preferences) {
+        if (this.preferences != null) {
+            return;
+        }
+        this.preferences = preferences;
+        lastEntryId = preferences.getLong(PREF_LAST_ENTRY_ID, 0);
+        lastCreatedAt = preferences.getLong(PREF_LAST_CREATED_AT, 0);
+        String[] gap = preferences.getString(PREF_GAP, "").split("\\|");
+        if (gap.length == 4) {
+            try {
+                gapAfterId = Long.parseLong(gap[0]);
+                gapAfterCreatedAt = Long.parseLong(gap[1]);
+                gapBeforeId = Long.parseLong(gap[2]);
+                gapBeforeCreatedAt = Long.parseLong(gap[3]);
+            } catch (NumberFormatException e) {
+                gapBeforeId = 0;
+            }
+        }
+        for (String key : DEVICE_KEYS) {
+            String encoded = preferences.getString(PREF_COMMAND_PREFIX + key, null);
+            Entry entry = encoded != null ? Entry.decode(encoded) : null;
+            if (entry != null) {
+                latest.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * URL of the next sync: the newest entries on first use, afterwards only those since the cursor.
+     * While hasMore(), the next older page of the unread gap instead.
+     */
+    public synchronized String getSyncUrl() {
+        StringBuilder url = new StringBuilder(feedUrl).append("?results=").append(MAX_RESULTS);
+        long afterId = gapBeforeId > 0 ? gapAfterId : lastEntryId;
+        if (afterId > 0) {
+            // start and end are inclusive and have one-second resolution; entries outside the ids are skipped
+            url.append("&start=").append(formatQueryTime(gapBeforeId > 0 ? gapAfterCreatedAt : lastCreatedAt));
+        }
+        if (gapBeforeId > 0) {
+            url.append("&end=").append(formatQueryTime(gapBeforeCreatedAt));
+        }
+        if (readApiKey != null && !readApiKey.isEmpty()) {
+            url.append("&api_key=").append(readApiKey);
+        }
+        return url.toString();
+    }
+
+    /**
+     * Fold a feed response into the local copy and persist it.
+     *
+     * @return Number of entries that were new
+     */
+    public synchronized int apply(String feedJson) throws IOException {
+        // A page of the gap, or else everything after the cursor
+        boolean paging = gapBeforeId > 0;
+        long afterId = paging ? gapAfterId : lastEntryId;
+        long afterCreatedAt = paging ? gapAfterCreatedAt : lastCreatedAt;
+        long beforeId = paging ? gapBeforeId : Long.MAX_VALUE;
+        int added = 0;
+        int returned;
+        long newestId = lastEntryId;
+        long newestCreatedAt = lastCreatedAt;
+        long oldestId = Long.MAX_VALUE;
+        long oldestCreatedAt = 0;
+        try {
+            JSONArray feeds = new JSONObject(feedJson).getJSONArray("feeds");
+            returned = feeds.length();
+            for (int i = 0; i < feeds.length(); i++) {
+                JSONObject feed = feeds.getJSONObject(i);
+                long id = feed.getLong("entry_id");
+                if (id <= afterId || id >= beforeId) {
+                    continue;
+                }
+                long createdAt = parseTime(feed.getString("created_at"));
+                added++;
+                if (id > newestId) {
+                    newestId = id;
+                    newestCreatedAt = createdAt;
+                }
+                if (id < oldestId) {
+                    oldestId = id;
+                    oldestCreatedAt = createdAt;
+                }
+                if (feed.isNull(fieldName)) {
+                    continue;
+                }
+                String command = feed.getString(fieldName).trim();
+                String key = ThingSpeakBatcher.deviceKey(command);
+                Entry current = latest.get(key);
+                if (isDeviceKey(key) && (current == null || id > current.id)) {
+                    latest.put(key, new Entry(id, createdAt, command));
+                    entriesApplied++;
+                }
+            }
+        } catch (JSONException e) {
+            throw new IOException("Malformed channel feed: " + e.getMessage());
+        }
+
+        syncs++;
+        entriesRead += added;
+        lastSyncAt = System.currentTimeMillis();
+        if (!paging) {
+            lastEntryId = newestId;
+            lastCreatedAt = newestCreatedAt;
+        }
+        // A full page may have left older entries unread; they only matter while some device could
+        // have a newer command among them than the one already known
+        boolean gapOpen = returned >= MAX_RESULTS && oldestId != Long.MAX_VALUE && oldestId > afterId + 1
+                && needsOlderThan(oldestId);
+        if (gapOpen) {
+            gapAfterId = afterId;
+            gapAfterCreatedAt = afterCreatedAt;
+            gapBeforeId = oldestId;
+            gapBeforeCreatedAt = oldestCreatedAt;
+        } else {
+            gapBeforeId = 0;
+        }
+        if (added > 0 || paging || gapOpen) {
+            save();
+        }
+        return added;
+    }
+
+    // True while older entries between the cursor and the last page are still to be read
+    public synchronized boolean hasMore() {
+        return gapBeforeId > 0;
+    }
+
+    // True if the last sync is recent enough to answer from the local copy
+    public synchronized boolean isFresh(long maxAgeMillis) {
+        return lastSyncAt > 0 && System.currentTimeMillis() - lastSyncAt < maxAgeMillis;
+    }
+
+    /**
+     * The devices' state as last commanded through the channel. Devices that never
+     * received a command report false from their has* methods.
+     */
+    public synchronized DeviceStatus getStatus() {
+        DeviceStatus.Builder status = new DeviceStatus.Builder().setRemote(true);
+        long now = System.currentTimeMillis();
+        long newest = 0;
+
+        Entry garage = latest.get("garage");
+        if (garage != null) {
+            status.setGarage(garage.command.equals("garage_open") ? DeviceStatus.GARAGE_OPEN_ANGLE : GARAGE_CLOSED_ANGLE);
+            newest = Math.max(newest, garage.createdAt);
+        }
+
+        Entry lights = latest.get("lights");
+        if (lights != null) {
+            status.setLights(brightnessOf(lights.command));
+            newest = Math.max(newest, lights.createdAt);
+        }
+
+        Entry sprinkler = latest.get("sprinkler");
+        if (sprinkler != null) {
+            applySprinkler(status, sprinkler, now);
+            newest = Math.max(newest, sprinkler.createdAt);
+        }
+
+        Entry schedule = latest.get("sprinkler_schedule");
+        if (schedule != null) {
+            applySchedule(status, schedule.command);
+            newest = Math.max(newest, schedule.createdAt);
+        }
+        return status.setReceivedAt(newest).build();
+    }
+
+    public synchronized long getLastEntryId() {
+        return lastEntryId;
+    }
+
+    public synchronized long getSyncCount() {
+        return syncs;
+    }
+
+    // New entries downloaded over all syncs
+    public synchronized long getEntriesRead() {
+        return entriesRead;
+    }
+
+    // Entries that changed a device's newest command
+    public synchronized long getEntriesApplied() {
+        return entriesApplied;
+    }
+
+    // sprinkler_on, sprinkler_off or sprinkler_on_<seconds>; a timed run is over once its time has passed
+    private static void applySprinkler(DeviceStatus.Builder status, Entry entry, long now) {
+        String command = entry.command;
+        if (command.startsWith("sprinkler_on_")) {
+            int seconds = parseInt(command.substring("sprinkler_on_".length()));
+            long remaining = seconds - (now - entry.createdAt) / 1000;
+            boolean running = seconds > 0 && remaining > 0;
+            status.setSprinkler(running ? DeviceStatus.SPRINKLER_ON_ANGLE : SPRINKLER_OFF_ANGLE);
+            // The hub reports its countdown inside the schedule object, so the remote copy does too
+            status.setHasSchedule(true).setTimerActive(running);
+            if (running) {
+                status.setRemainingSeconds((int) remaining);
+            }
+        } else {
+            status.setSprinkler(command.equals("sprinkler_on") ? DeviceStatus.SPRINKLER_ON_ANGLE : SPRINKLER_OFF_ANGLE);
+        }
+    }
+
+    // sprinkler_schedule_<7 day bits>_<hour>_<minute>_<second>_<durationMinutes>_<durationSeconds>
+    private static void applySchedule(DeviceStatus.Builder status, String command) {
+        String[] parts = command.substring("sprinkler_schedule".length()).split("_");
+        // parts[0] is the empty string before the first separator
+        if (parts.length < 6 || parts[1].length() != DeviceStatus.DAYS_PER_WEEK) {
+            return;
+        }
+        status.setHasSchedule(true);
+        for (int day = 0; day < DeviceStatus.DAYS_PER_WEEK; day++) {
+            status.setScheduledOn(day, parts[1].charAt(day) == '1');
+        }
+        status.setStartHour(parseInt(parts[2]))
+                .setStartMinute(parseInt(parts[3]))
+                .setStartSecond(parseInt(parts[4]))
+                .setDurationMinutes(parseInt(parts[5]));
+        if (parts.length > 6) {
+            status.setDurationSeconds(parseInt(parts[6]));
+        }
+    }
+
+    // Inverse of the levels NexadomusApiClient sends remotely
+    private static int brightnessOf(String command) {
+        switch (command) {
+            case "lights_low":
+                return 85;
+            case "lights_medium":
+                return 170;
+            case "lights_high":
+                return DeviceStatus.MAX_BRIGHTNESS;
+            default:
+                return 0;
+        }
+    }
+
+    // True if a device has no known command at least as new as the given entry
+    private boolean needsOlderThan(long id) {
+        for (String key : DEVICE_KEYS) {
+            Entry entry = latest.get(key);
+            if (entry == null || entry.id < id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDeviceKey(String key) {
+        for (String deviceKey : DEVICE_KEYS) {
+            if (deviceKey.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return DeviceStatus.UNKNOWN;
+        }
+    }
+
+    private long parseTime(String value) throws IOException {
+        try {
+            return responseTime.parse(value).getTime();
+        } catch (ParseException e) {
+            throw new IOException("Bad entry time: " + value);
+        }
+    }
+
+    private void save() {
+        if (preferences == null) {
+            return;
+        }
+        SharedPreferences.Editor editor = preferences.edit()
+                .putLong(PREF_LAST_ENTRY_ID, lastEntryId)
+                .putLong(PREF_LAST_CREATED_AT, lastCreatedAt)
+                .putString(PREF_GAP, gapBeforeId > 0
+                        ? gapAfterId + "|" + gapAfterCreatedAt + "|" + gapBeforeId + "|" + gapBeforeCreatedAt
+                        : "");
+        for (Map.Entry<String, Entry> entry : latest.entrySet()) {
+            editor.putString(PREF_COMMAND_PREFIX + entry.getKey(), entry.getValue().encode());
+        }
+        editor.apply();
+    }
+
+    private String formatQueryTime(long millis) {
+        return queryTime.format(new Date(millis)).replace(" ", "%20");
+    }
+
+    private static SimpleDateFormat utcFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+}
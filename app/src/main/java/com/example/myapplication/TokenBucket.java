@@ -0,0 +1,56 @@
+package com.example.myapplication;
+
+/**
+ * Token bucket tracking a write allowance, e.g. ThingSpeak's one update per channel every 15 s.
+ */
+public class TokenBucket {
+    private final int capacity;
+    private final long refillIntervalMillis;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param capacity             Maximum number of writes that can be saved up
+     * @param refillIntervalMillis Time it takes to earn one write
+     */
+    public TokenBucket(int capacity, long refillIntervalMillis) {
+        this.capacity = capacity;
+        this.refillIntervalMillis = refillIntervalMillis;
+        this.tokens = capacity;
+        this.lastRefill = System.currentTimeMillis();
+    }
+
+    // Take one token if available
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    // Milliseconds until a token is available, 0 if one is available now
+    public synchronized long millisUntilAvailable() {
+        refill();
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) * refillIntervalMillis);
+    }
+
+    // Empty the bucket, e.g. when the server reports we wrote too early
+    public synchronized void drain() {
+        refill();
+        tokens = 0;
+    }
+
+    private void refill() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + (double) elapsed / refillIntervalMillis);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveTimeoutTest {
+
+    private static AdaptiveTimeout timeout() {
+        // Connect 100..5000 ms at 4x p99, read 200..8000 ms at 6x p99, after 10 samples
+        return new AdaptiveTimeout("hub:test", 100, 5000, 200, 8000, 4, 6, 10);
+    }
+
+    @Test
+    public void usesCeilingsUntilEnoughSamples() {
+        AdaptiveTimeout timeout = timeout();
+        for (int i = 0; i < 9; i++) {
+            timeout.recordConnect(10);
+            timeout.recordRoundTrip(50);
+        }
+
+        assertEquals(5000, timeout.getConnectTimeoutMillis());
+        assertEquals(8000, timeout.getReadTimeoutMillis());
+    }
+
+    @Test
+    public void connectTimeoutFollowsConnectTimesNotRoundTrips() {
+        AdaptiveTimeout timeout = timeout();
+        for (int i = 0; i < 20; i++) {
+            timeout.recordConnect(40);
+            // Slow requests on fast connections, e.g. a hub busy computing its status
+            timeout.recordRoundTrip(1000);
+        }
+
+        int connect = timeout.getConnectTimeoutMillis();
+        int read = timeout.getReadTimeoutMillis();
+        assertTrue("connect " + connect, connect >= 160 && connect < 400);
+        assertTrue("read " + read, read >= 6000);
+        assertEquals(20, timeout.getConnectHistogram().getCount());
+        assertEquals(20, timeout.getHistogram().getCount());
+    }
+
+    @Test
+    public void roundTripsDoNotFeedConnectTimeout() {
+        AdaptiveTimeout timeout = timeout();
+        for (int i = 0; i < 20; i++) {
+            timeout.recordRoundTrip(3000);
+        }
+
+        // No connects yet, so the connect timeout stays at its ceiling instead of 4 x 3 s
+        assertEquals(5000, timeout.getConnectTimeoutMillis());
+        assertEquals(0, timeout.getConnectHistogram().getCount());
+    }
+
+    @Test
+    public void timeoutsStayWithinFloorAndCeiling() {
+        AdaptiveTimeout timeout = timeout();
+        for (int i = 0; i < 20; i++) {
+            timeout.recordConnect(1);
+            timeout.recordRoundTrip(1);
+        }
+        assertEquals(100, timeout.getConnectTimeoutMillis());
+        assertEquals(200, timeout.getReadTimeoutMillis());
+
+        for (int i = 0; i < 20; i++) {
+            timeout.recordConnectTimeout(60000);
+            timeout.recordTimeout(60000);
+        }
+        assertEquals(5000, timeout.getConnectTimeoutMillis());
+        assertEquals(8000, timeout.getReadTimeoutMillis());
+    }
+}
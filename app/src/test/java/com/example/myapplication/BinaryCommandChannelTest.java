@@ -0,0 +1,179 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BinaryCommandChannelTest {
+    private FakeDatagramHub datagramHub;
+    private FakeHubServer httpHub;
+
+    @Before
+    public void setUp() throws Exception {
+        datagramHub = new FakeDatagramHub();
+        httpHub = new FakeHubServer(path -> "OK");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        datagramHub.close();
+        httpHub.close();
+    }
+
+    @Test
+    public void mapsHubPathsToFrames() {
+        CommandFrame lights = CommandFrame.fromPath("/lights?brightness=128");
+        assertEquals(CommandFrame.DEVICE_LIGHTS, lights.getDevice());
+        assertEquals(128, lights.getValue());
+        assertEquals(1, CommandFrame.fromPath("/garage?state=open").getValue());
+        assertEquals(CommandFrame.SPRINKLERS_OFF, CommandFrame.fromPath("/sprinklers?state=off").getValue());
+        assertEquals(CommandFrame.SPRINKLERS_ON, CommandFrame.fromPath("/sprinklers?state=on").getValue());
+        assertNull(CommandFrame.fromPath("/sprinklers?state=on&duration_seconds=90"));
+        assertNull(CommandFrame.fromPath("/sprinklers?state=on&duration=2"));
+        assertNull(CommandFrame.fromPath("/lights?brightness=300"));
+        assertNull(CommandFrame.fromPath("/status"));
+
+        byte[] encoded = lights.withSequence(7).encode();
+        assertEquals(CommandFrame.SIZE, encoded.length);
+        CommandFrame decoded = CommandFrame.decode(encoded, encoded.length);
+        assertEquals(7, decoded.getSequence());
+        assertEquals(128, decoded.getValue());
+    }
+
+    @Test
+    public void retransmitsUntilAcknowledgedAndHubAppliesOnce() throws Exception {
+        datagramHub.dropNext(2);
+        BinaryCommandChannel channel = new BinaryCommandChannel(datagramHub.getHost(), datagramHub.getPort());
+
+        int status = channel.send(CommandFrame.fromPath("/lights?brightness=42"), null);
+
+        assertEquals(CommandFrame.STATUS_OK, status);
+        assertEquals(2, channel.getRetransmitCount());
+        assertEquals(1, datagramHub.applied.get());
+        assertEquals(42, datagramHub.lastValue);
+        channel.close();
+    }
+
+    @Test
+    public void ignoresOversizedAcknowledgements() throws Exception {
+        // A valid ack with trailing bytes must not be taken for a frame
+        datagramHub.padAcks(4);
+        BinaryCommandChannel channel = new BinaryCommandChannel(datagramHub.getHost(), datagramHub.getPort());
+
+        try {
+            channel.send(CommandFrame.fromPath("/lights?brightness=42"), null);
+            fail("Oversized acks were accepted");
+        } catch (IOException expected) {
+            // Never acknowledged
+        }
+        channel.close();
+    }
+
+    @Test
+    public void fallsBackToHttpWhenHubHasNoDatagramPort() throws Exception {
+        int closedPort = datagramHub.getPort();
+        datagramHub.close();
+        HubClient client = new HubClient(new Hub("main", "Main", httpHub.getHost(), httpHub.getPort()), closedPort);
+        client.setBinaryCommands(true);
+
+        HubConnectionPool.Response response = client.command("/lights?brightness=10", null);
+
+        assertEquals(200, response.getCode());
+        assertEquals(1, httpHub.getRequestCount());
+        assertFalse(client.getBinaryChannel().isAvailable());
+        // Later commands skip the datagram attempt
+        client.command("/lights?brightness=11", null);
+        assertEquals(1, client.getBinaryChannel().getFailureCount());
+    }
+
+    @Test
+    public void sendsTimedSprinklerRunOverHttp() throws Exception {
+        String reply = "{\"sprinkler\":180,\"sprinkler_schedule\":{\"timer_active\":true,\"remaining_seconds\":90}}";
+        httpHub.setHandler(path -> reply);
+        HubClient client = new HubClient(new Hub("main", "Main", httpHub.getHost(), httpHub.getPort()),
+                datagramHub.getPort());
+        client.setBinaryCommands(true);
+
+        HubConnectionPool.Response response = client.command("/sprinklers?state=on&duration_seconds=90", null);
+
+        // The screen starts its countdown from the reply, which an ack could not carry
+        assertEquals(reply, response.getBodyAsString());
+        assertEquals(1, httpHub.getRequestCount());
+        assertEquals(0, datagramHub.applied.get());
+        client.close();
+    }
+
+    // Acknowledges command frames like the hub firmware, applying each sequence number once
+    private static class FakeDatagramHub {
+        private final DatagramSocket socket;
+        final AtomicInteger applied = new AtomicInteger();
+        private final AtomicInteger toDrop = new AtomicInteger();
+        private volatile int ackPadding;
+        volatile int lastValue;
+
+        FakeDatagramHub() throws IOException {
+            socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            Thread thread = new Thread(this::serve);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String getHost() {
+            return socket.getLocalAddress().getHostAddress();
+        }
+
+        int getPort() {
+            return socket.getLocalPort();
+        }
+
+        void dropNext(int count) {
+            toDrop.set(count);
+        }
+
+        // Append this many bytes to every ack
+        void padAcks(int bytes) {
+            ackPadding = bytes;
+        }
+
+        void close() {
+            socket.close();
+        }
+
+        private void serve() {
+            byte[] buffer = new byte[64];
+            Integer lastSequence = null;
+            while (!socket.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(packet);
+                    CommandFrame frame = CommandFrame.decode(packet.getData(), packet.getLength());
+                    if (frame == null || frame.getType() != CommandFrame.TYPE_COMMAND) {
+                        continue;
+                    }
+                    if (toDrop.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                        continue;
+                    }
+                    if (lastSequence == null || lastSequence != frame.getSequence()) {
+                        lastSequence = frame.getSequence();
+                        lastValue = frame.getValue();
+                        applied.incrementAndGet();
+                    }
+                    byte[] ack = Arrays.copyOf(frame.ack(CommandFrame.STATUS_OK).encode(),
+                            CommandFrame.SIZE + ackPadding);
+                    socket.send(new DatagramPacket(ack, ack.length, packet.getSocketAddress()));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+    private static final long BASE_OPEN_MS = 1000;
+    private static final long MAX_OPEN_MS = 8000;
+
+    private long now = 100000;
+
+    private CircuitBreaker breaker() {
+        return new CircuitBreaker("hub", 3, BASE_OPEN_MS, MAX_OPEN_MS, () -> now);
+    }
+
+    // Fail enough calls in a row to open a closed breaker
+    private static void open(CircuitBreaker breaker) {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = breaker();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        // A success in between starts the count over
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(1, breaker.getOpenedCount());
+    }
+
+    @Test
+    public void letsOneProbeThroughOnceOpenPeriodEnds() {
+        CircuitBreaker breaker = breaker();
+        List<CircuitBreaker.State> states = new ArrayList<>();
+        breaker.addListener((b, from, to) -> states.add(to));
+        open(breaker);
+
+        now += breaker.millisUntilRetry();
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Everyone else waits for the probe's answer
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertEquals(3, states.size());
+        assertEquals(CircuitBreaker.State.OPEN, states.get(0));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, states.get(1));
+        assertEquals(CircuitBreaker.State.CLOSED, states.get(2));
+    }
+
+    @Test
+    public void failedProbeOpensAgainForLonger() {
+        CircuitBreaker breaker = breaker();
+        open(breaker);
+        now += breaker.millisUntilRetry();
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getOpenedCount());
+        long retry = breaker.millisUntilRetry();
+        // Doubled period with equal jitter: between one and two base periods
+        assertTrue(retry >= BASE_OPEN_MS && retry <= 2 * BASE_OPEN_MS);
+    }
+
+    @Test
+    public void releasedProbeLetsAnotherThrough() {
+        CircuitBreaker breaker = breaker();
+        open(breaker);
+        now += breaker.millisUntilRetry();
+        assertTrue(breaker.allowRequest());
+
+        breaker.release();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void openPeriodStaysWithinJitterBounds() {
+        for (int i = 0; i < 200; i++) {
+            CircuitBreaker breaker = breaker();
+            open(breaker);
+
+            long retry = breaker.millisUntilRetry();
+
+            assertTrue("retry " + retry, retry >= BASE_OPEN_MS / 2 && retry <= BASE_OPEN_MS);
+        }
+    }
+
+    @Test
+    public void openPeriodIsCappedAfterRepeatedFailedProbes() {
+        CircuitBreaker breaker = breaker();
+        open(breaker);
+        for (int i = 0; i < 10; i++) {
+            now += breaker.millisUntilRetry();
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+
+        long retry = breaker.millisUntilRetry();
+
+        assertTrue("retry " + retry, retry >= MAX_OPEN_MS / 2 && retry <= MAX_OPEN_MS);
+    }
+
+    @Test
+    public void resetClosesOpenBreaker() {
+        CircuitBreaker breaker = breaker();
+        open(breaker);
+
+        breaker.reset();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.millisUntilRetry());
+        assertTrue(breaker.allowRequest());
+    }
+}
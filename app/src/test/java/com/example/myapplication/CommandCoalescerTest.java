@@ -0,0 +1,237 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CommandCoalescerTest {
+
+    // Holds sends open until the test completes them
+    private static class PendingSender implements CommandCoalescer.Sender {
+        final List<String> commands = Collections.synchronizedList(new ArrayList<>());
+        final List<NexadomusApiClient.ApiCallback> callbacks = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch secondSend = new CountDownLatch(2);
+
+        @Override
+        public void send(String command, NexadomusApiClient.ApiCallback callback) {
+            commands.add(command);
+            callbacks.add(callback);
+            secondSend.countDown();
+        }
+    }
+
+    private static class Recorder implements NexadomusApiClient.ApiCallback {
+        final List<String> responses = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+
+        @Override
+        public void onSuccess(String response) {
+            responses.add(response);
+        }
+
+        @Override
+        public void onError(String error) {
+            errors.add(error);
+        }
+    }
+
+    // A caller that can walk away, like a fragment whose view was destroyed
+    private static class CancellableRecorder extends Recorder implements RequestHandle.Carrier {
+        final RequestHandle handle = new RequestHandle();
+
+        @Override
+        public RequestHandle getRequestHandle() {
+            return handle;
+        }
+    }
+
+    @Test
+    public void sendsOnlyLatestValueOnceInFlightCommandCompletes() {
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 0);
+        coalescer.submit("lights", "/lights?brightness=10", new Recorder());
+        coalescer.submit("lights", "/lights?brightness=20", new Recorder());
+        coalescer.submit("lights", "/lights?brightness=30", new Recorder());
+
+        // Only the first is on the wire; the rest wait behind it
+        assertEquals(1, sender.commands.size());
+
+        sender.callbacks.get(0).onSuccess("OK");
+
+        assertEquals(2, sender.commands.size());
+        assertEquals("/lights?brightness=30", sender.commands.get(1));
+        assertEquals(3, coalescer.getSubmittedCount());
+        assertEquals(2, coalescer.getSentCount());
+        assertEquals(1, coalescer.getCollapsedCount());
+    }
+
+    @Test
+    public void replacedCallersReceiveResultOfNewerCommand() {
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 0);
+        Recorder first = new Recorder();
+        Recorder replaced = new Recorder();
+        Recorder latest = new Recorder();
+        coalescer.submit("lights", "/lights?brightness=10", first);
+        coalescer.submit("lights", "/lights?brightness=20", replaced);
+        coalescer.submit("lights", "/lights?brightness=30", latest);
+
+        sender.callbacks.get(0).onSuccess("brightness 10");
+        sender.callbacks.get(1).onSuccess("brightness 30");
+
+        assertEquals(Collections.singletonList("brightness 10"), first.responses);
+        assertEquals(Collections.singletonList("brightness 30"), replaced.responses);
+        assertEquals(Collections.singletonList("brightness 30"), latest.responses);
+    }
+
+    @Test
+    public void errorsReachEveryCallerOfTheSend() {
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 0);
+        coalescer.submit("lights", "/lights?brightness=10", new Recorder());
+        Recorder replaced = new Recorder();
+        Recorder latest = new Recorder();
+        coalescer.submit("lights", "/lights?brightness=20", replaced);
+        coalescer.submit("lights", "/lights?brightness=30", latest);
+
+        sender.callbacks.get(0).onSuccess("OK");
+        sender.callbacks.get(1).onError("Hub unavailable");
+
+        assertEquals(Collections.singletonList("Hub unavailable"), replaced.errors);
+        assertEquals(Collections.singletonList("Hub unavailable"), latest.errors);
+    }
+
+    @Test
+    public void devicesDoNotWaitOnEachOther() {
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 0);
+        coalescer.submit("lights", "/lights?brightness=10", new Recorder());
+        coalescer.submit("garage", "/garage?angle=90", new Recorder());
+
+        assertEquals(2, sender.commands.size());
+        assertEquals(0, coalescer.getCollapsedCount());
+    }
+
+    @Test
+    public void dropsWaitingCommandWhenEveryCallerCancelled() {
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 0);
+        coalescer.submit("lights", "/lights?brightness=10", new Recorder());
+        CancellableRecorder gone = new CancellableRecorder();
+        coalescer.submit("lights", "/lights?brightness=20", gone);
+
+        gone.handle.cancel();
+        sender.callbacks.get(0).onSuccess("OK");
+
+        assertEquals(1, sender.commands.size());
+        assertEquals(1, coalescer.getCancelledCount());
+    }
+
+    @Test
+    public void waitingCommandStillSentWhileAnyCallerRemains() {
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 0);
+        coalescer.submit("lights", "/lights?brightness=10", new Recorder());
+        CancellableRecorder gone = new CancellableRecorder();
+        Recorder staying = new Recorder();
+        coalescer.submit("lights", "/lights?brightness=20", gone);
+        coalescer.submit("lights", "/lights?brightness=30", staying);
+
+        gone.handle.cancel();
+        sender.callbacks.get(0).onSuccess("OK");
+
+        assertEquals(2, sender.commands.size());
+        assertEquals("/lights?brightness=30", sender.commands.get(1));
+        assertEquals(0, coalescer.getCancelledCount());
+    }
+
+    @Test
+    public void withdrawnCommandIsNotSent() {
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 0);
+        Recorder sent = new Recorder();
+        Recorder waiting = new Recorder();
+        coalescer.submit("garage", "/garage?state=open", sent);
+        coalescer.submit("garage", "/garage?state=close", waiting);
+
+        // Already on the wire, so only the waiting one can be taken back
+        assertFalse(coalescer.withdraw("garage", sent));
+        assertTrue(coalescer.withdraw("garage", waiting));
+        sender.callbacks.get(0).onSuccess("OK");
+
+        assertEquals(1, sender.commands.size());
+        assertTrue(waiting.responses.isEmpty());
+    }
+
+    @Test
+    public void takenWaitingCommandIsNotSent() {
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 0);
+        Recorder sent = new Recorder();
+        Recorder waiting = new Recorder();
+        coalescer.submit("lights", "/lights?brightness=10", sent);
+        coalescer.submit("lights", "/lights?brightness=20", waiting);
+
+        // A batch takes over the waiting value; the one in flight is not its to take
+        assertEquals(Collections.singletonList(waiting), coalescer.takeWaiting("lights"));
+        assertTrue(coalescer.takeWaiting("lights").isEmpty());
+        assertTrue(coalescer.takeWaiting("garage").isEmpty());
+        sender.callbacks.get(0).onSuccess("OK");
+
+        assertEquals(1, sender.commands.size());
+        assertEquals(Collections.singletonList("OK"), sent.responses);
+        assertTrue(waiting.responses.isEmpty());
+    }
+
+    // A caller that stands for a traced command
+    private static class TracedRecorder extends Recorder implements CommandTrace.Carrier {
+        final CommandTrace trace;
+
+        TracedRecorder(CommandTrace trace) {
+            this.trace = trace;
+        }
+
+        @Override
+        public List<CommandTrace> getCommandTraces() {
+            return Collections.singletonList(trace);
+        }
+    }
+
+    @Test
+    public void sendCarriesTracesOfEveryCollapsedCaller() {
+        CommandTracer tracer = new CommandTracer(8);
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 0);
+        CommandTrace first = tracer.begin(DeviceAction.LIGHTS, "10");
+        CommandTrace replaced = tracer.begin(DeviceAction.LIGHTS, "20");
+        CommandTrace latest = tracer.begin(DeviceAction.LIGHTS, "30");
+        coalescer.submit("lights", "/lights?brightness=10", new TracedRecorder(first));
+        coalescer.submit("lights", "/lights?brightness=20", new TracedRecorder(replaced));
+        coalescer.submit("lights", "/lights?brightness=30", new TracedRecorder(latest));
+
+        assertEquals(Collections.singletonList(first), CommandTrace.of(sender.callbacks.get(0)));
+        sender.callbacks.get(0).onSuccess("OK");
+        assertEquals(Arrays.asList(replaced, latest), CommandTrace.of(sender.callbacks.get(1)));
+    }
+
+    @Test
+    public void sendsWithinMinimumIntervalAreDeferredNotDropped() throws Exception {
+        PendingSender sender = new PendingSender();
+        CommandCoalescer coalescer = new CommandCoalescer(sender, 50);
+        coalescer.submit("lights", "/lights?brightness=10", new Recorder());
+        sender.callbacks.get(0).onSuccess("OK");
+
+        coalescer.submit("lights", "/lights?brightness=20", new Recorder());
+
+        // Too soon after the first send, so it goes out on the scheduler instead
+        assertTrue(sender.secondSend.await(5, TimeUnit.SECONDS));
+        assertEquals("/lights?brightness=20", sender.commands.get(1));
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class CommandOutboxTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("outbox", ".log");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    // Open the log and wait for the sync thread to read it
+    private CommandOutbox open(int maxEntries) throws InterruptedException {
+        CommandOutbox outbox = new CommandOutbox(file, maxEntries);
+        outbox.awaitIdle();
+        return outbox;
+    }
+
+    private void appendRaw(String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void pendingCommandsSurviveReopen() throws Exception {
+        CommandOutbox outbox = new CommandOutbox(file, 10);
+        outbox.append(CommandOutbox.TYPE_GARAGE, "open");
+        outbox.append(CommandOutbox.TYPE_CUSTOM, "tab\there\nand newline");
+        outbox.sync();
+        outbox.awaitIdle();
+
+        List<CommandOutbox.Entry> pending = open(10).getPending(false);
+
+        assertEquals(2, pending.size());
+        assertEquals("open", pending.get(0).getPayload());
+        assertEquals(CommandOutbox.TYPE_CUSTOM, pending.get(1).getType());
+        assertEquals("tab\there\nand newline", pending.get(1).getPayload());
+    }
+
+    @Test
+    public void acknowledgedCommandsAreNotReplayed() throws Exception {
+        CommandOutbox outbox = new CommandOutbox(file, 10);
+        outbox.append(CommandOutbox.TYPE_LIGHTS, "85");
+        outbox.append(CommandOutbox.TYPE_GARAGE, "close");
+        CommandOutbox.Entry latest = outbox.append(CommandOutbox.TYPE_LIGHTS, "255");
+
+        // The newest lights command replaces the older one as it is appended
+        List<CommandOutbox.Entry> collapsed = outbox.getPending(true);
+        assertEquals(2, collapsed.size());
+        assertEquals("255", collapsed.get(1).getPayload());
+        outbox.acknowledge(latest, true);
+        outbox.sync();
+        outbox.awaitIdle();
+
+        List<CommandOutbox.Entry> reloaded = open(10).getPending(false);
+        assertEquals(1, reloaded.size());
+        assertEquals("close", reloaded.get(0).getPayload());
+    }
+
+    @Test
+    public void newAppendsContinueAfterReloadedSequence() throws Exception {
+        CommandOutbox outbox = new CommandOutbox(file, 10);
+        CommandOutbox.Entry first = outbox.append(CommandOutbox.TYPE_GARAGE, "open");
+        outbox.sync();
+        outbox.awaitIdle();
+
+        CommandOutbox.Entry next = open(10).append(CommandOutbox.TYPE_GARAGE, "close");
+
+        assertTrue(next.getSequence() > first.getSequence());
+    }
+
+    @Test
+    public void appendsBeforeLoadAreNumberedAfterLoggedCommands() throws Exception {
+        CommandOutbox outbox = open(10);
+        CommandOutbox.Entry logged = outbox.append(CommandOutbox.TYPE_GARAGE, "open");
+        outbox.sync();
+        outbox.awaitIdle();
+
+        // May run before or after the sync thread has read the log
+        CommandOutbox reopened = new CommandOutbox(file, 10);
+        CommandOutbox.Entry early = reopened.append(CommandOutbox.TYPE_LIGHTS, "255");
+        reopened.awaitIdle();
+
+        List<CommandOutbox.Entry> pending = reopened.getPending(false);
+        assertTrue(reopened.isLoaded());
+        assertEquals(2, pending.size());
+        assertEquals("open", pending.get(0).getPayload());
+        assertSame(early, pending.get(1));
+        assertTrue(early.getSequence() > logged.getSequence());
+    }
+
+    @Test
+    public void newerCommandReplacesPendingOneForSameDevice() throws Exception {
+        CommandOutbox outbox = open(2);
+        outbox.append(CommandOutbox.TYPE_LIGHTS, "0");
+        outbox.append(CommandOutbox.TYPE_GARAGE, "open");
+        outbox.append(CommandOutbox.TYPE_LIGHTS, "255");
+        outbox.sync();
+        outbox.awaitIdle();
+
+        List<CommandOutbox.Entry> reloaded = open(2).getPending(false);
+        assertEquals(2, reloaded.size());
+        assertEquals("open", reloaded.get(0).getPayload());
+        assertEquals("255", reloaded.get(1).getPayload());
+        assertEquals(0, outbox.getDroppedCount());
+    }
+
+    @Test
+    public void commandAppendedWhileLoadingReplacesLoggedOneForSameDevice() throws Exception {
+        CommandOutbox outbox = open(10);
+        outbox.append(CommandOutbox.TYPE_GARAGE, "open");
+        outbox.sync();
+        outbox.awaitIdle();
+
+        CommandOutbox reopened = new CommandOutbox(file, 10);
+        reopened.append(CommandOutbox.TYPE_GARAGE, "close");
+        reopened.awaitIdle();
+
+        assertEquals(1, reopened.size());
+        assertEquals("close", reopened.getPending(false).get(0).getPayload());
+    }
+
+    @Test
+    public void fullOutboxRefusesNewDeviceWithoutEvicting() throws Exception {
+        CommandOutbox outbox = open(2);
+        outbox.append(CommandOutbox.TYPE_LIGHTS, "0");
+        outbox.append(CommandOutbox.TYPE_GARAGE, "open");
+        CountDownLatch refused = new CountDownLatch(1);
+        AtomicBoolean durable = new AtomicBoolean(true);
+
+        CommandOutbox.Entry entry = outbox.append(CommandOutbox.TYPE_SPRINKLERS, "on", result -> {
+            durable.set(result);
+            refused.countDown();
+        });
+
+        assertNull(entry);
+        assertTrue(refused.await(2, TimeUnit.SECONDS));
+        assertFalse(durable.get());
+        assertEquals(1, outbox.getDroppedCount());
+        assertEquals("0", outbox.getPending(false).get(0).getPayload());
+        assertEquals("open", outbox.getPending(false).get(1).getPayload());
+    }
+
+    @Test
+    public void expiredCommandsAreDroppedAndCounted() throws Exception {
+        CommandOutbox outbox = new CommandOutbox(file, 10);
+        outbox.append(CommandOutbox.TYPE_GARAGE, "open");
+        Thread.sleep(20);
+
+        assertEquals(1, outbox.expire(10));
+        assertEquals(0, outbox.size());
+        assertEquals(1, outbox.getExpiredCount());
+    }
+
+    @Test
+    public void compactionKeepsOnlyPendingCommands() throws Exception {
+        CommandOutbox outbox = new CommandOutbox(file, 10000);
+        StringBuilder longPayload = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            longPayload.append('x');
+        }
+        for (int i = 0; i < 400; i++) {
+            outbox.acknowledge(outbox.append(CommandOutbox.TYPE_CUSTOM, longPayload.toString()), false);
+        }
+        outbox.append(CommandOutbox.TYPE_GARAGE, "close");
+        outbox.sync();
+        outbox.awaitIdle();
+
+        // Over 90 KB of records were written; compaction keeps the log under its 64 KB limit
+        assertTrue(file.length() < 64 * 1024);
+        List<CommandOutbox.Entry> reloaded = open(10000).getPending(false);
+        assertEquals(1, reloaded.size());
+        assertEquals("close", reloaded.get(0).getPayload());
+    }
+
+    @Test
+    public void tornTailIsSkipped() throws Exception {
+        CommandOutbox outbox = new CommandOutbox(file, 10);
+        outbox.append(CommandOutbox.TYPE_GARAGE, "open");
+        outbox.sync();
+        outbox.awaitIdle();
+        // Process died halfway through writing the next record
+        String next = CommandOutbox.record("C\t2\t" + System.currentTimeMillis() + "\tlights\t255");
+        appendRaw(next.substring(0, next.length() - 4));
+
+        CommandOutbox reloaded = open(10);
+
+        assertEquals(1, reloaded.size());
+        assertEquals("open", reloaded.getPending(false).get(0).getPayload());
+        assertEquals(1, reloaded.getDamagedCount());
+    }
+
+    @Test
+    public void tornRecordWithAllFieldsIsSkipped() throws Exception {
+        // Payload cut short but still five tab-separated fields and a checksum field
+        String intact = CommandOutbox.record("C\t1\t" + System.currentTimeMillis() + "\tlights\t255");
+        String crc = intact.substring(intact.lastIndexOf('\t'));
+        appendRaw("C\t1\t" + System.currentTimeMillis() + "\tlights\t2" + crc);
+        appendRaw(CommandOutbox.record("C\t2\t" + System.currentTimeMillis() + "\tgarage\tclose"));
+
+        CommandOutbox reloaded = open(10);
+
+        assertEquals(1, reloaded.size());
+        assertEquals("close", reloaded.getPending(false).get(0).getPayload());
+        assertEquals(1, reloaded.getDamagedCount());
+    }
+
+    @Test
+    public void saveCallbackRunsOnceRecordIsOnDisk() throws Exception {
+        CommandOutbox outbox = new CommandOutbox(file, 10);
+        CountDownLatch saved = new CountDownLatch(1);
+        AtomicBoolean durable = new AtomicBoolean();
+
+        outbox.append(CommandOutbox.TYPE_SPRINKLERS, "on", result -> {
+            durable.set(result);
+            saved.countDown();
+        });
+
+        assertTrue(saved.await(2, TimeUnit.SECONDS));
+        assertTrue(durable.get());
+        assertEquals(1, outbox.getFsyncCount());
+        assertEquals(1, open(10).size());
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommandTracerTest {
+
+    private static DeviceStatus localStatus(int lights, int garage, int sprinkler) {
+        return new DeviceStatus.Builder().setLights(lights).setGarage(garage).setSprinkler(sprinkler).build();
+    }
+
+    @Test
+    public void tracesCommandFromEnqueueToDevice() {
+        CommandTracer tracer = new CommandTracer(8);
+        CommandTrace trace = tracer.begin(DeviceAction.GARAGE, "open");
+        tracer.dispatched(Collections.singletonList(trace), CommandTrace.ROUTE_HUB);
+        tracer.acknowledged(trace, null);
+
+        tracer.onStatus(localStatus(85, 0, 0));
+        assertEquals(0, trace.getAppliedAt());
+        tracer.onStatus(localStatus(85, DeviceStatus.GARAGE_OPEN_ANGLE, 0));
+
+        assertEquals(CommandTrace.ROUTE_HUB, trace.getRoute());
+        assertNull(trace.getError());
+        assertTrue(trace.getDispatchedAt() >= trace.getEnqueuedAt());
+        assertTrue(trace.getAckedAt() >= trace.getDispatchedAt());
+        assertTrue(trace.getAppliedAt() >= trace.getAckedAt());
+    }
+
+    @Test
+    public void remoteLightsMatchByPresetLevel() {
+        CommandTracer tracer = new CommandTracer(8);
+        CommandTrace trace = tracer.begin(DeviceAction.LIGHTS, "150");
+        tracer.dispatched(Collections.singletonList(trace), CommandTrace.ROUTE_THINGSPEAK);
+        tracer.acknowledged(trace, null);
+
+        // Statuses read back from ThingSpeak only echo the command
+        tracer.onStatus(new DeviceStatus.Builder(localStatus(170, 0, 0)).setRemote(true).build());
+        assertEquals(0, trace.getAppliedAt());
+        tracer.onStatus(localStatus(170, 0, 0));
+
+        assertEquals(CommandTrace.ROUTE_THINGSPEAK, trace.getRoute());
+        assertTrue(trace.getAppliedAt() > 0);
+    }
+
+    @Test
+    public void refusedCommandIsNeverDispatched() {
+        CommandTracer tracer = new CommandTracer(8);
+        CommandTrace refused = tracer.begin(DeviceAction.SPRINKLERS, "on");
+        tracer.acknowledged(refused, "Hub unavailable");
+        CommandTrace sent = tracer.begin(DeviceAction.SPRINKLERS, "on");
+        tracer.dispatched(Arrays.asList(refused, sent), CommandTrace.ROUTE_HUB);
+        tracer.onStatus(localStatus(0, 0, DeviceStatus.SPRINKLER_ON_ANGLE));
+
+        assertEquals(0, refused.getDispatchedAt());
+        assertEquals(0, refused.getAppliedAt());
+        assertTrue(sent.getAppliedAt() > 0);
+    }
+
+    @Test
+    public void dispatchMarksOnlyTheCommandsSent() {
+        CommandTracer tracer = new CommandTracer(8);
+        CommandTrace sent = tracer.begin(DeviceAction.LIGHTS, "85");
+        // Same device, still waiting to go out, e.g. on the other route
+        CommandTrace waiting = tracer.begin(DeviceAction.LIGHTS, "170");
+        tracer.dispatched(Collections.singletonList(sent), CommandTrace.ROUTE_HUB);
+
+        assertTrue(sent.getDispatchedAt() > 0);
+        assertEquals(0, waiting.getDispatchedAt());
+        assertNull(waiting.getRoute());
+    }
+
+    @Test
+    public void evictedTraceIsNotDispatched() {
+        CommandTracer tracer = new CommandTracer(2);
+        CommandTrace evicted = tracer.begin(DeviceAction.GARAGE, "open");
+        tracer.begin(DeviceAction.LIGHTS, "0");
+        tracer.begin(DeviceAction.LIGHTS, "85");
+        tracer.dispatched(Collections.singletonList(evicted), CommandTrace.ROUTE_HUB);
+
+        assertEquals(0, evicted.getDispatchedAt());
+    }
+
+    @Test
+    public void ringKeepsNewestTraces() {
+        CommandTracer tracer = new CommandTracer(4);
+        for (int i = 0; i < 10; i++) {
+            tracer.begin(DeviceAction.LIGHTS, String.valueOf(i));
+        }
+
+        List<CommandTrace> traces = tracer.getTraces();
+        assertEquals(4, traces.size());
+        assertEquals("6", traces.get(0).getValue());
+        assertEquals("9", traces.get(3).getValue());
+        assertEquals(10, traces.get(3).getId());
+    }
+
+    @Test
+    public void exportsOneCsvRowPerTrace() throws Exception {
+        CommandTracer tracer = new CommandTracer(8);
+        CommandTrace ok = tracer.begin(DeviceAction.LIGHTS, "0");
+        tracer.dispatched(Collections.singletonList(ok), CommandTrace.ROUTE_HUB);
+        tracer.acknowledged(ok, null);
+        CommandTrace failed = tracer.begin(DeviceAction.GARAGE, "close");
+        tracer.dispatched(Collections.singletonList(failed), CommandTrace.ROUTE_HUB);
+        tracer.acknowledged(failed, "HTTP Error: 500, \"busy\"");
+
+        File file = File.createTempFile("traces", ".csv");
+        try {
+            tracer.export(file);
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+            assertEquals(3, lines.size());
+            assertEquals(CommandTracer.CSV_HEADER, lines.get(0));
+            String[] row = lines.get(1).split(",", -1);
+            assertEquals(12, row.length);
+            assertEquals("1", row[0]);
+            assertEquals("hub", row[3]);
+            assertEquals("-1", row[10]);
+            assertTrue(lines.get(2).endsWith(",\"HTTP Error: 500, 'busy'\""));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConnectivityMonitorTest {
+    private static final String HUB = "Nexadomus Prototype";
+
+    @Test
+    public void hubNetworkMeansHome() {
+        // Joined to the hub even while mobile data has internet
+        assertEquals(ConnectivityMonitor.Path.LOCAL_HUB, ConnectivityMonitor.choosePath(true, true));
+        assertEquals(ConnectivityMonitor.Path.LOCAL_HUB, ConnectivityMonitor.choosePath(true, false));
+    }
+
+    @Test
+    public void internetWithoutHubMeansAway() {
+        assertEquals(ConnectivityMonitor.Path.INTERNET, ConnectivityMonitor.choosePath(false, true));
+        assertEquals(ConnectivityMonitor.Path.NONE, ConnectivityMonitor.choosePath(false, false));
+    }
+
+    @Test
+    public void matchesHubSsidWithOrWithoutQuotes() {
+        assertTrue(ConnectivityMonitor.isHubSsid(HUB, "\"Nexadomus Prototype\""));
+        assertTrue(ConnectivityMonitor.isHubSsid(HUB, HUB));
+        assertFalse(ConnectivityMonitor.isHubSsid(HUB, "\"Home WiFi\""));
+    }
+
+    @Test
+    public void redactedOrMissingSsidIsNotHub() {
+        assertFalse(ConnectivityMonitor.isHubSsid(HUB, "<unknown ssid>"));
+        assertFalse(ConnectivityMonitor.isHubSsid(HUB, null));
+        assertFalse(ConnectivityMonitor.isHubSsid(null, "\"Nexadomus Prototype\""));
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HedgedDispatcherTest {
+
+    // A path the test answers by hand
+    private static class ManualAttempt implements HedgedDispatcher.Attempt {
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile NexadomusApiClient.ApiCallback callback;
+        volatile boolean withdrawable;
+        volatile int cancels;
+
+        @Override
+        public void start(NexadomusApiClient.ApiCallback callback) {
+            this.callback = callback;
+            started.countDown();
+        }
+
+        @Override
+        public boolean cancel() {
+            cancels++;
+            return withdrawable;
+        }
+
+        boolean awaitStart() throws InterruptedException {
+            return started.await(2, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class Recorder implements NexadomusApiClient.ApiCallback {
+        final List<String> responses = Collections.synchronizedList(new ArrayList<>());
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onSuccess(String response) {
+            responses.add(response);
+        }
+
+        @Override
+        public void onError(String error) {
+            errors.add(error);
+        }
+    }
+
+    // Not enough samples to learn from, so the hedge delay is the given default
+    private static HedgedDispatcher dispatcher(long hedgeDelayMillis) {
+        return new HedgedDispatcher(new LatencyHistogram(1000), 0.95, 1, 60000, hedgeDelayMillis, 100);
+    }
+
+    @Test
+    public void primaryAnsweringInTimeNeverStartsHedge() throws Exception {
+        HedgedDispatcher dispatcher = dispatcher(60000);
+        ManualAttempt primary = new ManualAttempt();
+        ManualAttempt hedge = new ManualAttempt();
+        Recorder caller = new Recorder();
+
+        dispatcher.dispatch("garage", primary, hedge, caller);
+        primary.callback.onSuccess("OK");
+
+        assertEquals(Collections.singletonList("OK"), caller.responses);
+        assertEquals(1, hedge.started.getCount());
+        assertEquals(0, dispatcher.getHedgesFired());
+    }
+
+    @Test
+    public void primaryWinningWithdrawsWaitingHedge() throws Exception {
+        HedgedDispatcher dispatcher = dispatcher(1);
+        ManualAttempt primary = new ManualAttempt();
+        ManualAttempt hedge = new ManualAttempt();
+        hedge.withdrawable = true;
+        Recorder caller = new Recorder();
+
+        dispatcher.dispatch("garage", primary, hedge, caller);
+        assertTrue(hedge.awaitStart());
+        primary.callback.onSuccess("OK");
+
+        assertEquals(Collections.singletonList("OK"), caller.responses);
+        assertEquals(1, dispatcher.getHedgesWithdrawn());
+        // Nothing left that could land later
+        assertFalse(dispatcher.supersede("garage"));
+    }
+
+    @Test
+    public void hedgeWinningWithdrawsPrimaryAndReportsOnce() throws Exception {
+        HedgedDispatcher dispatcher = dispatcher(1);
+        ManualAttempt primary = new ManualAttempt();
+        primary.withdrawable = true;
+        ManualAttempt hedge = new ManualAttempt();
+        Recorder caller = new Recorder();
+
+        dispatcher.dispatch("lights", primary, hedge, caller);
+        assertTrue(hedge.awaitStart());
+        hedge.callback.onSuccess("Remote command sent");
+        primary.callback.onSuccess("late");
+
+        assertEquals(Collections.singletonList("Remote command sent"), caller.responses);
+        assertEquals(1, dispatcher.getHedgeWins());
+        assertEquals(1, primary.cancels);
+        assertEquals(1, dispatcher.getPrimariesWithdrawn());
+    }
+
+    @Test
+    public void primaryFailureStartsHedgeAtOnce() throws Exception {
+        HedgedDispatcher dispatcher = dispatcher(60000);
+        ManualAttempt primary = new ManualAttempt();
+        ManualAttempt hedge = new ManualAttempt();
+        Recorder caller = new Recorder();
+
+        dispatcher.dispatch("garage", primary, hedge, caller);
+        primary.callback.onError("Hub timed out");
+
+        assertTrue(hedge.awaitStart());
+        hedge.callback.onError("Rate limited");
+        assertEquals(Collections.singletonList("Hub timed out; Rate limited"), caller.errors);
+    }
+
+    @Test
+    public void newerCommandStopsHedgeThatHasNotStarted() throws Exception {
+        HedgedDispatcher dispatcher = dispatcher(50);
+        ManualAttempt primary = new ManualAttempt();
+        ManualAttempt hedge = new ManualAttempt();
+        Recorder caller = new Recorder();
+
+        dispatcher.dispatch("garage", primary, hedge, caller);
+        assertFalse(dispatcher.supersede("garage"));
+
+        // The old hedge never goes out, even after its delay
+        assertFalse(hedge.started.await(200, TimeUnit.MILLISECONDS));
+        primary.callback.onError("Hub timed out");
+        assertEquals(Collections.singletonList("Hub timed out"), caller.errors);
+    }
+
+    @Test
+    public void newerCommandWithdrawsHedgeStillWaitingToGoOut() throws Exception {
+        HedgedDispatcher dispatcher = dispatcher(1);
+        ManualAttempt primary = new ManualAttempt();
+        ManualAttempt hedge = new ManualAttempt();
+        hedge.withdrawable = true;
+        Recorder caller = new Recorder();
+
+        dispatcher.dispatch("garage", primary, hedge, caller);
+        assertTrue(hedge.awaitStart());
+
+        assertFalse(dispatcher.supersede("garage"));
+        assertEquals(1, dispatcher.getHedgesWithdrawn());
+        // The withdrawn hedge never answers; the race still ends with the primary
+        primary.callback.onError("Hub timed out");
+        assertEquals(Collections.singletonList("Hub timed out"), caller.errors);
+    }
+
+    @Test
+    public void reportsHedgeThatMayLandAfterNewerCommand() throws Exception {
+        HedgedDispatcher dispatcher = dispatcher(1);
+        ManualAttempt primary = new ManualAttempt();
+        ManualAttempt hedge = new ManualAttempt();
+        Recorder caller = new Recorder();
+
+        dispatcher.dispatch("garage", primary, hedge, caller);
+        assertTrue(hedge.awaitStart());
+        // The primary answered but the hedge was already written to the channel
+        primary.callback.onSuccess("OK");
+
+        assertTrue(dispatcher.supersede("garage"));
+        assertEquals(1, dispatcher.getHedgesSuperseded());
+        // Reported once only
+        assertFalse(dispatcher.supersede("garage"));
+    }
+
+    @Test
+    public void supersedeOnlyAffectsSameDevice() throws Exception {
+        HedgedDispatcher dispatcher = dispatcher(1);
+        ManualAttempt primary = new ManualAttempt();
+        ManualAttempt hedge = new ManualAttempt();
+
+        dispatcher.dispatch("garage", primary, hedge, new Recorder());
+        assertTrue(hedge.awaitStart());
+
+        assertFalse(dispatcher.supersede("lights"));
+        assertEquals(0, hedge.cancels);
+        assertTrue(dispatcher.supersede("garage"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class HubClientTest {
+    private FakeHubServer server;
+    private HubClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeHubServer(path -> "{\"lights\":\"dim\",");
+        client = new HubClient(new Hub("house", "House", server.getHost(), server.getPort()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void malformedStatusDoesNotOpenBreaker() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            try {
+                client.getStatus(null);
+                fail("Malformed status decoded");
+            } catch (StatusDecoder.MalformedStatusException expected) {
+                // The hub answered with something we cannot read
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void unreachableHubOpensBreaker() throws Exception {
+        server.setHandler(path -> null);
+        for (int i = 0; i < 5; i++) {
+            try {
+                client.getStatus(null);
+                fail("Status read from a hub that closed the connection");
+            } catch (IOException expected) {
+                // Connection closed without an answer
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitBreaker().getState());
+    }
+}
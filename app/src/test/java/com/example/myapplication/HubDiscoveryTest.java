@@ -0,0 +1,165 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HubDiscoveryTest {
+    private static final int LISTEN_MS = 200;
+
+    private FakeResponder responder;
+
+    @Before
+    public void setUp() throws Exception {
+        responder = new FakeResponder("NEXADOMUS|garage|8080|Garage hub");
+    }
+
+    @After
+    public void tearDown() {
+        responder.close();
+    }
+
+    @Test
+    public void findsHubAtTheAddressItAnsweredFrom() throws Exception {
+        HubDiscovery discovery = discovery(60000, 60000);
+        Result result = discover(discovery, false);
+
+        assertFalse(result.fromCache);
+        assertEquals(1, result.hubs.size());
+        Hub hub = result.hubs.get(0);
+        assertEquals("garage", hub.getId());
+        assertEquals("Garage hub", hub.getName());
+        assertEquals("127.0.0.1", hub.getHost());
+        assertEquals(8080, hub.getPort());
+    }
+
+    @Test
+    public void answersFromCacheUntilRefreshIsDue() throws Exception {
+        HubDiscovery discovery = discovery(60000, 60000);
+        discover(discovery, false);
+        int probesAfterFirst = responder.probes.get();
+
+        long startedAt = System.currentTimeMillis();
+        Result cached = discover(discovery, false);
+        long elapsed = System.currentTimeMillis() - startedAt;
+
+        assertTrue(cached.fromCache);
+        assertEquals("garage", cached.hubs.get(0).getId());
+        assertTrue("Cache answer took " + elapsed + " ms", elapsed < LISTEN_MS);
+        assertEquals(probesAfterFirst, responder.probes.get());
+        assertEquals(1, discovery.getProbeCount());
+    }
+
+    @Test
+    public void staleCacheIsAnsweredThenRefreshed() throws Exception {
+        HubDiscovery discovery = discovery(0, 60000);
+        discover(discovery, false);
+
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        discovery.discover(false, listener(results));
+
+        Result first = results.poll(1, TimeUnit.SECONDS);
+        Result second = results.poll(2, TimeUnit.SECONDS);
+        assertTrue(first.fromCache);
+        assertFalse(second.fromCache);
+        assertEquals(2, discovery.getProbeCount());
+    }
+
+    @Test
+    public void forgetsHubsAfterTheirTtl() throws Exception {
+        HubDiscovery discovery = discovery(0, 100);
+        discover(discovery, false);
+        responder.close();
+
+        Thread.sleep(150);
+        assertTrue(discovery.getCachedHubs().isEmpty());
+    }
+
+    private HubDiscovery discovery(long refreshAfterMillis, long ttlMillis) {
+        return new HubDiscovery(InetAddress.getLoopbackAddress(), responder.getPort(), LISTEN_MS,
+                refreshAfterMillis, ttlMillis, Runnable::run);
+    }
+
+    // Runs one discovery and returns its first answer
+    private static Result discover(HubDiscovery discovery, boolean forceRefresh) throws InterruptedException {
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        discovery.discover(forceRefresh, listener(results));
+        Result result = results.poll(2, TimeUnit.SECONDS);
+        assertNotNull("No discovery answer", result);
+        return result;
+    }
+
+    private static HubDiscovery.Listener listener(BlockingQueue<Result> results) {
+        return new HubDiscovery.Listener() {
+            @Override
+            public void onHubsFound(List<Hub> hubs, boolean fromCache) {
+                results.add(new Result(hubs, fromCache));
+            }
+
+            @Override
+            public void onDiscoveryFailed(String error) {
+                fail(error);
+            }
+        };
+    }
+
+    private static class Result {
+        final List<Hub> hubs;
+        final boolean fromCache;
+
+        Result(List<Hub> hubs, boolean fromCache) {
+            this.hubs = hubs;
+            this.fromCache = fromCache;
+        }
+    }
+
+    // Answers discovery probes on a loopback port like a hub would
+    private static class FakeResponder {
+        private final DatagramSocket socket;
+        final AtomicInteger probes = new AtomicInteger();
+
+        FakeResponder(String reply) throws IOException {
+            socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[64];
+                byte[] answer = reply.getBytes(StandardCharsets.UTF_8);
+                while (!socket.isClosed()) {
+                    try {
+                        DatagramPacket probe = new DatagramPacket(buffer, buffer.length);
+                        socket.receive(probe);
+                        String text = new String(probe.getData(), 0, probe.getLength(), StandardCharsets.US_ASCII);
+                        if (text.equals(HubDiscovery.PROBE)) {
+                            probes.incrementAndGet();
+                            socket.send(new DatagramPacket(answer, answer.length, probe.getSocketAddress()));
+                        }
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return socket.getLocalPort();
+        }
+
+        void close() {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class HubFanOutTest {
+    private static final String[] IDS = {"house", "garage", "garden"};
+
+    private final List<FakeHubServer> servers = new ArrayList<>();
+    private final List<HubClient> hubs = new ArrayList<>();
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final RequestScheduler scheduler = new RequestScheduler(workers, 8);
+    // Counted down by every hub as its request arrives
+    private final CountDownLatch arrived = new CountDownLatch(IDS.length);
+
+    @Before
+    public void setUp() throws Exception {
+        for (String id : IDS) {
+            FakeHubServer server = new FakeHubServer(path -> {
+                arrived.countDown();
+                // Only answers once every hub has been asked, so calls made one after another never complete
+                try {
+                    if (!arrived.await(5, TimeUnit.SECONDS)) {
+                        return null;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                return "{\"hub\":\"" + id + "\"}";
+            });
+            servers.add(server);
+            hubs.add(new HubClient(new Hub(id, id, server.getHost(), server.getPort())));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (FakeHubServer server : servers) {
+            server.close();
+        }
+        workers.shutdownNow();
+    }
+
+    private static class Outcome {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Map<String, String>> results = new AtomicReference<>();
+        final AtomicReference<Map<String, String>> errors = new AtomicReference<>();
+
+        HubFanOut.Callback<String> callback() {
+            return (results, failures) -> {
+                this.results.set(results);
+                errors.set(failures);
+                done.countDown();
+            };
+        }
+    }
+
+    @Test
+    public void asksEveryHubAtOnce() throws Exception {
+        HubFanOut fanOut = new HubFanOut(scheduler, Runnable::run);
+        Outcome outcome = new Outcome();
+
+        fanOut.run(hubs, RequestScheduler.Lane.INTERACTIVE,
+                (hub, handle) -> hub.get("/status", handle).getBodyAsString(), outcome.callback());
+
+        assertTrue(outcome.done.await(10, TimeUnit.SECONDS));
+        assertTrue(outcome.errors.get().toString(), outcome.errors.get().isEmpty());
+        assertEquals(3, outcome.results.get().size());
+        assertEquals("{\"hub\":\"garden\"}", outcome.results.get().get("garden"));
+        assertEquals(1, fanOut.getWallTimes().getCount());
+    }
+
+    @Test
+    public void unreachableHubDoesNotHoldUpTheOthers() throws Exception {
+        servers.get(1).close();
+        // The closed hub never arrives
+        arrived.countDown();
+        HubFanOut fanOut = new HubFanOut(scheduler, Runnable::run);
+        Outcome outcome = new Outcome();
+
+        fanOut.run(hubs, RequestScheduler.Lane.INTERACTIVE,
+                (hub, handle) -> hub.get("/status", handle).getBodyAsString(), outcome.callback());
+
+        assertTrue(outcome.done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, outcome.results.get().size());
+        assertEquals(1, outcome.errors.get().size());
+        assertTrue(outcome.errors.get().containsKey("garage"));
+    }
+
+    @Test
+    public void throwingCallIsReportedAsThatHubsError() throws Exception {
+        HubFanOut fanOut = new HubFanOut(scheduler, Runnable::run);
+        Outcome outcome = new Outcome();
+
+        fanOut.run(hubs, RequestScheduler.Lane.INTERACTIVE, (hub, handle) -> {
+            if (hub.getId().equals("garden")) {
+                arrived.countDown();
+                throw new IllegalStateException("bad reply");
+            }
+            return hub.get("/status", handle).getBodyAsString();
+        }, outcome.callback());
+
+        assertTrue(outcome.done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, outcome.results.get().size());
+        assertTrue(outcome.errors.get().get("garden").contains("bad reply"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+
+import static org.junit.Assert.*;
+
+public class RequestMetricsTest {
+
+    @Test
+    public void recordsHubRequestsPerEndpoint() throws Exception {
+        RequestMetrics metrics = new RequestMetrics();
+        try (FakeHubServer server = new FakeHubServer(path -> "{\"lights\":85}")) {
+            HubClient client = new HubClient(new Hub("main", "Main", server.getHost(), server.getPort()),
+                    HubClient.COMMAND_PORT, metrics);
+            client.get("/lights?brightness=85", null);
+            client.get("/lights?brightness=0", null);
+            client.getStatus(null);
+        }
+
+        RequestMetrics.EndpointStats lights = metrics.get(RequestMetrics.Endpoint.LIGHTS);
+        assertEquals(2, lights.getSuccessCount());
+        assertEquals(0, lights.getErrorCount());
+        assertEquals(2, lights.getLatency().getCount());
+        assertTrue(lights.getBytesSent() > 2 * "GET /lights?brightness=0".length());
+        // Status line and headers come with every body
+        assertTrue(lights.getBytesReceived() > 2 * "{\"lights\":85}".length());
+        assertEquals(1, metrics.get(RequestMetrics.Endpoint.STATUS).getSuccessCount());
+        assertTrue(metrics.get(RequestMetrics.Endpoint.GARAGE).isEmpty());
+    }
+
+    @Test
+    public void countsFailuresByCause() throws Exception {
+        RequestMetrics metrics = new RequestMetrics();
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        HubClient client = new HubClient(new Hub("main", "Main", "127.0.0.1", closedPort),
+                HubClient.COMMAND_PORT, metrics);
+        try {
+            client.get("/garage?state=open", null);
+            fail("Nothing listens on the port");
+        } catch (IOException expected) {
+            // Connection refused
+        }
+        metrics.recordResponse(RequestMetrics.Endpoint.THINGSPEAK_UPDATE, 500, 120);
+
+        RequestMetrics.EndpointStats garage = metrics.get(RequestMetrics.Endpoint.GARAGE);
+        assertEquals(1, garage.getErrorCount(RequestMetrics.Cause.NETWORK));
+        assertEquals(0, garage.getSuccessCount());
+        RequestMetrics.EndpointStats update = metrics.get(RequestMetrics.Endpoint.THINGSPEAK_UPDATE);
+        assertEquals(1, update.getErrorCount(RequestMetrics.Cause.HTTP_ERROR));
+        assertEquals(120, update.getLatency().getMaxMillis());
+    }
+
+    @Test
+    public void classifiesPathsAndUrls() {
+        assertEquals(RequestMetrics.Endpoint.SPRINKLERS, RequestMetrics.Endpoint.ofHubPath("/sprinklers?state=on"));
+        assertEquals(RequestMetrics.Endpoint.STATUS, RequestMetrics.Endpoint.ofHubPath("/status?since=12"));
+        assertEquals(RequestMetrics.Endpoint.OTHER, RequestMetrics.Endpoint.ofHubPath("/reboot"));
+        assertEquals(RequestMetrics.Endpoint.THINGSPEAK_UPDATE,
+                RequestMetrics.Endpoint.ofThingSpeakUrl("https://api.thingspeak.com/channels/1/bulk_update.json"));
+        assertEquals(RequestMetrics.Endpoint.THINGSPEAK_FEED,
+                RequestMetrics.Endpoint.ofThingSpeakUrl("https://api.thingspeak.com/channels/1/feeds.json?results=8"));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        RequestMetrics metrics = new RequestMetrics();
+        String path = "/lights?brightness=128";
+        for (int i = 0; i < 10000; i++) {
+            record(metrics, path, i);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < 100000; i++) {
+            record(metrics, path, i);
+        }
+        long allocated = allocatedBytes() - before;
+
+        // JIT and the measurement itself account for a few hundred bytes; a boxed value per record would be megabytes
+        assertTrue("allocated " + allocated + " bytes", allocated < 100000);
+        assertEquals(110000, metrics.get(RequestMetrics.Endpoint.LIGHTS).getSuccessCount());
+    }
+
+    private static void record(RequestMetrics metrics, String path, int i) {
+        RequestMetrics.Endpoint endpoint = RequestMetrics.Endpoint.ofHubPath(path);
+        metrics.recordQueueWait(endpoint, i % 7);
+        metrics.recordResponse(endpoint, 200, i % 300);
+        metrics.recordBytes(endpoint, 60, 120);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RequestSchedulerTest {
+    // Tasks the scheduler started; they run when the test says so
+    private final List<Runnable> started = new ArrayList<>();
+    private final List<String> ran = new ArrayList<>();
+
+    private Runnable task(String name) {
+        return () -> ran.add(name);
+    }
+
+    @Test
+    public void freeWorkerTakesHighestPriorityLaneFirst() {
+        RequestScheduler scheduler = new RequestScheduler(started::add, 1);
+        scheduler.submit(RequestScheduler.Lane.SYNC, task("schedule"));
+        scheduler.submit(RequestScheduler.Lane.BACKGROUND, task("status"));
+        scheduler.submit(RequestScheduler.Lane.THINGSPEAK, task("remote"));
+        scheduler.submit(RequestScheduler.Lane.INTERACTIVE, task("garage"));
+
+        // Each task hands its worker to the next one when it finishes
+        for (int i = 0; i < started.size(); i++) {
+            started.get(i).run();
+        }
+
+        assertEquals(4, started.size());
+        assertEquals("schedule", ran.get(0));
+        assertEquals("garage", ran.get(1));
+        assertEquals("remote", ran.get(2));
+        assertEquals("status", ran.get(3));
+    }
+
+    @Test
+    public void laneRunsNoMoreThanItsLimit() {
+        RequestScheduler scheduler = new RequestScheduler(started::add, 8);
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(RequestScheduler.Lane.SYNC, task("schedule " + i));
+        }
+
+        assertEquals(1, started.size());
+        assertEquals(1, scheduler.getRunning(RequestScheduler.Lane.SYNC));
+        assertEquals(2, scheduler.getQueueDepth(RequestScheduler.Lane.SYNC));
+
+        started.get(0).run();
+
+        assertEquals(2, started.size());
+        assertEquals(1, scheduler.getQueueDepth(RequestScheduler.Lane.SYNC));
+        assertEquals(1, scheduler.getCompletedCount(RequestScheduler.Lane.SYNC));
+    }
+
+    @Test
+    public void slowThingSpeakRequestsLeaveInteractiveSlotsFree() {
+        RequestScheduler scheduler = new RequestScheduler(started::add, 8);
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(RequestScheduler.Lane.THINGSPEAK, task("remote " + i));
+        }
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit(RequestScheduler.Lane.INTERACTIVE, task("local " + i));
+        }
+
+        assertEquals(2, scheduler.getRunning(RequestScheduler.Lane.THINGSPEAK));
+        assertEquals(1, scheduler.getQueueDepth(RequestScheduler.Lane.THINGSPEAK));
+        assertEquals(4, scheduler.getRunning(RequestScheduler.Lane.INTERACTIVE));
+        assertEquals(0, scheduler.getQueueDepth(RequestScheduler.Lane.INTERACTIVE));
+    }
+
+    @Test
+    public void workerLimitHoldsAcrossLanes() {
+        RequestScheduler scheduler = new RequestScheduler(started::add, 2);
+        scheduler.submit(RequestScheduler.Lane.INTERACTIVE, task("garage"));
+        scheduler.submit(RequestScheduler.Lane.THINGSPEAK, task("remote"));
+        scheduler.submit(RequestScheduler.Lane.BACKGROUND, task("status"));
+
+        assertEquals(2, started.size());
+        assertEquals(1, scheduler.getQueueDepth(RequestScheduler.Lane.BACKGROUND));
+    }
+
+    @Test
+    public void refusesWorkBeyondLaneCapacity() {
+        RequestScheduler scheduler = new RequestScheduler(started::add, 8);
+        RequestScheduler.Lane lane = RequestScheduler.Lane.BACKGROUND;
+        int accepted = lane.maxConcurrent + lane.capacity;
+        for (int i = 0; i < accepted; i++) {
+            assertTrue(scheduler.submit(lane, task("status " + i)));
+        }
+
+        assertFalse(scheduler.submit(lane, task("one too many")));
+        assertEquals(1, scheduler.getRejectedCount(lane));
+        assertEquals(lane.capacity, scheduler.getMaxQueueDepth(lane));
+    }
+
+    @Test
+    public void failingTaskFreesItsSlot() {
+        RequestScheduler scheduler = new RequestScheduler(started::add, 8);
+        scheduler.submit(RequestScheduler.Lane.SYNC, () -> {
+            throw new IllegalStateException("boom");
+        });
+        scheduler.submit(RequestScheduler.Lane.SYNC, task("schedule"));
+
+        started.get(0).run();
+        started.get(1).run();
+
+        assertEquals("schedule", ran.get(0));
+        assertEquals(0, scheduler.getRunning(RequestScheduler.Lane.SYNC));
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StatusCacheTest {
+    private static final DeviceStatus FIRST = new DeviceStatus.Builder().setLights(85).build();
+    private static final DeviceStatus SECOND = new DeviceStatus.Builder().setLights(170).build();
+
+    // Holds fetches open until the test completes them
+    private static class PendingFetcher implements StatusCache.Fetcher {
+        final List<NexadomusApiClient.StatusCallback> fetches = new ArrayList<>();
+
+        @Override
+        public void fetch(NexadomusApiClient.StatusCallback callback) {
+            fetches.add(callback);
+        }
+
+        void complete(int index, DeviceStatus status) {
+            fetches.get(index).onSuccess(status);
+        }
+    }
+
+    private static class Recorder implements NexadomusApiClient.StatusCallback {
+        final List<DeviceStatus> statuses = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+
+        @Override
+        public void onSuccess(DeviceStatus status) {
+            statuses.add(status);
+        }
+
+        @Override
+        public void onError(String error) {
+            errors.add(error);
+        }
+    }
+
+    @Test
+    public void deliversCachedSnapshotThroughExecutor() {
+        PendingFetcher fetcher = new PendingFetcher();
+        List<Runnable> posted = new ArrayList<>();
+        StatusCache cache = new StatusCache(fetcher, posted::add, 60000);
+        cache.get(false, new Recorder());
+        fetcher.complete(0, FIRST);
+
+        Recorder listener = new Recorder();
+        cache.get(false, listener);
+
+        // Hits are never delivered on the caller's stack
+        assertTrue(listener.statuses.isEmpty());
+        assertEquals(1, posted.size());
+        posted.get(0).run();
+        assertSame(FIRST, listener.statuses.get(0));
+        assertEquals(1, fetcher.fetches.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void refetchesOnceSnapshotExpires() throws Exception {
+        PendingFetcher fetcher = new PendingFetcher();
+        StatusCache cache = new StatusCache(fetcher, Runnable::run, 20);
+        cache.get(false, new Recorder());
+        fetcher.complete(0, FIRST);
+
+        Thread.sleep(40);
+        Recorder late = new Recorder();
+        cache.get(false, late);
+        fetcher.complete(1, SECOND);
+
+        assertEquals(2, fetcher.fetches.size());
+        assertSame(SECOND, late.statuses.get(0));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void mergesConcurrentRequestsIntoOneFetch() {
+        PendingFetcher fetcher = new PendingFetcher();
+        StatusCache cache = new StatusCache(fetcher, Runnable::run, 60000);
+        Recorder[] callers = {new Recorder(), new Recorder(), new Recorder()};
+        cache.get(false, callers[0]);
+        cache.get(false, callers[1]);
+        // Forcing a refresh still joins the fetch in flight
+        cache.get(true, callers[2]);
+
+        fetcher.complete(0, FIRST);
+
+        assertEquals(1, fetcher.fetches.size());
+        assertEquals(2, cache.getCoalescedCount());
+        for (Recorder caller : callers) {
+            assertSame(FIRST, caller.statuses.get(0));
+        }
+    }
+
+    @Test
+    public void errorsReachEveryWaiterAndAreNotCached() {
+        PendingFetcher fetcher = new PendingFetcher();
+        StatusCache cache = new StatusCache(fetcher, Runnable::run, 60000);
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        cache.get(false, first);
+        cache.get(false, second);
+
+        fetcher.fetches.get(0).onError("Hub unavailable");
+        cache.get(false, new Recorder());
+
+        assertEquals("Hub unavailable", first.errors.get(0));
+        assertEquals("Hub unavailable", second.errors.get(0));
+        assertEquals(2, fetcher.fetches.size());
+    }
+
+    @Test
+    public void invalidatingDuringFetchKeepsResultOutOfCache() {
+        PendingFetcher fetcher = new PendingFetcher();
+        StatusCache cache = new StatusCache(fetcher, Runnable::run, 60000);
+        Recorder caller = new Recorder();
+        cache.get(false, caller);
+
+        // A command went out while the status was on its way
+        cache.invalidate();
+        fetcher.complete(0, FIRST);
+        cache.get(false, new Recorder());
+
+        assertSame(FIRST, caller.statuses.get(0));
+        assertEquals(2, fetcher.fetches.size());
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class StatusDeltaSyncTest {
+    private static final int ROUNDS = 500;
+
+    private SimulatedHub simulated;
+    private FakeHubServer server;
+    private HubClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        simulated = new SimulatedHub(42);
+        server = new FakeHubServer(simulated);
+        client = new HubClient(new Hub("main", "Main", server.getHost(), server.getPort()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void randomMutationsStayInStepWithTheHub() throws Exception {
+        Random random = new Random(7);
+        long fullBytes = 0;
+        int reboots = 0;
+        for (int round = 1; round <= ROUNDS; round++) {
+            int mutations = random.nextInt(4);
+            for (int i = 0; i < mutations; i++) {
+                simulated.mutate();
+            }
+            if (round % 97 == 0) {
+                simulated.reboot();
+                reboots++;
+            } else if (round % 61 == 0) {
+                simulated.trimHistory();
+            }
+
+            DeviceStatus status = client.getStatus(null);
+            String full = simulated.full();
+            assertEquals("round " + round, StatusDecoder.decode(full), status);
+            fullBytes += full.length();
+        }
+
+        StatusDeltaSync sync = client.getStatusSync();
+        assertTrue(sync.isSupported());
+        assertEquals(simulated.version(), sync.getVersion());
+        assertTrue(sync.getDeltaCount() > ROUNDS * 9 / 10);
+        assertTrue(sync.getFullSyncCount() >= 1 + reboots);
+        assertEquals(0, sync.getGapCount());
+        // Deltas carry a field or two instead of the whole document
+        assertTrue(sync.getBytesRead() + " of " + fullBytes, sync.getBytesRead() < fullBytes / 2);
+    }
+
+    @Test
+    public void versionGapForcesFullResync() throws Exception {
+        client.getStatus(null);
+        simulated.mutate();
+        simulated.mutate();
+        simulated.setSkipVersions(true);
+
+        DeviceStatus status = client.getStatus(null);
+
+        assertEquals(StatusDecoder.decode(simulated.full()), status);
+        StatusDeltaSync sync = client.getStatusSync();
+        assertEquals(1, sync.getGapCount());
+        assertEquals(2, sync.getFullSyncCount());
+        assertEquals(simulated.version(), sync.getVersion());
+    }
+
+    @Test
+    public void concurrentReadsMergeWithoutLosingChanges() throws Exception {
+        client.getStatus(null);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                readers.add(pool.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        assertNotNull(client.getStatus(null));
+                        assertNotNull(client.getStatusSync().getStatus());
+                    }
+                    return null;
+                }));
+            }
+            for (int i = 0; i < 300; i++) {
+                simulated.mutate();
+                Thread.sleep(0, 200000);
+            }
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(StatusDecoder.decode(simulated.full()), client.getStatus(null));
+        assertEquals(simulated.version(), client.getStatusSync().getVersion());
+    }
+
+    @Test
+    public void firmwareWithoutVersionsFallsBackToETags() throws Exception {
+        String plain = "{\"lights\":85,\"garage\":0,\"sprinkler\":0}";
+        server.setHandler(path -> path.equals("/status") ? plain : "{}");
+        server.setETagsEnabled(true);
+
+        client.getStatus(null);
+        assertFalse(client.getStatusSync().isSupported());
+        client.getStatus(null);
+        DeviceStatus third = client.getStatus(null);
+
+        assertEquals(85, third.getLights());
+        assertEquals(1, client.getStatusValidator().getFullReadCount());
+        assertEquals(1, client.getStatusValidator().getNotModifiedCount());
+    }
+
+    @Test
+    public void staleDeltaLeavesNewerStateAlone() throws Exception {
+        StatusDeltaSync sync = new StatusDeltaSync();
+        sync.apply(StatusDecoder.decodeDelta("{\"version\":5,\"lights\":10,\"garage\":0,\"sprinkler\":0}"));
+        sync.apply(StatusDecoder.decodeDelta("{\"version\":7,\"since\":5,\"lights\":30}"));
+
+        // Answer to an earlier request that arrived late
+        DeviceStatus status = sync.apply(StatusDecoder.decodeDelta("{\"version\":6,\"since\":5,\"lights\":20}"));
+
+        assertEquals(30, status.getLights());
+        assertEquals(7, sync.getVersion());
+        assertNull(sync.apply(StatusDecoder.decodeDelta("{\"version\":9,\"since\":8,\"lights\":40}")));
+    }
+
+    @Test
+    public void versionGoingBackwardsForcesFullResync() throws Exception {
+        StatusDeltaSync sync = new StatusDeltaSync();
+        sync.apply(StatusDecoder.decodeDelta("{\"version\":40,\"lights\":10,\"garage\":0,\"sprinkler\":0}"));
+
+        // A rebooted hub that still answers the old since with its new, lower version
+        assertNull(sync.apply(StatusDecoder.decodeDelta("{\"version\":3,\"since\":40,\"lights\":20}")));
+        assertEquals("/status", sync.getPath());
+        assertEquals(10, sync.getStatus().getLights());
+        assertEquals(1, sync.getGapCount());
+
+        DeviceStatus status = sync.apply(StatusDecoder.decodeDelta("{\"version\":3,\"lights\":20,\"garage\":0,\"sprinkler\":0}"));
+        assertEquals(20, status.getLights());
+        assertEquals("/status?since=3", sync.getPath());
+    }
+
+    @Test
+    public void hubWithoutVersionsIsAskedAgainLater() throws Exception {
+        StatusDeltaSync sync = new StatusDeltaSync();
+        sync.setUnsupportedRetryDelayMillis(30);
+        sync.apply(StatusDecoder.decodeDelta("{\"lights\":85,\"garage\":0,\"sprinkler\":0}"));
+        assertFalse(sync.isSupported());
+
+        Thread.sleep(60);
+        assertTrue(sync.isSupported());
+        assertEquals("/status", sync.getPath());
+
+        // Updated firmware now sends versions and stays supported
+        sync.apply(StatusDecoder.decodeDelta("{\"version\":1,\"lights\":85,\"garage\":0,\"sprinkler\":0}"));
+        sync.setUnsupportedRetryDelayMillis(60000);
+        assertTrue(sync.isSupported());
+    }
+
+    /**
+     * Hub firmware that versions its status: every mutation bumps the version and
+     * remembers which field it touched, and /status?since= answers with the fields
+     * changed after that version.
+     */
+    private static class SimulatedHub implements FakeHubServer.Handler {
+        private static final int LIGHTS = 0;
+        private static final int GARAGE = 1;
+        private static final int SPRINKLER = 2;
+        private static final int START_HOUR = 3;
+        private static final int START_MINUTE = 4;
+        private static final int DURATION_SECONDS = 5;
+        private static final int DAYS = 6;
+        private static final int[] LIMITS = {256, 101, 2, 24, 60, 3600, 128};
+
+        private final Random random;
+        private final int[] values = new int[LIMITS.length];
+        private final long[] changedAt = new long[LIMITS.length];
+        private long version;
+        // Deltas can only be built from versions the hub still has history for
+        private long oldestDelta;
+        private volatile boolean skipVersions;
+
+        SimulatedHub(long seed) {
+            random = new Random(seed);
+        }
+
+        synchronized void mutate() {
+            int field = random.nextInt(LIMITS.length);
+            values[field] = random.nextInt(LIMITS[field]);
+            changedAt[field] = ++version;
+        }
+
+        // Versions count from zero again after a reboot
+        synchronized void reboot() {
+            version = 0;
+            oldestDelta = 0;
+            for (int i = 0; i < changedAt.length; i++) {
+                changedAt[i] = 0;
+            }
+        }
+
+        synchronized void trimHistory() {
+            oldestDelta = version;
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        // Answer the next delta as if it started one version later than asked, losing changes
+        void setSkipVersions(boolean skipVersions) {
+            this.skipVersions = skipVersions;
+        }
+
+        synchronized String full() {
+            return render(StatusDelta.NO_VERSION);
+        }
+
+        @Override
+        public synchronized String handle(String path) {
+            int query = path.indexOf("?since=");
+            if (query < 0) {
+                return full();
+            }
+            long since = Long.parseLong(path.substring(query + 7));
+            if (since > version || since < oldestDelta) {
+                return full();
+            }
+            if (skipVersions) {
+                skipVersions = false;
+                since++;
+            }
+            return render(since);
+        }
+
+        private String render(long since) {
+            StringBuilder json = new StringBuilder("{\"version\":").append(version);
+            if (since != StatusDelta.NO_VERSION) {
+                json.append(",\"since\":").append(since);
+            }
+            appendField(json, "lights", LIGHTS, since);
+            appendField(json, "garage", GARAGE, since);
+            appendField(json, "sprinkler", SPRINKLER, since);
+            StringBuilder schedule = new StringBuilder();
+            appendField(schedule, "startHour", START_HOUR, since);
+            appendField(schedule, "startMinute", START_MINUTE, since);
+            appendField(schedule, "durationSeconds", DURATION_SECONDS, since);
+            if (changed(DAYS, since)) {
+                schedule.append(",\"days\":[");
+                for (int day = 0; day < 7; day++) {
+                    schedule.append(day > 0 ? "," : "").append((values[DAYS] & (1 << day)) != 0);
+                }
+                schedule.append(']');
+            }
+            if (schedule.length() > 0) {
+                json.append(",\"sprinkler_schedule\":{").append(schedule.substring(1)).append('}');
+            }
+            return json.append('}').toString();
+        }
+
+        private void appendField(StringBuilder json, String name, int field, long since) {
+            if (changed(field, since)) {
+                json.append(",\"").append(name).append("\":").append(values[field]);
+            }
+        }
+
+        private boolean changed(int field, long since) {
+            return since == StatusDelta.NO_VERSION || changedAt[field] > since;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StatusPublisherTest {
+    private static final DeviceStatus DIM = new DeviceStatus.Builder().setLights(85).setGarage(0).build();
+    private static final DeviceStatus BRIGHT = new DeviceStatus.Builder().setLights(170).setGarage(0).build();
+
+    private static class Recorder implements NexadomusApiClient.StatusListener {
+        final List<DeviceStatus> statuses = new ArrayList<>();
+
+        @Override
+        public void onStatusChanged(DeviceStatus status) {
+            statuses.add(status);
+        }
+    }
+
+    @Test
+    public void notifiesListenersWithVersionedSnapshot() {
+        StatusPublisher publisher = new StatusPublisher(new Recorder());
+        Recorder listener = new Recorder();
+        publisher.addListener(listener);
+
+        DeviceStatus first = publisher.publish(DIM, false);
+        DeviceStatus second = publisher.publish(BRIGHT, false);
+
+        assertEquals(1, first.getVersion());
+        assertEquals(2, second.getVersion());
+        assertTrue(second.getReceivedAt() > 0);
+        assertEquals(2, listener.statuses.size());
+        assertSame(second, listener.statuses.get(1));
+        assertSame(second, publisher.getCurrent());
+    }
+
+    @Test
+    public void unchangedStateKeepsSnapshotAndStaysQuiet() {
+        Recorder everyStatus = new Recorder();
+        StatusPublisher publisher = new StatusPublisher(everyStatus);
+        Recorder listener = new Recorder();
+        publisher.addListener(listener);
+        DeviceStatus first = publisher.publish(DIM, false);
+
+        DeviceStatus again = publisher.publish(new DeviceStatus.Builder(DIM).build(), false);
+
+        assertSame(first, again);
+        assertEquals(1, again.getVersion());
+        assertEquals(1, listener.statuses.size());
+        // The tracer hook still hears both
+        assertEquals(2, everyStatus.statuses.size());
+    }
+
+    @Test
+    public void partialChangeMergesIntoCurrentSnapshot() {
+        StatusPublisher publisher = new StatusPublisher(new Recorder());
+        publisher.publish(DIM, false);
+
+        DeviceStatus change = new DeviceStatus.Builder().setGarage(DeviceStatus.GARAGE_OPEN_ANGLE).build();
+        DeviceStatus merged = publisher.publish(change, true);
+
+        assertEquals(85, merged.getLights());
+        assertTrue(merged.isGarageOpen());
+        assertEquals(2, merged.getVersion());
+    }
+
+    @Test
+    public void fullStatusReplacesCurrentSnapshot() {
+        StatusPublisher publisher = new StatusPublisher(new Recorder());
+        publisher.publish(DIM, false);
+
+        DeviceStatus replaced = publisher.publish(new DeviceStatus.Builder().setSprinkler(0).build(), false);
+
+        assertFalse(replaced.hasLights());
+        assertFalse(replaced.hasGarage());
+    }
+
+    @Test
+    public void removedListenerIsNotNotified() {
+        StatusPublisher publisher = new StatusPublisher(new Recorder());
+        Recorder listener = new Recorder();
+        publisher.addListener(listener);
+        publisher.removeListener(listener);
+
+        publisher.publish(DIM, false);
+
+        assertTrue(listener.statuses.isEmpty());
+    }
+}
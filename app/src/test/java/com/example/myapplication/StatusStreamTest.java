@@ -0,0 +1,99 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StatusStreamTest {
+    private FakeHubServer hub;
+    private StatusStream stream;
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        hub = new FakeHubServer(path -> "{}");
+        stream = new StatusStream(hub.getHost(), hub.getPort(), Runnable::run);
+        stream.addListener((event, data) -> received.add(event + " " + data));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        stream.stop();
+        hub.close();
+    }
+
+    @Test
+    public void deliversPushedChangesOverOneConnection() throws Exception {
+        stream.start();
+        awaitStreams(1);
+
+        hub.pushEvent("status", "{\"lights\":0,\"garage\":0,\"sprinkler\":0}");
+        hub.pushEvent("change", "{\"lights\":128}");
+        hub.pushEvent("change", "{\"garage\":90}");
+
+        assertEquals("status {\"lights\":0,\"garage\":0,\"sprinkler\":0}", received.poll(2, TimeUnit.SECONDS));
+        assertEquals("change {\"lights\":128}", received.poll(2, TimeUnit.SECONDS));
+        assertEquals("change {\"garage\":90}", received.poll(2, TimeUnit.SECONDS));
+        assertEquals(1, hub.getAcceptedConnections());
+        assertEquals(3, stream.getEventCount());
+    }
+
+    @Test
+    public void reconnectsAfterHubDropsStream() throws Exception {
+        stream.start();
+        awaitStreams(1);
+
+        hub.dropEventStreams();
+        awaitStreams(1);
+        hub.pushEvent("change", "{\"sprinkler\":180}");
+
+        assertEquals("change {\"sprinkler\":180}", received.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, stream.getConnectCount());
+    }
+
+    @Test
+    public void reportsHubWithoutEventStream() throws Exception {
+        hub.setEventsEnabled(false);
+        stream.start();
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!stream.isUnsupported() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(stream.isUnsupported());
+        assertFalse(stream.isConnected());
+    }
+
+    @Test
+    public void picksUpEventStreamAfterFirmwareUpdate() throws Exception {
+        hub.setEventsEnabled(false);
+        stream.setUnsupportedRetryDelayMillis(50);
+        stream.start();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!stream.isUnsupported() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(stream.isUnsupported());
+
+        hub.setEventsEnabled(true);
+        awaitStreams(1);
+        hub.pushEvent("change", "{\"lights\":0}");
+
+        assertEquals("change {\"lights\":0}", received.poll(5, TimeUnit.SECONDS));
+        assertFalse(stream.isUnsupported());
+    }
+
+    private void awaitStreams(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (hub.getEventStreamCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, hub.getEventStreamCount());
+    }
+}
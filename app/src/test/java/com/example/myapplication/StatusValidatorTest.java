@@ -0,0 +1,81 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StatusValidatorTest {
+    private static final String LIGHTS_ON = "{\"lights\":170,\"garage\":\"closed\",\"sprinkler\":\"off\"}";
+    private static final String LIGHTS_OFF = "{\"lights\":0,\"garage\":\"closed\",\"sprinkler\":\"off\"}";
+
+    private FakeHubServer hub;
+    private volatile String body = LIGHTS_ON;
+
+    @Before
+    public void setUp() throws Exception {
+        hub = new FakeHubServer(path -> body);
+        hub.setETagsEnabled(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        hub.close();
+    }
+
+    @Test
+    public void unchangedStatusReusesTheLastSnapshot() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        StatusValidator validator = new StatusValidator();
+
+        DeviceStatus first = read(pool, validator);
+        assertNotNull(validator.getRequestHeaders());
+        DeviceStatus second = read(pool, validator);
+        DeviceStatus third = read(pool, validator);
+
+        assertEquals(170, first.getLights());
+        assertSame(first, second);
+        assertSame(first, third);
+        assertEquals(1, validator.getFullReadCount());
+        assertEquals(2, validator.getNotModifiedCount());
+        assertEquals(2L * LIGHTS_ON.length(), validator.getBytesSaved());
+        // A 304 has no body, so the socket stays usable
+        assertEquals(1, hub.getAcceptedConnections());
+    }
+
+    @Test
+    public void changedStatusIsReadInFull() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        StatusValidator validator = new StatusValidator();
+
+        read(pool, validator);
+        body = LIGHTS_OFF;
+        DeviceStatus changed = read(pool, validator);
+
+        assertEquals(0, changed.getLights());
+        assertEquals(2, validator.getFullReadCount());
+        assertEquals(0, validator.getNotModifiedCount());
+        assertSame(changed, read(pool, validator));
+    }
+
+    @Test
+    public void firmwareWithoutETagsGetsPlainReads() throws Exception {
+        hub.setETagsEnabled(false);
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        StatusValidator validator = new StatusValidator();
+
+        read(pool, validator);
+        read(pool, validator);
+
+        assertNull(validator.getRequestHeaders());
+        assertEquals(2, validator.getFullReadCount());
+        assertEquals(0, validator.getBytesSaved());
+    }
+
+    private static DeviceStatus read(HubConnectionPool pool, StatusValidator validator) throws Exception {
+        DeviceStatus status = pool.get("/status", 1000, 1000, validator.getRequestHeaders(), validator::read, null);
+        assertNotNull(status);
+        return status;
+    }
+}
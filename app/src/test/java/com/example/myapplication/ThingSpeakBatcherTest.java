@@ -0,0 +1,201 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ThingSpeakBatcherTest {
+
+    // Records every update and holds it open until the test answers it
+    private static class PendingSender implements ThingSpeakBatcher.Sender {
+        final BlockingQueue<List<String>> updates = new LinkedBlockingQueue<>();
+        final BlockingQueue<ThingSpeakBatcher.WriteCallback> callbacks = new LinkedBlockingQueue<>();
+
+        @Override
+        public void sendSingle(String command, ThingSpeakBatcher.WriteCallback callback) {
+            updates.add(Arrays.asList(command));
+            callbacks.add(callback);
+        }
+
+        @Override
+        public void sendBulk(List<String> commands, ThingSpeakBatcher.WriteCallback callback) {
+            updates.add(new ArrayList<>(commands));
+            callbacks.add(callback);
+        }
+
+        List<String> nextUpdate() throws InterruptedException {
+            return updates.poll(2, TimeUnit.SECONDS);
+        }
+
+        ThingSpeakBatcher.WriteCallback nextCallback() throws InterruptedException {
+            return callbacks.poll(2, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class Recorder implements ThingSpeakClient.ThingSpeakCallback {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String response;
+        volatile String error;
+
+        @Override
+        public void onSuccess(String response) {
+            this.response = response;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String error) {
+            this.error = error;
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void sceneGoesOutInOneUpdateAndReportsOnce() throws Exception {
+        List<List<String>> updates = new ArrayList<>();
+        ThingSpeakBatcher batcher = new ThingSpeakBatcher(new ThingSpeakBatcher.Sender() {
+            @Override
+            public void sendSingle(String command, ThingSpeakBatcher.WriteCallback callback) {
+                updates.add(Arrays.asList(command));
+                callback.onSuccess("1");
+            }
+
+            @Override
+            public void sendBulk(List<String> commands, ThingSpeakBatcher.WriteCallback callback) {
+                updates.add(new ArrayList<>(commands));
+                callback.onSuccess("{\"success\":true}");
+            }
+        }, new TokenBucket(1, 15000), 10);
+
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        List<DeviceAction> scene = Arrays.asList(DeviceAction.lights(0), DeviceAction.garage("close"),
+                DeviceAction.sprinklers("off"));
+        List<String> commands = new ArrayList<>();
+        for (DeviceAction action : scene) {
+            commands.add(action.getRemoteCommand());
+        }
+        batcher.submitAll(commands, new ThingSpeakClient.ThingSpeakCallback() {
+            @Override
+            public void onSuccess(String response) {
+                calls.incrementAndGet();
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                fail(error);
+            }
+        });
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, calls.get());
+        assertEquals(1, updates.size());
+        assertEquals(Arrays.asList("lights_off", "garage_close", "sprinkler_off"), updates.get(0));
+    }
+
+    @Test
+    public void sceneActionsMapToHubAndChannelCommands() {
+        DeviceAction timed = DeviceAction.sprinklers("on&duration_seconds=90");
+        assertEquals("sprinklers=on&duration_seconds=90", timed.getBatchParams());
+        assertEquals("sprinkler_on_90", timed.getRemoteCommand());
+        assertEquals("lights_medium", DeviceAction.lights(170).getRemoteCommand());
+        assertEquals("garage_open", DeviceAction.garage("open").getRemoteCommand());
+    }
+
+    @Test
+    public void collapsesCommandsForSameDeviceToNewest() throws Exception {
+        PendingSender sender = new PendingSender();
+        ThingSpeakBatcher batcher = new ThingSpeakBatcher(sender, new TokenBucket(1, 15000), 20);
+        Recorder replaced = new Recorder();
+        Recorder latest = new Recorder();
+        batcher.submit("lights_low", replaced);
+        batcher.submit("lights_high", latest);
+
+        assertEquals(Arrays.asList("lights_high"), sender.nextUpdate());
+        sender.nextCallback().onSuccess("42");
+
+        assertEquals("42", replaced.response);
+        assertEquals("42", latest.response);
+        assertEquals(1, batcher.getCommandsCollapsed());
+    }
+
+    @Test
+    public void rateLimitedWriteIsRequeuedForNextWindow() throws Exception {
+        PendingSender sender = new PendingSender();
+        ThingSpeakBatcher batcher = new ThingSpeakBatcher(sender, new TokenBucket(1, 50), 10);
+        Recorder caller = new Recorder();
+        batcher.submit("garage_open", caller);
+
+        assertEquals(Arrays.asList("garage_open"), sender.nextUpdate());
+        sender.nextCallback().onRateLimited();
+
+        // Not failed; written again once the bucket has refilled
+        assertEquals(1, caller.done.getCount());
+        assertEquals(Arrays.asList("garage_open"), sender.nextUpdate());
+        sender.nextCallback().onSuccess("43");
+
+        assertTrue(caller.done.await(2, TimeUnit.SECONDS));
+        assertEquals("43", caller.response);
+        assertEquals(1, batcher.getRateLimitedUpdates());
+    }
+
+    @Test
+    public void newerCommandSubmittedDuringRateLimitStillWins() throws Exception {
+        PendingSender sender = new PendingSender();
+        ThingSpeakBatcher batcher = new ThingSpeakBatcher(sender, new TokenBucket(1, 50), 10);
+        Recorder older = new Recorder();
+        Recorder newer = new Recorder();
+        batcher.submit("lights_low", older);
+        assertNotNull(sender.nextUpdate());
+
+        batcher.submit("lights_off", newer);
+        sender.nextCallback().onRateLimited();
+
+        assertEquals(Arrays.asList("lights_off"), sender.nextUpdate());
+        sender.nextCallback().onSuccess("44");
+        assertTrue(older.done.await(2, TimeUnit.SECONDS));
+        assertEquals("44", older.response);
+        assertEquals("44", newer.response);
+    }
+
+    @Test
+    public void failsAfterRepeatedRateLimits() throws Exception {
+        PendingSender sender = new PendingSender();
+        ThingSpeakBatcher batcher = new ThingSpeakBatcher(sender, new TokenBucket(1, 10), 5);
+        Recorder caller = new Recorder();
+        batcher.submit("sprinkler_on", caller);
+
+        for (int i = 0; i <= ThingSpeakBatcher.MAX_RATE_LIMIT_RETRIES; i++) {
+            assertNotNull(sender.nextUpdate());
+            sender.nextCallback().onRateLimited();
+        }
+
+        assertTrue(caller.done.await(2, TimeUnit.SECONDS));
+        assertEquals("Rate limited by ThingSpeak", caller.error);
+        assertNull(sender.updates.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void withdrawnCommandIsNeverWritten() throws Exception {
+        PendingSender sender = new PendingSender();
+        ThingSpeakBatcher batcher = new ThingSpeakBatcher(sender, new TokenBucket(1, 15000), 100);
+        Recorder caller = new Recorder();
+        batcher.submit("garage_close", caller);
+
+        assertTrue(batcher.withdraw(caller));
+        assertFalse(batcher.withdraw(caller));
+        assertNull(sender.updates.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, batcher.getQueueDepth());
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class ThingSpeakFeedReaderTest {
+
+    @Test
+    public void foldsNewestCommandPerDevice() throws Exception {
+        ThingSpeakFeedReader reader = new ThingSpeakFeedReader("1", 3, null);
+        reader.apply(feed(
+                entry(1, "2024-05-01T10:00:00Z", "\"garage_open\""),
+                entry(2, "2024-05-01T10:00:01Z", "\"lights_low\""),
+                entry(3, "2024-05-01T10:00:02Z", "null"),
+                entry(4, "2024-05-01T10:00:03Z", "\"garage_close\""),
+                entry(5, "2024-05-01T10:00:04Z", "\"sprinkler_schedule_1010100_6_30_0_15_900\"")));
+
+        DeviceStatus status = reader.getStatus();
+        assertTrue(status.isRemote());
+        assertTrue(status.hasGarage());
+        assertFalse(status.isGarageOpen());
+        assertEquals(85, status.getLights());
+        assertFalse(status.hasSprinkler());
+        assertTrue(status.isScheduledOn(0));
+        assertFalse(status.isScheduledOn(1));
+        assertEquals(6, status.getStartHour());
+        assertEquals(900, status.getDurationSeconds());
+        assertEquals(5, reader.getLastEntryId());
+    }
+
+    @Test
+    public void syncsOnlyEntriesAfterTheCursor() throws Exception {
+        ThingSpeakFeedReader reader = new ThingSpeakFeedReader("1", 3, null);
+        assertFalse(reader.getSyncUrl().contains("start="));
+        reader.apply(feed(entry(7, "2024-05-01T10:00:00Z", "\"lights_high\"")));
+        assertTrue(reader.getSyncUrl(), reader.getSyncUrl().contains("&start=2024-05-01%2010:00:00"));
+
+        // start is inclusive, so the cursor entry comes back and must not count again
+        int added = reader.apply(feed(
+                entry(7, "2024-05-01T10:00:00Z", "\"lights_high\""),
+                entry(8, "2024-05-01T10:00:05Z", "\"lights_off\"")));
+
+        assertEquals(1, added);
+        assertEquals(2, reader.getEntriesRead());
+        assertEquals(0, reader.getStatus().getLights());
+    }
+
+    @Test
+    public void fullPageReadsOlderEntriesItLeftOut() throws Exception {
+        ThingSpeakFeedReader reader = new ThingSpeakFeedReader("1", 3, null);
+        reader.apply(feed(entry(7, "2024-05-01T10:00:00Z", "\"lights_high\"")));
+
+        // 150 entries since the cursor; the feed returns only the newest 100
+        reader.apply(feed(lightsEntries(58, 157)));
+        assertTrue(reader.hasMore());
+        assertEquals(157, reader.getLastEntryId());
+        String url = reader.getSyncUrl();
+        assertTrue(url, url.contains("&start=2024-05-01%2010:00:00&end=2024-05-01%2010:00:58"));
+
+        String[] older = lightsEntries(8, 57);
+        older[0] = entry(8, "2024-05-01T10:00:08Z", "\"garage_open\"");
+        assertEquals(50, reader.apply(feed(older)));
+
+        assertFalse(reader.hasMore());
+        assertTrue(reader.getStatus().isGarageOpen());
+        assertEquals(157, reader.getLastEntryId());
+        assertEquals(151, reader.getEntriesRead());
+        assertTrue(reader.getSyncUrl().contains("&start=2024-05-01%2010:02:37"));
+    }
+
+    @Test
+    public void timedSprinklerRunEndsOnItsOwn() throws Exception {
+        ThingSpeakFeedReader reader = new ThingSpeakFeedReader("1", 3, null);
+        long now = System.currentTimeMillis();
+        reader.apply(feed(entry(1, time(now - 10000), "\"sprinkler_on_60\"")));
+
+        DeviceStatus running = reader.getStatus();
+        assertTrue(running.isSprinklerOn());
+        assertTrue(running.hasRunningTimer());
+        assertTrue(running.getRemainingSeconds() <= 50);
+
+        reader.apply(feed(entry(2, time(now - 120000), "\"sprinkler_on_60\"")));
+        assertFalse(reader.getStatus().isSprinklerOn());
+    }
+
+    private static String feed(String... entries) {
+        return "{\"channel\":{\"id\":1,\"last_entry_id\":0},\"feeds\":[" + String.join(",", entries) + "]}";
+    }
+
+    // Entry id at that many seconds past 10:00, each setting the lights
+    private static String[] lightsEntries(int firstId, int lastId) {
+        String[] entries = new String[lastId - firstId + 1];
+        for (int id = firstId; id <= lastId; id++) {
+            entries[id - firstId] = entry(id, String.format(Locale.US, "2024-05-01T10:%02d:%02dZ", id / 60, id % 60),
+                    "\"lights_low\"");
+        }
+        return entries;
+    }
+
+    private static String entry(long id, String createdAt, String command) {
+        return "{\"created_at\":\"" + createdAt + "\",\"entry_id\":" + id + ",\"field3\":" + command + "}";
+    }
+
+    private static String time(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+    @Test
+    public void startsFullAndEmptiesAtCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 60000);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertTrue(bucket.millisUntilAvailable() > 0);
+        assertTrue(bucket.millisUntilAvailable() <= 60000);
+    }
+
+    @Test
+    public void refillsOneTokenPerInterval() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 30);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        Thread.sleep(60);
+
+        assertEquals(0, bucket.millisUntilAvailable());
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    public void neverSavesUpMoreThanCapacity() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 10);
+        Thread.sleep(50);
+
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void drainWaitsAFullInterval() {
+        TokenBucket bucket = new TokenBucket(1, 60000);
+        bucket.drain();
+
+        assertFalse(bucket.tryAcquire());
+        // Allow for the clock ticking between drain and the check
+        assertTrue(bucket.millisUntilAvailable() > 59000);
+    }
+}
@@ -0,0 +1,29 @@
+// Device and protocol logic with no Android dependencies, so it can be unit tested and
+// benchmarked on a plain JVM. Run the benchmarks with ./gradlew :core:jmh
+plugins {
+    `java-library`
+    // FakeHubServer is shared with the app module's tests
+    `java-test-fixtures`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+    // Baseline the status decoder benchmark compares against
+    jmhImplementation("org.json:json:20231013")
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // Allocation rates matter as much as time on the phone
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
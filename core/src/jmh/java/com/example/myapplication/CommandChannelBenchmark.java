@@ -0,0 +1,87 @@
+package com.example.myapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One device command as a binary datagram and its acknowledgement, against the same
+ * command as an HTTP GET over a pooled socket and over a socket opened per command.
+ * The accept delay mimics the ESP32's slow accept path and only affects HTTP.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandChannelBenchmark {
+    private static final String PATH = "/lights?brightness=128";
+
+    @Param({"0", "20"})
+    public long acceptDelayMillis;
+
+    private LoopbackHub httpHub;
+    private LoopbackDatagramHub datagramHub;
+    private HubConnectionPool pool;
+    private DatagramSocket socket;
+    private final byte[] command = new byte[CommandFrame.SIZE];
+    private final byte[] ack = new byte[CommandFrame.SIZE];
+    private DatagramPacket commandPacket;
+    private DatagramPacket ackPacket;
+    private int sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        httpHub = new LoopbackHub(acceptDelayMillis);
+        datagramHub = new LoopbackDatagramHub();
+        pool = new HubConnectionPool(httpHub.getHost(), httpHub.getPort(), 2, 10000);
+        socket = new DatagramSocket();
+        socket.connect(datagramHub.getAddress(), datagramHub.getPort());
+        socket.setSoTimeout(1000);
+        commandPacket = new DatagramPacket(command, command.length);
+        ackPacket = new DatagramPacket(ack, ack.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        socket.close();
+        pool.close();
+        datagramHub.close();
+        httpHub.close();
+    }
+
+    // What BinaryCommandChannel does when nothing is lost: one frame out, one ack back
+    @Benchmark
+    public int datagram() throws IOException {
+        CommandFrame.fromPath(PATH).withSequence(++sequence).encode(command);
+        socket.send(commandPacket);
+        ackPacket.setLength(ack.length);
+        socket.receive(ackPacket);
+        return CommandFrame.decode(ack, ackPacket.getLength()).getValue();
+    }
+
+    @Benchmark
+    public HubConnectionPool.Response httpPooled() throws IOException {
+        return pool.get(PATH, 5000, 5000);
+    }
+
+    @Benchmark
+    public HubConnectionPool.Response httpConnectionPerCommand() throws IOException {
+        HubConnectionPool single = new HubConnectionPool(httpHub.getHost(), httpHub.getPort(), 1, 0);
+        try {
+            return single.get(PATH, 5000, 5000);
+        } finally {
+            single.close();
+        }
+    }
+}
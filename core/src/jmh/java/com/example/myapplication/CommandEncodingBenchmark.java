@@ -0,0 +1,66 @@
+package com.example.myapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a device command into what goes on the wire: the /batch parameters and
+ * ThingSpeak command of a DeviceAction, brightness bucketing for remote lights, and the
+ * binary UDP frame of a hub path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandEncodingBenchmark {
+    private final byte[] frame = new byte[CommandFrame.SIZE];
+    private int brightness;
+
+    @Setup
+    public void setUp() {
+        CommandFrame.fromPath("/garage?state=open").withSequence(1).encode(frame);
+    }
+
+    @Benchmark
+    public void encodeLights(Blackhole bh) {
+        DeviceAction action = DeviceAction.lights(nextBrightness());
+        bh.consume(action.getBatchParams());
+        bh.consume(action.getRemoteCommand());
+    }
+
+    @Benchmark
+    public void encodeSprinklers(Blackhole bh) {
+        DeviceAction action = DeviceAction.sprinklers("on&duration_seconds=900");
+        bh.consume(action.getBatchParams());
+        bh.consume(action.getRemoteCommand());
+    }
+
+    @Benchmark
+    public String bucketBrightness() {
+        return DeviceAction.remoteBrightnessLevel(nextBrightness());
+    }
+
+    @Benchmark
+    public byte[] encodeFrame() {
+        CommandFrame.fromPath("/lights?brightness=170").withSequence(brightness++).encode(frame);
+        return frame;
+    }
+
+    @Benchmark
+    public CommandFrame decodeFrame() {
+        return CommandFrame.decode(frame, CommandFrame.SIZE);
+    }
+
+    // Walks the whole range so every bucket is hit
+    private int nextBrightness() {
+        brightness = (brightness + 1) & DeviceStatus.MAX_BRIGHTNESS;
+        return brightness;
+    }
+}
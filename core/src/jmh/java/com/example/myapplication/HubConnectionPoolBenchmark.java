@@ -0,0 +1,58 @@
+package com.example.myapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hub request over a pooled keep-alive socket against one that opens a socket per
+ * request, as executeRequest did before the pool. The accept delay mimics the ESP32's
+ * slow accept path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HubConnectionPoolBenchmark {
+    @Param({"0", "20"})
+    public long acceptDelayMillis;
+
+    private LoopbackHub hub;
+    private HubConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        hub = new LoopbackHub(acceptDelayMillis);
+        pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.evictAll();
+        hub.close();
+    }
+
+    @Benchmark
+    public HubConnectionPool.Response pooled() throws IOException {
+        return pool.get("/status", 5000, 5000);
+    }
+
+    @Benchmark
+    public HubConnectionPool.Response connectionPerRequest() throws IOException {
+        HubConnectionPool single = new HubConnectionPool(hub.getHost(), hub.getPort(), 1, 0);
+        try {
+            return single.get("/status", 5000, 5000);
+        } finally {
+            single.evictAll();
+        }
+    }
+}
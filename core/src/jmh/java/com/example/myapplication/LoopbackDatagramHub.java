@@ -0,0 +1,54 @@
+package com.example.myapplication;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+/**
+ * Datagram command port on the loopback interface that acknowledges every command
+ * frame, as the hub firmware does, for benchmarks of the binary protocol.
+ */
+class LoopbackDatagramHub implements AutoCloseable {
+    private final DatagramSocket socket;
+
+    LoopbackDatagramHub() throws IOException {
+        socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(this::serve, "LoopbackDatagramHub");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    InetAddress getAddress() {
+        return socket.getLocalAddress();
+    }
+
+    int getPort() {
+        return socket.getLocalPort();
+    }
+
+    private void serve() {
+        byte[] buffer = new byte[CommandFrame.SIZE];
+        byte[] ack = new byte[CommandFrame.SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                CommandFrame frame = CommandFrame.decode(packet.getData(), packet.getLength());
+                if (frame == null || frame.getType() != CommandFrame.TYPE_COMMAND) {
+                    continue;
+                }
+                frame.ack(CommandFrame.STATUS_OK).encode(ack);
+                socket.send(new DatagramPacket(ack, ack.length, packet.getSocketAddress()));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
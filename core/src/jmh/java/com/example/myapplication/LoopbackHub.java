@@ -0,0 +1,95 @@
+package com.example.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keep-alive HTTP/1.1 server on the loopback interface that answers every request with
+ * the same small status body, for benchmarks that need a hub to talk to.
+ */
+class LoopbackHub implements AutoCloseable {
+    private static final String BODY = "{\"lights\":170,\"garage\":90,\"sprinkler\":0}";
+    private static final byte[] RESPONSE = ("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/json\r\n"
+            + "Content-Length: " + BODY.length() + "\r\n"
+            + "Connection: keep-alive\r\n"
+            + "\r\n"
+            + BODY).getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final long acceptDelayMillis;
+
+    LoopbackHub(long acceptDelayMillis) throws IOException {
+        this.acceptDelayMillis = acceptDelayMillis;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        workers.execute(this::acceptLoop);
+    }
+
+    String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (acceptDelayMillis > 0) {
+                    Thread.sleep(acceptDelayMillis);
+                }
+                workers.execute(() -> serve(socket));
+            } catch (IOException | InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            while (skipRequest(in)) {
+                out.write(RESPONSE);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // Client went away
+        }
+    }
+
+    // Read up to the blank line that ends the request head; false at end of stream
+    private static boolean skipRequest(InputStream in) throws IOException {
+        int lineLength = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                if (lineLength == 0) {
+                    return true;
+                }
+                lineLength = 0;
+            } else if (b != '\r') {
+                lineLength++;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        workers.shutdownNow();
+    }
+}
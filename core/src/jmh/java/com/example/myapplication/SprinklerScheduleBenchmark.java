@@ -0,0 +1,37 @@
+package com.example.myapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a sprinkler schedule's hub command, saved day string and screen text, and
+ * reading the day string back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SprinklerScheduleBenchmark {
+    private final SprinklerSchedule schedule = new SprinklerSchedule(
+            new boolean[]{false, true, false, true, false, true, true}, 18, 45, 30, 12, 5);
+
+    @Benchmark
+    public String toCommand() {
+        return schedule.toCommand();
+    }
+
+    @Benchmark
+    public String describe() {
+        return schedule.describe();
+    }
+
+    @Benchmark
+    public boolean[] roundTripDays() {
+        return SprinklerSchedule.parseDays(schedule.getDaysString());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.myapplication;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding /status payloads: the full document a hub answers with, the same document
+ * read from a stream as the connection pool hands it over, and a one-field delta.
+ * The org.json baseline is how the screens parsed the document before the decoder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StatusDecoderBenchmark {
+    // Fields the decoder does not know are in there on purpose, as real firmware sends them
+    private static final String FULL = "{\"version\":1842,\"lights\":170,\"garage\":90,\"sprinkler\":0,"
+            + "\"uptime\":123456,\"wifi\":{\"rssi\":-61,\"clients\":[1,2]},\"firmware\":\"1.4.2 \\\"beta\\\"\","
+            + "\"sprinkler_schedule\":{\"days\":[true,false,true,false,true,false,false],"
+            + "\"startHour\":6,\"startMinute\":30,\"startSecond\":0,\"duration\":15,\"durationSeconds\":900,"
+            + "\"timer_active\":true,\"remaining_seconds\":42,\"last_run\":null}}";
+    private static final String DELTA = "{\"version\":1843,\"since\":1842,\"lights\":85}";
+
+    private byte[] fullBytes;
+
+    @Setup
+    public void setUp() {
+        fullBytes = FULL.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public DeviceStatus decodeFull() throws IOException {
+        return StatusDecoder.decode(FULL);
+    }
+
+    @Benchmark
+    public DeviceStatus decodeFullFromStream() throws IOException {
+        return StatusDecoder.decode(new ByteArrayInputStream(fullBytes));
+    }
+
+    @Benchmark
+    public StatusDelta decodeDelta() throws IOException {
+        return StatusDecoder.decodeDelta(DELTA);
+    }
+
+    // readLine into a StringBuilder, then a JSONObject tree walked by hand
+    @Benchmark
+    public int decodeFullWithOrgJson() throws IOException, JSONException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(fullBytes)));
+        StringBuilder response = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null) {
+            response.append(line);
+        }
+        JSONObject json = new JSONObject(response.toString());
+        int result = json.getInt("lights") + json.getInt("garage") + json.getInt("sprinkler");
+        JSONObject schedule = json.getJSONObject("sprinkler_schedule");
+        JSONArray days = schedule.getJSONArray("days");
+        for (int i = 0; i < Math.min(days.length(), 7); i++) {
+            result += days.getBoolean(i) ? 1 : 0;
+        }
+        result += schedule.getInt("startHour") + schedule.getInt("startMinute") + schedule.getInt("startSecond");
+        result += schedule.getInt("durationSeconds");
+        if (schedule.getBoolean("timer_active")) {
+            result += schedule.getInt("remaining_seconds");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.myapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing a Wi-Fi scan into the Add Device list, from a quiet street to a block of
+ * flats. A few results are hidden networks and one is a hub's access point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WifiScanBenchmark {
+    private static final String[] CAPABILITIES = {
+            "[WPA2-PSK-CCMP][RSN-PSK-CCMP][ESS]", "[WPA-PSK-TKIP][WPA2-PSK-CCMP][ESS][WPS]", "[ESS]", "Open"};
+
+    @Param({"10", "100", "500"})
+    public int networks;
+
+    private String[] ssids;
+    private int[] levels;
+    private String[] capabilities;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(networks);
+        ssids = new String[networks];
+        levels = new int[networks];
+        capabilities = new String[networks];
+        for (int i = 0; i < networks; i++) {
+            ssids[i] = i % 17 == 5 ? "" : "Network-" + Integer.toHexString(random.nextInt());
+            levels[i] = -30 - random.nextInt(60);
+            capabilities[i] = CAPABILITIES[random.nextInt(CAPABILITIES.length)];
+        }
+        ssids[networks / 2] = WifiScan.HUB_SSID;
+    }
+
+    @Benchmark
+    public List<WifiScan.Network> process() {
+        WifiScan scan = new WifiScan();
+        for (int i = 0; i < networks; i++) {
+            scan.add(ssids[i], levels[i], capabilities[i]);
+        }
+        return scan.getNetworks();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.myapplication;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size binary frame of the hub's datagram command protocol.
+ *
+ * Every frame is 12 bytes, big-endian:
+ * magic 'N', version, type, device, 32-bit sequence number, 32-bit value.
+ * A command carries the device's new value; the hub answers with an ACK of the same
+ * sequence number whose value is 0 on success or an error code. The hub remembers the
+ * last sequence number per client, so a retransmitted command is acknowledged again
+ * but applied only once.
+ */
+public final class CommandFrame {
+    public static final int SIZE = 12;
+    static final byte MAGIC = 'N';
+    static final byte VERSION = 1;
+
+    public static final byte TYPE_COMMAND = 1;
+    public static final byte TYPE_ACK = 2;
+
+    public static final byte DEVICE_GARAGE = 1;
+    public static final byte DEVICE_LIGHTS = 2;
+    public static final byte DEVICE_SPRINKLERS = 3;
+
+    // Sprinkler values: off, on without a timer, or on for a number of seconds
+    public static final int SPRINKLERS_OFF = -1;
+    public static final int SPRINKLERS_ON = 0;
+
+    public static final int STATUS_OK = 0;
+
+    private final byte type;
+    private final byte device;
+    private final int sequence;
+    private final int value;
+
+    public CommandFrame(byte type, byte device, int sequence, int value) {
+        this.type = type;
+        this.device = device;
+        this.sequence = sequence;
+        this.value = value;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public byte getDevice() {
+        return device;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    // Same command with another sequence number
+    public CommandFrame withSequence(int sequence) {
+        return new CommandFrame(type, device, sequence, value);
+    }
+
+    public CommandFrame ack(int status) {
+        return new CommandFrame(TYPE_ACK, device, sequence, status);
+    }
+
+    public void encode(byte[] buffer) {
+        ByteBuffer.wrap(buffer, 0, SIZE)
+                .put(MAGIC).put(VERSION).put(type).put(device)
+                .putInt(sequence).putInt(value);
+    }
+
+    public byte[] encode() {
+        byte[] buffer = new byte[SIZE];
+        encode(buffer);
+        return buffer;
+    }
+
+    // Null for anything that is not a frame of this protocol version
+    public static CommandFrame decode(byte[] data, int length) {
+        if (length != SIZE || data[0] != MAGIC || data[1] != VERSION) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, SIZE);
+        buffer.position(2);
+        byte type = buffer.get();
+        byte device = buffer.get();
+        return new CommandFrame(type, device, buffer.getInt(), buffer.getInt());
+    }
+
+    /**
+     * The frame for a hub command path, or null if the path has no binary form and
+     * must go over HTTP. The sequence number is filled in when the frame is sent.
+     */
+    public static CommandFrame fromPath(String path) {
+        try {
+            if (path.startsWith("/garage?state=")) {
+                String state = path.substring("/garage?state=".length());
+                if (state.equals("open") || state.equals("close")) {
+                    return command(DEVICE_GARAGE, state.equals("open") ? 1 : 0);
+                }
+            } else if (path.startsWith("/lights?brightness=")) {
+                int brightness = Integer.parseInt(path.substring("/lights?brightness=".length()));
+                if (brightness >= 0 && brightness <= DeviceStatus.MAX_BRIGHTNESS) {
+                    return command(DEVICE_LIGHTS, brightness);
+                }
+            } else if (path.startsWith("/sprinklers?state=")) {
+                String action = path.substring("/sprinklers?state=".length());
+                if (action.equals("off")) {
+                    return command(DEVICE_SPRINKLERS, SPRINKLERS_OFF);
+                } else if (action.equals("on")) {
+                    return command(DEVICE_SPRINKLERS, SPRINKLERS_ON);
+                }
+                // Timed runs stay on HTTP: only its reply carries the remaining_seconds the countdown starts from
+            }
+        } catch (NumberFormatException e) {
+            // Let the hub reject it over HTTP
+        }
+        return null;
+    }
+
+    private static CommandFrame command(byte device, int value) {
+        return new CommandFrame(TYPE_COMMAND, device, 0, value);
+    }
+
+    @Override
+    public String toString() {
+        return "CommandFrame{type=" + type + ", device=" + device + ", seq=" + sequence + ", value=" + value + "}";
+    }
+}
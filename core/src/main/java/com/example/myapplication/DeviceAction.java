@@ -0,0 +1,101 @@
+package com.example.myapplication;
+
+/**
+ * One device command in a batch, e.g. "lights to 0" in a "leaving home" scene.
+ * Knows its parameters for the hub's /batch endpoint and its ThingSpeak command.
+ */
+public final class DeviceAction {
+    public static final String GARAGE = "garage";
+    public static final String LIGHTS = "lights";
+    public static final String SPRINKLERS = "sprinklers";
+
+    private final String device;
+    private final String value;
+    private final String batchParams;
+    private final String remoteCommand;
+
+    private DeviceAction(String device, String value, String batchParams, String remoteCommand) {
+        this.device = device;
+        this.value = value;
+        this.batchParams = batchParams;
+        this.remoteCommand = remoteCommand;
+    }
+
+    // action is "open" or "close"
+    public static DeviceAction garage(String action) {
+        return new DeviceAction(GARAGE, action, "garage=" + action,
+                action.equals("open") || action.equals("toggle") ? "garage_open" : "garage_close");
+    }
+
+    // brightness is 0-255; remotely it is rounded to the nearest preset level
+    public static DeviceAction lights(int brightness) {
+        return new DeviceAction(LIGHTS, String.valueOf(brightness),
+                "lights=" + brightness, "lights_" + remoteBrightnessLevel(brightness));
+    }
+
+    // action is "on", "off" or "on&duration_seconds=N", as for controlSprinklers
+    public static DeviceAction sprinklers(String action) {
+        return new DeviceAction(SPRINKLERS, action, "sprinklers=" + action,
+                remoteSprinklerCommand(action));
+    }
+
+    // "garage", "lights" or "sprinklers"
+    public String getDevice() {
+        return device;
+    }
+
+    // Value passed to the device's control method, e.g. "close" or "0"
+    public String getValue() {
+        return value;
+    }
+
+    // A toggle's effect depends on the device's current state, so no remote command stands for it exactly
+    public boolean isToggle() {
+        return value.equals("toggle");
+    }
+
+    // Outbox entry type for queueing the action while offline; outbox entries are typed by device
+    public String getOutboxType() {
+        return device;
+    }
+
+    // Query parameters on the hub's /batch endpoint, e.g. "sprinklers=on&duration_seconds=90"
+    public String getBatchParams() {
+        return batchParams;
+    }
+
+    // Command written to the ThingSpeak channel, e.g. "lights_off"
+    public String getRemoteCommand() {
+        return remoteCommand;
+    }
+
+    // Map brightness to the remote command's level
+    public static String remoteBrightnessLevel(int brightness) {
+        if (brightness == 0) {
+            return "off";
+        } else if (brightness <= 85) {
+            return "low";
+        } else if (brightness <= 170) {
+            return "medium";
+        }
+        return "high";
+    }
+
+    private static String remoteSprinklerCommand(String action) {
+        try {
+            if (action.startsWith("on&duration_seconds=")) {
+                return "sprinkler_on_" + Integer.parseInt(action.substring("on&duration_seconds=".length()));
+            } else if (action.startsWith("on&duration=")) {
+                return "sprinkler_on_" + Integer.parseInt(action.substring("on&duration=".length())) * 60;
+            }
+        } catch (NumberFormatException e) {
+            return "sprinkler_on";
+        }
+        return action.equals("on") || action.equals("toggle") ? "sprinkler_on" : "sprinkler_off";
+    }
+
+    @Override
+    public String toString() {
+        return device + "=" + value;
+    }
+}
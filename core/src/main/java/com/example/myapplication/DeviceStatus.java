@@ -0,0 +1,365 @@
+package com.example.myapplication;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the hub's state, decoded once from /status or a pushed event.
+ *
+ * NexadomusApiClient publishes one current snapshot that every screen reads, and this
+ * class is the single place that knows what the hub's raw values mean (servo angles,
+ * brightness range). Each published snapshot carries a version that increases whenever
+ * the device state changes.
+ *
+ * Fields the payload did not carry (a pushed change event only has the fields that
+ * changed) report false from their has* method; their getters then return UNKNOWN.
+ */
+public final class DeviceStatus {
+    public static final int UNKNOWN = -1;
+    public static final int DAYS_PER_WEEK = 7;
+    public static final int MAX_BRIGHTNESS = 255;
+    // Servo angles the hub reports for the open door and the open valve
+    public static final int GARAGE_OPEN_ANGLE = 90;
+    public static final int SPRINKLER_ON_ANGLE = 180;
+
+    private final int lights;
+    private final int garage;
+    private final int sprinkler;
+    private final boolean hasSchedule;
+    private final boolean hasDays;
+    private final boolean[] days;
+    private final int startHour;
+    private final int startMinute;
+    private final int startSecond;
+    private final int durationMinutes;
+    private final int durationSeconds;
+    private final boolean hasTimer;
+    private final boolean timerActive;
+    private final int remainingSeconds;
+    private final long version;
+    private final long receivedAt;
+    private final boolean remote;
+
+    private DeviceStatus(Builder builder) {
+        this.lights = builder.lights;
+        this.garage = builder.garage;
+        this.sprinkler = builder.sprinkler;
+        this.hasSchedule = builder.hasSchedule;
+        this.hasDays = builder.hasDays;
+        this.days = builder.days.clone();
+        this.startHour = builder.startHour;
+        this.startMinute = builder.startMinute;
+        this.startSecond = builder.startSecond;
+        this.durationMinutes = builder.durationMinutes;
+        this.durationSeconds = builder.durationSeconds;
+        this.hasTimer = builder.hasTimer;
+        this.timerActive = builder.timerActive;
+        this.remainingSeconds = builder.remainingSeconds;
+        this.version = builder.version;
+        this.receivedAt = builder.receivedAt;
+        this.remote = builder.remote;
+    }
+
+    // Increases with every published change; 0 for snapshots that were never published
+    public long getVersion() {
+        return version;
+    }
+
+    // When the hub reported this state, in System.currentTimeMillis() time
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    // True if this state was rebuilt from the commands on the ThingSpeak channel instead of read from the hub
+    public boolean isRemote() {
+        return remote;
+    }
+
+    public boolean isGarageOpen() {
+        return garage == GARAGE_OPEN_ANGLE;
+    }
+
+    public boolean isSprinklerOn() {
+        return sprinkler == SPRINKLER_ON_ANGLE;
+    }
+
+    // True if a countdown is running on the hub
+    public boolean hasRunningTimer() {
+        return timerActive && remainingSeconds > 0;
+    }
+
+    public boolean hasLights() {
+        return lights != UNKNOWN;
+    }
+
+    // Brightness 0-255
+    public int getLights() {
+        return lights;
+    }
+
+    public boolean hasGarage() {
+        return garage != UNKNOWN;
+    }
+
+    // Servo angle of the garage door
+    public int getGarage() {
+        return garage;
+    }
+
+    public boolean hasSprinkler() {
+        return sprinkler != UNKNOWN;
+    }
+
+    // Servo angle of the sprinkler valve
+    public int getSprinkler() {
+        return sprinkler;
+    }
+
+    // True if the payload carried a sprinkler_schedule object
+    public boolean hasSchedule() {
+        return hasSchedule;
+    }
+
+    // True if the schedule carried its days array
+    public boolean hasDays() {
+        return hasDays;
+    }
+
+    // Whether the schedule runs on the given day, 0 = first day of the hub's week
+    public boolean isScheduledOn(int day) {
+        return day >= 0 && day < DAYS_PER_WEEK && days[day];
+    }
+
+    public int getStartHour() {
+        return startHour;
+    }
+
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    public int getStartSecond() {
+        return startSecond;
+    }
+
+    // Scheduled run length as sent by older firmware, in minutes
+    public int getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    // True if the schedule object reported a timer_active flag
+    public boolean hasTimer() {
+        return hasTimer;
+    }
+
+    public boolean isTimerActive() {
+        return timerActive;
+    }
+
+    public int getRemainingSeconds() {
+        return remainingSeconds;
+    }
+
+    // Compares device state only; version, receive time and source are ignored
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DeviceStatus)) {
+            return false;
+        }
+        DeviceStatus other = (DeviceStatus) o;
+        return lights == other.lights && garage == other.garage && sprinkler == other.sprinkler
+                && hasSchedule == other.hasSchedule && hasDays == other.hasDays && Arrays.equals(days, other.days)
+                && startHour == other.startHour && startMinute == other.startMinute
+                && startSecond == other.startSecond && durationMinutes == other.durationMinutes
+                && durationSeconds == other.durationSeconds && hasTimer == other.hasTimer
+                && timerActive == other.timerActive && remainingSeconds == other.remainingSeconds;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = lights;
+        result = 31 * result + garage;
+        result = 31 * result + sprinkler;
+        result = 31 * result + Arrays.hashCode(days);
+        result = 31 * result + startHour * 3600 + startMinute * 60 + startSecond;
+        result = 31 * result + durationSeconds;
+        result = 31 * result + (timerActive ? remainingSeconds : UNKNOWN);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceStatus{lights=" + lights + ", garage=" + garage + ", sprinkler=" + sprinkler
+                + ", schedule=" + (hasSchedule ? Arrays.toString(days) + " " + startHour + ":" + startMinute
+                + ":" + startSecond + " for " + durationSeconds + "s" : "none")
+                + ", timer=" + (timerActive ? remainingSeconds + "s" : "off") + (remote ? ", remote" : "") + "}";
+    }
+
+    public static class Builder {
+        private int lights = UNKNOWN;
+        private int garage = UNKNOWN;
+        private int sprinkler = UNKNOWN;
+        private boolean hasSchedule;
+        private boolean hasDays;
+        private final boolean[] days = new boolean[DAYS_PER_WEEK];
+        private int startHour = UNKNOWN;
+        private int startMinute = UNKNOWN;
+        private int startSecond = UNKNOWN;
+        private int durationMinutes = UNKNOWN;
+        private int durationSeconds = UNKNOWN;
+        private boolean hasTimer;
+        private boolean timerActive;
+        private int remainingSeconds = UNKNOWN;
+        private long version;
+        private long receivedAt;
+        private boolean remote;
+
+        public Builder() {
+        }
+
+        // Start from an existing snapshot
+        public Builder(DeviceStatus base) {
+            lights = base.lights;
+            garage = base.garage;
+            sprinkler = base.sprinkler;
+            hasSchedule = base.hasSchedule;
+            hasDays = base.hasDays;
+            System.arraycopy(base.days, 0, days, 0, DAYS_PER_WEEK);
+            startHour = base.startHour;
+            startMinute = base.startMinute;
+            startSecond = base.startSecond;
+            durationMinutes = base.durationMinutes;
+            durationSeconds = base.durationSeconds;
+            hasTimer = base.hasTimer;
+            timerActive = base.timerActive;
+            remainingSeconds = base.remainingSeconds;
+            version = base.version;
+            receivedAt = base.receivedAt;
+            remote = base.remote;
+        }
+
+        // Overlay the fields a partial change carries
+        public Builder merge(DeviceStatus change) {
+            if (change.hasLights()) {
+                lights = change.lights;
+            }
+            if (change.hasGarage()) {
+                garage = change.garage;
+            }
+            if (change.hasSprinkler()) {
+                sprinkler = change.sprinkler;
+            }
+            if (change.hasSchedule) {
+                hasSchedule = true;
+                if (change.hasDays) {
+                    hasDays = true;
+                    System.arraycopy(change.days, 0, days, 0, DAYS_PER_WEEK);
+                }
+                startHour = pick(change.startHour, startHour);
+                startMinute = pick(change.startMinute, startMinute);
+                startSecond = pick(change.startSecond, startSecond);
+                durationMinutes = pick(change.durationMinutes, durationMinutes);
+                durationSeconds = pick(change.durationSeconds, durationSeconds);
+                if (change.hasTimer) {
+                    hasTimer = true;
+                    timerActive = change.timerActive;
+                }
+                remainingSeconds = pick(change.remainingSeconds, remainingSeconds);
+            }
+            return this;
+        }
+
+        public Builder setVersion(long version) {
+            this.version = version;
+            return this;
+        }
+
+        public Builder setReceivedAt(long receivedAt) {
+            this.receivedAt = receivedAt;
+            return this;
+        }
+
+        public Builder setRemote(boolean remote) {
+            this.remote = remote;
+            return this;
+        }
+
+        public Builder setLights(int lights) {
+            this.lights = lights;
+            return this;
+        }
+
+        public Builder setGarage(int garage) {
+            this.garage = garage;
+            return this;
+        }
+
+        public Builder setSprinkler(int sprinkler) {
+            this.sprinkler = sprinkler;
+            return this;
+        }
+
+        public Builder setHasSchedule(boolean hasSchedule) {
+            this.hasSchedule = hasSchedule;
+            return this;
+        }
+
+        public Builder setScheduledOn(int day, boolean scheduled) {
+            hasDays = true;
+            if (day >= 0 && day < DAYS_PER_WEEK) {
+                days[day] = scheduled;
+            }
+            return this;
+        }
+
+        public Builder setStartHour(int startHour) {
+            this.startHour = startHour;
+            return this;
+        }
+
+        public Builder setStartMinute(int startMinute) {
+            this.startMinute = startMinute;
+            return this;
+        }
+
+        public Builder setStartSecond(int startSecond) {
+            this.startSecond = startSecond;
+            return this;
+        }
+
+        public Builder setDurationMinutes(int durationMinutes) {
+            this.durationMinutes = durationMinutes;
+            return this;
+        }
+
+        public Builder setDurationSeconds(int durationSeconds) {
+            this.durationSeconds = durationSeconds;
+            return this;
+        }
+
+        public Builder setTimerActive(boolean timerActive) {
+            this.hasTimer = true;
+            this.timerActive = timerActive;
+            return this;
+        }
+
+        public Builder setRemainingSeconds(int remainingSeconds) {
+            this.remainingSeconds = remainingSeconds;
+            return this;
+        }
+
+        public DeviceStatus build() {
+            return new DeviceStatus(this);
+        }
+
+        private static int pick(int changed, int current) {
+            return changed != UNKNOWN ? changed : current;
+        }
+    }
+}
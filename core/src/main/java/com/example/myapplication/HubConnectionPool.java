@@ -0,0 +1,846 @@
+package com.example.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.net.SocketFactory;
+
+/**
+ * Keep-alive HTTP/1.1 transport for the local ESP32 hub.
+ *
+ * Sockets are reused between requests instead of paying a new TCP handshake for
+ * every command, and the number of open sockets is capped so the hub is never
+ * asked to serve more clients than it can handle.
+ */
+public class HubConnectionPool {
+    private static final int MAX_HEADER_LINE = 8192;
+    // Long enough to see a close the hub already sent, short enough not to delay a command
+    private static final int HEALTH_CHECK_TIMEOUT_MS = 1;
+    public static final String DEFAULT_INTERFACE = "default";
+
+    // Replaced as a whole when the endpoint or socket factory changes; sockets opened on an older route are not reused
+    private volatile Route route;
+    private volatile boolean closed;
+    private final int maxConnections;
+    private final long keepAliveMillis;
+    // Decides when idle sockets expire, in milliseconds
+    private final LongSupplier clock;
+    private final Semaphore permits;
+    private final Deque<PooledSocket> idle = new ArrayDeque<>();
+    private final Map<String, FirstByteTiming> firstByteTimings = new ConcurrentHashMap<>();
+    private volatile TransferObserver transferObserver;
+    private volatile ConnectObserver connectObserver;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleRetries = new AtomicLong();
+
+    public static class Response {
+        private final int code;
+        private final byte[] body;
+
+        public Response(int code, byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getBodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Consumes a response body straight from the socket. The stream ends where the body
+     * ends, and whatever the reader leaves unread is skipped so the socket can be reused.
+     */
+    public interface BodyReader<T> {
+        T read(int code, InputStream body) throws IOException;
+    }
+
+    // A BodyReader that also sees the response headers, keyed by lower-case name
+    public interface ResponseReader<T> {
+        T read(int code, Map<String, String> headers, InputStream body) throws IOException;
+    }
+
+    // Told about every answered request, e.g. to feed a metrics registry; runs on the requesting thread
+    public interface TransferObserver {
+        /**
+         * @param latencyMillis From writing the request to reading the end of the response
+         * @param bytesReceived Status line, headers and body
+         */
+        void onExchange(String path, int code, long latencyMillis, long bytesSent, long bytesReceived);
+    }
+
+    // Told how long opening each new socket took; runs on the requesting thread
+    public interface ConnectObserver {
+        /**
+         * @param connected False if the connect timed out after connectMillis
+         */
+        void onConnect(long connectMillis, boolean connected);
+    }
+
+    // The hub did not accept a new connection within the connect timeout
+    public static class ConnectTimeoutException extends SocketTimeoutException {
+        ConnectTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    // The hub did not finish answering within the read timeout
+    public static class ReadTimeoutException extends SocketTimeoutException {
+        private final long elapsedMillis;
+
+        ReadTimeoutException(String message, long elapsedMillis) {
+            super(message);
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        // From writing the request, as for TransferObserver, so waiting for a connection is left out
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    // The socket failed before the hub sent anything back
+    private static class StaleSocketException extends IOException {
+        // Whether the request was written; the hub may then have acted on it
+        final boolean sent;
+
+        StaleSocketException(String message, boolean sent) {
+            super(message);
+            this.sent = sent;
+        }
+    }
+
+    // Time from sending a request to reading the first response byte, per network interface
+    public static class FirstByteTiming {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getAverageMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        public synchronized double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+    }
+
+    // Where new sockets go and how they are opened
+    private static final class Route {
+        final String host;
+        final int port;
+        final SocketFactory socketFactory;
+        // Interface name used for the time-to-first-byte statistics
+        final String interfaceLabel;
+
+        Route(String host, int port, SocketFactory socketFactory, String interfaceLabel) {
+            this.host = host;
+            this.port = port;
+            this.socketFactory = socketFactory;
+            this.interfaceLabel = interfaceLabel;
+        }
+    }
+
+    private static class PooledSocket {
+        final Socket socket;
+        final CountingInputStream raw;
+        final InputStream in;
+        final OutputStream out;
+        final Route route;
+        long lastUsed;
+        // When the current request was written, in System.nanoTime()
+        long sentAt;
+
+        PooledSocket(Socket socket, Route route) throws IOException {
+            this.socket = socket;
+            this.route = route;
+            this.raw = new CountingInputStream(socket.getInputStream());
+            this.in = new BufferedInputStream(raw);
+            this.out = socket.getOutputStream();
+        }
+
+        void closeQuietly() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Nothing useful to do with a failed close
+            }
+        }
+    }
+
+    public HubConnectionPool(String host, int port, int maxConnections, long keepAliveMillis) {
+        this(host, port, maxConnections, keepAliveMillis, System::currentTimeMillis);
+    }
+
+    // Reads the time from the given clock, in milliseconds
+    HubConnectionPool(String host, int port, int maxConnections, long keepAliveMillis, LongSupplier clock) {
+        this.route = new Route(host, port, SocketFactory.getDefault(), DEFAULT_INTERFACE);
+        this.maxConnections = maxConnections;
+        this.keepAliveMillis = keepAliveMillis;
+        this.clock = clock;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    // Receives the code, latency and size of every answered request, or null for none
+    public void setTransferObserver(TransferObserver observer) {
+        transferObserver = observer;
+    }
+
+    // Receives the time taken by every new connection, or null for none
+    public void setConnectObserver(ConnectObserver observer) {
+        connectObserver = observer;
+    }
+
+    /**
+     * Open future sockets through the given factory, e.g. one bound to a specific network.
+     * Idle sockets opened through the previous factory are dropped.
+     *
+     * @param factory Socket factory, or null for the system default
+     * @param label   Interface name used for the time-to-first-byte statistics
+     */
+    public void setSocketFactory(SocketFactory factory, String label) {
+        synchronized (this) {
+            Route current = route;
+            route = factory != null
+                    ? new Route(current.host, current.port, factory, label)
+                    : new Route(current.host, current.port, SocketFactory.getDefault(), DEFAULT_INTERFACE);
+        }
+        evictAll();
+    }
+
+    /**
+     * Send future requests to another address, e.g. after a hub was moved.
+     * Idle sockets to the old address are dropped.
+     */
+    public void setEndpoint(String host, int port) {
+        synchronized (this) {
+            Route current = route;
+            route = new Route(host, port, current.socketFactory, current.interfaceLabel);
+        }
+        evictAll();
+    }
+
+    public String getHost() {
+        return route.host;
+    }
+
+    public int getPort() {
+        return route.port;
+    }
+
+    // Time-to-first-byte statistics keyed by interface label
+    public Map<String, FirstByteTiming> getFirstByteTimings() {
+        return Collections.unmodifiableMap(firstByteTimings);
+    }
+
+    /**
+     * Perform a GET on the hub, reusing an idle socket when one is available.
+     *
+     * @param path           Path and query, e.g. "/lights?brightness=128"
+     * @param connectTimeout Connect timeout in milliseconds
+     * @param readTimeout    Read timeout in milliseconds, also bounds the wait for a free socket
+     */
+    public Response get(String path, int connectTimeout, int readTimeout) throws IOException {
+        return get(path, connectTimeout, readTimeout, (RequestHandle) null);
+    }
+
+    // Buffered GET that cancelling the handle aborts
+    public Response get(String path, int connectTimeout, int readTimeout, RequestHandle handle) throws IOException {
+        return get(path, connectTimeout, readTimeout, (code, body) -> new Response(code, readToEnd(body)), handle);
+    }
+
+    /**
+     * Perform a GET on the hub and hand the body to a reader as it arrives, without
+     * buffering it first.
+     *
+     * @param path           Path and query, e.g. "/status"
+     * @param connectTimeout Connect timeout in milliseconds
+     * @param readTimeout    Read timeout in milliseconds, also bounds the wait for a free socket
+     * @param reader         Decodes the body; exceptions it throws close the socket
+     */
+    public <T> T get(String path, int connectTimeout, int readTimeout, BodyReader<T> reader) throws IOException {
+        return get(path, connectTimeout, readTimeout, reader, null);
+    }
+
+    /**
+     * Same as {@link #get(String, int, int, BodyReader)}, but cancelling the handle closes
+     * the socket mid-request; the call then fails with an IOException.
+     *
+     * @param handle Cancellation token of the caller, or null
+     */
+    public <T> T get(String path, int connectTimeout, int readTimeout, BodyReader<T> reader,
+                     RequestHandle handle) throws IOException {
+        return get(path, connectTimeout, readTimeout, reader, null, null, handle);
+    }
+
+    /**
+     * GET with extra request headers, e.g. If-None-Match, handing the reader the response
+     * headers as well as the body.
+     *
+     * @param headers Request headers to add, or null
+     */
+    public <T> T get(String path, int connectTimeout, int readTimeout, Map<String, String> headers,
+                     ResponseReader<T> reader, RequestHandle handle) throws IOException {
+        Map<String, String> responseHeaders = new HashMap<>();
+        return get(path, connectTimeout, readTimeout,
+                (code, body) -> reader.read(code, responseHeaders, body), headers, responseHeaders, handle);
+    }
+
+    private <T> T get(String path, int connectTimeout, int readTimeout, BodyReader<T> reader,
+                      Map<String, String> requestHeaders, Map<String, String> responseHeaders,
+                      RequestHandle handle) throws IOException {
+        try {
+            if (!permits.tryAcquire(readTimeout, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a free hub connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a free hub connection");
+        }
+
+        try {
+            if (handle != null && handle.isCancelled()) {
+                throw new IOException("Request cancelled");
+            }
+            boolean repeatable = isRepeatable(path);
+            PooledSocket pooled = takeIdle(!repeatable);
+            if (pooled != null) {
+                hits.incrementAndGet();
+                try {
+                    return exchange(pooled, path, readTimeout, reader, requestHeaders, responseHeaders, handle);
+                } catch (StaleSocketException e) {
+                    // The hub may have closed the idle socket on its side; retry once on a fresh one,
+                    // unless the hub may already have carried out the command
+                    pooled.closeQuietly();
+                    if (handle != null && handle.isCancelled()) {
+                        throw new IOException("Request cancelled");
+                    }
+                    if (e.sent && !repeatable) {
+                        throw e;
+                    }
+                    staleRetries.incrementAndGet();
+                } catch (IOException e) {
+                    // Timeouts and failures after the hub answered are not stale sockets
+                    pooled.closeQuietly();
+                    throw e;
+                }
+            }
+
+            misses.incrementAndGet();
+            pooled = open(connectTimeout);
+            try {
+                return exchange(pooled, path, readTimeout, reader, requestHeaders, responseHeaders, handle);
+            } catch (IOException e) {
+                pooled.closeQuietly();
+                throw e;
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Close every idle socket, e.g. when the network changes
+    public void evictAll() {
+        synchronized (idle) {
+            for (PooledSocket pooled : idle) {
+                pooled.closeQuietly();
+            }
+            idle.clear();
+        }
+    }
+
+    // Stop keeping sockets: idle ones are closed now, those in use once their request ends
+    public void close() {
+        closed = true;
+        evictAll();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getStaleRetryCount() {
+        return staleRetries.get();
+    }
+
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    private void recordFirstByte(String label, long nanos) {
+        firstByteTimings.computeIfAbsent(label, key -> new FirstByteTiming()).record(nanos);
+    }
+
+    /**
+     * Whether a request can be sent again after the hub may have seen it. Status reads
+     * change nothing; device commands are GETs too, but may already have moved a device.
+     */
+    static boolean isRepeatable(String path) {
+        return path.startsWith("/status");
+    }
+
+    /**
+     * An idle socket, or null if none is left.
+     *
+     * @param verify Check that the hub has not closed the socket, for requests that
+     *               cannot be resent once written
+     */
+    private PooledSocket takeIdle(boolean verify) {
+        while (true) {
+            PooledSocket pooled = pollIdle();
+            if (pooled == null || !verify || isHealthy(pooled)) {
+                return pooled;
+            }
+            pooled.closeQuietly();
+        }
+    }
+
+    private PooledSocket pollIdle() {
+        long now = clock.getAsLong();
+        synchronized (idle) {
+            PooledSocket pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (now - pooled.lastUsed < keepAliveMillis && !pooled.socket.isClosed()) {
+                    return pooled;
+                }
+                pooled.closeQuietly();
+            }
+        }
+        return null;
+    }
+
+    // A live idle socket has nothing to read; a closed one reads end of stream at once
+    private static boolean isHealthy(PooledSocket pooled) {
+        try {
+            pooled.socket.setSoTimeout(HEALTH_CHECK_TIMEOUT_MS);
+            // End of stream, or stray bytes that would put responses out of step
+            pooled.in.read();
+            return false;
+        } catch (SocketTimeoutException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void recycle(PooledSocket pooled) {
+        if (pooled.route != route || closed) {
+            // Opened before the endpoint or network changed, or the pool was closed
+            pooled.closeQuietly();
+            return;
+        }
+        pooled.lastUsed = clock.getAsLong();
+        synchronized (idle) {
+            idle.addFirst(pooled);
+        }
+        if (closed) {
+            // Closed while this socket was going back
+            evictAll();
+        }
+    }
+
+    private PooledSocket open(int connectTimeout) throws IOException {
+        Route openedOn = route;
+        Socket socket = openedOn.socketFactory.createSocket();
+        ConnectObserver observer = connectObserver;
+        long startedAt = System.nanoTime();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(openedOn.host, openedOn.port), connectTimeout);
+            if (observer != null) {
+                observer.onConnect((System.nanoTime() - startedAt) / 1000000, true);
+            }
+            return new PooledSocket(socket, openedOn);
+        } catch (SocketTimeoutException e) {
+            socket.close();
+            if (observer != null) {
+                observer.onConnect((System.nanoTime() - startedAt) / 1000000, false);
+            }
+            throw new ConnectTimeoutException(e.getMessage());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    // Exchange on a socket that cancelling the handle closes
+    private <T> T exchange(PooledSocket pooled, String path, int readTimeout, BodyReader<T> reader,
+                           Map<String, String> requestHeaders, Map<String, String> responseHeaders,
+                           RequestHandle handle) throws IOException {
+        if (handle != null && !handle.attach(pooled.socket)) {
+            throw new IOException("Request cancelled");
+        }
+        try {
+            return exchange(pooled, path, readTimeout, reader, requestHeaders, responseHeaders);
+        } catch (SocketTimeoutException e) {
+            // Only reads time out, so the request had been written
+            throw new ReadTimeoutException(e.getMessage(), (System.nanoTime() - pooled.sentAt) / 1000000);
+        } finally {
+            if (handle != null) {
+                handle.detach();
+            }
+        }
+    }
+
+    // responseHeaders, when given, is filled before the reader runs
+    private <T> T exchange(PooledSocket pooled, String path, int readTimeout, BodyReader<T> reader,
+                           Map<String, String> requestHeaders, Map<String, String> responseHeaders)
+            throws IOException {
+        pooled.socket.setSoTimeout(readTimeout);
+
+        StringBuilder head = new StringBuilder("GET ").append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(pooled.route.host).append("\r\n")
+                .append("Connection: keep-alive\r\n");
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        String request = head.append("\r\n").toString();
+        InputStream in = pooled.in;
+        String statusLine;
+        long sentAt;
+        long receivedBefore = pooled.raw.count;
+        try {
+            pooled.out.write(request.getBytes(StandardCharsets.US_ASCII));
+            pooled.out.flush();
+        } catch (IOException e) {
+            throw new StaleSocketException(e.getMessage(), false);
+        }
+        sentAt = System.nanoTime();
+        pooled.sentAt = sentAt;
+        try {
+            statusLine = readLine(in);
+        } catch (SocketTimeoutException e) {
+            // A slow hub is not a stale socket; retrying would only double the wait
+            throw e;
+        } catch (IOException e) {
+            throw new StaleSocketException(e.getMessage(), true);
+        }
+        if (statusLine == null) {
+            throw new StaleSocketException("Connection closed by hub", true);
+        }
+        recordFirstByte(pooled.route.interfaceLabel, System.nanoTime() - sentAt);
+        int code = parseStatusCode(statusLine);
+        boolean http10 = statusLine.startsWith("HTTP/1.0");
+
+        long contentLength = -1;
+        boolean chunked = false;
+        boolean keepAlive = !http10;
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+            String value = line.substring(colon + 1).trim();
+            if (responseHeaders != null) {
+                responseHeaders.put(name, value);
+            }
+            if (name.equals("content-length")) {
+                contentLength = parseContentLength(value);
+            } else if (name.equals("transfer-encoding")) {
+                chunked = value.toLowerCase(Locale.US).contains("chunked");
+            } else if (name.equals("connection")) {
+                String token = value.toLowerCase(Locale.US);
+                if (token.contains("close")) {
+                    keepAlive = false;
+                } else if (token.contains("keep-alive")) {
+                    keepAlive = true;
+                }
+            }
+        }
+        if (line == null) {
+            throw new IOException("Connection closed while reading headers");
+        }
+
+        InputStream body;
+        if (code == 204 || code == 304) {
+            // These never carry a body, whatever the headers say
+            body = new FixedLengthBody(in, 0);
+        } else if (chunked) {
+            body = new ChunkedBody(in);
+        } else if (contentLength >= 0) {
+            body = new FixedLengthBody(in, contentLength);
+        } else {
+            // No framing: the body runs until the hub closes the socket
+            body = in;
+            keepAlive = false;
+        }
+
+        T result = reader.read(code, body);
+        if (keepAlive) {
+            // Skip what the reader did not need so the next response starts cleanly
+            skipToEnd(body);
+        }
+        TransferObserver observer = transferObserver;
+        if (observer != null) {
+            observer.onExchange(path, code, (System.nanoTime() - sentAt) / 1000000,
+                    request.length(), pooled.raw.count - receivedBefore);
+        }
+        if (keepAlive) {
+            recycle(pooled);
+        } else {
+            pooled.closeQuietly();
+        }
+        return result;
+    }
+
+    private static int parseStatusCode(String statusLine) throws IOException {
+        int firstSpace = statusLine.indexOf(' ');
+        if (firstSpace < 0 || statusLine.length() < firstSpace + 4) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(firstSpace + 1, firstSpace + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+    }
+
+    private static long parseContentLength(String value) throws IOException {
+        try {
+            long length = Long.parseLong(value);
+            if (length >= 0) {
+                return length;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IOException("Malformed Content-Length: " + value);
+    }
+
+    private static int parseChunkSize(String hex) throws IOException {
+        try {
+            int size = Integer.parseInt(hex, 16);
+            if (size >= 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IOException("Malformed chunk size: " + hex);
+    }
+
+    // Read a CRLF (or bare LF) terminated line, returning null on EOF before any byte
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int len = sb.length();
+                if (len > 0 && sb.charAt(len - 1) == '\r') {
+                    sb.setLength(len - 1);
+                }
+                return sb.toString();
+            }
+            if (sb.length() >= MAX_HEADER_LINE) {
+                throw new IOException("Header line too long");
+            }
+            sb.append((char) b);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static void skipToEnd(InputStream body) throws IOException {
+        byte[] buffer = new byte[256];
+        while (body.read(buffer) != -1) {
+            // Discard
+        }
+    }
+
+    private static byte[] readToEnd(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    // Bytes read off the socket, counted below the buffer so a read-ahead counts once
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    // Body with a Content-Length
+    private static class FixedLengthBody extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        FixedLengthBody(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Connection closed mid-body");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) {
+                throw new IOException("Connection closed mid-body");
+            }
+            remaining -= read;
+            return read;
+        }
+    }
+
+    // Body sent with Transfer-Encoding: chunked
+    private static class ChunkedBody extends InputStream {
+        private final InputStream in;
+        private int chunkRemaining;
+        private boolean started;
+        private boolean done;
+
+        ChunkedBody(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Connection closed mid-chunk");
+            }
+            chunkRemaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, Math.min(length, chunkRemaining));
+            if (read == -1) {
+                throw new IOException("Connection closed mid-chunk");
+            }
+            chunkRemaining -= read;
+            return read;
+        }
+
+        // Position on a chunk with data left; false at the terminating chunk
+        private boolean nextChunk() throws IOException {
+            if (done) {
+                return false;
+            }
+            if (chunkRemaining > 0) {
+                return true;
+            }
+            if (started) {
+                // CRLF after the previous chunk's data
+                readLine(in);
+            }
+            started = true;
+            String sizeLine = readLine(in);
+            if (sizeLine == null) {
+                throw new IOException("Connection closed mid-chunk");
+            }
+            int semicolon = sizeLine.indexOf(';');
+            String hex = (semicolon >= 0 ? sizeLine.substring(0, semicolon) : sizeLine).trim();
+            chunkRemaining = parseChunkSize(hex);
+            if (chunkRemaining == 0) {
+                // Skip trailers up to the blank line
+                String trailer;
+                while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+                    // Trailers are not used by the hub
+                }
+                done = true;
+                return false;
+            }
+            return true;
+        }
+    }
+}
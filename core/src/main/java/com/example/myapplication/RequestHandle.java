@@ -0,0 +1,142 @@
+package com.example.myapplication;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cancellation token for one request.
+ *
+ * Cancelling drops the request if it is still queued, closes the socket or connection
+ * attached to it if it is in flight, and runs any registered cancel actions (for example
+ * withdrawing a ThingSpeak command that is still in its batch window).
+ *
+ * A shared handle stands for work done on behalf of several callers, such as one
+ * coalesced command or one status fetch with several waiters; it is cancelled once
+ * every caller that joined it is cancelled, and never if a caller without a handle joined.
+ */
+public class RequestHandle {
+
+    // Implemented by callbacks that carry a handle, so the transport can find it
+    public interface Carrier {
+        RequestHandle getRequestHandle();
+    }
+
+    private final List<Runnable> cancelActions = new ArrayList<>();
+    private Closeable inFlight;
+    private boolean cancelled;
+    private int liveMembers;
+    private boolean pinned;
+
+    // The handle carried by a callback, or null if the callback cannot be cancelled
+    public static RequestHandle of(Object callback) {
+        return callback instanceof Carrier ? ((Carrier) callback).getRequestHandle() : null;
+    }
+
+    public void cancel() {
+        List<Runnable> actions;
+        Closeable closing;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            actions = new ArrayList<>(cancelActions);
+            cancelActions.clear();
+            closing = inFlight;
+            inFlight = null;
+        }
+        if (closing != null) {
+            try {
+                closing.close();
+            } catch (IOException ignored) {
+                // Closing is how we abort; the owner sees the failure on its own thread
+            }
+        }
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Run an action on cancel; runs it right away if the handle is already cancelled
+    public void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Register the socket or connection currently serving this request, so that
+     * cancelling closes it.
+     *
+     * @return False if the request was already cancelled; the caller should give up
+     */
+    public synchronized boolean attach(Closeable connection) {
+        if (cancelled) {
+            return false;
+        }
+        inFlight = connection;
+        return true;
+    }
+
+    // The connection is no longer serving this request
+    public synchronized void detach() {
+        inFlight = null;
+    }
+
+    // Make this a shared handle for the caller behind the callback
+    public void join(Object callback) {
+        RequestHandle member = of(callback);
+        synchronized (this) {
+            if (member == null) {
+                // Someone is waiting who cannot cancel, so the work must go on
+                pinned = true;
+                return;
+            }
+            liveMembers++;
+        }
+        member.onCancel(this::memberCancelled);
+    }
+
+    /**
+     * Join several callers at once. Every caller is counted before any cancel is
+     * looked at, so a caller that already left cannot cancel the work for the ones
+     * after it.
+     */
+    public void joinAll(List<?> callbacks) {
+        List<RequestHandle> members = new ArrayList<>(callbacks.size());
+        synchronized (this) {
+            for (Object callback : callbacks) {
+                RequestHandle member = of(callback);
+                if (member == null) {
+                    pinned = true;
+                } else {
+                    members.add(member);
+                    liveMembers++;
+                }
+            }
+        }
+        for (RequestHandle member : members) {
+            member.onCancel(this::memberCancelled);
+        }
+    }
+
+    private void memberCancelled() {
+        boolean last;
+        synchronized (this) {
+            last = --liveMembers == 0 && !pinned;
+        }
+        if (last) {
+            cancel();
+        }
+    }
+}
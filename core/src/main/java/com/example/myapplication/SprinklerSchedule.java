@@ -0,0 +1,119 @@
+package com.example.myapplication;
+
+import java.util.Arrays;
+
+/**
+ * Weekly sprinkler schedule: the days it runs, the time it starts and how long it
+ * waters. Builds the command the hub stores it from, the day string it is saved as and
+ * the text the sprinklers screen shows.
+ */
+public final class SprinklerSchedule {
+    private static final String COMMAND_PREFIX = "sprinkler_schedule_";
+    private static final String[] DAY_NAMES = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+
+    private final boolean[] days;
+    private final int startHour;
+    private final int startMinute;
+    private final int startSecond;
+    private final int durationMinutes;
+    private final int durationSeconds;
+
+    /**
+     * @param days Whether it runs on each day, Sunday first
+     */
+    public SprinklerSchedule(boolean[] days, int startHour, int startMinute, int startSecond,
+                             int durationMinutes, int durationSeconds) {
+        this.days = Arrays.copyOf(days, DeviceStatus.DAYS_PER_WEEK);
+        this.startHour = startHour;
+        this.startMinute = startMinute;
+        this.startSecond = startSecond;
+        this.durationMinutes = durationMinutes;
+        this.durationSeconds = durationSeconds;
+    }
+
+    // Days of a getDaysString() value such as "0100100"; missing days are off
+    public static boolean[] parseDays(String daysString) {
+        boolean[] days = new boolean[DeviceStatus.DAYS_PER_WEEK];
+        for (int i = 0; i < Math.min(daysString.length(), days.length); i++) {
+            days[i] = daysString.charAt(i) == '1';
+        }
+        return days;
+    }
+
+    public boolean isScheduledOn(int day) {
+        return days[day];
+    }
+
+    public boolean isAnyDayScheduled() {
+        for (boolean day : days) {
+            if (day) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // One 0/1 digit per day, Sunday first
+    public String getDaysString() {
+        return appendDays(new StringBuilder(DeviceStatus.DAYS_PER_WEEK)).toString();
+    }
+
+    /**
+     * Command that stores the schedule on the hub:
+     * sprinkler_schedule_<7 day bits>_<startHour>_<startMinute>_<startSecond>_<durationMinutes>_<durationSeconds>
+     */
+    public String toCommand() {
+        StringBuilder sb = appendDays(new StringBuilder(48).append(COMMAND_PREFIX));
+        return sb.append('_').append(startHour)
+                .append('_').append(startMinute)
+                .append('_').append(startSecond)
+                .append('_').append(durationMinutes)
+                .append('_').append(durationSeconds)
+                .toString();
+    }
+
+    // e.g. "Schedule: Mon, Thu\n6:00:00 AM for 30:00"
+    public String describe() {
+        if (!isAnyDayScheduled()) {
+            return "Schedule: Not Set";
+        }
+        StringBuilder sb = new StringBuilder(64).append("Schedule: ");
+        boolean first = true;
+        for (int i = 0; i < days.length; i++) {
+            if (days[i]) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append(DAY_NAMES[i]);
+                first = false;
+            }
+        }
+
+        int hour12 = startHour % 12;
+        sb.append('\n').append(hour12 == 0 ? 12 : hour12).append(':');
+        appendTwoDigits(sb, startMinute).append(':');
+        appendTwoDigits(sb, startSecond).append(startHour < 12 ? " AM" : " PM").append(" for ");
+
+        // A full hour reads better than "60:00"
+        if (durationMinutes == 60 && durationSeconds == 0) {
+            sb.append("1 hour");
+        } else {
+            appendTwoDigits(sb.append(durationMinutes).append(':'), durationSeconds);
+        }
+        return sb.toString();
+    }
+
+    private StringBuilder appendDays(StringBuilder sb) {
+        for (boolean day : days) {
+            sb.append(day ? '1' : '0');
+        }
+        return sb;
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        return sb.append(value);
+    }
+}
@@ -0,0 +1,417 @@
+package com.example.myapplication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull parser that reads a /status payload straight into a {@link DeviceStatus}.
+ *
+ * It works on bytes, matches keys against pre-encoded names without creating strings,
+ * and skips unknown fields (including nested objects and arrays) without building
+ * anything, so decoding a payload allocates little more than the snapshot itself.
+ */
+public class StatusDecoder {
+    private static final int BUFFER_SIZE = 512;
+    private static final int MAX_KEY_LENGTH = 32;
+    private static final int MAX_DEPTH = 32;
+
+    private static final byte[] KEY_LIGHTS = ascii("lights");
+    private static final byte[] KEY_GARAGE = ascii("garage");
+    private static final byte[] KEY_SPRINKLER = ascii("sprinkler");
+    private static final byte[] KEY_SCHEDULE = ascii("sprinkler_schedule");
+    private static final byte[] KEY_DAYS = ascii("days");
+    private static final byte[] KEY_START_HOUR = ascii("startHour");
+    private static final byte[] KEY_START_MINUTE = ascii("startMinute");
+    private static final byte[] KEY_START_SECOND = ascii("startSecond");
+    private static final byte[] KEY_DURATION = ascii("duration");
+    private static final byte[] KEY_DURATION_SECONDS = ascii("durationSeconds");
+    private static final byte[] KEY_TIMER_ACTIVE = ascii("timer_active");
+    private static final byte[] KEY_REMAINING_SECONDS = ascii("remaining_seconds");
+    private static final byte[] KEY_VERSION = ascii("version");
+    private static final byte[] KEY_SINCE = ascii("since");
+
+    // The payload is not a status document; the hub did answer
+    public static class MalformedStatusException extends IOException {
+        MalformedStatusException(String message) {
+            super(message);
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private final byte[] key = new byte[MAX_KEY_LENGTH];
+    private int keyLength;
+    private long version = StatusDelta.NO_VERSION;
+    private long since = StatusDelta.NO_VERSION;
+
+    private StatusDecoder(InputStream in, byte[] buffer, int limit) {
+        this.in = in;
+        this.buffer = buffer;
+        this.limit = limit;
+    }
+
+    // Decode a payload as it arrives on a stream; the stream should end with the payload
+    public static DeviceStatus decode(InputStream in) throws IOException {
+        return new StatusDecoder(in, new byte[BUFFER_SIZE], 0).readStatus();
+    }
+
+    public static DeviceStatus decode(byte[] json) throws IOException {
+        return new StatusDecoder(null, json, json.length).readStatus();
+    }
+
+    public static DeviceStatus decode(String json) throws IOException {
+        return decode(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Decode a reply to /status?since=, keeping the hub's version fields next to the status
+    public static StatusDelta decodeDelta(InputStream in) throws IOException {
+        StatusDecoder decoder = new StatusDecoder(in, new byte[BUFFER_SIZE], 0);
+        DeviceStatus status = decoder.readStatus();
+        return new StatusDelta(decoder.since, decoder.version, status);
+    }
+
+    public static StatusDelta decodeDelta(String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        StatusDecoder decoder = new StatusDecoder(null, bytes, bytes.length);
+        DeviceStatus status = decoder.readStatus();
+        return new StatusDelta(decoder.since, decoder.version, status);
+    }
+
+    private DeviceStatus readStatus() throws IOException {
+        DeviceStatus.Builder status = new DeviceStatus.Builder();
+        expect('{');
+        if (!consumeIf('}')) {
+            do {
+                readKey();
+                expect(':');
+                if (keyIs(KEY_LIGHTS)) {
+                    status.setLights(readInt());
+                } else if (keyIs(KEY_GARAGE)) {
+                    status.setGarage(readInt());
+                } else if (keyIs(KEY_SPRINKLER)) {
+                    status.setSprinkler(readInt());
+                } else if (keyIs(KEY_SCHEDULE) && peekToken() == '{') {
+                    readSchedule(status);
+                } else if (keyIs(KEY_VERSION)) {
+                    version = readLong();
+                } else if (keyIs(KEY_SINCE)) {
+                    since = readLong();
+                } else {
+                    skipValue(0);
+                }
+            } while (consumeIf(','));
+            expect('}');
+        }
+        return status.build();
+    }
+
+    private void readSchedule(DeviceStatus.Builder status) throws IOException {
+        status.setHasSchedule(true);
+        expect('{');
+        if (consumeIf('}')) {
+            return;
+        }
+        do {
+            readKey();
+            expect(':');
+            if (keyIs(KEY_DAYS) && peekToken() == '[') {
+                readDays(status);
+            } else if (keyIs(KEY_START_HOUR)) {
+                status.setStartHour(readInt());
+            } else if (keyIs(KEY_START_MINUTE)) {
+                status.setStartMinute(readInt());
+            } else if (keyIs(KEY_START_SECOND)) {
+                status.setStartSecond(readInt());
+            } else if (keyIs(KEY_DURATION)) {
+                status.setDurationMinutes(readInt());
+            } else if (keyIs(KEY_DURATION_SECONDS)) {
+                status.setDurationSeconds(readInt());
+            } else if (keyIs(KEY_TIMER_ACTIVE)) {
+                status.setTimerActive(readBoolean());
+            } else if (keyIs(KEY_REMAINING_SECONDS)) {
+                status.setRemainingSeconds(readInt());
+            } else {
+                skipValue(0);
+            }
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    private void readDays(DeviceStatus.Builder status) throws IOException {
+        expect('[');
+        if (consumeIf(']')) {
+            // Present but empty: no day is scheduled
+            status.setScheduledOn(0, false);
+            return;
+        }
+        int day = 0;
+        do {
+            if (peekToken() == 't' || peekToken() == 'f') {
+                status.setScheduledOn(day, readBoolean());
+            } else if (peekToken() == '-' || isDigit(peekToken())) {
+                status.setScheduledOn(day, readInt() != 0);
+            } else {
+                skipValue(0);
+            }
+            day++;
+        } while (consumeIf(','));
+        expect(']');
+    }
+
+    // Reads the key into the scratch buffer; keys too long to be ours are truncated and never match
+    private void readKey() throws IOException {
+        expect('"');
+        keyLength = 0;
+        int b;
+        while ((b = next()) != '"') {
+            if (b == '\\') {
+                b = next();
+            }
+            if (keyLength < MAX_KEY_LENGTH) {
+                key[keyLength] = (byte) b;
+            }
+            keyLength++;
+        }
+    }
+
+    private boolean keyIs(byte[] name) {
+        if (keyLength != name.length) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (key[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Integer value; fractions are truncated, booleans read as 0/1, numbers sent as strings
+    // (some firmware writes "128") are parsed, and null or other strings read as UNKNOWN
+    private int readInt() throws IOException {
+        int b = peekToken();
+        if (b == 't' || b == 'f') {
+            return readBoolean() ? 1 : 0;
+        }
+        if (b == '"') {
+            return (int) readQuotedNumber(Integer.MAX_VALUE, DeviceStatus.UNKNOWN);
+        }
+        if (b != '-' && !isDigit(b)) {
+            skipValue(0);
+            return DeviceStatus.UNKNOWN;
+        }
+        return (int) readNumber(Integer.MAX_VALUE);
+    }
+
+    // Version counter; anything but a non-negative integer reads as NO_VERSION
+    private long readLong() throws IOException {
+        if (peekToken() == '"') {
+            long value = readQuotedNumber(Long.MAX_VALUE / 10 - 1, StatusDelta.NO_VERSION);
+            return value < 0 ? StatusDelta.NO_VERSION : value;
+        }
+        if (!isDigit(peekToken())) {
+            skipValue(0);
+            return StatusDelta.NO_VERSION;
+        }
+        // The bound keeps the accumulator from overflowing; real versions stay far below it
+        return readNumber(Long.MAX_VALUE / 10 - 1);
+    }
+
+    // Digits of a number at the current token, failing once the magnitude passes max
+    private long readNumber(long max) throws IOException {
+        boolean negative = consumeIf('-');
+        long value = 0;
+        while (position < limit || fill()) {
+            int b = buffer[position];
+            if (!isDigit(b)) {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            if (value > max) {
+                throw new MalformedStatusException("Number out of range");
+            }
+            position++;
+        }
+        skipNumberTail();
+        return negative ? -value : value;
+    }
+
+    // A string at the current token holding a number such as "128" or "-5.5"; otherwise the fallback
+    private long readQuotedNumber(long max, long fallback) throws IOException {
+        position++;
+        int b = next();
+        boolean negative = b == '-';
+        if (negative) {
+            b = next();
+        }
+        long value = 0;
+        int digits = 0;
+        while (isDigit(b)) {
+            value = value * 10 + (b - '0');
+            if (value > max) {
+                throw new MalformedStatusException("Number out of range");
+            }
+            digits++;
+            b = next();
+        }
+        if (b == '.' && digits > 0) {
+            do {
+                b = next();
+            } while (isDigit(b));
+        }
+        if (b == '"' && digits > 0) {
+            return negative ? -value : value;
+        }
+        // Any other text; skip the rest of the string
+        while (b != '"') {
+            if (b == '\\') {
+                next();
+            }
+            b = next();
+        }
+        return fallback;
+    }
+
+    private boolean readBoolean() throws IOException {
+        int b = peekToken();
+        if (b == 't') {
+            expectLiteral("true");
+            return true;
+        } else if (b == 'f') {
+            expectLiteral("false");
+            return false;
+        }
+        return readInt() > 0;
+    }
+
+    private void skipValue(int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new MalformedStatusException("Status nested too deeply");
+        }
+        int b = peekToken();
+        if (b == '{') {
+            position++;
+            if (!consumeIf('}')) {
+                do {
+                    readKey();
+                    expect(':');
+                    skipValue(depth + 1);
+                } while (consumeIf(','));
+                expect('}');
+            }
+        } else if (b == '[') {
+            position++;
+            if (!consumeIf(']')) {
+                do {
+                    skipValue(depth + 1);
+                } while (consumeIf(','));
+                expect(']');
+            }
+        } else if (b == '"') {
+            position++;
+            int c;
+            while ((c = next()) != '"') {
+                if (c == '\\') {
+                    next();
+                }
+            }
+        } else if (b == 't') {
+            expectLiteral("true");
+        } else if (b == 'f') {
+            expectLiteral("false");
+        } else if (b == 'n') {
+            expectLiteral("null");
+        } else if (b == '-' || isDigit(b)) {
+            position++;
+            skipNumberTail();
+        } else {
+            throw new MalformedStatusException("Unexpected '" + (char) b + "' in status");
+        }
+    }
+
+    // Digits, fraction and exponent of a number whose leading part has been consumed
+    private void skipNumberTail() throws IOException {
+        while (position < limit || fill()) {
+            int b = buffer[position];
+            if (isDigit(b) || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-') {
+                position++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        skipWhitespace();
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw new MalformedStatusException("Expected " + literal + " in status");
+            }
+        }
+    }
+
+    private void expect(char c) throws IOException {
+        if (peekToken() != c) {
+            throw new MalformedStatusException("Expected '" + c + "' in status");
+        }
+        position++;
+    }
+
+    private boolean consumeIf(char c) throws IOException {
+        if (peekToken() == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    // Next non-whitespace byte without consuming it
+    private int peekToken() throws IOException {
+        skipWhitespace();
+        if (position >= limit && !fill()) {
+            throw new MalformedStatusException("Status ended early");
+        }
+        return buffer[position];
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (position < limit || fill()) {
+            int b = buffer[position];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private int next() throws IOException {
+        if (position >= limit && !fill()) {
+            throw new MalformedStatusException("Status ended early");
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private static boolean isDigit(int b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
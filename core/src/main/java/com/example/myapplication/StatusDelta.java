@@ -0,0 +1,38 @@
+package com.example.myapplication;
+
+/**
+ * One reply to /status?since=. A delta names the version it applies on top of (since)
+ * and carries only the fields that changed after it; a reply without since is a full
+ * snapshot that replaces whatever the client holds.
+ */
+public class StatusDelta {
+    // Firmware that does not version its status leaves both fields out
+    public static final long NO_VERSION = -1;
+
+    private final long since;
+    private final long version;
+    private final DeviceStatus status;
+
+    public StatusDelta(long since, long version, DeviceStatus status) {
+        this.since = since;
+        this.version = version;
+        this.status = status;
+    }
+
+    public boolean isFull() {
+        return since == NO_VERSION;
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Full snapshot, or just the changed fields of a delta
+    public DeviceStatus getStatus() {
+        return status;
+    }
+}
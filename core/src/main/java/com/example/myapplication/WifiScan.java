@@ -0,0 +1,74 @@
+package com.example.myapplication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the results of a Wi-Fi scan into the networks the Add Device screen lists:
+ * hidden networks are dropped and the hub's own access point comes first.
+ */
+public final class WifiScan {
+    // Access point a hub opens until it has joined the home network
+    public static final String HUB_SSID = "Nexadomus Prototype";
+
+    public static final class Network {
+        private final String ssid;
+        private final int level;
+        private final boolean secured;
+
+        Network(String ssid, int level, boolean secured) {
+            this.ssid = ssid;
+            this.level = level;
+            this.secured = secured;
+        }
+
+        public String getSsid() {
+            return ssid;
+        }
+
+        // Signal strength in dBm
+        public int getLevel() {
+            return level;
+        }
+
+        public boolean isSecured() {
+            return secured;
+        }
+    }
+
+    private final List<Network> hubs = new ArrayList<>();
+    private final List<Network> others = new ArrayList<>();
+
+    /**
+     * Add one scan result.
+     *
+     * @param capabilities Security modes as the platform reports them, e.g. "[WPA2-PSK-CCMP][ESS]"
+     */
+    public void add(String ssid, int level, String capabilities) {
+        if (ssid == null || ssid.isEmpty()) {
+            return;
+        }
+        Network network = new Network(ssid, level, !capabilities.contains("Open"));
+        if (ssid.equals(HUB_SSID)) {
+            hubs.add(network);
+        } else {
+            others.add(network);
+        }
+    }
+
+    public boolean isHubFound() {
+        return !hubs.isEmpty();
+    }
+
+    public int size() {
+        return hubs.size() + others.size();
+    }
+
+    // Hub access points first, the rest in scan order
+    public List<Network> getNetworks() {
+        List<Network> networks = new ArrayList<>(size());
+        networks.addAll(hubs);
+        networks.addAll(others);
+        return networks;
+    }
+}
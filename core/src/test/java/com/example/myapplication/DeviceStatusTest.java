@@ -0,0 +1,107 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeviceStatusTest {
+    private static final DeviceStatus FULL = new DeviceStatus.Builder()
+            .setLights(170)
+            .setGarage(0)
+            .setSprinkler(0)
+            .setHasSchedule(true)
+            .setScheduledOn(0, true)
+            .setScheduledOn(3, true)
+            .setStartHour(6)
+            .setStartMinute(30)
+            .setStartSecond(0)
+            .setDurationSeconds(600)
+            .setTimerActive(false)
+            .build();
+
+    @Test
+    public void mergeOverlaysOnlyFieldsTheChangeCarries() {
+        DeviceStatus change = new DeviceStatus.Builder().setGarage(DeviceStatus.GARAGE_OPEN_ANGLE).build();
+
+        DeviceStatus merged = new DeviceStatus.Builder(FULL).merge(change).build();
+
+        assertTrue(merged.isGarageOpen());
+        assertEquals(170, merged.getLights());
+        assertEquals(0, merged.getSprinkler());
+        assertTrue(merged.isScheduledOn(3));
+        assertEquals(600, merged.getDurationSeconds());
+    }
+
+    @Test
+    public void mergeKeepsScheduleFieldsAPartialScheduleLeavesOut() {
+        DeviceStatus change = new DeviceStatus.Builder()
+                .setHasSchedule(true)
+                .setTimerActive(true)
+                .setRemainingSeconds(42)
+                .build();
+
+        DeviceStatus merged = new DeviceStatus.Builder(FULL).merge(change).build();
+
+        // No days array in the change, so the old days stay
+        assertTrue(merged.hasDays());
+        assertTrue(merged.isScheduledOn(0));
+        assertFalse(merged.isScheduledOn(1));
+        assertEquals(6, merged.getStartHour());
+        assertEquals(30, merged.getStartMinute());
+        assertTrue(merged.hasRunningTimer());
+        assertEquals(42, merged.getRemainingSeconds());
+    }
+
+    @Test
+    public void mergeReplacesDaysWhenTheChangeCarriesThem() {
+        DeviceStatus change = new DeviceStatus.Builder().setHasSchedule(true).setScheduledOn(1, true).build();
+
+        DeviceStatus merged = new DeviceStatus.Builder(FULL).merge(change).build();
+
+        assertFalse(merged.isScheduledOn(0));
+        assertTrue(merged.isScheduledOn(1));
+        assertFalse(merged.isScheduledOn(3));
+    }
+
+    @Test
+    public void copyKeepsVersionUntilSet() {
+        DeviceStatus versioned = new DeviceStatus.Builder(FULL).setVersion(7).setReceivedAt(1000).build();
+
+        assertEquals(0, FULL.getVersion());
+        assertEquals(7, new DeviceStatus.Builder(versioned).build().getVersion());
+        assertEquals(8, new DeviceStatus.Builder(versioned).setVersion(8).build().getVersion());
+        assertEquals(1000, new DeviceStatus.Builder(versioned).build().getReceivedAt());
+    }
+
+    @Test
+    public void equalityIgnoresVersionReceiveTimeAndSource() {
+        DeviceStatus other = new DeviceStatus.Builder(FULL)
+                .setVersion(3)
+                .setReceivedAt(12345)
+                .setRemote(true)
+                .build();
+
+        assertEquals(FULL, other);
+        assertEquals(FULL.hashCode(), other.hashCode());
+    }
+
+    @Test
+    public void equalityComparesDeviceState() {
+        assertNotEquals(FULL, new DeviceStatus.Builder(FULL).setLights(171).build());
+        assertNotEquals(FULL, new DeviceStatus.Builder(FULL).setScheduledOn(6, true).build());
+        assertNotEquals(FULL, new DeviceStatus.Builder(FULL).setTimerActive(true).build());
+        assertNotEquals(FULL, new DeviceStatus.Builder().build());
+    }
+
+    @Test
+    public void missingFieldsReportUnknown() {
+        DeviceStatus empty = new DeviceStatus.Builder().build();
+
+        assertFalse(empty.hasLights());
+        assertFalse(empty.hasGarage());
+        assertFalse(empty.hasSprinkler());
+        assertFalse(empty.hasSchedule());
+        assertEquals(DeviceStatus.UNKNOWN, empty.getLights());
+        assertFalse(empty.isScheduledOn(DeviceStatus.DAYS_PER_WEEK));
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.SocketFactory;
+
+import static org.junit.Assert.*;
+
+public class HubConnectionPoolTest {
+    private FakeHubServer hub;
+
+    @Before
+    public void setUp() throws Exception {
+        hub = new FakeHubServer(path -> "{\"path\":\"" + path + "\"}");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        hub.close();
+    }
+
+    @Test
+    public void reusesSocketAcrossSequentialRequests() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+
+        for (int i = 0; i < 10; i++) {
+            HubConnectionPool.Response response = pool.get("/lights?brightness=" + i, 1000, 1000);
+            assertEquals(200, response.getCode());
+            assertEquals("{\"path\":\"/lights?brightness=" + i + "\"}", response.getBodyAsString());
+        }
+
+        assertEquals(1, pool.getMissCount());
+        assertEquals(9, pool.getHitCount());
+        assertEquals(1, hub.getAcceptedConnections());
+    }
+
+    @Test
+    public void reportsConnectTimeOnlyForNewSockets() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        List<Boolean> connects = new ArrayList<>();
+        pool.setConnectObserver((connectMillis, connected) -> connects.add(connected));
+
+        for (int i = 0; i < 3; i++) {
+            pool.get("/status", 1000, 1000);
+        }
+
+        // Pooled requests never pay for a connect, so they say nothing about it
+        assertEquals(1, connects.size());
+        assertTrue(connects.get(0));
+    }
+
+    @Test
+    public void recordsFirstByteTimePerInterface() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        pool.get("/status", 1000, 1000);
+
+        pool.setSocketFactory(SocketFactory.getDefault(), "hub-wifi");
+        pool.get("/status", 1000, 1000);
+        pool.get("/status", 1000, 1000);
+
+        Map<String, HubConnectionPool.FirstByteTiming> timings = pool.getFirstByteTimings();
+        assertEquals(1, timings.get(HubConnectionPool.DEFAULT_INTERFACE).getCount());
+        assertEquals(2, timings.get("hub-wifi").getCount());
+        // Switching factories drops sockets opened on the old interface
+        assertEquals(2, hub.getAcceptedConnections());
+    }
+
+    @Test
+    public void capsConcurrentSockets() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        hub.setHandler(path -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            return "{}";
+        });
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<HubConnectionPool.Response>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            results.add(callers.submit(() -> pool.get("/status", 1000, 2000)));
+        }
+        for (Future<HubConnectionPool.Response> result : results) {
+            assertEquals(200, result.get().getCode());
+        }
+        callers.shutdown();
+
+        assertTrue("peak sockets " + hub.getPeakConnections(), hub.getPeakConnections() <= 2);
+        assertEquals(40, pool.getHitCount() + pool.getMissCount());
+    }
+
+    @Test
+    public void cancellingHandleAbortsInFlightRequest() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        assertEquals(200, pool.get("/status", 1000, 1000).getCode());
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        hub.setHandler(path -> {
+            received.countDown();
+            try {
+                never.await();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            return "{}";
+        });
+
+        RequestHandle handle = new RequestHandle();
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        Future<HubConnectionPool.Response> result = caller.submit(() -> pool.get("/status", 1000, 60000, handle));
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        handle.cancel();
+        try {
+            // Far sooner than the read timeout would end it
+            result.get(5, TimeUnit.SECONDS);
+            fail("Cancelled request completed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        never.countDown();
+        caller.shutdown();
+
+        // A socket closed by cancelling is not mistaken for a stale one and retried
+        assertEquals(0, pool.getStaleRetryCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void readTimeoutIsMeasuredFromSendingTheRequest() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 1, 10000);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        hub.setHandler(path -> {
+            try {
+                if (path.equals("/hold")) {
+                    holding.countDown();
+                    release.await();
+                } else {
+                    never.await();
+                }
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            return "{}";
+        });
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        callers.submit(() -> pool.get("/hold", 1000, 5000));
+        assertTrue(holding.await(2, TimeUnit.SECONDS));
+        long startedAt = System.currentTimeMillis();
+        Future<HubConnectionPool.Response> slow = callers.submit(() -> pool.get("/status", 1000, 1000));
+        // The only socket is busy for at least this long before the status read can be sent
+        Thread.sleep(300);
+        release.countDown();
+        try {
+            slow.get();
+            fail("The hub never answered");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HubConnectionPool.ReadTimeoutException);
+            long elapsed = ((HubConnectionPool.ReadTimeoutException) e.getCause()).getElapsedMillis();
+            assertTrue("elapsed " + elapsed, elapsed >= 900);
+            assertTrue("elapsed " + elapsed, System.currentTimeMillis() - startedAt - elapsed >= 250);
+        }
+        never.countDown();
+        callers.shutdown();
+    }
+
+    @Test
+    public void malformedContentLengthFailsAsIOException() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        for (String length : new String[] {"twelve", "-5"}) {
+            hub.setContentLength(length);
+            try {
+                pool.get("/status", 1000, 1000);
+                fail("Accepted Content-Length " + length);
+            } catch (IOException expected) {
+                // Not a NumberFormatException that skips the caller's cleanup
+            }
+            assertEquals(0, pool.getIdleCount());
+        }
+
+        hub.setContentLength(null);
+        assertEquals(200, pool.get("/status", 1000, 1000).getCode());
+    }
+
+    @Test
+    public void dropsSocketsIdleBeyondKeepAlive() throws Exception {
+        AtomicLong now = new AtomicLong(1000);
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 5000, now::get);
+        pool.get("/status", 1000, 1000);
+
+        now.addAndGet(4999);
+        pool.get("/status", 1000, 1000);
+        assertEquals(1, pool.getHitCount());
+
+        // The hub may already have timed the socket out, so it is not reused
+        now.addAndGet(5000);
+        pool.get("/status", 1000, 1000);
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        assertEquals(2, hub.getAcceptedConnections());
+    }
+
+    @Test
+    public void closedPoolKeepsNoSockets() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        pool.get("/status", 1000, 1000);
+        assertEquals(1, pool.getIdleCount());
+
+        pool.close();
+        pool.get("/status", 1000, 1000);
+
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void movedEndpointDropsSocketsToOldAddress() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        pool.get("/status", 1000, 1000);
+        try (FakeHubServer moved = new FakeHubServer(path -> "{\"moved\":true}")) {
+            pool.setEndpoint(moved.getHost(), moved.getPort());
+
+            HubConnectionPool.Response response = pool.get("/status", 1000, 1000);
+
+            assertEquals("{\"moved\":true}", response.getBodyAsString());
+            assertEquals(moved.getPort(), pool.getPort());
+            assertEquals(1, moved.getAcceptedConnections());
+        }
+    }
+
+    @Test
+    public void recoversWhenHubClosesConnections() throws Exception {
+        hub.setKeepAlive(false);
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, pool.get("/status", 1000, 1000).getCode());
+        }
+
+        assertEquals(5, pool.getMissCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void resendsStatusReadOnSocketHubClosed() throws Exception {
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        pool.get("/status", 1000, 1000);
+        hub.closeConnections();
+
+        assertEquals(200, pool.get("/status", 1000, 1000).getCode());
+        assertEquals(1, pool.getStaleRetryCount());
+    }
+
+    @Test
+    public void checksIdleSocketBeforeSendingCommand() throws Exception {
+        AtomicInteger garageRequests = new AtomicInteger();
+        hub.setHandler(path -> {
+            if (path.startsWith("/garage")) {
+                garageRequests.incrementAndGet();
+            }
+            return "{}";
+        });
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        pool.get("/status", 1000, 1000);
+        hub.closeConnections();
+
+        assertEquals(200, pool.get("/garage?state=open", 1000, 1000).getCode());
+        assertEquals(1, garageRequests.get());
+        assertEquals(0, pool.getStaleRetryCount());
+        assertEquals(2, pool.getMissCount());
+    }
+
+    @Test
+    public void doesNotResendCommandHubMayHaveRun() throws Exception {
+        AtomicInteger garageRequests = new AtomicInteger();
+        hub.setHandler(path -> {
+            if (path.startsWith("/garage")) {
+                garageRequests.incrementAndGet();
+                return null;
+            }
+            return "{}";
+        });
+        HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 2, 10000);
+        pool.get("/status", 1000, 1000);
+
+        try {
+            pool.get("/garage?state=open", 1000, 1000);
+            fail("The hub never answered");
+        } catch (IOException expected) {
+            // Closed after the request was written
+        }
+        assertEquals(1, garageRequests.get());
+        assertEquals(0, pool.getStaleRetryCount());
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SprinklerScheduleTest {
+
+    @Test
+    public void buildsHubCommand() {
+        SprinklerSchedule schedule = new SprinklerSchedule(
+                new boolean[]{true, false, true, false, false, false, true}, 6, 30, 0, 15, 5);
+
+        assertEquals("sprinkler_schedule_1010001_6_30_0_15_5", schedule.toCommand());
+        assertEquals("1010001", schedule.getDaysString());
+    }
+
+    @Test
+    public void describesScheduleForTheScreen() {
+        boolean[] days = SprinklerSchedule.parseDays("0100100");
+
+        assertEquals("Schedule: Mon, Thu\n12:05:09 AM for 30:07",
+                new SprinklerSchedule(days, 0, 5, 9, 30, 7).describe());
+        assertEquals("Schedule: Mon, Thu\n6:00:00 PM for 1 hour",
+                new SprinklerSchedule(days, 18, 0, 0, 60, 0).describe());
+        assertEquals("Schedule: Not Set", new SprinklerSchedule(new boolean[7], 6, 0, 0, 30, 0).describe());
+    }
+
+    @Test
+    public void shortDayStringLeavesRestOff() {
+        boolean[] days = SprinklerSchedule.parseDays("11");
+
+        assertEquals(DeviceStatus.DAYS_PER_WEEK, days.length);
+        assertTrue(days[1]);
+        assertFalse(days[2]);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class StatusDecoderTest {
+    private static final String STATUS = "{\"lights\":170,\"garage\":90,\"sprinkler\":0,"
+            + "\"uptime\":123456,\"wifi\":{\"rssi\":-61,\"clients\":[1,2]},\"firmware\":\"1.4.2 \\\"beta\\\"\","
+            + "\"sprinkler_schedule\":{\"days\":[true,false,true,false,true,false,false],"
+            + "\"startHour\":6,\"startMinute\":30,\"startSecond\":0,\"duration\":15,\"durationSeconds\":900,"
+            + "\"timer_active\":true,\"remaining_seconds\":42,\"last_run\":null}}";
+
+    @Test
+    public void decodesKnownFieldsAndSkipsTheRest() throws Exception {
+        DeviceStatus status = StatusDecoder.decode(STATUS);
+
+        assertEquals(170, status.getLights());
+        assertEquals(90, status.getGarage());
+        assertEquals(0, status.getSprinkler());
+        assertTrue(status.hasSchedule());
+        assertTrue(status.isScheduledOn(0));
+        assertFalse(status.isScheduledOn(1));
+        assertTrue(status.isScheduledOn(4));
+        assertEquals(6, status.getStartHour());
+        assertEquals(30, status.getStartMinute());
+        assertEquals(900, status.getDurationSeconds());
+        assertEquals(15, status.getDurationMinutes());
+        assertTrue(status.isTimerActive());
+        assertEquals(42, status.getRemainingSeconds());
+    }
+
+    @Test
+    public void partialChangeEventLeavesOtherFieldsUnknown() throws Exception {
+        DeviceStatus change = StatusDecoder.decode(" { \"lights\" : 0 } ");
+
+        assertTrue(change.hasLights());
+        assertEquals(0, change.getLights());
+        assertFalse(change.hasGarage());
+        assertFalse(change.hasSchedule());
+        assertFalse(change.hasTimer());
+    }
+
+    @Test
+    public void streamsSplitAcrossReads() throws Exception {
+        // One byte per read, as a slow socket might deliver it
+        ByteArrayInputStream source = new ByteArrayInputStream(STATUS.getBytes(StandardCharsets.UTF_8));
+        DeviceStatus status = StatusDecoder.decode(new FilterInputStream(source) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(1, len));
+            }
+        });
+
+        assertEquals(StatusDecoder.decode(STATUS), status);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedPayload() throws Exception {
+        StatusDecoder.decode(STATUS.substring(0, STATUS.length() / 2));
+    }
+
+    @Test
+    public void decodesFromHubSocketAndKeepsItReusable() throws Exception {
+        try (FakeHubServer hub = new FakeHubServer(path -> STATUS)) {
+            HubConnectionPool pool = new HubConnectionPool(hub.getHost(), hub.getPort(), 1, 10000);
+            for (int i = 0; i < 3; i++) {
+                DeviceStatus status = pool.get("/status", 1000, 1000, (code, body) -> StatusDecoder.decode(body));
+                assertEquals(90, status.getGarage());
+            }
+            assertEquals(1, hub.getAcceptedConnections());
+        }
+    }
+
+    @Test
+    public void parsesNumbersSentAsStrings() throws Exception {
+        DeviceStatus status = StatusDecoder.decode(
+                "{\"lights\":\"128\",\"garage\":\"90.0\",\"sprinkler\":\"on\","
+                        + "\"sprinkler_schedule\":{\"startHour\":\"6\",\"duration\":\"\"}}");
+
+        assertEquals(128, status.getLights());
+        assertEquals(90, status.getGarage());
+        // Words are not numbers; the field stays unknown rather than failing the whole status
+        assertFalse(status.hasSprinkler());
+        assertEquals(6, status.getStartHour());
+        assertEquals(DeviceStatus.UNKNOWN, status.getDurationMinutes());
+    }
+
+    @Test
+    public void parsesVersionSentAsString() throws Exception {
+        StatusDelta delta = StatusDecoder.decodeDelta("{\"version\":\"1843\",\"since\":\"x\",\"lights\":85}");
+
+        assertEquals(1843, delta.getVersion());
+        assertEquals(StatusDelta.NO_VERSION, delta.getSince());
+        assertEquals(85, delta.getStatus().getLights());
+    }
+}
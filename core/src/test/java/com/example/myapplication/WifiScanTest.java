@@ -0,0 +1,38 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WifiScanTest {
+
+    @Test
+    public void listsHubFirstAndDropsHiddenNetworks() {
+        WifiScan scan = new WifiScan();
+        scan.add("Home", -48, "[WPA2-PSK-CCMP][ESS]");
+        scan.add("", -60, "[ESS]");
+        scan.add(null, -60, "[ESS]");
+        scan.add("Cafe", -75, "Open");
+        scan.add(WifiScan.HUB_SSID, -40, "[WPA2-PSK-CCMP][ESS]");
+
+        List<WifiScan.Network> networks = scan.getNetworks();
+
+        assertTrue(scan.isHubFound());
+        assertEquals(3, networks.size());
+        assertEquals(WifiScan.HUB_SSID, networks.get(0).getSsid());
+        assertEquals("Home", networks.get(1).getSsid());
+        assertTrue(networks.get(1).isSecured());
+        assertEquals(-75, networks.get(2).getLevel());
+        assertFalse(networks.get(2).isSecured());
+    }
+
+    @Test
+    public void emptyScanHasNoHub() {
+        WifiScan scan = new WifiScan();
+
+        assertFalse(scan.isHubFound());
+        assertTrue(scan.getNetworks().isEmpty());
+    }
+}
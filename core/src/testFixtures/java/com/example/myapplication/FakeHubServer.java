@@ -0,0 +1,250 @@
+package com.example.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal stand-in for the ESP32 web server, used by the JVM tests.
+ * Speaks HTTP/1.1 with keep-alive and can delay accepting sockets to mimic the hub's slow accept path.
+ */
+public class FakeHubServer implements AutoCloseable {
+
+    public interface Handler {
+        // null closes the connection without answering, as a hub that reset mid-request would
+        String handle(String path);
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final AtomicInteger acceptedConnections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger peakConnections = new AtomicInteger();
+    private volatile Handler handler;
+    private volatile long acceptDelayMillis;
+    private volatile boolean keepAlive = true;
+    private volatile boolean eventsEnabled = true;
+    private volatile boolean etagsEnabled;
+    private volatile String contentLength;
+    private final List<OutputStream> eventStreams = new CopyOnWriteArrayList<>();
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+
+    public FakeHubServer(Handler handler) throws IOException {
+        this.handler = handler;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        workers.execute(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    public void setAcceptDelayMillis(long acceptDelayMillis) {
+        this.acceptDelayMillis = acceptDelayMillis;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    // Mimic older firmware that has no /events endpoint
+    public void setEventsEnabled(boolean eventsEnabled) {
+        this.eventsEnabled = eventsEnabled;
+    }
+
+    // Tag bodies with an ETag and answer a matching If-None-Match with 304
+    public void setETagsEnabled(boolean etagsEnabled) {
+        this.etagsEnabled = etagsEnabled;
+    }
+
+    // Send this Content-Length instead of the body's, as broken firmware might; null for the real one
+    public void setContentLength(String contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    public int getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getPeakConnections() {
+        return peakConnections.get();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (acceptDelayMillis > 0) {
+                    Thread.sleep(acceptDelayMillis);
+                }
+                acceptedConnections.incrementAndGet();
+                int active = activeConnections.incrementAndGet();
+                peakConnections.accumulateAndGet(active, Math::max);
+                workers.execute(() -> serve(socket));
+            } catch (IOException | InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        clients.add(socket);
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null) {
+                    return;
+                }
+                String line;
+                String ifNoneMatch = null;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    if (line.toLowerCase().startsWith("if-none-match:")) {
+                        ifNoneMatch = line.substring(line.indexOf(':') + 1).trim();
+                    }
+                }
+                requests.incrementAndGet();
+                String path = requestLine.split(" ")[1];
+                if (eventsEnabled && path.startsWith("/events")) {
+                    streamEvents(s, out);
+                    return;
+                }
+                String body = handler.handle(path);
+                if (body == null) {
+                    return;
+                }
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                String etag = etagsEnabled ? "\"" + Integer.toHexString(body.hashCode()) + "\"" : null;
+                boolean notModified = etag != null && etag.equals(ifNoneMatch);
+                if (notModified) {
+                    bytes = new byte[0];
+                }
+                String head = (notModified ? "HTTP/1.1 304 Not Modified\r\n" : "HTTP/1.1 200 OK\r\n")
+                        + "Content-Type: application/json\r\n"
+                        + (etag != null ? "ETag: " + etag + "\r\n" : "")
+                        + (notModified ? "" : "Content-Length: "
+                                + (contentLength != null ? contentLength : String.valueOf(bytes.length)) + "\r\n")
+                        + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n"
+                        + "\r\n";
+                out.write(head.getBytes(StandardCharsets.US_ASCII));
+                out.write(bytes);
+                out.flush();
+                if (!keepAlive) {
+                    return;
+                }
+            }
+        } catch (IOException ignored) {
+            // Client went away
+        } finally {
+            activeConnections.decrementAndGet();
+            synchronized (clients) {
+                clients.remove(socket);
+                clients.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Close every client socket, as a hub that timed out idle keep-alive connections would.
+     * Returns once each connection's worker has finished with it, so the close has gone out.
+     */
+    public void closeConnections() throws IOException, InterruptedException {
+        for (Socket socket : clients) {
+            socket.close();
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        synchronized (clients) {
+            while (!clients.isEmpty() && System.currentTimeMillis() < deadline) {
+                clients.wait(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        }
+    }
+
+    public int getEventStreamCount() {
+        return eventStreams.size();
+    }
+
+    // Push a server-sent event to every open /events connection
+    public void pushEvent(String event, String data) {
+        byte[] frame = ("event: " + event + "\n" + "data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+        for (OutputStream out : eventStreams) {
+            try {
+                out.write(frame);
+                out.flush();
+            } catch (IOException e) {
+                eventStreams.remove(out);
+            }
+        }
+    }
+
+    // Drop every open /events connection, as a rebooting hub would
+    public void dropEventStreams() throws IOException {
+        for (OutputStream out : eventStreams) {
+            out.close();
+        }
+        eventStreams.clear();
+    }
+
+    private void streamEvents(Socket socket, OutputStream out) throws IOException {
+        String head = "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/event-stream\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + "\r\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.write(": connected\n\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        eventStreams.add(out);
+        // Hold the connection until the client or the test closes it
+        while (socket.getInputStream().read() != -1) {
+            // Clients do not send anything after the request
+        }
+        eventStreams.remove(out);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int len = sb.length();
+                if (len > 0 && sb.charAt(len - 1) == '\r') {
+                    sb.setLength(len - 1);
+                }
+                return sb.toString();
+            }
+            sb.append((char) b);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        workers.shutdownNow();
+    }
+}